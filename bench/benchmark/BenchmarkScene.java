@@ -0,0 +1,133 @@
+package benchmark;
+
+import geometry.Polygon;
+import geometry.Rectangle;
+import geometry.Vector;
+import graphics.WorldMatrix;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import simulation.Particle;
+
+/**
+ * Scene utilisee par les bancs d'essai: un monde carre dont la taille depend du nombre de
+ * particules, rempli de particules placees sur une grille reguliere legerement perturbee, pour que
+ * le nombre de voisins par particule soit le meme quel que soit le nombre de particules.
+ */
+public class BenchmarkScene {
+	/**
+	 * Rayon des interactions entre les particules, le meme que celui de Simulation par defaut.
+	 */
+	public static final double RADIUS = 45;
+
+	// distance entre deux particules voisines de la grille initiale; donne environ 28 voisins par
+	// particule
+	private static final double SPACING = 15;
+
+	// germe du generateur, pour que toutes les executions utilisent la meme scene
+	private static final long SEED = 6112;
+
+	// dimensions du monde
+	private final WorldMatrix world;
+
+	// particules de la scene
+	private final ArrayList<Particle> particles;
+
+	// position initiale des particules, pour remettre la scene dans son etat de depart
+	private final double[] initialX;
+	private final double[] initialY;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param particleCount Nombre de particules.
+	 */
+	public BenchmarkScene(int particleCount) {
+		int columns = (int) Math.ceil(Math.sqrt(particleCount));
+		double size = (columns + 1) * SPACING;
+		world = WorldMatrix.getIdentity(size, size);
+		particles = new ArrayList<Particle>(particleCount);
+		initialX = new double[particleCount];
+		initialY = new double[particleCount];
+		Random random = new Random(SEED);
+		int i;
+		for (i = 0; i < particleCount; i++) {
+			// petite perturbation pour qu'aucune distance ne soit exactement la meme
+			double x = (i % columns + 1) * SPACING + (random.nextDouble() - 0.5) * SPACING * 0.5;
+			double y = (i / columns + 1) * SPACING + (random.nextDouble() - 0.5) * SPACING * 0.5;
+			particles.add(new Particle(x, y));
+			initialX[i] = x;
+			initialY[i] = y;
+		}
+	}
+
+	/**
+	 * Remet les particules a leur position initiale, immobiles.
+	 */
+	public void reset() {
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			Particle particle = particles.get(i);
+			particle.setX(initialX[i]);
+			particle.setY(initialY[i]);
+			particle.setPreviousPositionVector(new Vector(initialX[i], initialY[i]));
+			particle.setVelocityX(0);
+			particle.setVelocityY(0);
+			particle.setPressure(0);
+		}
+	}
+
+	/**
+	 * Retourne des murs repartis dans le monde.
+	 *
+	 * @param wallCount 0, 3 (le bol de Runner, a l'echelle du monde) ou un carre parfait (grille
+	 * reguliere de petits rectangles).
+	 * @return Murs de la scene.
+	 */
+	public Polygon[] createWalls(int wallCount) {
+		double size = world.getWidth();
+		if (wallCount == 0) {
+			return new Polygon[0];
+		}
+		if (wallCount == 3) {
+			double scale = size / 400;
+			return new Polygon[] {
+					new Rectangle(100 * scale, 200 * scale, 200 * scale, 20 * scale),
+					new Rectangle(100 * scale, 200 * scale, 20 * scale, 100 * scale),
+					new Rectangle(280 * scale, 200 * scale, 20 * scale, 100 * scale)
+			};
+		}
+		int columns = (int) Math.round(Math.sqrt(wallCount));
+		if (columns * columns != wallCount) {
+			throw new IllegalArgumentException("wallCount doit etre 0, 3 ou un carre parfait.");
+		}
+		Polygon[] walls = new Polygon[wallCount];
+		double cell = size / columns;
+		int i;
+		for (i = 0; i < wallCount; i++) {
+			double x = (i % columns) * cell + cell * 0.35;
+			double y = (i / columns) * cell + cell * 0.35;
+			walls[i] = new Rectangle(x, y, cell * 0.3, cell * 0.3);
+		}
+		return walls;
+	}
+
+	/**
+	 * Retourne les dimensions du monde.
+	 *
+	 * @return Dimensions du monde.
+	 */
+	public WorldMatrix getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retourne les particules de la scene.
+	 *
+	 * @return Particules de la scene.
+	 */
+	public ArrayList<Particle> getParticles() {
+		return particles;
+	}
+}
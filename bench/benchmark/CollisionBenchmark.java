@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulation.DistanceField;
+import simulation.Particle;
+import simulation.solver.CollisionSolver;
+
+/**
+ * Banc d'essai de la resolution des collisions entre les particules et les murs, avec 0, 3 ou 100
+ * murs. La resolution sort les particules des murs: elles sont remises a leur position initiale
+ * avant chaque appel, hors du temps mesure, pour que chaque appel resolve les memes collisions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class CollisionBenchmark {
+	// parametres des collisions, les memes que ceux de Simulation
+	private static final double DELTA_T = 0.03;
+	private static final double COLLISION_SOFTNESS = 0.3;
+
+	@Param({"600", "10000", "100000", "1000000"})
+	public int particleCount;
+
+	@Param({"0", "3", "100"})
+	public int wallCount;
+
+	// scene, particules et murs
+	private BenchmarkScene scene;
+	private ArrayList<Particle> particles;
+	private DistanceField bounds;
+
+	@Setup
+	public void setUp() {
+		scene = new BenchmarkScene(particleCount);
+		particles = scene.getParticles();
+		bounds = new DistanceField(scene.getWorld(), scene.createWalls(wallCount));
+	}
+
+	@Setup(Level.Invocation)
+	public void resetParticles() {
+		scene.reset();
+	}
+
+	/**
+	 * Resout les collisions de toutes les particules.
+	 */
+	@Benchmark
+	public void resolveCollisions() {
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			CollisionSolver.resolveCollisions(particles.get(i), bounds, COLLISION_SOFTNESS, DELTA_T);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import simulation.Particle;
+import simulation.ParticleGrid;
+
+/**
+ * Bancs d'essai de la grille des voisins: reconstruction de la grille et recherche des voisins de
+ * toutes les particules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class GridBenchmark {
+	@Param({"600", "10000", "100000", "1000000"})
+	public int particleCount;
+
+	// particules et grille utilisees
+	private ArrayList<Particle> particles;
+	private ParticleGrid grid;
+
+	@Setup
+	public void setUp() {
+		BenchmarkScene scene = new BenchmarkScene(particleCount);
+		particles = scene.getParticles();
+		grid = new ParticleGrid(scene.getWorld(), BenchmarkScene.RADIUS);
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			grid.addParticle(particles.get(i));
+		}
+		grid.update();
+	}
+
+	/**
+	 * Replace toutes les particules dans les cellules de la grille.
+	 */
+	@Benchmark
+	public void rebuild() {
+		grid.update();
+	}
+
+	/**
+	 * Cherche les voisins de toutes les particules.
+	 */
+	@Benchmark
+	public void neighborSearch(Blackhole blackhole) {
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			blackhole.consume(grid.neighborsOf(particles.get(i)));
+		}
+	}
+}
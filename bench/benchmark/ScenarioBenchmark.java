@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import scenario.Scenario;
+import simulation.Simulation;
+
+/**
+ * Banc d'essai d'une etape de chacun des scenarios (voir Scenario). Chaque scenario est recree avant
+ * chaque iteration avec son germe, pour que toutes les iterations et toutes les executions partent
+ * du meme etat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ScenarioBenchmark {
+	@Param({"dam-break", "bowl-fill", "rotating-gravity", "mouse-stir", "sparse-rain",
+			"dense-column"})
+	public String scenarioName;
+
+	@Param({"600", "10000", "100000"})
+	public int particleCount;
+
+	// scenario et simulation utilises
+	private Scenario scenario;
+	private Simulation simulation;
+
+	// numero de la prochaine etape
+	private long step;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		scenario = Scenario.get(scenarioName);
+		simulation = scenario.createSimulation(particleCount);
+		step = 0;
+	}
+
+	/**
+	 * Avance le scenario d'une etape.
+	 */
+	@Benchmark
+	public void step() {
+		scenario.step(simulation, step++);
+	}
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Banc d'essai d'une etape complete de la simulation (Simulation.update), avec le bol de Runner.
+ * La simulation est recreee avant chaque iteration pour que chacune parte du meme etat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SimulationBenchmark {
+	// duree d'une etape, la meme que dans SimulationView
+	private static final double DELTA_T = 0.03;
+
+	@Param({"600", "10000", "100000", "1000000"})
+	public int particleCount;
+
+	@Param({"1", "4"})
+	public int threadCount;
+
+	// simulation utilisee
+	private Simulation simulation;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		BenchmarkScene scene = new BenchmarkScene(particleCount);
+		simulation = new Simulation(scene.getWorld(), scene.createWalls(3));
+		simulation.setThreadCount(threadCount);
+		ArrayList<Particle> particles = scene.getParticles();
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			simulation.addParticle(particles.get(i));
+		}
+	}
+
+	/**
+	 * Avance la simulation d'une etape.
+	 */
+	@Benchmark
+	public void update() {
+		simulation.update(DELTA_T, null, null);
+	}
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulation.Particle;
+import simulation.ParticleGrid;
+import simulation.solver.DensitySolver;
+import simulation.solver.ViscositySolver;
+
+/**
+ * Bancs d'essai des solveurs qui parcourent les voisins: relaxation de la densite et viscosite.
+ * Les listes de voisins sont calculees une seule fois, pour les positions initiales. Les solveurs
+ * deplacent les particules: elles sont remises a leur position initiale avant chaque appel, hors du
+ * temps mesure, pour que chaque appel traite le meme travail avec des listes de voisins a jour.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SolverBenchmark {
+	// parametres du fluide, les memes que ceux de Simulation par defaut
+	private static final double DELTA_T = 0.03;
+	private static final double STIFFNESS = 80;
+	private static final double NEARBY_STIFFNESS = 300;
+	private static final double REST_DENSITY = 15;
+	private static final double VISCOSITY = 0.02;
+
+	@Param({"600", "10000", "100000", "1000000"})
+	public int particleCount;
+
+	// scene, particules et voisins de chaque particule
+	private BenchmarkScene scene;
+	private ArrayList<Particle> particles;
+	private ArrayList<LinkedList<Particle>> neighborLists;
+
+	@Setup
+	public void setUp() {
+		scene = new BenchmarkScene(particleCount);
+		particles = scene.getParticles();
+		ParticleGrid grid = new ParticleGrid(scene.getWorld(), BenchmarkScene.RADIUS);
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			grid.addParticle(particles.get(i));
+		}
+		grid.update();
+		neighborLists = new ArrayList<LinkedList<Particle>>(particles.size());
+		for (i = 0; i < particles.size(); i++) {
+			neighborLists.add(grid.neighborsOf(particles.get(i)));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void resetParticles() {
+		scene.reset();
+		// donner une vitesse a chaque particule pour que la viscosite ait un effet
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			particles.get(i).setVelocityY(-(i % 7));
+		}
+	}
+
+	/**
+	 * Ajuste la position de toutes les particules selon la densite.
+	 */
+	@Benchmark
+	public void densityRelaxation() {
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			DensitySolver.doubleDensityRelaxation(particles.get(i), DELTA_T, neighborLists.get(i),
+					STIFFNESS, NEARBY_STIFFNESS, REST_DENSITY, BenchmarkScene.RADIUS);
+		}
+	}
+
+	/**
+	 * Applique la viscosite sur toutes les particules.
+	 */
+	@Benchmark
+	public void viscosity() {
+		int i;
+		for (i = 0; i < particles.size(); i++) {
+			ViscositySolver.applyViscosity(particles.get(i), DELTA_T, neighborLists.get(i),
+					VISCOSITY, BenchmarkScene.RADIUS);
+		}
+	}
+}
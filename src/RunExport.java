@@ -0,0 +1,121 @@
+import geometry.Rectangle;
+import graphics.FrameExporter;
+import graphics.WorldMatrix;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import simulation.Particle;
+import simulation.ParticleFrame;
+import simulation.Simulation;
+
+import component.SimulationRenderer;
+
+/**
+ * Produit une suite d'images PNG de la simulation, sans fenetre (java.awt.headless=true), pour
+ * faire de longs rendus sur un serveur sans affichage. L'encodage des images est fait en parallele
+ * par FrameExporter pendant que la simulation continue d'avancer. Le temps de demarrage, entre le
+ * lancement de la JVM et la premiere image dessinee (images des particules comprises), est affiche
+ * a la fin avec le debit.
+ *
+ * Utilisation: java RunExport dossier [images] [etapes par image] [largeur] [hauteur]
+ **/
+public class RunExport {
+  // dimensions du monde
+  private static final double WORLD_WIDTH = 400;
+  private static final double WORLD_HEIGHT = 400;
+
+  // nombre de particules utilisees dans la simulation
+  private static final int PARTICLE_COUNT = 600;
+
+  // nombre de particules mises en evidence (dessinees en blanc)
+  private static final int HIGHLIGHTED_PARTICLE_COUNT = PARTICLE_COUNT / 30;
+
+  // duree d'une etape de la simulation, en secondes (la meme que dans SimulationView)
+  private static final double STEP = 0.03;
+
+  // germe du generateur de positions, pour que deux rendus soient identiques
+  private static final long SEED = 6112;
+
+  public static void main(String[] args) throws Exception {
+    // aucune fenetre n'est creee
+    System.setProperty("java.awt.headless", "true");
+    if (args.length < 1) {
+      System.err.println("Utilisation: java RunExport dossier [images] [etapes par image] "
+          + "[largeur] [hauteur]");
+      System.exit(1);
+    }
+    File directory = new File(args[0]);
+    int frameCount = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+    int stepsPerFrame = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+    int width = args.length > 3 ? Integer.parseInt(args[3]) : (int) WORLD_WIDTH;
+    int height = args.length > 4 ? Integer.parseInt(args[4]) : (int) WORLD_HEIGHT;
+    // garder un processeur pour la simulation
+    int encoderCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // creer la simulation
+    WorldMatrix world = WorldMatrix.getIdentity(WORLD_WIDTH, WORLD_HEIGHT);
+    Simulation simulation = createSimulation(world);
+    // matrice monde-vers-image: le monde remplit toute l'image
+    WorldMatrix view = new WorldMatrix(0, 0, WORLD_WIDTH, WORLD_HEIGHT, width, height);
+    SimulationRenderer renderer = new SimulationRenderer(world);
+    ParticleFrame frame = new ParticleFrame();
+    ArrayList<Particle> particles = new ArrayList<Particle>();
+    FrameExporter exporter = new FrameExporter(directory, "frame", width, height,
+        encoderCount, 2 * encoderCount);
+    long startTime = System.nanoTime();
+    int i, j;
+    for (i = 0; i < frameCount; i++) {
+      for (j = 0; j < stepsPerFrame; j++) {
+        simulation.update(STEP, null, null);
+      }
+      // copier l'etat des particules, puis dessiner l'image
+      particles.clear();
+      Iterator<Particle> iterator = simulation.getParticleIterator();
+      while (iterator.hasNext()) {
+        particles.add(iterator.next());
+      }
+      frame.clear();
+      frame.addAll(particles, 1);
+      BufferedImage image = exporter.obtainImage();
+      Graphics2D graphics = image.createGraphics();
+      renderer.render(graphics, width, height, view, frame, simulation.getWalls(),
+          simulation.isSmall());
+      graphics.dispose();
+      if (i == 0) {
+        simulation.getStats().recordFirstFrame();
+      }
+      exporter.submit(image);
+    }
+    exporter.close();
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    System.out.printf("%d images ecrites dans %s en %.1f s (%.1f images/s)%n",
+        exporter.getFrameCount(), directory, seconds, exporter.getFrameCount() / seconds);
+    if (simulation.getStats().getFirstFrameTime() > 0) {
+      System.out.printf("premiere image dessinee %.0f ms apres le demarrage de la JVM%n",
+          simulation.getStats().getFirstFrameTime() / 1e6);
+    }
+  }
+
+  // cree la simulation dans le bol, avec PARTICLE_COUNT particules a des positions au hasard
+  private static Simulation createSimulation(WorldMatrix world) {
+    Simulation simulation = new Simulation(world,
+        new Rectangle(100, 200, 200, 20),
+        new Rectangle(100, 200, 20, 100),
+        new Rectangle(280, 200, 20, 100));
+    Random random = new Random(SEED);
+    int i;
+    for (i = 0; i < PARTICLE_COUNT; i++) {
+      double x = random.nextDouble() * WORLD_WIDTH;
+      double y = random.nextDouble() * (WORLD_HEIGHT - 200) + 200;
+      boolean highlighted = i >= PARTICLE_COUNT - HIGHLIGHTED_PARTICLE_COUNT;
+      simulation.addParticle(new Particle(x, y, highlighted));
+    }
+    // marquer la particule 'principale'
+    simulation.getParticleIterator().next().setImportant(true);
+    return simulation;
+  }
+}
@@ -0,0 +1,510 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import geometry.Polygon;
+import listeners.StatsListener;
+import metrics.MetricsServer;
+import metrics.SimulationMetrics;
+import recording.InputReplay;
+import recording.TrajectoryRecorder;
+
+import scenario.GoldenSummary;
+import scenario.Scenario;
+import scenario.Scene;
+import scenario.WarmStartCache;
+import simulation.Checkpoint;
+import simulation.CheckpointWriter;
+import simulation.Particle;
+import simulation.Simulation;
+import simulation.SimulationStats;
+
+/**
+ * Fait avancer un scenario (voir Scenario) le plus vite possible, sans fenetre et sans dessin, puis
+ * affiche le nombre d'etapes par seconde, le temps passe dans chaque phase et des sommes de
+ * controle de l'etat final. Sert a mesurer et a comparer la performance du moteur: un scenario
+ * donne, avec un nombre de particules donne, est le meme d'une execution a l'autre.
+ *
+ * Utilisation: java RunHeadless [--scenario nom] [--particles n] [--width w] [--height h]
+ * [--walls scenario|empty|bowl] [--dt secondes] [--seed n] [--steps n] [--warmup n]
+ * [--threads n] [--metrics-port n] [--golden fichier] [--golden-mode write|exact|tolerance]
+ * [--tolerance x] [--checkpoint-dir dossier] [--checkpoint-every n] [--checkpoint-keep n]
+ * [--record fichier] [--restore sauvegarde] [--replay journal] [--scene fichier]
+ * [--write-scene fichier] [--warm-start dossier]
+ *
+ * --width, --height, --walls et --seed remplacent la taille du monde, les murs et le germe du
+ * scenario choisi, et --dt la duree d'une etape, pour mesurer l'effet d'un seul parametre: les
+ * particules du scenario sont placees dans le carre en bas a gauche du monde (voir
+ * Scenario.createSimulation()) et le bol est celui de Runner, a l'echelle du monde. --dt s'applique
+ * aussi a une scene ou a une sauvegarde; les autres ne s'appliquent qu'a un scenario.
+ *
+ * Avec --metrics-port, les metriques de la simulation sont servies au format de Prometheus a
+ * l'adresse http://127.0.0.1:port/metrics pendant l'execution.
+ *
+ * Avec --golden fichier, le programme valide le moteur au lieu de mesurer sa performance: chaque
+ * scenario (ou seulement celui choisi avec --scenario) est execute pendant --steps etapes et son
+ * etat final est resume (voir GoldenSummary). En mode write, les resumes de reference sont produits
+ * par le moteur de reference, avec un seul processus, et ecrits dans le fichier. En mode exact ou
+ * tolerance, les resumes obtenus avec --threads processus sont compares a ceux du fichier, bit pour
+ * bit ou avec l'erreur relative --tolerance; le programme se termine avec le code 1 si un scenario
+ * ne concorde pas. Les resumes de reference de tous les scenarios, apres 500 etapes, sont gardes
+ * dans test/golden/scenarios.golden: ant test les compare bit pour bit, et ant golden-write les
+ * refait apres un changement voulu du comportement du fluide.
+ *
+ * Avec --checkpoint-dir dossier, l'etat de la simulation est sauvegarde en arriere-plan toutes les
+ * --checkpoint-every etapes mesurees, et seules les --checkpoint-keep dernieres sauvegardes sont
+ * gardees (voir CheckpointWriter). Le temps pendant lequel les sauvegardes ont arrete la
+ * simulation est affiche a la fin.
+ *
+ * Avec --record fichier, la trajectoire des particules pendant les etapes mesurees est enregistree
+ * dans le fichier (voir TrajectoryRecorder).
+ *
+ * Avec --restore sauvegarde, la simulation part de l'etat sauvegarde (voir Checkpoint) plutot que
+ * de l'etat initial du scenario. Avec --replay journal, les etapes ne sont pas celles du scenario
+ * mais celles d'une session journalisee (voir InputLog), refaites bit pour bit a partir de la
+ * sauvegarde prise au debut du journal; --steps est alors ignore et toutes les etapes du journal,
+ * moins les --warmup premieres, sont mesurees. Une session interactive enregistree avec le bouton
+ * Record de Runner devient ainsi une mesure reproductible:
+ * java RunHeadless --restore session.ckpt --replay session.
+ *
+ * Avec --scene fichier, la simulation part d'une scene (voir Scene, au format texte ou binaire)
+ * plutot que d'un scenario, et avance sans actions scriptees. Avec --write-scene fichier, l'etat
+ * de depart de la simulation, quelle que soit son origine, est ecrit en scene binaire avant les
+ * etapes; avec --steps 0, cela convertit une scene texte ou un scenario en scene binaire. Avec
+ * --warm-start dossier, une scene texte part de son etat relaxe, garde dans le dossier et calcule
+ * seulement s'il n'y est pas encore (voir WarmStartCache).
+ *
+ * Pour profiler une longue execution, ajouter -XX:StartFlightRecording=filename=simulation.jfr:
+ * chaque phase est alors enregistree comme un evenement fluidsimulator.Phase.
+ **/
+public class RunHeadless {
+  // valeurs par defaut des parametres
+  private Scenario scenario = Scenario.get("bowl-fill");
+  private int particleCount = Scenario.REFERENCE_PARTICLE_COUNT;
+  private double worldWidth = 0;
+  private double worldHeight = 0;
+  private String walls = "scenario";
+  private double deltaT = Scenario.DELTA_T;
+  private long seed = 0;
+  private int stepCount = 1000;
+  private int warmupCount = 0;
+  private int threadCount = 1;
+  private int metricsPort = -1;
+  private File goldenFile = null;
+  private String goldenMode = "exact";
+  private double tolerance = 1e-6;
+  private File checkpointDirectory = null;
+  private int checkpointInterval = 100;
+  private int checkpointKeepCount = 3;
+  private File recordFile = null;
+  private File restoreFile = null;
+  private File replayFile = null;
+  private File sceneFile = null;
+  private File writeSceneFile = null;
+  private File warmStartDirectory = null;
+
+  // vrai si un scenario a ete choisi sur la ligne de commande
+  private boolean scenarioChosen = false;
+
+  // vrai si la taille du monde, les murs, le germe ou la duree d'une etape du scenario sont
+  // remplaces
+  private boolean worldChosen = false;
+  private boolean deltaTChosen = false;
+  private boolean seedChosen = false;
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    RunHeadless runner = new RunHeadless();
+    try {
+      runner.parseArguments(args);
+    }
+    catch (IllegalArgumentException error) {
+      System.err.println(error.getMessage());
+      System.err.println("Utilisation: java RunHeadless [--scenario " + Scenario.getNames()
+          + "] [--particles n] [--width w] [--height h] [--walls scenario|empty|bowl] "
+          + "[--dt secondes] [--seed n] [--steps n] [--warmup n] [--threads n] [--metrics-port n] "
+          + "[--golden fichier] [--golden-mode write|exact|tolerance] [--tolerance x] "
+          + "[--checkpoint-dir dossier] [--checkpoint-every n] [--checkpoint-keep n] "
+          + "[--record fichier] [--restore sauvegarde] [--replay journal] [--scene fichier] "
+          + "[--write-scene fichier] [--warm-start dossier]");
+      System.exit(1);
+    }
+    if (runner.goldenFile != null) {
+      try {
+        if (!runner.runGolden()) {
+          System.exit(1);
+        }
+      }
+      catch (IOException error) {
+        System.err.println("Impossible d'utiliser " + runner.goldenFile + ": "
+            + error.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+    try {
+      runner.run();
+    }
+    catch (IOException error) {
+      System.err.println("Erreur d'entree-sortie: " + error.getMessage());
+      System.exit(1);
+    }
+    catch (InterruptedException error) {
+      System.exit(1);
+    }
+  }
+
+  // lit les parametres de la ligne de commande
+  private void parseArguments(String[] args) {
+    int i;
+    for (i = 0; i < args.length; i += 2) {
+      String name = args[i];
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("valeur manquante pour " + name + ".");
+      }
+      String value = args[i + 1];
+      try {
+        if (name.equals("--scenario")) {
+          scenario = Scenario.get(value);
+          scenarioChosen = true;
+        }
+        else if (name.equals("--particles")) {
+          particleCount = Integer.parseInt(value);
+        }
+        else if (name.equals("--width")) {
+          worldWidth = Double.parseDouble(value);
+          worldChosen = true;
+          if (!(worldWidth > 0)) {
+            throw new IllegalArgumentException("largeur invalide: " + value + ".");
+          }
+        }
+        else if (name.equals("--height")) {
+          worldHeight = Double.parseDouble(value);
+          worldChosen = true;
+          if (!(worldHeight > 0)) {
+            throw new IllegalArgumentException("hauteur invalide: " + value + ".");
+          }
+        }
+        else if (name.equals("--walls")) {
+          walls = value;
+          worldChosen = true;
+        }
+        else if (name.equals("--dt")) {
+          deltaT = Double.parseDouble(value);
+          deltaTChosen = true;
+        }
+        else if (name.equals("--seed")) {
+          seed = Long.parseLong(value);
+          worldChosen = true;
+          seedChosen = true;
+        }
+        else if (name.equals("--steps")) {
+          stepCount = Integer.parseInt(value);
+        }
+        else if (name.equals("--warmup")) {
+          warmupCount = Integer.parseInt(value);
+        }
+        else if (name.equals("--threads")) {
+          threadCount = Integer.parseInt(value);
+        }
+        else if (name.equals("--metrics-port")) {
+          metricsPort = Integer.parseInt(value);
+        }
+        else if (name.equals("--golden")) {
+          goldenFile = new File(value);
+        }
+        else if (name.equals("--golden-mode")) {
+          goldenMode = value;
+        }
+        else if (name.equals("--tolerance")) {
+          tolerance = Double.parseDouble(value);
+        }
+        else if (name.equals("--checkpoint-dir")) {
+          checkpointDirectory = new File(value);
+        }
+        else if (name.equals("--checkpoint-every")) {
+          checkpointInterval = Integer.parseInt(value);
+        }
+        else if (name.equals("--checkpoint-keep")) {
+          checkpointKeepCount = Integer.parseInt(value);
+        }
+        else if (name.equals("--record")) {
+          recordFile = new File(value);
+        }
+        else if (name.equals("--restore")) {
+          restoreFile = new File(value);
+        }
+        else if (name.equals("--replay")) {
+          replayFile = new File(value);
+        }
+        else if (name.equals("--scene")) {
+          sceneFile = new File(value);
+        }
+        else if (name.equals("--write-scene")) {
+          writeSceneFile = new File(value);
+        }
+        else if (name.equals("--warm-start")) {
+          warmStartDirectory = new File(value);
+        }
+        else {
+          throw new IllegalArgumentException("parametre inconnu: " + name + ".");
+        }
+      }
+      catch (NumberFormatException error) {
+        throw new IllegalArgumentException("valeur invalide pour " + name + ": " + value + ".");
+      }
+    }
+    if (particleCount < 1 || stepCount < 0 || warmupCount < 0 || threadCount < 1
+        || metricsPort > 65535 || !(tolerance > 0) || checkpointInterval < 1
+        || checkpointKeepCount < 1 || !(deltaT > 0)) {
+      throw new IllegalArgumentException("parametres invalides.");
+    }
+    if (!walls.equals("scenario") && !walls.equals("empty") && !walls.equals("bowl")) {
+      throw new IllegalArgumentException("murs inconnus: " + walls + ".");
+    }
+    if (worldChosen && (restoreFile != null || sceneFile != null)) {
+      throw new IllegalArgumentException("--width, --height, --walls et --seed ne s'appliquent "
+          + "qu'a un scenario.");
+    }
+    if (deltaTChosen && replayFile != null) {
+      throw new IllegalArgumentException("--dt ne s'applique pas a un journal, qui garde la duree "
+          + "de ses etapes.");
+    }
+    if ((worldChosen || deltaTChosen) && goldenFile != null) {
+      throw new IllegalArgumentException("les resumes de reference utilisent les parametres des "
+          + "scenarios.");
+    }
+    if (!goldenMode.equals("write") && !goldenMode.equals("exact")
+        && !goldenMode.equals("tolerance")) {
+      throw new IllegalArgumentException("mode inconnu: " + goldenMode + ".");
+    }
+  }
+
+  // cree la simulation, la fait avancer et affiche les resultats
+  private void run() throws IOException, InterruptedException {
+    Simulation simulation;
+    if (restoreFile != null) {
+      simulation = Checkpoint.load(restoreFile);
+    }
+    else if (sceneFile != null) {
+      long loadStart = System.nanoTime();
+      if (warmStartDirectory != null) {
+        WarmStartCache cache = new WarmStartCache(warmStartDirectory,
+            WarmStartCache.DEFAULT_RELAXATION_STEPS);
+        simulation = cache.createSimulation(Scene.read(sceneFile));
+      }
+      else {
+        simulation = Scene.load(sceneFile);
+      }
+      System.out.printf("scene %s chargee en %.1f ms%n", sceneFile,
+          (System.nanoTime() - loadStart) / 1e6);
+    }
+    else {
+      simulation = createSimulation();
+    }
+    if (writeSceneFile != null) {
+      Scene.writeBinary(simulation, writeSceneFile);
+    }
+    simulation.setThreadCount(threadCount);
+    particleCount = simulation.getParticleCount();
+    // refaire une session journalisee plutot que le scenario
+    InputReplay replay = null;
+    if (replayFile != null) {
+      replay = new InputReplay(replayFile);
+      if (replay.getStartStep() != simulation.getStepCount()) {
+        throw new IOException("le journal commence a l'etape " + replay.getStartStep()
+            + ", mais la simulation est a l'etape " + simulation.getStepCount() + ".");
+      }
+      if (warmupCount > replay.getStepCount()) {
+        throw new IOException("le journal n'a que " + replay.getStepCount() + " etapes.");
+      }
+      stepCount = replay.getStepCount() - warmupCount;
+    }
+    // un ecouteur est necessaire pour que la simulation prenne ses mesures
+    simulation.addStatsListener(new StatsListener() {
+      public void statsUpdated(SimulationStats stats) {
+      }
+    });
+    // servir les metriques pendant l'execution
+    MetricsServer server = null;
+    if (metricsPort >= 0) {
+      server = new MetricsServer(new SimulationMetrics(simulation), metricsPort);
+      server.start();
+      System.out.printf("metriques: http://127.0.0.1:%d/metrics%n", server.getPort());
+    }
+    // sauvegardes periodiques en arriere-plan
+    CheckpointWriter checkpointWriter = null;
+    if (checkpointDirectory != null) {
+      checkpointWriter = new CheckpointWriter(checkpointDirectory, scenario.getName(),
+          checkpointKeepCount, 2);
+    }
+    System.out.printf("%s, %d particules, monde %.0f x %.0f, dt %.4f s, %d processus%n",
+        replayFile != null ? "journal " + replayFile
+            : sceneFile != null ? "scene " + sceneFile : "scenario " + scenario.getName(),
+        particleCount, simulation.getWorld().getWidth(),
+        simulation.getWorld().getHeight(), deltaT, threadCount);
+    // etapes de rechauffement, qui ne sont pas mesurees
+    int i;
+    for (i = 0; i < warmupCount; i++) {
+      step(simulation, replay);
+    }
+    simulation.resetPhaseTimes();
+    TrajectoryRecorder recorder = null;
+    if (recordFile != null) {
+      recorder = new TrajectoryRecorder(simulation, recordFile);
+    }
+    long startTime = System.nanoTime();
+    for (i = 0; i < stepCount; i++) {
+      step(simulation, replay);
+      if (checkpointWriter != null && (i + 1) % checkpointInterval == 0) {
+        checkpointWriter.submit(simulation);
+      }
+    }
+    long elapsed = System.nanoTime() - startTime;
+    // debit
+    double seconds = elapsed / 1e9;
+    System.out.printf("%d etapes en %.3f s: %.1f etapes/s, %.0f particules-etapes/s%n",
+        stepCount, seconds, stepCount / seconds, (double) stepCount * particleCount / seconds);
+    // temps par phase
+    System.out.printf("%-16s %12s %14s %7s %10s %10s %10s%n", "phase", "total (ms)",
+        "etape (us)", "%", "p50 (us)", "p95 (us)", "p99 (us)");
+    SimulationStats stats = simulation.getStats();
+    long total = 0;
+    for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+      total += simulation.getPhaseTime(i);
+    }
+    for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+      long time = simulation.getPhaseTime(i);
+      System.out.printf("%-16s %12.1f %14.1f %7.1f %10.1f %10.1f %10.1f%n",
+          Simulation.getPhaseName(i), time / 1e6, time / 1e3 / Math.max(1, stepCount),
+          100.0 * time / Math.max(1, total), stats.getPercentile(i, 50) / 1e3,
+          stats.getPercentile(i, 95) / 1e3, stats.getPercentile(i, 99) / 1e3);
+    }
+    System.out.printf("(centiles sur les %d dernieres etapes)%n",
+        Math.min(stepCount, SimulationStats.WINDOW_SIZE));
+    // compteurs de la derniere etape
+    System.out.printf("voisins par particule: %.1f, cellules occupees: %d, collisions: %d%n",
+        (double) stats.getNeighborPairCount() / Math.max(1, stats.getParticleCount()),
+        stats.getOccupiedCellCount(), stats.getCollisionCount());
+    if (recorder != null) {
+      recorder.close();
+      System.out.printf("trajectoire: %d images, %.1f Mo (%.2f octets par particule et par image)%n",
+          recorder.getFrameCount(), recorder.getSize() / 1048576.0,
+          (double) recorder.getSize() / Math.max(1, (long) recorder.getFrameCount() * particleCount));
+    }
+    if (checkpointWriter != null) {
+      checkpointWriter.close();
+      int count = checkpointWriter.getSubmittedCount();
+      System.out.printf("sauvegardes: %d, arret total %.1f ms (%.1f us par sauvegarde, %.2f%% du "
+          + "temps)%n", count, checkpointWriter.getStallTime() / 1e6,
+          checkpointWriter.getStallTime() / 1e3 / Math.max(1, count),
+          100.0 * checkpointWriter.getStallTime() / elapsed);
+    }
+    printChecksums(simulation);
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  // fait avancer la simulation d'une etape, avec le journal s'il y en a un, sans action scriptee
+  // pour une scene, sinon avec le scenario; les actions du scenario suivent le nombre d'etapes de
+  // la simulation, pour qu'une simulation restauree continue le scenario la ou il etait
+  private void step(Simulation simulation, InputReplay replay) {
+    if (replay != null) {
+      replay.step(simulation);
+    }
+    else if (sceneFile != null) {
+      simulation.update(deltaT, null, null);
+    }
+    else {
+      scenario.step(simulation, simulation.getStepCount(), deltaT);
+    }
+  }
+
+  // cree la simulation du scenario, avec la taille du monde, les murs et le germe choisis
+  private Simulation createSimulation() {
+    if (!worldChosen) {
+      return scenario.createSimulation(particleCount);
+    }
+    double size = scenario.getWorldSize(particleCount);
+    double width = worldWidth > 0 ? worldWidth : size;
+    double height = worldHeight > 0 ? worldHeight : size;
+    Polygon[] worldWalls = null;
+    if (walls.equals("empty")) {
+      worldWalls = new Polygon[0];
+    }
+    else if (walls.equals("bowl")) {
+      worldWalls = Scenario.createBowl(width, height);
+    }
+    return scenario.createSimulation(particleCount, width, height,
+        seedChosen ? seed : scenario.getSeed(), worldWalls);
+  }
+
+  // execute les scenarios et ecrit leurs resumes, ou les compare a ceux du fichier; retourne faux
+  // si un scenario ne concorde pas
+  private boolean runGolden() throws IOException {
+    Scenario[] scenarios = scenarioChosen ? new Scenario[] {scenario} : Scenario.getAll();
+    boolean writing = goldenMode.equals("write");
+    Map<String, GoldenSummary> references = writing ? null : GoldenSummary.read(goldenFile);
+    List<GoldenSummary> summaries = new ArrayList<GoldenSummary>();
+    // le moteur de reference n'utilise qu'un processus
+    int threads = writing ? 1 : threadCount;
+    boolean success = true;
+    int i;
+    for (Scenario current : scenarios) {
+      Simulation simulation = current.createSimulation(particleCount);
+      simulation.setThreadCount(threads);
+      for (i = 0; i < stepCount; i++) {
+        current.step(simulation, i);
+      }
+      GoldenSummary summary = GoldenSummary.capture(current.getName(), simulation, stepCount);
+      if (writing) {
+        summaries.add(summary);
+        System.out.printf("%-18s resume calcule%n", current.getName());
+        continue;
+      }
+      GoldenSummary reference = references.get(current.getName());
+      if (reference == null) {
+        System.out.printf("%-18s aucune reference%n", current.getName());
+        success = false;
+        continue;
+      }
+      List<String> differences = summary.compareTo(reference,
+          goldenMode.equals("exact") ? 0 : tolerance);
+      System.out.printf("%-18s %s%n", current.getName(), differences.isEmpty() ? "ok" : "ECHEC");
+      for (String difference : differences) {
+        System.out.println("    " + difference);
+      }
+      success &= differences.isEmpty();
+    }
+    if (writing) {
+      GoldenSummary.write(goldenFile, summaries);
+      System.out.printf("%d resumes ecrits dans %s%n", summaries.size(), goldenFile);
+    }
+    return success;
+  }
+
+  // affiche des sommes de controle de l'etat final: sommes des positions et des vitesses, et une
+  // empreinte exacte des bits de ces valeurs
+  private void printChecksums(Simulation simulation) {
+    double positionSum = 0;
+    double velocitySum = 0;
+    long hash = 17;
+    Iterator<Particle> iterator = simulation.getParticleIterator();
+    while (iterator.hasNext()) {
+      Particle particle = iterator.next();
+      positionSum += particle.getX() + particle.getY();
+      velocitySum += particle.getVelocityX() + particle.getVelocityY();
+      hash = hash * 31 + Double.doubleToLongBits(particle.getX());
+      hash = hash * 31 + Double.doubleToLongBits(particle.getY());
+      hash = hash * 31 + Double.doubleToLongBits(particle.getVelocityX());
+      hash = hash * 31 + Double.doubleToLongBits(particle.getVelocityY());
+    }
+    System.out.printf("somme des positions: %.6f%n", positionSum);
+    System.out.printf("somme des vitesses: %.6f%n", velocitySum);
+    System.out.printf("empreinte: %016x%n", hash);
+  }
+}
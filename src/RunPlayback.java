@@ -0,0 +1,173 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import recording.TrajectoryPlayer;
+
+import component.PlaybackView;
+
+/**
+ * Rejoue une trajectoire enregistree avec RunHeadless --record (voir TrajectoryRecorder), sans
+ * faire avancer de simulation. La lecture peut etre mise en pause, accelere, faite a reculons, et
+ * placee sur n'importe quelle image avec la barre de defilement.
+ *
+ * Utilisation: java RunPlayback fichier
+ **/
+public class RunPlayback extends JFrame {
+  public static final long serialVersionUID = 1L;
+
+  // delai, en millisecondes, entre deux mises a jour de la barre de defilement
+  private final int STATUS_DELAY = 200;
+
+  private TrajectoryPlayer player;
+
+  private PlaybackView stage;
+
+  private JSlider slider;
+  private JLabel status;
+
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.err.println("Utilisation: java RunPlayback fichier");
+      System.exit(2);
+    }
+    TrajectoryPlayer player;
+    try {
+      player = new TrajectoryPlayer(new File(args[0]));
+    }
+    catch (IOException error) {
+      System.err.println("Erreur d'entree-sortie: " + error.getMessage());
+      System.exit(1);
+      return;
+    }
+    RunPlayback r = new RunPlayback(player);
+  }
+
+  public RunPlayback(TrajectoryPlayer player) {
+    super("Playback");
+    this.player = player;
+    JPanel contentPane = new JPanel();
+    contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+    contentPane.setLayout(new BorderLayout());
+    setContentPane(contentPane);
+    // composant principal, de la taille du monde
+    stage = new PlaybackView(player);
+    stage.setPreferredSize(new Dimension((int) player.getWorld().getWidth(),
+                                         (int) player.getWorld().getHeight()));
+    contentPane.add(stage, BorderLayout.CENTER);
+    // controles de la lecture
+    JPanel controls = new JPanel(new BorderLayout());
+    contentPane.add(controls, BorderLayout.SOUTH);
+    slider = new JSlider(0, Math.max(0, player.getFrameCount() - 1), 0);
+    slider.addChangeListener(new ChangeListener() {
+      public void stateChanged(ChangeEvent event) {
+        // ne deplacer la lecture que si l'utilisateur deplace la barre
+        if (slider.getValueIsAdjusting()) {
+          seek(slider.getValue());
+        }
+      }
+    });
+    controls.add(slider, BorderLayout.NORTH);
+    JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+    controls.add(panel, BorderLayout.SOUTH);
+    JButton button = new JButton("Reverse");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        changeSpeed(-1);
+      }
+    });
+    panel.add(button);
+    final JButton playButton = new JButton("Pause");
+    playButton.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        if (RunPlayback.this.player.isPlaying()) {
+          RunPlayback.this.player.pause();
+          playButton.setText("Play");
+        }
+        else {
+          RunPlayback.this.player.play();
+          playButton.setText("Pause");
+        }
+      }
+    });
+    panel.add(playButton);
+    button = new JButton("Forward");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        changeSpeed(1);
+      }
+    });
+    panel.add(button);
+    final JCheckBox smallCheckbox = new JCheckBox("Small particles");
+    smallCheckbox.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        stage.setSmall(smallCheckbox.isSelected());
+      }
+    });
+    panel.add(smallCheckbox);
+    final JCheckBox fieldCheckbox = new JCheckBox("Density field");
+    fieldCheckbox.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        stage.setFieldRendering(fieldCheckbox.isSelected());
+      }
+    });
+    panel.add(fieldCheckbox);
+    status = new JLabel();
+    panel.add(status);
+    // suivre la position de la lecture
+    Timer timer = new Timer(STATUS_DELAY, new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        updateStatus();
+      }
+    });
+    timer.start();
+    setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    pack();
+    setVisible(true);
+  }
+
+  // appuyer de nouveau sur le bouton du sens courant double la vitesse; changer de sens revient a
+  // la vitesse normale
+  private void changeSpeed(int direction) {
+    int speed = player.getSpeed();
+    if (Integer.signum(speed) == direction) {
+      speed = Math.abs(speed) * 2 > TrajectoryPlayer.MAXIMUM_SPEED ? direction : speed * 2;
+    }
+    else {
+      speed = direction;
+    }
+    player.setSpeed(speed);
+    updateStatus();
+  }
+
+  // place la lecture sur une image
+  private void seek(int frame) {
+    if (frame < player.getFrameCount()) {
+      player.seek(frame);
+    }
+  }
+
+  // met a jour la barre de defilement et l'etat de la lecture
+  private void updateStatus() {
+    if (!slider.getValueIsAdjusting() && player.getFrameIndex() >= 0) {
+      slider.setValue(player.getFrameIndex());
+    }
+    status.setText(String.format("Frame %d / %d, step %d, speed %dx",
+        player.getFrameIndex() + 1, player.getFrameCount(), player.getStep(), player.getSpeed()));
+  }
+}
@@ -3,12 +3,16 @@ import javax.swing.JLabel;
 
 import java.awt.Dimension;
 
+import graphics.SpriteSet;
+
 import java.io.Serializable;
 
 public class RunStandalone extends JFrame implements Serializable {
   public static final long serialVersionUID = 1L;
 
   public static void main(String[] args) {
+    // garder les images des particules sur le disque d'un lancement a l'autre
+    SpriteSet.setCacheDirectory(SpriteSet.getDefaultCacheDirectory());
     RunStandalone r = new RunStandalone();
   }
 
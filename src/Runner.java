@@ -1,5 +1,3 @@
-import geometry.Polygon;
-import geometry.Rectangle;
 import graphics.WorldMatrix;
 
 import java.awt.Container;
@@ -12,11 +10,16 @@ import java.awt.event.ActionEvent;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JApplet;
 import javax.swing.UIManager;
@@ -24,6 +27,14 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import listeners.WarmStartListener;
+
+import recording.InputLog;
+
+import scenario.Scene;
+import scenario.WarmStartCache;
+
+import simulation.Checkpoint;
 import simulation.Particle;
 import simulation.Simulation;
 
@@ -37,15 +48,14 @@ import component.SimulationView;
  **/
 
 public class Runner {
-  // dimensions du monde
-  private final double WORLD_WIDTH = 400;
-  private final double WORLD_HEIGHT = 400;
+  // scenes de depart (voir Scene), dans les ressources
+  private final String EMPTY_SCENE = "/scenes/empty.scene";
+  private final String BOWL_SCENE = "/scenes/bowl.scene";
+  private final String FLOW_SCENE = "/scenes/flow.scene";
 
-  // nombre de particules utilisees dans la simulation
-  private final int PARTICLE_COUNT = 600;
-
-  // nombre de particules mises en evidence (dessinees en blanc)
-  private final int HIGHLIGHTED_PARTICLE_COUNT = PARTICLE_COUNT / 30;
+  // etats de depart deja relaxes des scenes, reutilises a chaque reinitialisation
+  private final WarmStartCache warmStart =
+      new WarmStartCache(null, WarmStartCache.DEFAULT_RELAXATION_STEPS);
 
   private RootPaneContainer root;
 
@@ -61,6 +71,14 @@ public class Runner {
 
   private boolean showParticles = false;
 
+  // numero de la derniere simulation demandee; une simulation relaxee qui arrive apres une autre
+  // demande (autre scene, ouverture, restauration) est ignoree
+  private int simulationRequest = 0;
+
+  // journal des entrees en cours d'ecriture, ou null
+  private InputLog inputLog = null;
+  private JButton recordButton;
+
   public Runner(RootPaneContainer root) {
     this.root = root;
     start();
@@ -71,12 +89,20 @@ public class Runner {
     contentPane.setBorder (new EmptyBorder (5, 5, 5, 5));
     contentPane.setLayout (new BorderLayout());
     root.setContentPane (contentPane);
-    // creer la simulation
-    createSimulation ();
+    // generer les images des particules en arriere-plan, avant la premiere image
+    Thread sprites = new Thread(new Runnable() {
+      public void run() {
+        Particle.prepareSprites(true);
+      }
+    }, "sprites");
+    sprites.setDaemon(true);
+    sprites.start();
+    // montrer la scene telle quelle en attendant son etat relaxe
+    createSimulation (EMPTY_SCENE);
     // composant principal
     stage = new SimulationView (world, simulation);
-    stage.setPreferredSize(new Dimension((int) WORLD_WIDTH,
-                                         (int) WORLD_HEIGHT));
+    stage.setPreferredSize(new Dimension((int) world.getWidth(),
+                                         (int) world.getHeight()));
     contentPane.add (stage, BorderLayout.CENTER);
     // menu a droite
     JPanel panel = new JPanel();
@@ -103,54 +129,252 @@ public class Runner {
     JButton button = new JButton("Empty");
     button.addActionListener(new ActionListener() {
       public void actionPerformed(ActionEvent event) {
-        resetSimulation();
+        resetSimulation(EMPTY_SCENE);
       }
     });
     panel.add(button);
     button = new JButton("Bowl");
     button.addActionListener(new ActionListener() {
       public void actionPerformed(ActionEvent event) {
-        resetSimulation(new Rectangle(100, 200, 200, 20),
-            new Rectangle(100, 200, 20, 100),
-            new Rectangle(280, 200, 20, 100));
+        resetSimulation(BOWL_SCENE);
       }
     }); 
     panel.add(button);
+    button = new JButton("Flow");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        resetSimulation(FLOW_SCENE);
+      }
+    });
+    panel.add(button);
+    // charger une scene d'un fichier, au format texte ou binaire
+    button = new JButton("Open");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        openScene();
+      }
+    });
+    panel.add(button);
+    // sauvegarder et restaurer l'etat de la simulation
+    button = new JButton("Save");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        saveSimulation();
+      }
+    });
+    panel.add(button);
+    button = new JButton("Restore");
+    button.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        restoreSimulation();
+      }
+    });
+    panel.add(button);
+    // journaliser les entrees pour refaire la session avec RunHeadless --replay
+    recordButton = new JButton("Record");
+    recordButton.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        if (inputLog == null) {
+          startRecording();
+        }
+        else {
+          stopRecording();
+        }
+      }
+    });
+    panel.add(recordButton);
+    // dessiner le fluide a partir d'un champ de densite (plus rapide avec beaucoup de particules)
+    final JCheckBox fieldCheckbox = new JCheckBox("Density field");
+    fieldCheckbox.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent event) {
+        stage.setFieldRendering(fieldCheckbox.isSelected());
+      }
+    });
+    panel.add(fieldCheckbox);
+    // remplacer la scene par son etat relaxe, puis preparer les autres scenes en arriere-plan
+    resetSimulation(EMPTY_SCENE);
+    prefetchScene (BOWL_SCENE);
+    prefetchScene (FLOW_SCENE);
   }
 
-  // reinitialise la simulation avec les murs donnes
-  private void resetSimulation(Polygon... walls) {
+  // reinitialise la simulation avec une scene des ressources; la relaxation se fait hors du
+  // processus de l'interface, et l'ancienne simulation continue jusqu'a ce que la nouvelle soit
+  // prete
+  private void resetSimulation(String scenePath) {
+    Scene scene;
+    try {
+      scene = Scene.readResource(scenePath);
+    }
+    catch (IOException error) {
+      throw new IllegalStateException("scene invalide: " + error.getMessage());
+    }
+    final int request = ++simulationRequest;
+    warmStart.createSimulationLater(scene, new WarmStartListener() {
+      public void simulationReady(Scene scene, final Simulation relaxed) {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() {
+            if (request == simulationRequest) {
+              replaceSimulation(relaxed);
+            }
+          }
+        });
+      }
+
+      public void relaxationFailed(Scene scene, final IOException error) {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() {
+            JOptionPane.showMessageDialog(contentPane, "Unable to reset: " + error.getMessage(),
+                "Reset", JOptionPane.ERROR_MESSAGE);
+          }
+        });
+      }
+    });
+  }
+
+  // remplace la simulation par une autre, creee ailleurs
+  private void replaceSimulation(Simulation replacement) {
+    // la nouvelle simulation annule les demandes en cours
+    simulationRequest++;
+    // le journal ne concerne que l'ancienne simulation
+    stopRecording();
     // continuer de visionner (ou ne pas visionner) les particules
-    boolean small = simulation.isSmall();
-    // creer une nouvelle simulation
-    createSimulation(walls);
-    simulation.setSmall(small);
-    // affecter cette simulation aux autres composants
+    replacement.setSmall(simulation.isSmall());
+    simulation = replacement;
+    // le monde de la nouvelle simulation peut etre different de celui de l'ancienne
+    showSimulation();
+  }
+
+  // affecte la simulation et son monde aux autres composants
+  private void showSimulation() {
+    world = simulation.getWorld();
     stage.setSimulation(simulation);
     angleSelector.setSimulation(simulation);
     propertySelector.setSimulation(simulation);
   }
 
+  // remplace la simulation par celle d'une scene choisie par l'utilisateur
+  private void openScene() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(contentPane) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    Simulation loaded;
+    try {
+      loaded = Scene.load(chooser.getSelectedFile());
+    }
+    catch (IOException error) {
+      JOptionPane.showMessageDialog(contentPane, "Unable to open: " + error.getMessage(),
+          "Open", JOptionPane.ERROR_MESSAGE);
+      return;
+    }
+    replaceSimulation(loaded);
+  }
+
+  // sauvegarde l'etat de la simulation dans un fichier choisi par l'utilisateur
+  private void saveSimulation() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showSaveDialog(contentPane) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    // copier l'etat entre deux etapes, puis ecrire le fichier sans bloquer la simulation
+    Checkpoint checkpoint = new Checkpoint();
+    synchronized (simulation) {
+      checkpoint.copyFrom(simulation);
+    }
+    try {
+      checkpoint.write(chooser.getSelectedFile());
+    }
+    catch (IOException error) {
+      JOptionPane.showMessageDialog(contentPane, "Unable to save: " + error.getMessage(),
+          "Save", JOptionPane.ERROR_MESSAGE);
+    }
+  }
+
+  // remplace la simulation par celle d'un fichier choisi par l'utilisateur
+  private void restoreSimulation() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(contentPane) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    Simulation restored;
+    try {
+      restored = Checkpoint.load(chooser.getSelectedFile());
+    }
+    catch (IOException error) {
+      JOptionPane.showMessageDialog(contentPane, "Unable to restore: " + error.getMessage(),
+          "Restore", JOptionPane.ERROR_MESSAGE);
+      return;
+    }
+    replaceSimulation(restored);
+  }
+
+  // commence a journaliser les entrees dans un fichier choisi par l'utilisateur; l'etat de depart
+  // est sauvegarde dans le meme fichier suivi de .ckpt
+  private void startRecording() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showSaveDialog(contentPane) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File file = chooser.getSelectedFile();
+    // le journal commence a la meme etape que la sauvegarde
+    Checkpoint checkpoint = new Checkpoint();
+    try {
+      synchronized (simulation) {
+        checkpoint.copyFrom(simulation);
+        inputLog = new InputLog(simulation, file);
+      }
+      checkpoint.write(new File(file.getPath() + ".ckpt"));
+    }
+    catch (IOException error) {
+      stopRecording();
+      JOptionPane.showMessageDialog(contentPane, "Unable to record: " + error.getMessage(),
+          "Record", JOptionPane.ERROR_MESSAGE);
+      return;
+    }
+    recordButton.setText("Stop");
+  }
+
+  // termine le journal des entrees, s'il y en a un
+  private void stopRecording() {
+    if (inputLog == null) {
+      return;
+    }
+    try {
+      synchronized (simulation) {
+        inputLog.close();
+      }
+    }
+    catch (IOException error) {
+      JOptionPane.showMessageDialog(contentPane, "Unable to record: " + error.getMessage(),
+          "Record", JOptionPane.ERROR_MESSAGE);
+    }
+    inputLog = null;
+    recordButton.setText("Record");
+  }
+
+  // calcule en arriere-plan l'etat relaxe d'une scene des ressources
+  private void prefetchScene (String scenePath) {
+    try {
+      warmStart.prefetch (Scene.readResource (scenePath));
+    }
+    catch (IOException error) {
+      // resetSimulation() lancera l'erreur
+    }
+  }
+
   /**
-   * Initialise les dimensions du monde et l'instance de la simulation, si elles n'existent pas.
-   * Cree "world" et "simulation" et ajoute PARTICLE_COUNT particules a des positions au hasard
-   * dans le monde.
+   * Cree "world" et "simulation" a partir d'une scene des ressources (voir Scene), qui donne le
+   * monde, les murs et la position de depart des particules. La simulation part de la position de
+   * depart, sans relaxation: resetSimulation() la remplace ensuite par l'etat relaxe de la scene
+   * (voir WarmStartCache).
    */
-  private void createSimulation (Polygon... walls) {
-    // initialiser le monde
-    world = WorldMatrix.getIdentity (WORLD_WIDTH, WORLD_HEIGHT);
-    // initialiser la simulation
-    simulation = new Simulation (world, walls);
-    // creer PARTICLE_COUNT particules
-    int i;
-    for (i = 0; i < PARTICLE_COUNT; i++) {
-      double x = Math.random () * WORLD_WIDTH;
-      double y = Math.random() * (WORLD_HEIGHT - 200) + 200;
-      boolean highlighted = i >= PARTICLE_COUNT - HIGHLIGHTED_PARTICLE_COUNT;
-      Particle particle = new Particle (x, y, highlighted);
-      simulation.addParticle (particle);
-    }
-    // marquer la particule 'principale'
-    simulation.getParticleIterator().next().setImportant(true);
+  private void createSimulation (String scenePath) {
+    try {
+      simulation = Scene.readResource (scenePath).createSimulation ();
+    }
+    catch (IOException error) {
+      throw new IllegalStateException ("scene invalide: " + error.getMessage ());
+    }
+    world = simulation.getWorld ();
   }
 }
@@ -73,9 +73,13 @@ public class AngleView extends JPanel {
 				angle = theAngle;
 			}
 		}
-		double gravityMagnitude = simulation.getGravity ().getMagnitude ();
-		Vector gravity = new Vector (Math.cos (angle) * gravityMagnitude, Math.sin (angle) * gravityMagnitude);
-		simulation.setGravity (gravity);
+		// changer la gravite entre deux etapes, pour que chaque etape utilise une seule valeur
+		Simulation simulation = this.simulation;
+		synchronized (simulation) {
+			double gravityMagnitude = simulation.getGravity ().getMagnitude ();
+			Vector gravity = new Vector (Math.cos (angle) * gravityMagnitude, Math.sin (angle) * gravityMagnitude);
+			simulation.setGravity (gravity);
+		}
 		repaint ();
 	}
 	
@@ -59,7 +59,11 @@ public class OptionsView extends JPanel implements Serializable {
 		//de gravite
 		gravitySlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent arg0) {
-				simul.setGravity(simul.getGravity().normalize(gravitySlider.getValue()));
+				// changer les parametres entre deux etapes, pour que chaque etape utilise une
+				// seule valeur
+				synchronized (simul) {
+					simul.setGravity(simul.getGravity().normalize(gravitySlider.getValue()));
+				}
 			}
 		});
 		gravitySlider.setBorder(new TitledBorder(UIManager.getBorder("TitledBorder.border"), 
@@ -77,8 +81,10 @@ public class OptionsView extends JPanel implements Serializable {
 		//de viscosite
 		viscositySlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				simul.setViscosity(viscositySlider.getValue() / VISCOSITY_FACTOR 
-						+ MINIMUM_VISCOSITY);
+				synchronized (simul) {
+					simul.setViscosity(viscositySlider.getValue() / VISCOSITY_FACTOR 
+							+ MINIMUM_VISCOSITY);
+				}
 			}
 		});
 		viscositySlider.setBorder(new TitledBorder(UIManager.getBorder("TitledBorder.border"), 
@@ -95,7 +101,9 @@ public class OptionsView extends JPanel implements Serializable {
 		//densite au repos
 		restDensSlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				simul.setRestDensity(restDensSlider.getValue());
+				synchronized (simul) {
+					simul.setRestDensity(restDensSlider.getValue());
+				}
 			}
 		});
 		restDensSlider.setBorder(new TitledBorder(UIManager.getBorder("TitledBorder.border"), 
@@ -0,0 +1,33 @@
+package component;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evenement Java Flight Recorder (JFR) qui couvre le dessin de la simulation
+ * (SimulationView.paintComponent). Il n'est enregistre que si un enregistrement JFR est actif.
+ */
+@Name("fluidsimulator.Paint")
+@Label("Simulation Paint")
+@Category("Fluid Simulator")
+@Description("Dessin d'une image de la simulation")
+@StackTrace(false)
+class PaintEvent extends Event {
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Particle Count")
+	@Description("Particules possiblement visibles, copiees pour le dessin")
+	int particleCount;
+
+	@Label("Step")
+	@Description("Numero de la derniere etape de la simulation")
+	long step;
+}
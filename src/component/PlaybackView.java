@@ -0,0 +1,220 @@
+package component;
+
+import graphics.Camera;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+
+import recording.TrajectoryPlayer;
+import simulation.ParticleFrame;
+
+/**
+ * Dessine une trajectoire enregistree, image par image, a partir d'un TrajectoryPlayer, comme
+ * SimulationView dessine une simulation, mais sans la faire avancer. La camera se controle de la
+ * meme facon: bouton droit pour se deplacer, roulette pour zoomer, bouton du milieu pour revenir a
+ * la position initiale.
+ */
+public class PlaybackView extends JPanel implements Runnable {
+	public static final long serialVersionUID = 1L;
+	// delai, en millisecondes, entre deux images, le meme que celui entre deux etapes de la
+	// simulation dans SimulationView
+	private final int DELAY = 30;
+
+	// facteur de zoom pour chaque cran de la roulette de la souris
+	private final double ZOOM_STEP = 1.1;
+
+	// source des images
+	private final TrajectoryPlayer player;
+
+	// processus utilise pour l'animation
+	private Thread thread;
+
+	// camera qui permet de zoomer et de se deplacer dans le monde
+	private Camera camera = new Camera();
+
+	// image affichee, ou null; protegee par this
+	private ParticleFrame frame = null;
+
+	// vrai ssi les particules doivent etre dessinees en petit
+	private volatile boolean small = false;
+
+	// dessine les images de la trajectoire
+	private transient SimulationRenderer renderer;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param player Source des images a dessiner.
+	 */
+	public PlaybackView(TrajectoryPlayer player) {
+		super();
+		setBackground(Color.BLACK);
+		this.player = player;
+		this.renderer = new SimulationRenderer(player.getWorld());
+		// debuter l'animation
+		thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.start();
+		// ajouter le support pour les evenements de la souris
+		StageMouseListener mouseListener = new StageMouseListener();
+		this.addMouseListener(mouseListener);
+		this.addMouseMotionListener(mouseListener);
+		this.addMouseWheelListener(mouseListener);
+	}
+
+	/**
+	 * Dessine l'image courante a l'ecran.
+	 */
+	public void paintComponent(Graphics g) {
+		// dessiner l'arriere-plan
+		super.paintComponent(g);
+		// l'image affichee n'est pas rendue au lecteur pendant qu'elle est dessinee
+		synchronized (this) {
+			if (frame != null) {
+				renderer.render((Graphics2D) g, getWidth(), getHeight(),
+						camera.getView(getWidth(), getHeight()), frame, player.getWalls(), small);
+			}
+		}
+	}
+
+	/**
+	 * Fonction appelee lorsque le processus est demarre. Prend une nouvelle image du lecteur a
+	 * chaque DELAY millisecondes et redessine le composant.
+	 */
+	public void run() {
+		while (true) {
+			// attendre DELAY millisecondes
+			try {
+				Thread.sleep(DELAY);
+			}
+			catch (InterruptedException error) {
+				return;
+			}
+			ParticleFrame next;
+			try {
+				next = player.take();
+			}
+			catch (IOException error) {
+				showError(error);
+				return;
+			}
+			if (next == null) {
+				continue;
+			}
+			// remplacer l'image affichee et rendre l'ancienne au lecteur
+			ParticleFrame previous;
+			synchronized (this) {
+				previous = frame;
+				frame = next;
+			}
+			if (previous != null) {
+				player.recycle(previous);
+			}
+			repaint();
+		}
+	}
+
+	// affiche une erreur de lecture; la lecture s'arrete a la premiere erreur
+	private void showError(final IOException error) {
+		EventQueue.invokeLater(new Runnable() {
+			public void run() {
+				JOptionPane.showMessageDialog(PlaybackView.this,
+						"Unable to read the recording: " + error.getMessage()
+								+ "\nPlayback has stopped.", "Playback", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+
+	/**
+	 * Choisit si les particules doivent etre dessinees en petit, ce qui est plus rapide avec
+	 * beaucoup de particules.
+	 *
+	 * @param small Vrai ssi les particules doivent etre dessinees en petit.
+	 */
+	public void setSmall(boolean small) {
+		this.small = small;
+		repaint();
+	}
+
+	/**
+	 * Choisit si le fluide doit etre dessine a partir d'un champ de densite de basse resolution
+	 * plutot qu'avec une image par particule. N'a pas d'effet quand les particules sont dessinees
+	 * en petit.
+	 *
+	 * @param fieldRendering Vrai ssi le fluide doit etre dessine a partir du champ de densite.
+	 */
+	public void setFieldRendering(boolean fieldRendering) {
+		synchronized (this) {
+			renderer.setFieldRendering(fieldRendering);
+		}
+		repaint();
+	}
+
+	/**
+	 * Retourne la camera utilisee pour dessiner la trajectoire.
+	 *
+	 * @return Camera de ce composant.
+	 */
+	public Camera getCamera() {
+		return camera;
+	}
+
+	/*
+	 * Ecouteur de souris pour la zone de dessin.
+	 */
+	private class StageMouseListener extends MouseAdapter {
+		// derniere position de la souris pendant que la camera est deplacee, ou null
+		private Point panOrigin = null;
+
+		/**
+		 * Evenement lance quand la souris est enfoncee. Commence a deplacer la camera avec le
+		 * bouton droit, ou la remet a sa position initiale avec le bouton du milieu.
+		 */
+		public void mousePressed(MouseEvent event) {
+			if (event.getButton() == 3) {
+				panOrigin = event.getPoint();
+			}
+			else if (event.getButton() == 2) {
+				camera.reset();
+				repaint();
+			}
+		}
+
+		/**
+		 * Evenement lance quand la souris est deplacee et enfoncee. Deplace la camera.
+		 */
+		public void mouseDragged(MouseEvent event) {
+			if (panOrigin != null) {
+				camera.pan(event.getX() - panOrigin.getX(), event.getY() - panOrigin.getY());
+				panOrigin = event.getPoint();
+				repaint();
+			}
+		}
+
+		/**
+		 * Evenement lance quand la souris est relachee.
+		 */
+		public void mouseReleased(MouseEvent event) {
+			panOrigin = null;
+		}
+
+		/**
+		 * Evenement lance quand la roulette de la souris est tournee. Zoome autour du curseur.
+		 */
+		public void mouseWheelMoved(MouseWheelEvent event) {
+			double factor = Math.pow(ZOOM_STEP, -event.getPreciseWheelRotation());
+			camera.zoomAt(factor, event.getX(), event.getY(), getWidth(), getHeight());
+			repaint();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package component;
+
+import geometry.Polygon;
+import graphics.DensityFieldRenderer;
+import graphics.PointRenderer;
+import graphics.ThresholdFilter;
+import graphics.WorldMatrix;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import simulation.Particle;
+import simulation.ParticleFrame;
+
+/**
+ * Dessine une image de la simulation (arriere-plan, fluide, murs et bordure) a partir d'une copie
+ * de l'etat des particules (ParticleFrame). La classe ne depend pas de Swing: elle est utilisee par
+ * SimulationView pour dessiner a l'ecran et par RunExport pour dessiner dans des images, sans
+ * affichage.
+ *
+ * Les images intermediaires (particules, murs) sont gardees d'une image a l'autre; un meme objet ne
+ * doit donc pas etre utilise par plusieurs processus en meme temps.
+ */
+public class SimulationRenderer {
+	// les pixels avec une valeur alpha plus grande que ceci seront dessines
+	private static final int ALPHA_THRESHOLD = 50;
+
+	// taille d'une cellule du champ de densite, en unites physiques
+	private static final double FIELD_CELL_SIZE = 4;
+
+	/**
+	 * Rayon d'influence d'une particule sur le champ de densite, en unites physiques. Les
+	 * particules a moins de cette distance de la region visible doivent etre dans l'image.
+	 */
+	public static final double FIELD_SPLAT_RADIUS = 14;
+
+	// taille d'une particule dessinee en petit, en unites physiques (celle de Particle.drawAt)
+	private static final double POINT_SIZE = 3;
+
+	// objet representant le monde et ses dimensions
+	private WorldMatrix world;
+
+	// image en dehors de l'ecran, reutilisee tant que la taille ne change pas
+	private BufferedImage offscreenBuffer = null;
+
+	// filtre qui tronque la valeur alpha des pixels de offscreenBuffer
+	private ThresholdFilter thresholdFilter = new ThresholdFilter (ALPHA_THRESHOLD);
+
+	// vrai ssi le fluide est dessine a partir d'un champ de densite plutot qu'avec des images
+	private boolean fieldRendering = false;
+
+	// dessine le fluide a partir d'un champ de densite, cree au besoin
+	private DensityFieldRenderer fieldRenderer = null;
+
+	// dessine les particules en petit, cree au besoin
+	private PointRenderer pointRenderer = null;
+
+	// image des murs, qui ne changent pas d'une image a l'autre, ou null si elle doit etre
+	// redessinee
+	private BufferedImage wallLayer = null;
+
+	// matrice monde-vers-composant et murs utilises pour dessiner wallLayer
+	private WorldMatrix wallLayerView = null;
+	private Polygon[] wallLayerWalls = null;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param world Dimensions du monde.
+	 */
+	public SimulationRenderer (WorldMatrix world) {
+		this.world = world;
+	}
+
+	/**
+	 * Change les dimensions du monde, par exemple quand une autre simulation est dessinee. Le
+	 * champ de densite et l'image des murs sont recrees.
+	 *
+	 * @param world Dimensions du nouveau monde.
+	 */
+	public void setWorld (WorldMatrix world) {
+		this.world = world;
+		fieldRenderer = null;
+		wallLayer = null;
+	}
+
+	/**
+	 * Dessine une image de la simulation.
+	 *
+	 * @param graphics Objet Graphics2D sur lequel dessiner.
+	 * @param width Largeur de l'image, en pixels.
+	 * @param height Hauteur de l'image, en pixels.
+	 * @param view Matrice monde-vers-composant a utiliser.
+	 * @param frame Etat des particules a dessiner.
+	 * @param walls Murs de la simulation.
+	 * @param small Vrai ssi les particules doivent etre dessinees en petit.
+	 */
+	public void render (Graphics2D graphics, int width, int height, WorldMatrix view,
+			ParticleFrame frame, Polygon[] walls, boolean small) {
+		// dessiner l'arriere-plan
+		graphics.setColor (Color.BLACK);
+		graphics.fillRect (0, 0, width, height);
+		// dessiner le fluide a partir du champ de densite si necessaire
+		if (fieldRendering && !small) {
+			paintField (graphics, view, frame);
+			paintWalls (graphics, width, height, view, walls);
+			return;
+		}
+		// dessiner les particules sur l'image en dehors de l'ecran
+		BufferedImage offscreenImage = getOffscreenImage (width, height);
+		if (!small) {
+			Graphics2D offscreenGraphics = (Graphics2D) offscreenImage.getGraphics ();
+			// pour chaque particule visible
+			int i;
+			for (i = 0; i < frame.size (); i++) {
+				// dessiner cette particule
+				Particle.drawAt (offscreenGraphics, view, frame.getX (i), frame.getY (i),
+						frame.getPressure (i), frame.isHighlighted (i), false, false);
+			}
+			offscreenGraphics.dispose();
+			// tronquer la valeur alpha de chaque pixel a 0 ou a 255
+			thresholdFilter.apply (offscreenImage);
+		}
+		else {
+			paintPoints (offscreenImage, view, frame);
+		}
+		// effectuer le rendu
+		graphics.drawImage (offscreenImage, 0, 0, null);
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		// dessiner le contenant et les murs
+		paintWalls (graphics, width, height, view, walls);
+		// dessiner une bordure noire de 1 pixel
+		graphics.setColor (Color.BLACK);
+		graphics.drawRect (0, 0, width - 1, height - 1);
+	}
+
+	// dessine le contenant et les murs, a partir de l'image des murs
+	private void paintWalls (Graphics2D graphics, int width, int height, WorldMatrix view,
+			Polygon[] walls) {
+		if (wallLayer == null || wallLayer.getWidth () != width
+				|| wallLayer.getHeight () != height || !view.equals (wallLayerView)
+				|| walls != wallLayerWalls) {
+			createWallLayer (width, height, view, walls);
+		}
+		graphics.drawImage (wallLayer, 0, 0, null);
+	}
+
+	// dessine les murs une fois pour toutes dans wallLayer
+	private void createWallLayer (int width, int height, WorldMatrix view, Polygon[] walls) {
+		width = Math.max (1, width);
+		height = Math.max (1, height);
+		if (wallLayer == null || wallLayer.getWidth () != width
+				|| wallLayer.getHeight () != height) {
+			wallLayer = new BufferedImage (width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+		else {
+			int[] pixels = ((DataBufferInt) wallLayer.getRaster ().getDataBuffer ()).getData ();
+			Arrays.fill (pixels, 0);
+		}
+		wallLayerView = view;
+		wallLayerWalls = walls;
+		Graphics2D graphics = wallLayer.createGraphics ();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		graphics.setColor(Color.WHITE);
+		Rectangle2D.Double region = new Rectangle2D.Double (view.getMinimumX (),
+				view.getMinimumY (), view.getWidth (), view.getHeight ());
+		int i;
+		for(i = 0; i < walls.length; i++) {
+			// ne pas dessiner les murs qui sont hors de la region visible
+			if (walls[i].getBounds().intersects(region)) {
+				walls[i].draw(graphics, view);
+			}
+		}
+		graphics.dispose ();
+	}
+
+	// dessine les particules comme de petits points, en lot, sur l'image donnee
+	private void paintPoints (BufferedImage image, WorldMatrix view, ParticleFrame frame) {
+		if (pointRenderer == null) {
+			// une couleur par teinte, plus le blanc pour les particules mises en evidence
+			int[] hues = Particle.getHueRGBTable ();
+			int[] palette = Arrays.copyOf (hues, hues.length + 1);
+			palette[hues.length] = Color.WHITE.getRGB ();
+			pointRenderer = new PointRenderer (palette, POINT_SIZE);
+		}
+		pointRenderer.clear ();
+		// les particules importantes sont dessinees normalement, par-dessus les autres
+		int important = -1;
+		int i;
+		for (i = 0; i < frame.size (); i++) {
+			if (frame.isImportant (i)) {
+				important = i;
+			}
+			else {
+				int colorIndex = frame.isHighlighted (i)
+						? Particle.getHueCount ()
+						: Particle.hueIndexOf (frame.getPressure (i));
+				pointRenderer.add (frame.getX (i), frame.getY (i), colorIndex);
+			}
+		}
+		pointRenderer.draw (image, view);
+		if (important != -1) {
+			Graphics2D graphics = (Graphics2D) image.getGraphics ();
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			Particle.drawAt (graphics, view, frame.getX (important), frame.getY (important),
+					frame.getPressure (important), frame.isHighlighted (important), true, true);
+			graphics.dispose ();
+		}
+	}
+
+	// dessine le fluide en extrayant la surface d'un champ de densite grossier
+	private void paintField (Graphics2D graphics, WorldMatrix view, ParticleFrame frame) {
+		if (fieldRenderer == null) {
+			fieldRenderer = new DensityFieldRenderer (world, FIELD_CELL_SIZE, FIELD_SPLAT_RADIUS,
+					Particle.getHueColors ());
+		}
+		fieldRenderer.begin ();
+		int i;
+		for (i = 0; i < frame.size (); i++) {
+			fieldRenderer.splat (frame.getX (i), frame.getY (i),
+					Particle.hueIndexOf (frame.getPressure (i)));
+		}
+		fieldRenderer.draw (graphics, view);
+	}
+
+	// retourne l'image en dehors de l'ecran, videe, en la recreant si la taille a change
+	private BufferedImage getOffscreenImage (int width, int height) {
+		width = Math.max (1, width);
+		height = Math.max (1, height);
+		if (offscreenBuffer == null || offscreenBuffer.getWidth () != width
+				|| offscreenBuffer.getHeight () != height) {
+			offscreenBuffer = new BufferedImage (width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+		else {
+			int[] pixels = ((DataBufferInt) offscreenBuffer.getRaster ().getDataBuffer ()).getData ();
+			Arrays.fill (pixels, 0);
+		}
+		return offscreenBuffer;
+	}
+
+	/**
+	 * Choisit si le fluide doit etre dessine a partir d'un champ de densite de basse resolution
+	 * plutot qu'avec une image par particule. N'a pas d'effet quand les particules sont dessinees
+	 * en petit.
+	 *
+	 * @param fieldRendering Vrai ssi le fluide doit etre dessine a partir du champ de densite.
+	 */
+	public void setFieldRendering (boolean fieldRendering) {
+		this.fieldRendering = fieldRendering;
+	}
+
+	/**
+	 * Retourne vrai ssi le fluide est dessine a partir d'un champ de densite.
+	 *
+	 * @return Vrai ssi le fluide est dessine a partir du champ de densite.
+	 */
+	public boolean isFieldRendering () {
+		return fieldRendering;
+	}
+}
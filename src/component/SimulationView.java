@@ -1,24 +1,25 @@
 package component;
 
-import geometry.Polygon;
-import geometry.Vector;
+import graphics.Camera;
 import graphics.WorldMatrix;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Point;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Point2D;
-import java.awt.image.BufferedImage;
+import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
 
 import javax.swing.JPanel;
 
 import simulation.Particle;
+import simulation.ParticleFrame;
 import simulation.Simulation;
 
 /**
@@ -34,11 +35,18 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 	// delai, en millisecondes, entre deux etapes de la simulation
 	private final int DELAY = 30;
 	
-	// les pixels avec une valeur alpha plus grande que ceci seront dessines
-	private final int ALPHA_THRESHOLD = 50;
+	// delai, en millisecondes, entre deux images dessinees
+	private final int FRAME_DELAY = 15;
 	
-	// valeur minimale du vecteur vitesse a dessiner
-	private final double MINIMUM_VELOCITY = 20;
+	// nombre maximal d'etapes de la simulation rattrapees d'un coup quand elle prend du retard
+	private final int MAXIMUM_STEPS_PER_FRAME = 5;
+	
+	// marge autour de la region visible pour ne pas retirer les particules dont l'image depasse
+	// dans le composant, en pixels
+	private final double CULLING_MARGIN = 24;
+	
+	// facteur de zoom pour chaque cran de la roulette de la souris
+	private final double ZOOM_STEP = 1.1;
 	
 	// processus utilise pour la simulation et l'animation
 	private Thread thread;
@@ -53,6 +61,34 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 	// objet representant le monde et ses dimensions
 	private WorldMatrix world = null;
 	
+	// camera qui permet de zoomer et de se deplacer dans le monde
+	private Camera camera = new Camera ();
+	
+	// matrice monde-vers-composant utilisee pour l'image en cours
+	private transient WorldMatrix view = null;
+	
+	// copies de l'etat des particules visibles, avec leurs positions interpolees: celle qui est
+	// dessinee, la plus recente publiee par le processus de la simulation, et celle qu'il remplit.
+	// Seules les deux dernieres sont echangees, sous frameLock: le dessin n'attend jamais que la
+	// simulation finisse ses etapes.
+	private transient Snapshot paintedSnapshot = new Snapshot ();
+	private transient Snapshot readySnapshot = new Snapshot ();
+	private transient Snapshot backSnapshot = new Snapshot ();
+	private transient boolean snapshotReady = false;
+	private final transient Object frameLock = new Object ();
+	
+	// region du monde a copier, avec une marge, publiee par le dessin pour la simulation
+	private volatile Rectangle2D.Double cullingRegion = null;
+	
+	// fraction de l'etape de la simulation ecoulee depuis la derniere mise a jour, entre 0 et 1
+	private volatile double interpolation = 1;
+	
+	// dessine les images de la simulation
+	private transient SimulationRenderer renderer;
+	
+	// vrai une fois la premiere image dessinee et le temps de demarrage note
+	private boolean firstFrameRecorded = false;
+	
 	/**
 	 * Constructeur principal.
 	 */
@@ -61,12 +97,15 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 		setBackground (Color.BLACK);
 		this.world = world;
 		this.simulation = simulation;
+		this.renderer = new SimulationRenderer (world);
 		// debuter l'animation
 		thread = new Thread (this);
 		thread.start ();
 		// ajouter le support pour les evenements de la souris
-		this.addMouseListener (new StageMouseListener ());
-		this.addMouseMotionListener (new StageMouseListener ());
+		StageMouseListener mouseListener = new StageMouseListener ();
+		this.addMouseListener (mouseListener);
+		this.addMouseMotionListener (mouseListener);
+		this.addMouseWheelListener (mouseListener);
 	}
 	/**
 	 * Dessine les particules a l'ecran.
@@ -74,89 +113,155 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 	public void paintComponent (Graphics g) {
 		// dessiner l'arriere-plan
 		super.paintComponent (g);
-		BufferedImage offscreenImage = null;
-		Graphics2D graphics;
-		// creer une image en dehors de l'ecran si necessaire
-		if (!simulation.isSmall()) {
-			offscreenImage = new BufferedImage (getWidth (), getHeight (),
-					BufferedImage.TYPE_INT_ARGB);
-			graphics = (Graphics2D) offscreenImage.getGraphics ();
+		PaintEvent event = new PaintEvent ();
+		event.begin ();
+		long startTime = System.nanoTime ();
+		Simulation simulation = this.simulation;
+		paintSimulation (g, simulation);
+		// ajouter le temps de dessin aux mesures de la simulation, qui ne sont prises que si
+		// quelqu'un les ecoute
+		if (simulation.hasStatsListeners ()) {
+			simulation.getStats ().recordRenderTime (System.nanoTime () - startTime);
 		}
-		else{
-			graphics = (Graphics2D) g;
-			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-					RenderingHints.VALUE_ANTIALIAS_ON);
+		if (!firstFrameRecorded) {
+			firstFrameRecorded = true;
+			simulation.getStats ().recordFirstFrame ();
 		}
-		// pour chaque particule
-		Iterator<Particle> iterator = simulation.getParticleIterator ();
-		while (iterator.hasNext ()) {
-			// dessiner cette particule
-			Particle particle = iterator.next ();
-			particle.draw (graphics, world);
+		event.end ();
+		if (event.shouldCommit ()) {
+			event.width = getWidth ();
+			event.height = getHeight ();
+			event.particleCount = paintedSnapshot.frame.size ();
+			event.step = paintedSnapshot.step;
+			event.commit ();
 		}
-		// pour chaque pixel de l'image
-		int x, y;
-		if(!simulation.isSmall()) {
-			for (y = 0; y < getHeight (); y++) {
-				for (x = 0; x < getWidth (); x++) {
-					// calculer la valeur alpha du pixel
-					int alpha = new Color (offscreenImage.getRGB (x, y), true).getAlpha ();
-					// tronquer a 0 ou a 255 si la valeur d'alpha depasse ALPHA_THRESHOLD
-					alpha = alpha >= ALPHA_THRESHOLD ? 255 : 0;
-					// creer la couleur du pixel
-					Color fullAlpha = new Color (offscreenImage.getRGB (x, y));
-					Color pixel = new Color (fullAlpha.getRed (), fullAlpha.getGreen (),
-							fullAlpha.getBlue (), alpha);
-					// affecter la couleur du pixel
-					offscreenImage.setRGB (x, y, pixel.getRGB ());
-				}
+	}
+	
+	// dessine les particules, les murs et la bordure
+	private void paintSimulation (Graphics g, Simulation simulation) {
+		view = camera.getView (getWidth (), getHeight ());
+		Rectangle2D.Double region = getCullingRegion ();
+		cullingRegion = region;
+		// prendre la copie la plus recente publiee par la simulation
+		synchronized (frameLock) {
+			if (snapshotReady) {
+				Snapshot snapshot = paintedSnapshot;
+				paintedSnapshot = readySnapshot;
+				readySnapshot = snapshot;
+				snapshotReady = false;
 			}
 		}
-    graphics.dispose();
-		// effectuer le rendu sur l'ecran
-		graphics = (Graphics2D) g;
-		graphics.drawImage (offscreenImage, 0, 0, null);
-		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
-		// dessiner le contenant et les murs
-		graphics.setColor(Color.WHITE);
-		Polygon[] walls = simulation.getWalls();
-		int i;
-		for(i = 0; i < walls.length; i++) {
-			walls[i].draw(graphics, world);
+		// si la camera a bouge hors de la region copiee, ou si la simulation a change, copier
+		// directement; cela n'arrive qu'au debut et pendant un deplacement de la camera
+		Snapshot snapshot = paintedSnapshot;
+		if (snapshot.simulation != simulation || !snapshot.region.contains (region)) {
+			synchronized (simulation) {
+				captureFrame (snapshot, simulation, region, interpolation);
+			}
 		}
-		// dessiner le vecteur vitesse si necessaire
-		if(simulation.isSmall()) {
-			Particle particle = simulation.getParticleIterator().next();
-			graphics.translate(particle.getX(), - particle.getY());
-			Vector velocity = particle.getVelocity();
-			velocity = velocity.normalize(Math.max(velocity.getMagnitude(), MINIMUM_VELOCITY));
-			graphics.setStroke(new BasicStroke(2));
-			graphics.setColor(Color.RED);
-			graphics.translate(- particle.getX(), particle.getY());
+		renderer.render ((Graphics2D) g, getWidth (), getHeight (), view, snapshot.frame, 
+				simulation.getWalls (), simulation.isSmall ());
+	}
+	
+	// retourne la region visible, avec une marge pour les particules dont l'image depasse dans le
+	// composant et pour le champ de densite
+	private Rectangle2D.Double getCullingRegion () {
+		Rectangle2D.Double region = camera.getVisibleRegion (getWidth (), getHeight ());
+		double margin = Math.max (CULLING_MARGIN / camera.getZoom (), 
+				SimulationRenderer.FIELD_SPLAT_RADIUS);
+		region.setRect (region.getX () - margin, region.getY () - margin,
+				region.getWidth () + 2 * margin, region.getHeight () + 2 * margin);
+		return region;
+	}
+	
+	// copie dans une copie de l'etat l'etat des particules qui sont possiblement visibles, en
+	// utilisant la grille de la simulation pour ne pas parcourir les autres; la simulation doit
+	// etre verrouillee
+	private void captureFrame (Snapshot snapshot, Simulation simulation, 
+			Rectangle2D.Double region, double interpolation) {
+		ArrayList<Particle> visibleParticles = snapshot.particles;
+		visibleParticles.clear ();
+		WorldMatrix world = simulation.getWorld ();
+		if (region.contains (world.getMinimumX () - simulation.getRadius (), 
+				world.getMinimumY () - simulation.getRadius (), 
+				world.getWidth () + 2 * simulation.getRadius (),
+				world.getHeight () + 2 * simulation.getRadius ())) {
+			// tout le monde est visible: garder toutes les particules, dans leur ordre
+			Iterator<Particle> iterator = simulation.getParticleIterator ();
+			while (iterator.hasNext ()) {
+				visibleParticles.add (iterator.next ());
+			}
+		}
+		else {
+			simulation.collectParticles (region, visibleParticles);
 		}
-		// dessiner une bordure noire de 1 pixel
-		graphics.setColor (Color.BLACK);
-		graphics.drawRect (0, 0, getWidth () - 1, getHeight () - 1);
+		// interpoler entre les deux dernieres etapes pendant que la simulation est arretee
+		snapshot.frame.clear ();
+		snapshot.frame.addAll (visibleParticles, interpolation);
+		snapshot.step = simulation.getStepCount ();
+		snapshot.region = region;
+		snapshot.simulation = simulation;
+		visibleParticles.clear ();
 	}
 	
 	/**
-	 * Lance la procedure d'animation.
+	 * Lance la procedure d'animation. La simulation avance par etapes de duree fixe (DELAY), alors
+	 * que l'affichage est mis a jour plus souvent (FRAME_DELAY) en interpolant les positions entre
+	 * les deux dernieres etapes.
 	 */
 	public void run () {
+		// duree d'une etape de la simulation, en secondes
+		double step = DELAY / 1000.0;
+		// temps ecoule qui n'a pas encore ete simule, en secondes
+		double accumulator = 0;
+		long previousTime = System.nanoTime ();
 		// boucle infinie
 		while (true) {
-			// attendre DELAY millisecondes
+			// attendre FRAME_DELAY millisecondes
 			try {
-				Thread.sleep (DELAY);
+				Thread.sleep (FRAME_DELAY);
 			}
 			catch (InterruptedException error) {
 				return;
 			}
-			// mettre a jour la simulation
-			simulation.update (DELAY / 1000.0, mousePosition, previousMousePosition);
-			// mettre a jour la derniere position de la souris
-			previousMousePosition = mousePosition;
+			long time = System.nanoTime ();
+			accumulator += (time - previousTime) / 1e9;
+			previousTime = time;
+			// ne pas essayer de rattraper indefiniment une simulation trop lente; les etapes
+			// abandonnees sont comptees dans les mesures de la simulation
+			int droppedSteps = 0;
+			if (accumulator > MAXIMUM_STEPS_PER_FRAME * step) {
+				droppedSteps = (int) ((accumulator - MAXIMUM_STEPS_PER_FRAME * step) / step);
+				accumulator = MAXIMUM_STEPS_PER_FRAME * step;
+			}
+			// mettre a jour la simulation, en empechant le dessin de lire la grille ou les
+			// positions en meme temps
+			Simulation simulation = this.simulation;
+			synchronized (simulation) {
+				simulation.getStats ().addDroppedSteps (droppedSteps);
+				while (accumulator >= step) {
+					simulation.update (step, mousePosition, previousMousePosition);
+					// mettre a jour la derniere position de la souris
+					previousMousePosition = mousePosition;
+					accumulator -= step;
+				}
+				interpolation = accumulator / step;
+				// copier les particules visibles pendant que la simulation est arretee, pour que
+				// le dessin n'ait pas a la verrouiller
+				Rectangle2D.Double region = cullingRegion;
+				if (region != null) {
+					captureFrame (backSnapshot, simulation, region, interpolation);
+				}
+			}
+			// publier la copie
+			if (backSnapshot.simulation == simulation) {
+				synchronized (frameLock) {
+					Snapshot snapshot = readySnapshot;
+					readySnapshot = backSnapshot;
+					backSnapshot = snapshot;
+					snapshotReady = true;
+				}
+			}
 			// mettre a jour la zone de dessin
 			repaint ();
 		}
@@ -164,19 +269,65 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 	
 	/**
 	 * Change la simulation attachee a ce composant. L'animation continuera a rouler, mais pour
-	 * la nouvelle simulation.
+	 * la nouvelle simulation. Si son monde est different, le rendu l'utilise et la camera est
+	 * remise a ce monde, pour que l'image et la souris correspondent a ses coordonnees.
 	 * 
 	 * @param simulation Nouvelle simulation a utiliser.
 	 */
 	public void setSimulation(Simulation simulation) {
+		WorldMatrix newWorld = simulation.getWorld();
+		if (!sameBounds(world, newWorld)) {
+			world = newWorld;
+			renderer.setWorld(newWorld);
+			camera.setHome(newWorld);
+		}
 		this.simulation = simulation;
 		repaint();
 	}
 	
+	// retourne vrai si deux mondes ont les memes limites
+	private static boolean sameBounds(WorldMatrix first, WorldMatrix second) {
+		return first.getMinimumX() == second.getMinimumX()
+				&& first.getMinimumY() == second.getMinimumY()
+				&& first.getWidth() == second.getWidth()
+				&& first.getHeight() == second.getHeight();
+	}
+	
+	/**
+	 * Choisit si le fluide doit etre dessine a partir d'un champ de densite de basse resolution
+	 * plutot qu'avec une image par particule. N'a pas d'effet quand les particules sont dessinees
+	 * en petit.
+	 * 
+	 * @param fieldRendering Vrai ssi le fluide doit etre dessine a partir du champ de densite.
+	 */
+	public void setFieldRendering(boolean fieldRendering) {
+		renderer.setFieldRendering(fieldRendering);
+		repaint();
+	}
+	
+	/**
+	 * Retourne la camera utilisee pour dessiner la simulation.
+	 * 
+	 * @return Camera de ce composant.
+	 */
+	public Camera getCamera() {
+		return camera;
+	}
+	
+	// retourne la position dans le monde d'un evenement de la souris
+	private Point2D.Double toWorld (MouseEvent event) {
+		Point2D.Double position = new Point2D.Double ();
+		position.setLocation (event.getPoint ());
+		return camera.getView (getWidth (), getHeight ()).detransform (position);
+	}
+	
 	/*
 	 * Ecouteur de souris pour la zone de dessin principale.
 	 */
 	private class StageMouseListener extends MouseAdapter {
+		// derniere position de la souris pendant que la camera est deplacee, ou null
+		private Point panOrigin = null;
+		
 		/**
 		 * Evenement lance quand la souris est enfoncee. Met a jour mousePosition si le bouton 
 		 * gauche est le bouton utilise.
@@ -184,9 +335,16 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 		public void mousePressed (MouseEvent event) {
 			// si bouton gauche
 			if (event.getButton () == 1) {
-				mousePosition = new Point2D.Double ();
-				mousePosition.setLocation (event.getPoint ());
-				mousePosition = world.detransform (mousePosition);
+				mousePosition = toWorld (event);
+			}
+			// si bouton droit, commencer a deplacer la camera
+			else if (event.getButton () == 3) {
+				panOrigin = event.getPoint ();
+			}
+			// si bouton du milieu, remettre la camera a sa position initiale
+			else if (event.getButton () == 2) {
+				camera.reset ();
+				repaint ();
 			}
 		}
 		/**
@@ -196,9 +354,13 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 		public void mouseDragged (MouseEvent event) {
 			// si bouton gauche
 			if (mousePosition != null) {
-				mousePosition = new Point2D.Double ();
-				mousePosition.setLocation (event.getPoint ());
-				mousePosition = world.detransform (mousePosition);
+				mousePosition = toWorld (event);
+			}
+			// si bouton droit, deplacer la camera
+			if (panOrigin != null) {
+				camera.pan (event.getX () - panOrigin.getX (), event.getY () - panOrigin.getY ());
+				panOrigin = event.getPoint ();
+				repaint ();
 			}
 		}
 		/**
@@ -208,6 +370,33 @@ public class SimulationView extends JPanel implements Runnable, Serializable {
 		 */
 		public void mouseReleased (MouseEvent event) {
 			mousePosition = null;
+			panOrigin = null;
 		}
+		/**
+		 * Evenement lance quand la roulette de la souris est tournee. Zoome autour du curseur.
+		 */
+		public void mouseWheelMoved (MouseWheelEvent event) {
+			double factor = Math.pow (ZOOM_STEP, - event.getPreciseWheelRotation ());
+			camera.zoomAt (factor, event.getX (), event.getY (), getWidth (), getHeight ());
+			repaint ();
+		}
+	}
+	
+	// copie de l'etat des particules visibles a une etape d'une simulation
+	private static class Snapshot {
+		// particules qui sont possiblement visibles, utilisees pendant la copie
+		private final ArrayList<Particle> particles = new ArrayList<Particle> ();
+		
+		// particules copiees, avec leurs positions interpolees
+		private final ParticleFrame frame = new ParticleFrame ();
+		
+		// etape de la simulation copiee
+		private long step = 0;
+		
+		// region du monde copiee, avec sa marge
+		private Rectangle2D.Double region = new Rectangle2D.Double ();
+		
+		// simulation copiee, ou null
+		private Simulation simulation = null;
 	}
 }
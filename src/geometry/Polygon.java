@@ -7,6 +7,7 @@ import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * Classe permettant de faire des calculs de distance relies a un polygone et de le dessiner sur
@@ -19,6 +20,9 @@ public class Polygon implements Drawable {
 	// tableau contenant les segments qui forment le polygone
 	private Segment[] segments;
 	
+	// plus petit rectangle qui contient le polygone
+	private Rectangle2D.Double bounds;
+	
 	/**
 	 * Constructeur principal.
 	 * 
@@ -31,6 +35,35 @@ public class Polygon implements Drawable {
 			setSegment(i, points[i], points [i + 1]);
 		}
 		setSegment(points.length - 1, points[points.length - 1], points[0]);
+		bounds = new Rectangle2D.Double(points[0].getX(), points[0].getY(), 0, 0);
+		for (i = 1; i < points.length; i++) {
+			bounds.add(points[i]);
+		}
+	}
+	
+	/**
+	 * Retourne le plus petit rectangle qui contient le polygone. Le rectangle retourne est une
+	 * copie.
+	 * 
+	 * @return Rectangle qui contient le polygone.
+	 */
+	public Rectangle2D.Double getBounds() {
+		return (Rectangle2D.Double) bounds.clone();
+	}
+	
+	/**
+	 * Retourne les points qui constituent le polygone, en sens horaire. Les points retournes sont
+	 * des copies.
+	 * 
+	 * @return Points du polygone.
+	 */
+	public Point2D.Double[] getPoints() {
+		Point2D.Double[] points = new Point2D.Double[segments.length];
+		int i;
+		for (i = 0; i < segments.length; i++) {
+			points[i] = new Point2D.Double(segments[i].getX(), segments[i].getY());
+		}
+		return points;
 	}
 	
 	/**
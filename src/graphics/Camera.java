@@ -0,0 +1,137 @@
+package graphics;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Camera qui permet de zoomer et de se deplacer dans le monde. La camera produit la matrice
+ * monde-vers-composant (WorldMatrix) a utiliser pour une taille de composant donnee.
+ *
+ * Avec un zoom de 1 et sans deplacement, un pixel correspond a une unite physique et le coin en
+ * bas a gauche du composant est l'origine du monde, comme avec WorldMatrix.getIdentity(). Si un
+ * monde de depart est donne (setHome()), la camera montre plutot ce monde en entier.
+ */
+public class Camera {
+	// zoom minimal et maximal permis
+	private static final double MINIMUM_ZOOM = 0.05;
+	private static final double MAXIMUM_ZOOM = 50;
+
+	// nombre de pixels par unite physique
+	private double zoom = 1;
+
+	// coin en bas a gauche de la region visible, en unites physiques
+	private double minimumX = 0;
+	private double minimumY = 0;
+
+	// derniere matrice calculee, reutilisee tant que rien ne change
+	private WorldMatrix view = null;
+
+	// monde a montrer en entier a la position initiale, ou null pour l'origine sans zoom
+	private WorldMatrix home = null;
+
+	// vrai si la camera doit etre ajustee au monde de depart des que la taille du composant est
+	// connue
+	private boolean fitPending = false;
+
+	/**
+	 * Retourne la matrice monde-vers-composant pour un composant de la taille donnee.
+	 *
+	 * @param componentWidth Largeur du composant, en pixels.
+	 * @param componentHeight Hauteur du composant, en pixels.
+	 * @return Matrice monde-vers-composant correspondant a la camera.
+	 */
+	public WorldMatrix getView(int componentWidth, int componentHeight) {
+		componentWidth = Math.max(1, componentWidth);
+		componentHeight = Math.max(1, componentHeight);
+		if (fitPending && componentWidth > 1 && componentHeight > 1) {
+			fitPending = false;
+			zoom = Math.max(MINIMUM_ZOOM, Math.min(Math.min(componentWidth / home.getWidth(),
+					componentHeight / home.getHeight()), MAXIMUM_ZOOM));
+			minimumX = home.getMinimumX();
+			minimumY = home.getMinimumY();
+		}
+		if (view == null || view.getMinimumX() != minimumX || view.getMinimumY() != minimumY
+				|| view.getWidth() != componentWidth / zoom
+				|| view.getHeight() != componentHeight / zoom) {
+			view = new WorldMatrix(minimumX, minimumY, componentWidth / zoom,
+					componentHeight / zoom, componentWidth, componentHeight);
+		}
+		return view;
+	}
+
+	/**
+	 * Retourne la region du monde qui est visible dans un composant de la taille donnee, en unites
+	 * physiques.
+	 *
+	 * @param componentWidth Largeur du composant, en pixels.
+	 * @param componentHeight Hauteur du composant, en pixels.
+	 * @return Region visible du monde.
+	 */
+	public Rectangle2D.Double getVisibleRegion(int componentWidth, int componentHeight) {
+		WorldMatrix view = getView(componentWidth, componentHeight);
+		return new Rectangle2D.Double(view.getMinimumX(), view.getMinimumY(), view.getWidth(),
+				view.getHeight());
+	}
+
+	/**
+	 * Multiplie le zoom par un facteur en gardant le point donne (en pixels) au meme endroit dans
+	 * le composant.
+	 *
+	 * @param factor Facteur a appliquer au zoom (plus grand que 1 pour rapprocher).
+	 * @param pixelX Position du point fixe en x, en pixels.
+	 * @param pixelY Position du point fixe en y, en pixels.
+	 * @param componentWidth Largeur du composant, en pixels.
+	 * @param componentHeight Hauteur du composant, en pixels.
+	 */
+	public void zoomAt(double factor, double pixelX, double pixelY, int componentWidth,
+			int componentHeight) {
+		// point du monde sous le curseur avant le zoom
+		Point2D.Double fixed = getView(componentWidth, componentHeight)
+				.detransform(new Point2D.Double(pixelX, pixelY));
+		zoom = Math.max(MINIMUM_ZOOM, Math.min(zoom * factor, MAXIMUM_ZOOM));
+		// deplacer la region visible pour que ce point reste sous le curseur
+		minimumX = fixed.getX() - pixelX / zoom;
+		minimumY = fixed.getY() - (Math.max(1, componentHeight) - pixelY) / zoom;
+	}
+
+	/**
+	 * Deplace la camera d'un certain nombre de pixels, comme si on faisait glisser le monde.
+	 *
+	 * @param deltaX Deplacement en x, en pixels.
+	 * @param deltaY Deplacement en y, en pixels (vers le bas).
+	 */
+	public void pan(double deltaX, double deltaY) {
+		minimumX -= deltaX / zoom;
+		minimumY += deltaY / zoom;
+	}
+
+	/**
+	 * Remet la camera a sa position initiale, sans zoom.
+	 */
+	public void reset() {
+		zoom = 1;
+		minimumX = 0;
+		minimumY = 0;
+		fitPending = home != null;
+	}
+
+	/**
+	 * Choisit le monde montre a la position initiale et y remet la camera: le monde est montre en
+	 * entier, a partir de son coin en bas a gauche.
+	 *
+	 * @param home Monde de depart, ou null pour l'origine sans zoom.
+	 */
+	public void setHome(WorldMatrix home) {
+		this.home = home;
+		reset();
+	}
+
+	/**
+	 * Retourne le zoom, en pixels par unite physique.
+	 *
+	 * @return Zoom de la camera.
+	 */
+	public double getZoom() {
+		return zoom;
+	}
+}
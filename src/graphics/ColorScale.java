@@ -35,8 +35,8 @@ public class ColorScale {
 		Collections.sort(this.pairs);
 	}
 	
-	// retourne les deux couleurs "autour" du point sur l'echelle
-	private Range getRange(double point) {
+	// retourne l'indice de la premiere des deux couleurs "autour" du point sur l'echelle
+	private int getRangeIndex(double point) {
 		// trouver la premiere couleur qui a une valeur plus grande que le point
 		int index = 0;
 		while (index < pairs.size() && pairs.get(index).point <= point) {
@@ -44,9 +44,7 @@ public class ColorScale {
 		}
 		index--;
 		// s'assurer qu'il n'y aura pas d'erreur d'indice
-		index = Math.min(Math.max(index, 0), pairs.size() - 2);
-		// retourner les deux couleurs
-		return new Range(pairs.get(index), pairs.get(index + 1));
+		return Math.min(Math.max(index, 0), pairs.size() - 2);
 	}
 
 	/**
@@ -73,13 +71,15 @@ public class ColorScale {
 			throw new IllegalArgumentException("point doit etre entre 0 et 1.");
 		}
 		// couleurs du degrade
-		Range range = getRange(point);
-		Color startColor = range.start.color;
-		Color endColor = range.end.color;
+		int index = getRangeIndex(point);
+		Pair start = pairs.get(index);
+		Pair end = pairs.get(index + 1);
+		Color startColor = start.color;
+		Color endColor = end.color;
 		// deplacer le point pour qu'il soit "entre" startColor et endColor
-		point = point - range.start.point;
+		point = point - start.point;
 		// difference de la position entre les deux couleurs sur l'echelle
-		double rangeSize = range.end.point - range.start.point;
+		double rangeSize = end.point - start.point;
 		// difference de couleur entre les deux couleurs
 		int deltaRed = endColor.getRed() - startColor.getRed();
 		int deltaGreen = endColor.getGreen() - startColor.getGreen();
@@ -92,21 +92,25 @@ public class ColorScale {
 		return new Color(red, green, blue, alpha);
 	}
 	
-	// Classe qui decrit deux paires de couleur qui sont "autour" d'une certaine valeur sur 
-	//l'echelle.
-	private static class Range {
-		// couleur du debut
-		private Pair start;
-		
-		// couleur de la fin
-		private Pair end;
-		
-		// constructeur principal
-		private Range (Pair start, Pair end) {
-			// lancer une exception si la position n'est pas sur l'echelle
-			this.start = start;
-			this.end = end;
+	/**
+	 * Compile l'echelle en une table de couleurs ARGB, pour les cas ou on a besoin de beaucoup de
+	 * couleurs rapidement. L'element i de la table est la couleur au point i / resolution sur
+	 * l'echelle.
+	 * 
+	 * @param resolution Nombre de couleurs dans la table.
+	 * @param alpha Valeur d'alpha voulue pour les couleurs.
+	 * @return Table de resolution couleurs ARGB.
+	 */
+	public int[] toLookupTable(int resolution, int alpha) {
+		if (resolution < 1) {
+			throw new IllegalArgumentException("resolution doit etre positive.");
+		}
+		int[] table = new int[resolution];
+		int i;
+		for (i = 0; i < resolution; i++) {
+			table[i] = getColorWithAlpha((double) i / resolution, alpha).getRGB();
 		}
+		return table;
 	}
 	
 	/**
@@ -0,0 +1,192 @@
+package graphics;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Dessine le fluide a partir d'un champ de densite grossier plutot qu'avec une image par particule.
+ *
+ * Chaque particule est "etalee" sur les noeuds d'une grille de basse resolution. La surface du
+ * fluide est ensuite extraite avec l'algorithme des carres marchants (marching squares), puis
+ * remplie avec la couleur moyenne de chaque cellule. Le cout du dessin depend donc de la resolution
+ * de la grille, et non du nombre de particules.
+ *
+ * Utilisation: begin(), puis splat() pour chaque particule, puis draw().
+ */
+public class DensityFieldRenderer {
+	// valeur du champ a partir de laquelle un point fait partie du fluide
+	private static final double ISO_LEVEL = 0.6;
+
+	// dimensions du monde couvert par la grille
+	private WorldMatrix bounds;
+
+	// taille d'une cellule de la grille, en unites physiques
+	private double cellSize;
+
+	// rayon d'influence d'une particule sur la grille, en unites physiques
+	private double splatRadius;
+
+	// nombre de cellules a l'horizontale et a la verticale (il y a un noeud de plus)
+	private int horizontalCellCount;
+	private int verticalCellCount;
+
+	// valeur du champ de densite a chaque noeud
+	private float[] density;
+
+	// somme ponderee de l'indice de couleur des particules a chaque noeud
+	private float[] hue;
+
+	// couleurs disponibles, par indice
+	private Color[] palette;
+
+	// contours a remplir, un par couleur, reutilises d'une image a l'autre
+	private Path2D.Float[] paths;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param world Dimensions du monde.
+	 * @param cellSize Taille d'une cellule de la grille, en unites physiques.
+	 * @param splatRadius Rayon d'influence d'une particule, en unites physiques.
+	 * @param palette Couleurs a utiliser; splat() recoit un indice dans ce tableau.
+	 */
+	public DensityFieldRenderer(WorldMatrix world, double cellSize, double splatRadius,
+			Color[] palette) {
+		this.bounds = world;
+		this.cellSize = cellSize;
+		this.splatRadius = splatRadius;
+		this.palette = palette;
+		horizontalCellCount = (int) Math.ceil(world.getWidth() / cellSize);
+		verticalCellCount = (int) Math.ceil(world.getHeight() / cellSize);
+		int nodeCount = (horizontalCellCount + 1) * (verticalCellCount + 1);
+		density = new float[nodeCount];
+		hue = new float[nodeCount];
+		paths = new Path2D.Float[palette.length];
+		int i;
+		for (i = 0; i < paths.length; i++) {
+			paths[i] = new Path2D.Float();
+		}
+	}
+
+	/**
+	 * Vide le champ de densite avant d'y etaler les particules d'une nouvelle image.
+	 */
+	public void begin() {
+		Arrays.fill(density, 0);
+		Arrays.fill(hue, 0);
+	}
+
+	/**
+	 * Etale une particule sur les noeuds de la grille qui sont dans son rayon d'influence.
+	 *
+	 * @param x Position de la particule en x, en unites physiques.
+	 * @param y Position de la particule en y, en unites physiques.
+	 * @param hueIndex Indice de la couleur de la particule dans la palette.
+	 */
+	public void splat(double x, double y, int hueIndex) {
+		// position relative au coin de la grille, en cellules
+		double gridX = (x - bounds.getMinimumX()) / cellSize;
+		double gridY = (y - bounds.getMinimumY()) / cellSize;
+		double radius = splatRadius / cellSize;
+		int minimumI = Math.max(0, (int) Math.ceil(gridX - radius));
+		int maximumI = Math.min(horizontalCellCount, (int) Math.floor(gridX + radius));
+		int minimumJ = Math.max(0, (int) Math.ceil(gridY - radius));
+		int maximumJ = Math.min(verticalCellCount, (int) Math.floor(gridY + radius));
+		double inverseRadiusSquared = 1 / (radius * radius);
+		int i, j;
+		for (j = minimumJ; j <= maximumJ; j++) {
+			double dy = j - gridY;
+			int row = j * (horizontalCellCount + 1);
+			for (i = minimumI; i <= maximumI; i++) {
+				double dx = i - gridX;
+				double q = 1 - (dx * dx + dy * dy) * inverseRadiusSquared;
+				if (q > 0) {
+					// noyau lisse qui s'annule au bord du rayon d'influence
+					float weight = (float) (q * q);
+					density[row + i] += weight;
+					hue[row + i] += weight * hueIndex;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Extrait la surface du fluide et la dessine sur l'objet Graphics2D.
+	 *
+	 * @param graphics Objet Graphics2D sur lequel dessiner.
+	 * @param world Matrice de conversion monde-vers-composant.
+	 */
+	public void draw(Graphics2D graphics, WorldMatrix world) {
+		int i;
+		for (i = 0; i < paths.length; i++) {
+			paths[i].reset();
+		}
+		// coordonnees des sommets du polygone d'une cellule (au plus 8)
+		float[] polygonX = new float[8];
+		float[] polygonY = new float[8];
+		int stride = horizontalCellCount + 1;
+		float originX = (float) bounds.getMinimumX();
+		float originY = (float) bounds.getMinimumY();
+		float size = (float) cellSize;
+		int x, y;
+		for (y = 0; y < verticalCellCount; y++) {
+			for (x = 0; x < horizontalCellCount; x++) {
+				// noeuds aux coins de la cellule, dans le sens antihoraire
+				int n0 = y * stride + x;
+				int n1 = n0 + 1;
+				int n2 = n1 + stride;
+				int n3 = n0 + stride;
+				if (density[n0] < ISO_LEVEL && density[n1] < ISO_LEVEL
+						&& density[n2] < ISO_LEVEL && density[n3] < ISO_LEVEL) {
+					continue;
+				}
+				int count = 0;
+				int corner;
+				for (corner = 0; corner < 4; corner++) {
+					int node = corner == 0 ? n0 : corner == 1 ? n1 : corner == 2 ? n2 : n3;
+					int next = corner == 0 ? n1 : corner == 1 ? n2 : corner == 2 ? n3 : n0;
+					float cornerX = x + (corner == 1 || corner == 2 ? 1 : 0);
+					float cornerY = y + (corner >= 2 ? 1 : 0);
+					float nextX = x + (corner == 0 || corner == 1 ? 1 : 0);
+					float nextY = y + (corner == 1 || corner == 2 ? 1 : 0);
+					boolean inside = density[node] >= ISO_LEVEL;
+					// ajouter le coin s'il est dans le fluide
+					if (inside) {
+						polygonX[count] = cornerX;
+						polygonY[count] = cornerY;
+						count++;
+					}
+					// ajouter le point ou la surface croise l'arete
+					if (inside != (density[next] >= ISO_LEVEL)) {
+						float t = (float) ((ISO_LEVEL - density[node]) / (density[next] - density[node]));
+						polygonX[count] = cornerX + t * (nextX - cornerX);
+						polygonY[count] = cornerY + t * (nextY - cornerY);
+						count++;
+					}
+				}
+				// couleur moyenne de la cellule
+				float weight = density[n0] + density[n1] + density[n2] + density[n3];
+				float hueSum = hue[n0] + hue[n1] + hue[n2] + hue[n3];
+				int hueIndex = Math.round(hueSum / weight);
+				hueIndex = Math.max(0, Math.min(hueIndex, palette.length - 1));
+				// ajouter le polygone au contour de cette couleur, en unites physiques
+				Path2D.Float path = paths[hueIndex];
+				path.moveTo(originX + polygonX[0] * size, originY + polygonY[0] * size);
+				for (i = 1; i < count; i++) {
+					path.lineTo(originX + polygonX[i] * size, originY + polygonY[i] * size);
+				}
+				path.closePath();
+			}
+		}
+		// remplir les contours, une couleur a la fois
+		for (i = 0; i < paths.length; i++) {
+			if (paths[i].getCurrentPoint() == null) {
+				continue;
+			}
+			graphics.setColor(palette[i]);
+			graphics.fill(world.transform(paths[i]));
+		}
+	}
+}
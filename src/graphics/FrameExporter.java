@@ -0,0 +1,171 @@
+package graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Ecrit une suite d'images dans un dossier, au format PNG (prefixe-000000.png, prefixe-000001.png,
+ * ...). L'encodage et l'ecriture sur le disque sont faits par un nombre fixe de processus, pour que
+ * celui qui produit les images n'attende ni la compression ni le disque.
+ *
+ * Les images sont obtenues avec obtainImage(), dessinees, puis soumises avec submit(); elles sont
+ * reutilisees une fois ecrites. Le nombre d'images en attente est borne: si les processus
+ * d'encodage ont trop de retard, obtainImage() attend qu'une image se libere plutot que de remplir
+ * la memoire.
+ */
+public class FrameExporter {
+	// dossier et prefixe des fichiers
+	private final File directory;
+	private final String prefix;
+
+	// dimensions et type des images
+	private final int width;
+	private final int height;
+	private final int imageType;
+
+	// processus qui encodent les images
+	private final ThreadPoolExecutor executor;
+
+	// images qui peuvent etre reutilisees
+	private final BlockingQueue<BufferedImage> freeImages;
+
+	// nombre d'images creees jusqu'a maintenant, et nombre maximal d'images
+	private int imageCount = 0;
+	private final int maximumImageCount;
+
+	// numero de la prochaine image soumise
+	private int frameNumber = 0;
+
+	// premiere erreur d'ecriture, ou null
+	private final AtomicReference<IOException> error = new AtomicReference<IOException>();
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param directory Dossier dans lequel ecrire les images; il est cree au besoin.
+	 * @param prefix Prefixe du nom des fichiers.
+	 * @param width Largeur des images, en pixels.
+	 * @param height Hauteur des images, en pixels.
+	 * @param threadCount Nombre de processus d'encodage.
+	 * @param queueCapacity Nombre d'images qui peuvent attendre d'etre encodees.
+	 * @throws IOException Si le dossier ne peut pas etre cree.
+	 */
+	public FrameExporter(File directory, String prefix, int width, int height, int threadCount,
+			int queueCapacity) throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("les dimensions doivent etre positives.");
+		}
+		if (threadCount < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("threadCount et queueCapacity doivent etre positifs.");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("impossible de creer le dossier " + directory + ".");
+		}
+		this.directory = directory;
+		this.prefix = prefix;
+		this.width = width;
+		this.height = height;
+		this.imageType = BufferedImage.TYPE_INT_RGB;
+		// une image par processus, une par place dans la file, et une en cours de dessin
+		this.maximumImageCount = threadCount + queueCapacity + 1;
+		this.freeImages = new ArrayBlockingQueue<BufferedImage>(maximumImageCount);
+		// la file des taches a autant de places que d'images, pour qu'il y ait toujours de la place:
+		// une image peut etre liberee juste avant que la tache qui l'a ecrite se termine
+		this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maximumImageCount), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "frame-exporter");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Retourne une image dans laquelle dessiner la prochaine image de la suite. Son contenu est
+	 * celui d'une image precedente: elle doit etre entierement redessinee. Attend qu'une image se
+	 * libere si toutes sont en attente d'encodage.
+	 *
+	 * @return Image de type TYPE_INT_RGB aux dimensions de l'exportateur.
+	 * @throws InterruptedException Si le processus est interrompu pendant l'attente.
+	 */
+	public BufferedImage obtainImage() throws InterruptedException {
+		BufferedImage image = freeImages.poll();
+		if (image != null) {
+			return image;
+		}
+		if (imageCount < maximumImageCount) {
+			imageCount++;
+			return new BufferedImage(width, height, imageType);
+		}
+		return freeImages.take();
+	}
+
+	/**
+	 * Soumet une image obtenue avec obtainImage() pour qu'elle soit ecrite sur le disque. L'image
+	 * ne doit plus etre modifiee par la suite.
+	 *
+	 * @param image Image a ecrire.
+	 * @return Fichier dans lequel l'image sera ecrite.
+	 * @throws IOException Si une image precedente n'a pas pu etre ecrite.
+	 */
+	public File submit(final BufferedImage image) throws IOException {
+		checkError();
+		final File file = new File(directory, String.format("%s-%06d.png", prefix, frameNumber));
+		frameNumber++;
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					if (error.get() == null && !ImageIO.write(image, "png", file)) {
+						throw new IOException("aucun encodeur PNG disponible.");
+					}
+				}
+				catch (IOException exception) {
+					error.compareAndSet(null, exception);
+				}
+				finally {
+					freeImages.offer(image);
+				}
+			}
+		});
+		return file;
+	}
+
+	/**
+	 * Attend que toutes les images soumises soient ecrites, puis arrete les processus d'encodage.
+	 *
+	 * @throws IOException Si une image n'a pas pu etre ecrite.
+	 * @throws InterruptedException Si le processus est interrompu pendant l'attente.
+	 */
+	public void close() throws IOException, InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		checkError();
+	}
+
+	/**
+	 * Retourne le nombre d'images soumises jusqu'a maintenant.
+	 *
+	 * @return Nombre d'images soumises.
+	 */
+	public int getFrameCount() {
+		return frameNumber;
+	}
+
+	// lance la premiere erreur d'ecriture, s'il y en a eu une
+	private void checkError() throws IOException {
+		IOException exception = error.get();
+		if (exception != null) {
+			throw exception;
+		}
+	}
+}
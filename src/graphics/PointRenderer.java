@@ -0,0 +1,141 @@
+package graphics;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Dessine un grand nombre de petits points de couleur directement dans le tableau d'entiers d'une
+ * image, sans creer de forme ni appeler Graphics2D pour chaque point.
+ *
+ * Les points sont accumules avec add(), puis draw() les transforme tous en une seule operation avec
+ * la matrice monde-vers-composant et les ecrit dans l'image, groupes par couleur. Les points
+ * d'indice de couleur plus eleve sont dessines par-dessus les autres. La taille d'un point est
+ * donnee en unites physiques et suit le zoom de la matrice, entre 1 et 8 pixels de cote.
+ */
+public class PointRenderer {
+	// couleurs (ARGB) par indice
+	private int[] palette;
+
+	// cote minimal et maximal d'un point, en pixels
+	private static final int MINIMUM_POINT_PIXELS = 1;
+	private static final int MAXIMUM_POINT_PIXELS = 8;
+
+	// taille d'un point, en unites physiques
+	private double pointSize;
+
+	// positions des points, en unites physiques, sous la forme x0, y0, x1, y1...
+	private double[] positions = new double[0];
+
+	// positions des points, en pixels
+	private double[] transformed = new double[0];
+
+	// indice de couleur de chaque point
+	private int[] colors = new int[0];
+
+	// ordre dans lequel dessiner les points (tri par couleur)
+	private int[] order = new int[0];
+
+	// nombre de points de chaque couleur
+	private int[] colorCounts;
+
+	// nombre de points accumules
+	private int count = 0;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param palette Couleurs (ARGB) disponibles, par indice.
+	 * @param pointSize Cote d'un point, en unites physiques.
+	 */
+	public PointRenderer(int[] palette, double pointSize) {
+		this.palette = palette;
+		this.pointSize = pointSize;
+		this.colorCounts = new int[palette.length + 1];
+	}
+
+	/**
+	 * Retire tous les points accumules.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Ajoute un point a dessiner.
+	 *
+	 * @param x Position en x, en unites physiques.
+	 * @param y Position en y, en unites physiques.
+	 * @param colorIndex Indice de la couleur du point dans la palette.
+	 */
+	public void add(double x, double y, int colorIndex) {
+		if (count == colors.length) {
+			int capacity = Math.max(64, count * 2);
+			positions = Arrays.copyOf(positions, capacity * 2);
+			transformed = new double[capacity * 2];
+			colors = Arrays.copyOf(colors, capacity);
+			order = new int[capacity];
+		}
+		positions[count * 2] = x;
+		positions[count * 2 + 1] = y;
+		colors[count] = colorIndex;
+		count++;
+	}
+
+	/**
+	 * Dessine les points accumules dans une image de type TYPE_INT_ARGB.
+	 *
+	 * @param image Image dans laquelle dessiner.
+	 * @param world Matrice de conversion monde-vers-composant.
+	 */
+	public void draw(BufferedImage image, WorldMatrix world) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("l'image doit etre de type TYPE_INT_ARGB.");
+		}
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		// transformer toutes les positions d'un coup
+		world.transform(positions, 0, transformed, 0, count);
+		int pointWidth = getPixelSize(pointSize * Math.abs(world.getScaleX()));
+		int pointHeight = getPixelSize(pointSize * Math.abs(world.getScaleY()));
+		// trier les points par couleur (tri par denombrement)
+		Arrays.fill(colorCounts, 0);
+		int i;
+		for (i = 0; i < count; i++) {
+			colorCounts[colors[i] + 1]++;
+		}
+		for (i = 1; i < colorCounts.length; i++) {
+			colorCounts[i] += colorCounts[i - 1];
+		}
+		for (i = 0; i < count; i++) {
+			order[colorCounts[colors[i]]++] = i;
+		}
+		// ecrire chaque point dans l'image
+		for (i = 0; i < count; i++) {
+			int point = order[i];
+			int color = palette[colors[point]];
+			// le point s'etend vers le haut a partir de sa position, comme une forme de taille
+			// pointSize qu'on aurait transformee
+			int left = (int) Math.floor(transformed[point * 2]);
+			int top = (int) Math.floor(transformed[point * 2 + 1]) - pointHeight;
+			int right = Math.min(left + pointWidth, width);
+			int bottom = Math.min(top + pointHeight, height);
+			left = Math.max(left, 0);
+			top = Math.max(top, 0);
+			int x, y;
+			for (y = top; y < bottom; y++) {
+				int row = y * width;
+				for (x = left; x < right; x++) {
+					pixels[row + x] = color;
+				}
+			}
+		}
+	}
+
+	// arrondit un cote en pixels et le garde entre les bornes
+	private static int getPixelSize(double size) {
+		return Math.max(MINIMUM_POINT_PIXELS, Math.min(MAXIMUM_POINT_PIXELS,
+				(int) Math.round(size)));
+	}
+}
@@ -2,29 +2,76 @@ package graphics;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import javax.swing.ImageIcon;
-import java.awt.Graphics;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 /**
  * Classe qui permet de charger l'image du fluide et de lui donner une couleur sur une echelle
  * specifiee.
  * 
+ * Les images colorees sont generees au besoin, la premiere fois qu'on demande une teinte. Si un
+ * repertoire de cache est disponible, l'ensemble des images est sauvegarde sur le disque une fois
+ * genere par prepareAll(), et relu tel quel aux prochains lancements. La cle du cache depend du
+ * contenu du fichier de l'image et de l'echelle de couleurs. Aucun repertoire n'est utilise tant
+ * que setCacheDirectory() n'a pas ete appelee.
+ * 
  * @author Nicolas Ouellet-Payeur
  * @version 25 mars 2014
  */
 public class SpriteSet {
+	// identifiant au debut des fichiers du cache
+	private static final int CACHE_MAGIC = 0x53505253;
+	
+	// repertoire ou sauvegarder les images generees, ou null pour ne pas utiliser de cache
+	private static File cacheDirectory = null;
+	
 	// echelle de couleurs utilisees
 	private ColorScale colorScale;
 	
-	// image non coloree
-	private BufferedImage baseSprite;
+	// dimensions de l'image non coloree
+	private int width;
+	private int height;
+	
+	// valeur alpha de chaque pixel de l'image non coloree
+	private int[] baseAlpha;
+	
+	// images colorees, dans un tableau, generees au besoin
+	private AtomicReferenceArray<BufferedImage> sprites;
+	
+	// nombre d'images deja generees
+	private AtomicInteger generatedCount = new AtomicInteger();
+	
+	// pixels de toutes les images, lus dans le cache, ou null si le cache n'a pas ete trouve
+	private int[] cachedPixels;
 	
-	// images colorees, dans un tableau
-	private BufferedImage[] sprites;
+	// fichier du cache pour cet ensemble d'images, ou null
+	private File cacheFile;
+	
+	// couleur (ARGB) de chaque image, par indice
+	private int[] rgbTable;
+	
+	// couleur de chaque image, par indice, pour ne pas creer de Color a chaque appel
+	private Color[] colorTable;
 	
 	/**
 	 * Constructeur principal.
@@ -35,42 +82,260 @@ public class SpriteSet {
 	 */
 	public SpriteSet(ColorScale colorScale, int spriteCount, String spriteFileName) {
 		this.colorScale = colorScale;
-		sprites = new BufferedImage[spriteCount];
-		loadSprites(spriteFileName);
-	}
-	
-  // charge les images colorees dans le tableau et cree l'image de base
-  private void loadSprites(String fileName) {
-    // lire le fichier d'image
-    URL file = getClass().getResource(fileName);
-    ImageIcon icon = new ImageIcon(file);
-    baseSprite = new BufferedImage(
-        icon.getIconWidth(),
-        icon.getIconHeight(),
-        BufferedImage.TYPE_INT_ARGB);
-    Graphics g = baseSprite.createGraphics();
-    icon.paintIcon(null, g, 0, 0);
-    g.dispose();
-    // generer les images des differentes couleurs
-    int hue;
-    for (hue = 0; hue < sprites.length; hue++) {
-      // image coloree a ajouter a spriteTable
-      BufferedImage colored = new BufferedImage (baseSprite.getWidth (), 
-          baseSprite.getHeight (), BufferedImage.TYPE_INT_ARGB);
-      // pour chaque pixel dans la copie de l'image
-      int x, y;
-      for (y = 0; y < baseSprite.getHeight (); y++) {
-        for (x = 0; x < baseSprite.getWidth (); x++) {
-          // changer la couleur, mais pas la composante alpha
-          int alpha = new Color (baseSprite.getRGB (x, y), true).getAlpha ();
-          // affecter la couleur
-          colored.setRGB (x, y, colorOfSpriteWithAlpha (hue, alpha).getRGB ());
-        }
-      }
-      // mettre l'image coloree dans spriteTable
-      sprites[hue] = colored;
-    }
-  }
+		sprites = new AtomicReferenceArray<BufferedImage>(spriteCount);
+		rgbTable = colorScale.toLookupTable(spriteCount, 255);
+		colorTable = new Color[spriteCount];
+		int i;
+		for (i = 0; i < spriteCount; i++) {
+			colorTable[i] = new Color(rgbTable[i], true);
+		}
+		loadBaseSprite(spriteFileName);
+	}
+	
+	/**
+	 * Choisit le repertoire ou sauvegarder les images generees. Les ensembles d'images deja crees
+	 * ne sont pas affectes.
+	 * 
+	 * @param directory Repertoire du cache, ou null pour ne pas utiliser de cache.
+	 */
+	public static void setCacheDirectory(File directory) {
+		cacheDirectory = directory;
+	}
+	
+	/**
+	 * Retourne le repertoire du cache par defaut, dans le repertoire temporaire du systeme.
+	 * 
+	 * @return Repertoire du cache, ou null s'il n'est pas accessible (applet).
+	 */
+	public static File getDefaultCacheDirectory() {
+		try {
+			return new File(System.getProperty("java.io.tmpdir"), "fluid-simulator");
+		}
+		catch (SecurityException error) {
+			return null;
+		}
+	}
+	
+	// lit l'image de base et en extrait la valeur alpha de chaque pixel
+	private void loadBaseSprite(String fileName) {
+		byte[] bytes;
+		BufferedImage image;
+		try {
+			bytes = readResource(fileName);
+			// lire en memoire seulement, sans le fichier temporaire qu'ImageIO utilise par defaut
+			image = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes)));
+		}
+		catch (IOException error) {
+			throw new IllegalArgumentException("impossible de lire l'image " + fileName, error);
+		}
+		width = image.getWidth();
+		height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		baseAlpha = new int[pixels.length];
+		int i;
+		for (i = 0; i < pixels.length; i++) {
+			baseAlpha[i] = pixels[i] >>> 24;
+		}
+		// chercher les images deja generees dans le cache
+		if (cacheDirectory != null) {
+			cacheFile = new File(cacheDirectory, "sprites-" + cacheKey(bytes) + ".bin");
+			cachedPixels = readCache(cacheFile);
+		}
+	}
+	
+	// lit au complet une ressource du classpath
+	private byte[] readResource(String fileName) throws IOException {
+		InputStream input = getClass().getResourceAsStream(fileName);
+		if (input == null) {
+			throw new IOException("ressource introuvable");
+		}
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	// retourne la cle du cache: une empreinte du fichier de l'image et des couleurs de l'echelle
+	private String cacheKey(byte[] spriteBytes) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(spriteBytes);
+			ByteBuffer colors = ByteBuffer.allocate(rgbTable.length * 4);
+			colors.asIntBuffer().put(rgbTable);
+			digest.update(colors);
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException error) {
+			throw new IllegalStateException(error);
+		}
+	}
+	
+	// lit les pixels de toutes les images dans le cache, ou retourne null si c'est impossible
+	private int[] readCache(File file) {
+		try {
+			if (!file.isFile()) {
+				return null;
+			}
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = input.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				}
+				buffer.flip();
+				if (buffer.remaining() < 16 || buffer.getInt() != CACHE_MAGIC
+						|| buffer.getInt() != width || buffer.getInt() != height
+						|| buffer.getInt() != sprites.length()) {
+					return null;
+				}
+				IntBuffer ints = buffer.asIntBuffer();
+				if (ints.remaining() != width * height * sprites.length()) {
+					return null;
+				}
+				int[] pixels = new int[ints.remaining()];
+				ints.get(pixels);
+				return pixels;
+			}
+			finally {
+				input.close();
+			}
+		}
+		catch (IOException error) {
+			return null;
+		}
+		catch (SecurityException error) {
+			return null;
+		}
+	}
+	
+	// sauvegarde les pixels de toutes les images dans le cache; les erreurs sont ignorees
+	private void writeCache() {
+		File directory = cacheFile.getParentFile();
+		File temporary = new File(directory, cacheFile.getName() + ".tmp");
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				return;
+			}
+			int spriteSize = width * height;
+			ByteBuffer buffer = ByteBuffer.allocate(16 + spriteSize * sprites.length() * 4);
+			buffer.putInt(CACHE_MAGIC).putInt(width).putInt(height).putInt(sprites.length());
+			IntBuffer ints = buffer.asIntBuffer();
+			int i;
+			for (i = 0; i < sprites.length(); i++) {
+				ints.put(pixelsOf(sprites.get(i)));
+			}
+			RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+			try {
+				FileChannel channel = output.getChannel();
+				channel.truncate(0);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			finally {
+				output.close();
+			}
+			// remplacer le fichier d'un coup pour ne jamais laisser un cache a moitie ecrit
+			if (!temporary.renameTo(cacheFile)) {
+				temporary.delete();
+			}
+		}
+		catch (IOException error) {
+			temporary.delete();
+		}
+		catch (SecurityException error) {
+		}
+	}
+	
+	// retourne le tableau de pixels d'une image de type TYPE_INT_ARGB
+	private static int[] pixelsOf(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+	
+	// genere l'image coloree d'une teinte
+	private BufferedImage createSprite(int hue) {
+		BufferedImage colored = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = pixelsOf(colored);
+		if (cachedPixels != null) {
+			// copier l'image deja generee
+			System.arraycopy(cachedPixels, hue * pixels.length, pixels, 0, pixels.length);
+		}
+		else {
+			// changer la couleur, mais pas la composante alpha
+			int rgb = rgbTable[hue] & 0x00FFFFFF;
+			int i;
+			for (i = 0; i < pixels.length; i++) {
+				pixels[i] = (baseAlpha[i] << 24) | rgb;
+			}
+		}
+		return colored;
+	}
+	
+	/**
+	 * Genere d'avance toutes les images qui ne l'ont pas encore ete, plutot que d'attendre qu'elles
+	 * soient demandees, puis les sauvegarde dans le cache si elles n'y etaient pas. Comme elle
+	 * ecrit sur le disque, elle doit etre appelee en arriere-plan plutot que pendant le dessin.
+	 * 
+	 * @param parallel Vrai pour repartir le travail sur tous les processeurs.
+	 */
+	public void prepareAll(boolean parallel) {
+		if (parallel) {
+			generateAll();
+		}
+		else {
+			int hue;
+			for (hue = 0; hue < sprites.length(); hue++) {
+				getSprite(hue);
+			}
+		}
+		// sauvegarder le tout une fois que la derniere image a ete generee
+		if (generatedCount.get() == sprites.length() && cachedPixels == null
+				&& cacheFile != null) {
+			writeCache();
+		}
+	}
+	
+	// genere toutes les images en repartissant le travail sur tous les processeurs
+	private void generateAll() {
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			int thread;
+			for (thread = 0; thread < threadCount; thread++) {
+				final int first = thread;
+				final int step = threadCount;
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						int hue;
+						for (hue = first; hue < sprites.length(); hue += step) {
+							getSprite(hue);
+						}
+						return null;
+					}
+				});
+			}
+			executor.invokeAll(tasks);
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
 
 	/**
 	 * Retourne l'image a l'indice specifie. 0 est le premier indice, et spriteCount-1 est le 
@@ -80,12 +345,23 @@ public class SpriteSet {
 	 * @return Image coloree a l'indice donne.
 	 */
 	public BufferedImage getSprite(int index) {
-		return sprites[index];
+		BufferedImage sprite = sprites.get(index);
+		if (sprite == null) {
+			sprite = createSprite(index);
+			if (sprites.compareAndSet(index, null, sprite)) {
+				generatedCount.incrementAndGet();
+			}
+			else {
+				// un autre processus l'a generee en meme temps
+				sprite = sprites.get(index);
+			}
+		}
+		return sprite;
 	}
 	
 	// retourne une valeur reelle entre 0 et 1 associee a un indice dans le tableau d'images
 	private double indexToFraction(int index) {
-	  return (double) index / sprites.length;	
+	  return (double) index / sprites.length();	
 	}
 	
 	/**
@@ -95,7 +371,27 @@ public class SpriteSet {
 	 * @return Couleur de l'image donnee.
 	 */
 	public Color colorOfSprite(int index) {
-		return colorOfSpriteWithAlpha(index,255);
+		return colorTable[index];
+	}
+	
+	/**
+	 * Retourne la couleur (ARGB) de l'image a l'indice specifie, sans creer d'objet Color.
+	 * 
+	 * @param index Indice de l'image.
+	 * @return Couleur de l'image donnee, sous forme d'entier ARGB.
+	 */
+	public int rgbOfSprite(int index) {
+		return rgbTable[index];
+	}
+	
+	/**
+	 * Retourne la table des couleurs (ARGB) de toutes les images, par indice. Le tableau retourne
+	 * est une copie.
+	 * 
+	 * @return Couleurs des images, sous forme d'entiers ARGB.
+	 */
+	public int[] getRGBTable() {
+		return rgbTable.clone();
 	}
 	
 	/**
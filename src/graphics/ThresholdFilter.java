@@ -0,0 +1,127 @@
+package graphics;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Filtre qui tronque la composante alpha de chaque pixel d'une image: les pixels dont l'alpha
+ * atteint le seuil deviennent opaques, les autres deviennent completement transparents. C'est ce
+ * qui donne l'apparence "metaball" au fluide.
+ *
+ * Le filtre travaille directement sur le tableau d'entiers de l'image (TYPE_INT_ARGB) et divise
+ * l'image en bandes horizontales traitees en parallele.
+ */
+public class ThresholdFilter {
+	// nombre minimal de lignes dans une bande; en dessous, le cout des processus n'en vaut pas la
+	// peine
+	private static final int MINIMUM_BAND_HEIGHT = 32;
+
+	// processus partages par tous les filtres
+	private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService executor = null;
+
+	// valeur d'alpha a partir de laquelle un pixel devient opaque
+	private final int threshold;
+
+	// taches reutilisees d'une image a l'autre, une par bande
+	private final List<Band> bands;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param threshold Les pixels avec un alpha plus grand ou egal a ceci deviennent opaques.
+	 */
+	public ThresholdFilter(int threshold) {
+		if (threshold < 1 || threshold > 255) {
+			throw new IllegalArgumentException("threshold doit etre entre 1 et 255.");
+		}
+		this.threshold = threshold;
+		this.bands = new ArrayList<Band>();
+		int i;
+		for (i = 0; i < THREAD_COUNT; i++) {
+			bands.add(new Band());
+		}
+	}
+
+	/**
+	 * Applique le seuil sur l'image donnee, qui doit etre de type TYPE_INT_ARGB. L'image est
+	 * modifiee sur place.
+	 *
+	 * @param image Image a filtrer.
+	 */
+	public void apply(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("l'image doit etre de type TYPE_INT_ARGB.");
+		}
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		// nombre de bandes a utiliser pour cette image
+		int bandCount = Math.max(1, Math.min(THREAD_COUNT, height / MINIMUM_BAND_HEIGHT));
+		if (bandCount == 1) {
+			threshold(pixels, 0, width * height);
+			return;
+		}
+		int rowsPerBand = (height + bandCount - 1) / bandCount;
+		int i;
+		for (i = 0; i < bandCount; i++) {
+			Band band = bands.get(i);
+			band.pixels = pixels;
+			band.start = Math.min(i * rowsPerBand, height) * width;
+			band.end = Math.min((i + 1) * rowsPerBand, height) * width;
+		}
+		try {
+			getExecutor().invokeAll(bands.subList(0, bandCount));
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+		}
+		// ne pas garder de reference vers l'image
+		for (i = 0; i < bandCount; i++) {
+			bands.get(i).pixels = null;
+		}
+	}
+
+	// applique le seuil sur les pixels [start, end[ du tableau
+	private void threshold(int[] pixels, int start, int end) {
+		int i;
+		for (i = start; i < end; i++) {
+			int pixel = pixels[i];
+			// -1 si alpha >= threshold, 0 sinon
+			int mask = (threshold - 1 - (pixel >>> 24)) >> 31;
+			pixels[i] = (pixel & 0x00FFFFFF) | (mask & 0xFF000000);
+		}
+	}
+
+	// retourne les processus partages, en les creant au besoin
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "threshold-filter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	// tache qui applique le seuil sur une bande de l'image
+	private class Band implements Callable<Void> {
+		private int[] pixels;
+		private int start;
+		private int end;
+
+		public Void call() {
+			threshold(pixels, start, end);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package listeners;
+
+import java.awt.geom.Point2D;
+import java.util.EventListener;
+
+import simulation.Simulation;
+
+/**
+ * Ecouteur des entrees exterieures de la Simulation: l'intervalle de temps, la souris et les
+ * parametres qui peuvent etre changes par l'utilisateur.
+ */
+public interface InputListener extends EventListener {
+	/**
+	 * Evenement lance au debut de chaque etape, avant que les entrees soient appliquees. Les
+	 * parametres de la simulation (gravite, viscosite, ...) sont ceux qui seront utilises pendant
+	 * l'etape, et getStepCount() est le numero de l'etape qui commence.
+	 *
+	 * @param simulation Simulation qui avance.
+	 * @param deltaT Intervalle de temps de l'etape.
+	 * @param mousePosition Position de la souris, ou null si elle n'interagit pas.
+	 * @param previousMousePosition Position de la souris a l'etape precedente, ou null.
+	 */
+	public void inputApplied(Simulation simulation, double deltaT, Point2D.Double mousePosition,
+			Point2D.Double previousMousePosition);
+}
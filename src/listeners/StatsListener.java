@@ -0,0 +1,19 @@
+package listeners;
+
+import java.util.EventListener;
+
+import simulation.SimulationStats;
+
+/**
+ * Ecouteur des mesures de la Simulation. Les mesures ne sont prises que si au moins un ecouteur de
+ * ce type est ajoute a la simulation.
+ */
+public interface StatsListener extends EventListener {
+	/**
+	 * Evenement lance a la fin de chaque etape de la simulation. L'objet recu est reutilise d'une
+	 * etape a l'autre.
+	 *
+	 * @param stats Mesures de la simulation, a jour pour l'etape qui vient de se terminer.
+	 */
+	public void statsUpdated(SimulationStats stats);
+}
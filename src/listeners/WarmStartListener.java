@@ -0,0 +1,29 @@
+package listeners;
+
+import java.io.IOException;
+import java.util.EventListener;
+
+import scenario.Scene;
+import simulation.Simulation;
+
+/**
+ * Ecouteur des simulations relaxees demandees a WarmStartCache.createSimulationLater(). Les
+ * evenements sont lances par le processus du cache, jamais par celui de l'interface.
+ */
+public interface WarmStartListener extends EventListener {
+	/**
+	 * Evenement lance quand la simulation d'une scene est prete, dans son etat relaxe.
+	 *
+	 * @param scene Scene demandee.
+	 * @param simulation Nouvelle simulation, dans l'etat relaxe.
+	 */
+	public void simulationReady(Scene scene, Simulation simulation);
+
+	/**
+	 * Evenement lance quand l'etat relaxe d'une scene ne peut pas etre lu ou ecrit.
+	 *
+	 * @param scene Scene demandee.
+	 * @param error Erreur d'entree-sortie.
+	 */
+	public void relaxationFailed(Scene scene, IOException error);
+}
@@ -0,0 +1,97 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Petit serveur HTTP qui sert les metriques d'une simulation au format texte de Prometheus, a
+ * l'adresse http://127.0.0.1:port/metrics. Le serveur n'ecoute que sur l'interface locale et
+ * utilise un seul processus, qui ne verrouille jamais la simulation.
+ */
+public class MetricsServer {
+	// type de contenu du format texte de Prometheus
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	// serveur HTTP du JDK
+	private final HttpServer server;
+
+	// metriques servies
+	private final SimulationMetrics metrics;
+
+	/**
+	 * Constructeur principal. Le serveur est demarre avec start().
+	 *
+	 * @param metrics Metriques a servir.
+	 * @param port Port sur lequel ecouter, ou 0 pour un port libre choisi par le systeme.
+	 * @throws IOException Si le port ne peut pas etre ouvert.
+	 */
+	public MetricsServer(SimulationMetrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new MetricsHandler());
+		server.setExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	/**
+	 * Demarre le serveur.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Arrete le serveur.
+	 */
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Retourne le port sur lequel le serveur ecoute.
+	 *
+	 * @return Port du serveur.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * Repond aux requetes GET sur /metrics.
+	 */
+	private class MetricsHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("GET")) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				StringBuilder output = new StringBuilder(4096);
+				metrics.writePrometheus(output);
+				byte[] body = output.toString().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream stream = exchange.getResponseBody();
+				stream.write(body);
+				stream.close();
+			}
+			finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import listeners.StatsListener;
+import simulation.Particle;
+import simulation.Simulation;
+import simulation.SimulationStats;
+
+/**
+ * Metriques d'une simulation, mises a jour a chaque etape par le processus de la simulation et lues
+ * par le serveur HTTP (MetricsServer) au format texte de Prometheus.
+ *
+ * Toutes les valeurs sont gardees dans des compteurs atomiques: le processus de la simulation
+ * n'attend jamais le serveur, et le serveur lit des valeurs coherentes une a une sans verrouiller
+ * la simulation. L'etat des particules (vitesse maximale, pression moyenne) demande un parcours de
+ * toutes les particules; il n'est mesure qu'une etape sur PARTICLE_SAMPLE_INTERVAL. Les octets
+ * alloues sont lus pour tous les processus de la JVM, et seulement quand le serveur lit les
+ * metriques.
+ */
+public class SimulationMetrics implements StatsListener {
+	// bornes superieures des classes des histogrammes de latence, en secondes
+	private static final String[] BUCKETS = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025",
+			"0.005", "0.01", "0.025", "0.05", "0.1"};
+
+	// memes bornes, en nanosecondes
+	private static final long[] BUCKET_NANOSECONDS = new long[BUCKETS.length];
+
+	static {
+		int i;
+		for (i = 0; i < BUCKETS.length; i++) {
+			BUCKET_NANOSECONDS[i] = Math.round(Double.parseDouble(BUCKETS[i]) * 1e9);
+		}
+	}
+
+	// nombre d'etapes entre deux mesures de l'etat des particules
+	private static final int PARTICLE_SAMPLE_INTERVAL = 32;
+
+	// simulation mesuree
+	private final Simulation simulation;
+
+	// nombre d'etapes et d'etapes abandonnees
+	private final LongAdder stepCount = new LongAdder();
+	private final AtomicLong droppedStepCount = new AtomicLong();
+
+	// histogramme de chaque phase: nombre de mesures par classe (la derniere classe est +Inf),
+	// somme des temps et nombre de mesures
+	private final AtomicLongArray[] phaseBuckets = new AtomicLongArray[Simulation.PHASE_COUNT];
+	private final AtomicLong[] phaseSums = new AtomicLong[Simulation.PHASE_COUNT];
+	private final AtomicLong[] phaseCounts = new AtomicLong[Simulation.PHASE_COUNT];
+
+	// etat de la derniere etape; les valeurs reelles sont gardees sous forme de bits
+	private final AtomicLong particleCount = new AtomicLong();
+	private final AtomicLong maximumVelocityBits = new AtomicLong();
+	private final AtomicLong averagePressureBits = new AtomicLong();
+	private final AtomicLong neighborPairCount = new AtomicLong();
+	private final AtomicLong collisionCount = new AtomicLong();
+
+	// temps de demarrage jusqu'a la premiere image dessinee, en nanosecondes, ou 0
+	private final AtomicLong firstFrameTime = new AtomicLong();
+
+	// mesure des allocations par processus, ou null si la JVM ne la permet pas
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	// octets alloues par tous les processus, et par chaque processus vivant a la lecture
+	// precedente; un processus termine entre deux lectures n'est compte que jusqu'a la precedente
+	private long allocatedBytes = 0;
+	private Map<Long, Long> threadAllocatedBytes = new HashMap<Long, Long>();
+
+	// etat de la derniere lecture, pour calculer le nombre d'etapes par seconde
+	private long previousReadTime = System.nanoTime();
+	private long previousReadSteps = 0;
+
+	/**
+	 * Constructeur principal. Ajoute les metriques comme ecouteur de la simulation.
+	 *
+	 * @param simulation Simulation a mesurer.
+	 */
+	public SimulationMetrics(Simulation simulation) {
+		this.simulation = simulation;
+		int i;
+		for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+			phaseBuckets[i] = new AtomicLongArray(BUCKETS.length + 1);
+			phaseSums[i] = new AtomicLong();
+			phaseCounts[i] = new AtomicLong();
+		}
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean) bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		else {
+			threadBean = null;
+		}
+		simulation.addStatsListener(this);
+	}
+
+	/**
+	 * Met a jour les metriques a la fin d'une etape. Appelee par le processus de la simulation.
+	 */
+	public void statsUpdated(SimulationStats stats) {
+		stepCount.increment();
+		droppedStepCount.set(stats.getDroppedStepCount());
+		// latence de chaque phase
+		int i;
+		for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+			long time = stats.getLastTime(i);
+			int bucket = 0;
+			while (bucket < BUCKET_NANOSECONDS.length && time > BUCKET_NANOSECONDS[bucket]) {
+				bucket++;
+			}
+			phaseBuckets[i].incrementAndGet(bucket);
+			phaseSums[i].addAndGet(time);
+			phaseCounts[i].incrementAndGet();
+		}
+		int count = stats.getParticleCount();
+		particleCount.set(count);
+		neighborPairCount.set(stats.getNeighborPairCount());
+		collisionCount.set(stats.getCollisionCount());
+		firstFrameTime.set(stats.getFirstFrameTime());
+		// etat des particules, une etape sur PARTICLE_SAMPLE_INTERVAL
+		if (stats.getStepCount() % PARTICLE_SAMPLE_INTERVAL != 0) {
+			return;
+		}
+		double maximumVelocitySquared = 0;
+		double pressureSum = 0;
+		Iterator<Particle> iterator = simulation.getParticleIterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			double velocitySquared = particle.getVelocityX() * particle.getVelocityX()
+					+ particle.getVelocityY() * particle.getVelocityY();
+			maximumVelocitySquared = Math.max(maximumVelocitySquared, velocitySquared);
+			pressureSum += particle.getPressure();
+		}
+		maximumVelocityBits.set(Double.doubleToLongBits(Math.sqrt(maximumVelocitySquared)));
+		averagePressureBits.set(Double.doubleToLongBits(count == 0 ? 0 : pressureSum / count));
+	}
+
+	// ajoute au total les octets alloues par chaque processus depuis la lecture precedente
+	private void updateAllocatedBytes() {
+		long[] ids = threadBean.getAllThreadIds();
+		long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+		Map<Long, Long> current = new HashMap<Long, Long>();
+		int i;
+		for (i = 0; i < ids.length; i++) {
+			// -1 si le processus s'est termine depuis getAllThreadIds()
+			if (bytes[i] < 0) {
+				continue;
+			}
+			Long previous = threadAllocatedBytes.get(ids[i]);
+			allocatedBytes += bytes[i] - (previous == null ? 0 : previous);
+			current.put(ids[i], bytes[i]);
+		}
+		threadAllocatedBytes = current;
+	}
+
+	/**
+	 * Ecrit les metriques au format texte de Prometheus.
+	 *
+	 * @param output Tampon dans lequel ecrire.
+	 */
+	public synchronized void writePrometheus(StringBuilder output) {
+		long steps = stepCount.sum();
+		long time = System.nanoTime();
+		double stepsPerSecond = time == previousReadTime ? 0
+				: (steps - previousReadSteps) * 1e9 / (time - previousReadTime);
+		previousReadTime = time;
+		previousReadSteps = steps;
+		writeHeader(output, "fluid_simulation_steps_total", "counter",
+				"Nombre d'etapes effectuees.");
+		output.append("fluid_simulation_steps_total ").append(steps).append('\n');
+		writeHeader(output, "fluid_simulation_steps_per_second", "gauge",
+				"Etapes par seconde depuis la lecture precedente.");
+		output.append("fluid_simulation_steps_per_second ").append(stepsPerSecond).append('\n');
+		writeHeader(output, "fluid_simulation_dropped_steps_total", "counter",
+				"Etapes abandonnees parce que la simulation prenait trop de retard.");
+		output.append("fluid_simulation_dropped_steps_total ").append(droppedStepCount.get())
+				.append('\n');
+		// histogrammes de latence
+		writeHeader(output, "fluid_simulation_phase_seconds", "histogram",
+				"Duree de chaque phase d'une etape.");
+		int i, j;
+		for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+			String phase = "phase=\"" + Simulation.getPhaseName(i) + "\"";
+			long cumulative = 0;
+			for (j = 0; j <= BUCKETS.length; j++) {
+				cumulative += phaseBuckets[i].get(j);
+				output.append("fluid_simulation_phase_seconds_bucket{").append(phase)
+						.append(",le=\"").append(j < BUCKETS.length ? BUCKETS[j] : "+Inf")
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			output.append("fluid_simulation_phase_seconds_sum{").append(phase).append("} ")
+					.append(phaseSums[i].get() / 1e9).append('\n');
+			output.append("fluid_simulation_phase_seconds_count{").append(phase).append("} ")
+					.append(phaseCounts[i].get()).append('\n');
+		}
+		// etat des particules
+		writeHeader(output, "fluid_simulation_particles", "gauge", "Nombre de particules.");
+		output.append("fluid_simulation_particles ").append(particleCount.get()).append('\n');
+		writeHeader(output, "fluid_simulation_max_velocity", "gauge",
+				"Norme de la plus grande vitesse d'une particule, en unites par seconde.");
+		output.append("fluid_simulation_max_velocity ")
+				.append(Double.longBitsToDouble(maximumVelocityBits.get())).append('\n');
+		writeHeader(output, "fluid_simulation_average_pressure", "gauge",
+				"Pression moyenne des particules.");
+		output.append("fluid_simulation_average_pressure ")
+				.append(Double.longBitsToDouble(averagePressureBits.get())).append('\n');
+		writeHeader(output, "fluid_simulation_neighbor_pairs", "gauge",
+				"Paires de voisins a la derniere etape (chaque paire comptee deux fois).");
+		output.append("fluid_simulation_neighbor_pairs ").append(neighborPairCount.get())
+				.append('\n');
+		writeHeader(output, "fluid_simulation_collisions", "gauge",
+				"Particules en collision avec un mur a la derniere etape.");
+		output.append("fluid_simulation_collisions ").append(collisionCount.get()).append('\n');
+		if (firstFrameTime.get() > 0) {
+			writeHeader(output, "fluid_simulation_first_frame_seconds", "gauge",
+					"Temps entre le demarrage de la JVM et la premiere image dessinee.");
+			output.append("fluid_simulation_first_frame_seconds ")
+					.append(firstFrameTime.get() / 1e9).append('\n');
+		}
+		// allocations
+		if (threadBean != null) {
+			updateAllocatedBytes();
+			writeHeader(output, "fluid_simulation_allocated_bytes_total", "counter",
+					"Octets alloues par tous les processus de la JVM (utiliser rate()).");
+			output.append("fluid_simulation_allocated_bytes_total ").append(allocatedBytes)
+					.append('\n');
+		}
+	}
+
+	// ecrit les lignes HELP et TYPE d'une metrique
+	private static void writeHeader(StringBuilder output, String name, String type, String help) {
+		output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+}
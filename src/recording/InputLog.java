@@ -0,0 +1,177 @@
+package recording;
+
+import geometry.Vector;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import listeners.InputListener;
+import simulation.Simulation;
+
+/**
+ * Journal des entrees exterieures d'une simulation, pour la refaire exactement avec InputReplay.
+ *
+ * Au debut de chaque etape, l'intervalle de temps, la position de la souris et les parametres
+ * reglables (gravite, viscosite, densite au repos, rigidites) sont compares a ceux de l'etape
+ * precedente; seuls ceux qui ont change sont ecrits, avec le numero de l'etape. Les valeurs sont
+ * celles que la simulation utilise vraiment pendant l'etape, peu importe d'ou elles viennent.
+ *
+ * Format (texte, une entree par ligne; les nombres sont ecrits avec Double.toString(), qui les
+ * relit exactement):
+ * <pre>
+ * version 1
+ * debut etape
+ * etape dt valeur
+ * etape souris x y px py      (ou - a la place de x y ou de px py si la souris n'interagit pas)
+ * etape gravite x y
+ * etape viscosite valeur
+ * etape densite valeur
+ * etape rigidite valeur
+ * etape rigidite-proche valeur
+ * fin etape
+ * </pre>
+ *
+ * Pour refaire une session a partir de son etat initial, sauvegarder la simulation (Checkpoint)
+ * au moment ou le journal est cree.
+ */
+public class InputLog implements InputListener {
+	// version du format
+	static final int VERSION = 1;
+
+	// simulation dont les entrees sont ecrites
+	private final Simulation simulation;
+
+	// fichier du journal
+	private final PrintWriter writer;
+
+	// vrai une fois que la premiere etape a ete ecrite
+	private boolean started = false;
+
+	// valeurs ecrites a la derniere etape
+	private double deltaT;
+	private double mouseX;
+	private double mouseY;
+	private double previousMouseX;
+	private double previousMouseY;
+	private boolean mouseActive;
+	private boolean previousMouseActive;
+	private double gravityX;
+	private double gravityY;
+	private double viscosity;
+	private double restDensity;
+	private double stiffness;
+	private double nearbyStiffness;
+
+	// etape qui suit la derniere etape ecrite
+	private long endStep;
+
+	/**
+	 * Constructeur principal. Ecrit les entrees de la simulation a partir de sa prochaine etape.
+	 * L'appelant doit empecher la simulation d'avancer pendant l'appel.
+	 *
+	 * @param simulation Simulation dont les entrees sont ecrites.
+	 * @param file Fichier du journal; il est remplace s'il existe.
+	 * @throws IOException Si le fichier ne peut pas etre cree.
+	 */
+	public InputLog(Simulation simulation, File file) throws IOException {
+		this.simulation = simulation;
+		this.writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		this.endStep = simulation.getStepCount();
+		writer.println("version " + VERSION);
+		writer.println("debut " + endStep);
+		simulation.addInputListener(this);
+	}
+
+	/**
+	 * Ecrit les entrees qui ont change depuis l'etape precedente.
+	 */
+	public void inputApplied(Simulation simulation, double deltaT, Point2D.Double mousePosition,
+			Point2D.Double previousMousePosition) {
+		long step = simulation.getStepCount();
+		if (!started || deltaT != this.deltaT) {
+			this.deltaT = deltaT;
+			writer.println(step + " dt " + deltaT);
+		}
+		if (!started || changed(mousePosition, mouseActive, mouseX, mouseY)
+				|| changed(previousMousePosition, previousMouseActive, previousMouseX,
+						previousMouseY)) {
+			mouseActive = mousePosition != null;
+			previousMouseActive = previousMousePosition != null;
+			if (mouseActive) {
+				mouseX = mousePosition.getX();
+				mouseY = mousePosition.getY();
+			}
+			if (previousMouseActive) {
+				previousMouseX = previousMousePosition.getX();
+				previousMouseY = previousMousePosition.getY();
+			}
+			writer.println(step + " souris " + format(mousePosition) + " "
+					+ format(previousMousePosition));
+		}
+		Vector gravity = simulation.getGravity();
+		if (!started || gravity.getX() != gravityX || gravity.getY() != gravityY) {
+			gravityX = gravity.getX();
+			gravityY = gravity.getY();
+			writer.println(step + " gravite " + gravityX + " " + gravityY);
+		}
+		if (!started || simulation.getViscosity() != viscosity) {
+			viscosity = simulation.getViscosity();
+			writer.println(step + " viscosite " + viscosity);
+		}
+		if (!started || simulation.getRestDensity() != restDensity) {
+			restDensity = simulation.getRestDensity();
+			writer.println(step + " densite " + restDensity);
+		}
+		if (!started || simulation.getStiffness() != stiffness) {
+			stiffness = simulation.getStiffness();
+			writer.println(step + " rigidite " + stiffness);
+		}
+		if (!started || simulation.getNearbyStiffness() != nearbyStiffness) {
+			nearbyStiffness = simulation.getNearbyStiffness();
+			writer.println(step + " rigidite-proche " + nearbyStiffness);
+		}
+		started = true;
+		endStep = step + 1;
+	}
+
+	// retourne vrai si une position de la souris differe de celle ecrite
+	private static boolean changed(Point2D.Double position, boolean active, double x, double y) {
+		if (position == null) {
+			return active;
+		}
+		return !active || position.getX() != x || position.getY() != y;
+	}
+
+	// ecrit une position de la souris, ou - si elle est nulle
+	private static String format(Point2D.Double position) {
+		return position == null ? "-" : position.getX() + " " + position.getY();
+	}
+
+	/**
+	 * Arrete d'ecrire les entrees, termine le journal et ferme le fichier. L'appelant doit
+	 * empecher la simulation d'avancer pendant l'appel.
+	 *
+	 * @throws IOException Si le journal n'a pas pu etre ecrit.
+	 */
+	public void close() throws IOException {
+		simulation.removeInputListener(this);
+		writer.println("fin " + endStep);
+		writer.close();
+		if (writer.checkError()) {
+			throw new IOException("impossible d'ecrire le journal des entrees.");
+		}
+	}
+
+	/**
+	 * Retourne l'etape qui suit la derniere etape ecrite.
+	 *
+	 * @return Numero de l'etape.
+	 */
+	public long getEndStep() {
+		return endStep;
+	}
+}
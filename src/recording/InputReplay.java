@@ -0,0 +1,235 @@
+package recording;
+
+import geometry.Vector;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import simulation.Simulation;
+
+/**
+ * Refait une simulation a partir d'un journal des entrees ecrit par InputLog: chaque etape applique
+ * les entrees journalisees pour cette etape, puis fait avancer la simulation avec l'intervalle de
+ * temps et les positions de la souris du journal. Partie du meme etat (voir Checkpoint), la
+ * simulation refaite est identique, bit pour bit, a la session journalisee.
+ */
+public class InputReplay {
+	// types d'entrees
+	private static final int DELTA_T = 0;
+	private static final int MOUSE = 1;
+	private static final int GRAVITY = 2;
+	private static final int VISCOSITY = 3;
+	private static final int REST_DENSITY = 4;
+	private static final int STIFFNESS = 5;
+	private static final int NEARBY_STIFFNESS = 6;
+
+	// noms des entrees dans le fichier, dans l'ordre des types
+	private static final String[] NAMES = {"dt", "souris", "gravite", "viscosite", "densite",
+			"rigidite", "rigidite-proche"};
+
+	// premiere etape et etape qui suit la derniere
+	private final long startStep;
+	private final long endStep;
+
+	// entrees, dans l'ordre des etapes
+	private final ArrayList<Input> inputs = new ArrayList<Input>();
+
+	// prochaine entree a appliquer
+	private int nextInput = 0;
+
+	// valeurs courantes de l'intervalle de temps et de la souris
+	private double deltaT = 0;
+	private Point2D.Double mousePosition = null;
+	private Point2D.Double previousMousePosition = null;
+
+	/**
+	 * Constructeur principal. Lit le journal au complet.
+	 *
+	 * @param file Journal a lire.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou n'est pas un journal complet.
+	 */
+	public InputReplay(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String[] version = split(reader.readLine(), file);
+			if (version.length != 2 || !version[0].equals("version")) {
+				throw new IOException(file + " n'est pas un journal des entrees.");
+			}
+			if (Integer.parseInt(version[1]) != InputLog.VERSION) {
+				throw new IOException("version de journal non supportee: " + version[1] + ".");
+			}
+			String[] start = split(reader.readLine(), file);
+			if (start.length != 2 || !start[0].equals("debut")) {
+				throw new IOException(file + " n'est pas un journal des entrees.");
+			}
+			startStep = Long.parseLong(start[1]);
+			long previousStep = startStep;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = split(line, file);
+				if (values[0].equals("fin")) {
+					break;
+				}
+				Input input = parse(values);
+				if (input == null || input.step < previousStep) {
+					throw new IOException("entree invalide dans " + file + ": " + line);
+				}
+				previousStep = input.step;
+				inputs.add(input);
+			}
+			if (line == null) {
+				throw new IOException(file + " est incomplet (le journal n'a pas ete ferme).");
+			}
+			endStep = Long.parseLong(split(line, file)[1]);
+			if (endStep < previousStep || (endStep > startStep
+					&& (inputs.isEmpty() || inputs.get(0).step != startStep))) {
+				throw new IOException("journal corrompu: " + file + ".");
+			}
+		}
+		catch (NumberFormatException error) {
+			throw new IOException("nombre invalide dans " + file + ": " + error.getMessage());
+		}
+		catch (ArrayIndexOutOfBoundsException error) {
+			throw new IOException("entree incomplete dans " + file + ".");
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	// separe une ligne en mots
+	private static String[] split(String line, File file) throws IOException {
+		if (line == null) {
+			throw new IOException(file + " est incomplet.");
+		}
+		return line.trim().split(" ");
+	}
+
+	// lit une entree, ou retourne null si elle est inconnue
+	private static Input parse(String[] values) {
+		long step = Long.parseLong(values[0]);
+		int type;
+		for (type = 0; type < NAMES.length; type++) {
+			if (NAMES[type].equals(values[1])) {
+				break;
+			}
+		}
+		if (type == NAMES.length) {
+			return null;
+		}
+		Input input = new Input(step, type);
+		if (type == MOUSE) {
+			int index = 2;
+			if (!values[index].equals("-")) {
+				input.position = new Point2D.Double(Double.parseDouble(values[index]),
+						Double.parseDouble(values[index + 1]));
+				index++;
+			}
+			index++;
+			if (!values[index].equals("-")) {
+				input.previousPosition = new Point2D.Double(Double.parseDouble(values[index]),
+						Double.parseDouble(values[index + 1]));
+			}
+		}
+		else if (type == GRAVITY) {
+			input.x = Double.parseDouble(values[2]);
+			input.y = Double.parseDouble(values[3]);
+		}
+		else {
+			input.x = Double.parseDouble(values[2]);
+		}
+		return input;
+	}
+
+	/**
+	 * Fait avancer la simulation d'une etape avec les entrees journalisees. La simulation doit
+	 * etre a l'etape qui suit la derniere etape refaite (getStartStep() pour la premiere).
+	 *
+	 * @param simulation Simulation a faire avancer.
+	 * @return Vrai si une etape a ete faite, faux si toutes les etapes du journal ont ete faites.
+	 */
+	public boolean step(Simulation simulation) {
+		long step = simulation.getStepCount();
+		if (step >= endStep) {
+			return false;
+		}
+		if (step < startStep || (nextInput == 0 && step != startStep)
+				|| (nextInput < inputs.size() && inputs.get(nextInput).step < step)) {
+			throw new IllegalStateException("la simulation est a l'etape " + step
+					+ ", qui ne suit pas la derniere etape refaite.");
+		}
+		while (nextInput < inputs.size() && inputs.get(nextInput).step == step) {
+			apply(inputs.get(nextInput), simulation);
+			nextInput++;
+		}
+		simulation.update(deltaT, mousePosition, previousMousePosition);
+		return true;
+	}
+
+	// applique une entree
+	private void apply(Input input, Simulation simulation) {
+		switch (input.type) {
+		case DELTA_T:
+			deltaT = input.x;
+			break;
+		case MOUSE:
+			mousePosition = input.position;
+			previousMousePosition = input.previousPosition;
+			break;
+		case GRAVITY:
+			simulation.setGravity(new Vector(input.x, input.y));
+			break;
+		case VISCOSITY:
+			simulation.setViscosity(input.x);
+			break;
+		case REST_DENSITY:
+			simulation.setRestDensity(input.x);
+			break;
+		case STIFFNESS:
+			simulation.setStiffness(input.x);
+			break;
+		default:
+			simulation.setNearbyStiffness(input.x);
+			break;
+		}
+	}
+
+	/**
+	 * Retourne la premiere etape du journal.
+	 *
+	 * @return Numero de l'etape.
+	 */
+	public long getStartStep() {
+		return startStep;
+	}
+
+	/**
+	 * Retourne le nombre d'etapes du journal.
+	 *
+	 * @return Nombre d'etapes.
+	 */
+	public int getStepCount() {
+		return (int) (endStep - startStep);
+	}
+
+	/*
+	 * Entree journalisee pour une etape.
+	 */
+	private static class Input {
+		private final long step;
+		private final int type;
+		private double x;
+		private double y;
+		private Point2D.Double position;
+		private Point2D.Double previousPosition;
+
+		private Input(long step, int type) {
+			this.step = step;
+			this.type = type;
+		}
+	}
+}
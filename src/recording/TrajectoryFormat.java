@@ -0,0 +1,97 @@
+package recording;
+
+/**
+ * Constantes du format des trajectoires, partagees par TrajectoryRecorder et TrajectoryReader.
+ *
+ * Format (version 3, octets en petit-boutiste):
+ * <pre>
+ * entete:  int magic ("FLTR"), int version, double xMin, double yMin, double largeur,
+ *          double hauteur, double pas des positions, double pas des pressions,
+ *          int intervalle des images cles, int murs
+ * murs:    int points[murs], completes par 4 octets si murs est impair, puis double x, y de chaque
+ *          point de chaque mur
+ * images:  int type (KEYFRAME ou DELTA), int particules n, long etape, int particules de l'image
+ *          precedente p, int exceptions e, long taille de l'image precedente, puis
+ *          image cle: positions[n], short pression[n], byte options[n]
+ *          image delta: short deplacementX[m], short deplacementY[m], ou m = min(n, p),
+ *                       int indice[e], positions[e] nouvelles, positions[e] anciennes,
+ *                       byte options[e] nouvelles, byte options[e] anciennes,
+ *                       positions[n - p], byte options[n - p] des particules ajoutees si n > p,
+ *                       positions[p - n], byte options[p - n] des particules retirees si p > n,
+ *                       short pression[n]
+ * index:   long position dans le fichier, long numero d'image, pour chaque image cle
+ * fin:     long position de l'index, int images cles, int images, int magic ("FLTE"), int 0
+ * </pre>
+ *
+ * Une position est convertie en un entier q, le nombre de pas depuis le coin du monde. Un groupe de
+ * k positions absolues (positions[k]) est ecrit short celluleX[k], short decalageX[k],
+ * short celluleY[k], short decalageY[k]: q est separe en une cellule (q / 65536) et un decalage
+ * dans la cellule (q % 65536). Dans une image delta, seul le deplacement depuis la position de
+ * l'image precedente, telle que relue, est gardee pour les particules communes aux deux images.
+ * Les exceptions sont les particules communes dont le deplacement ne tient pas dans un short ou
+ * dont les options ont change (une particule retiree par un puits est remplacee par la derniere);
+ * leur deplacement est ecrit 0 et leurs positions sont gardees telles quelles. Les particules
+ * ajoutees a la fin sont gardees telles quelles, et les particules retirees de la fin aussi, pour
+ * que l'image precedente puisse etre retrouvee a reculons. Les pressions sont toujours gardees
+ * telles quelles, arrondies au pas des pressions et limitees aux valeurs d'un short.
+ */
+final class TrajectoryFormat {
+	// premiers et derniers octets d'un fichier
+	static final int MAGIC = 0x464c5452;
+	static final int END_MAGIC = 0x464c5445;
+
+	// version du format
+	static final int VERSION = 3;
+
+	// tailles de l'entete, de l'en-tete d'une image, d'une entree de l'index et de la fin
+	static final int HEADER_SIZE = 64;
+	static final int FRAME_HEADER_SIZE = 32;
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final int TRAILER_SIZE = 24;
+
+	// types d'images
+	static final int KEYFRAME = 0;
+	static final int DELTA = 1;
+
+	// octets par particule d'une image cle, par position absolue, par deplacement et par exception
+	static final int KEYFRAME_PARTICLE_SIZE = 5 * 2 + 1;
+	static final int ABSOLUTE_PARTICLE_SIZE = 4 * 2 + 1;
+	static final int DELTA_PARTICLE_SIZE = 2 * 2;
+	static final int EXCEPTION_SIZE = 4 + 2 * ABSOLUTE_PARTICLE_SIZE;
+	static final int PRESSURE_SIZE = 2;
+
+	// plus grand deplacement qui peut etre garde dans une image delta
+	static final int MAXIMUM_DELTA = Short.MAX_VALUE;
+
+	private TrajectoryFormat() {
+	}
+
+	// retourne la taille d'une image, en-tete compris
+	static long getFrameSize(int type, int particleCount, int previousCount, int exceptionCount) {
+		return FRAME_HEADER_SIZE
+				+ getFrameBodySize(type, particleCount, previousCount, exceptionCount);
+	}
+
+	// retourne la taille du corps d'une image
+	static long getFrameBodySize(int type, int particleCount, int previousCount,
+			int exceptionCount) {
+		if (type == KEYFRAME) {
+			return (long) particleCount * KEYFRAME_PARTICLE_SIZE;
+		}
+		return (long) Math.min(particleCount, previousCount) * DELTA_PARTICLE_SIZE
+				+ (long) exceptionCount * EXCEPTION_SIZE
+				+ (long) Math.abs(particleCount - previousCount) * ABSOLUTE_PARTICLE_SIZE
+				+ (long) particleCount * PRESSURE_SIZE;
+	}
+
+	// retourne la position des pressions depuis la fin d'une image
+	static long getPressureOffsetFromEnd(int type, int particleCount) {
+		return (long) particleCount * (type == KEYFRAME ? PRESSURE_SIZE + 1 : PRESSURE_SIZE);
+	}
+
+	// convertit une pression en short, arrondie au pas et limitee aux valeurs d'un short
+	static short quantizePressure(double pressure, double pressureQuantum) {
+		long value = Math.round(pressure / pressureQuantum);
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+	}
+}
@@ -0,0 +1,332 @@
+package recording;
+
+import geometry.Polygon;
+import graphics.WorldMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReference;
+
+import simulation.ParticleFrame;
+
+/**
+ * Source d'images qui rejoue une trajectoire enregistree (voir TrajectoryRecorder), sans calcul
+ * physique: rejouer une trajectoire ne coute que le decodage des images et leur dessin.
+ *
+ * Un processus en arriere-plan decode a l'avance les prochaines images a afficher dans un petit
+ * nombre de ParticleFrame reutilises; celui qui affiche les images les prend avec take() et les
+ * rend avec recycle() une fois qu'il n'en a plus besoin. La vitesse (setSpeed()) est le nombre
+ * d'images avancees a chaque image prise: 1 pour la lecture normale, plus de 1 pour l'avance
+ * rapide et un nombre negatif pour la lecture a reculons. Les images sautees en avance rapide sont
+ * decodees sans etre copiees, et la lecture a reculons defait les deplacements des images delta
+ * plutot que de decoder depuis l'image cle precedente.
+ */
+public class TrajectoryPlayer implements Runnable {
+	// nombre d'images decodees a l'avance
+	private static final int READ_AHEAD = 6;
+
+	// plus grand recul fait image par image plutot qu'en repartant de l'image cle precedente
+	private static final int MAXIMUM_REVERSE_STEPS = 8;
+
+	// vitesse maximale, en images par image prise
+	public static final int MAXIMUM_SPEED = 64;
+
+	// lecteur, utilise seulement par le processus de decodage une fois le constructeur termine
+	private final TrajectoryReader reader;
+
+	// monde, murs et nombre d'images de la trajectoire
+	private final WorldMatrix world;
+	private final Polygon[] walls;
+	private final int frameCount;
+
+	// processus de decodage
+	private final Thread thread;
+
+	// images libres et images decodees, dans l'ordre d'affichage; protegees par this
+	private final ArrayDeque<ParticleFrame> freeFrames = new ArrayDeque<ParticleFrame>();
+	private final ArrayDeque<DecodedFrame> decodedFrames = new ArrayDeque<DecodedFrame>();
+
+	// prochaine image a decoder, vitesse et etat de la lecture; proteges par this
+	private int nextFrame = 0;
+	private int speed = 1;
+	private boolean playing = true;
+	private boolean closed = false;
+
+	// vrai si la prochaine image decodee doit etre affichee meme si la lecture est en pause
+	private boolean showNext = true;
+
+	// incremente a chaque changement de position ou de vitesse, pour abandonner les images
+	// decodees avec les anciens parametres
+	private int generation = 0;
+
+	// derniere image prise et son etape
+	private volatile int frameIndex = -1;
+	private volatile long step = -1;
+
+	// premiere erreur de lecture, ou null
+	private final AtomicReference<IOException> error = new AtomicReference<IOException>();
+
+	/**
+	 * Constructeur principal. Ouvre la trajectoire et commence a decoder ses premieres images.
+	 *
+	 * @param file Trajectoire a rejouer.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou n'est pas une trajectoire complete.
+	 */
+	public TrajectoryPlayer(File file) throws IOException {
+		reader = new TrajectoryReader(file);
+		world = reader.getWorld();
+		walls = reader.getWalls();
+		frameCount = reader.getFrameCount();
+		// une image par place d'avance, une affichee et une en cours de decodage
+		int i;
+		for (i = 0; i < READ_AHEAD + 2; i++) {
+			freeFrames.add(new ParticleFrame());
+		}
+		thread = new Thread(this, "trajectory-player");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Decode les images a l'avance, jusqu'a ce que le lecteur soit ferme.
+	 */
+	public void run() {
+		try {
+			while (true) {
+				ParticleFrame frame;
+				int target;
+				int frameGeneration;
+				synchronized (this) {
+					while (!closed && (freeFrames.isEmpty() || decodedFrames.size() >= READ_AHEAD
+							|| nextFrame < 0 || nextFrame >= frameCount)) {
+						wait();
+					}
+					if (closed) {
+						return;
+					}
+					frame = freeFrames.removeFirst();
+					target = nextFrame;
+					frameGeneration = generation;
+				}
+				decode(target, frame);
+				synchronized (this) {
+					if (frameGeneration == generation) {
+						decodedFrames.addLast(new DecodedFrame(frame, target, reader.getStep()));
+						nextFrame = target + speed;
+					}
+					else {
+						freeFrames.addLast(frame);
+					}
+				}
+			}
+		}
+		catch (InterruptedException exception) {
+			return;
+		}
+		catch (IOException exception) {
+			error.compareAndSet(null, exception);
+		}
+	}
+
+	// decode une image en partant de la position du lecteur quand elle est proche
+	private void decode(int target, ParticleFrame frame) throws IOException {
+		int current = reader.getFrameIndex() - 1;
+		if (target == current + 1) {
+			reader.readFrame(frame);
+		}
+		else if (target < current && current - target <= MAXIMUM_REVERSE_STEPS) {
+			while (current - 1 > target && reader.readPreviousFrame(null)) {
+				current--;
+			}
+			if (!reader.readPreviousFrame(frame)) {
+				reader.seek(target);
+				reader.readFrame(frame);
+			}
+		}
+		else {
+			reader.seek(target);
+			reader.readFrame(frame);
+		}
+	}
+
+	/**
+	 * Retourne la prochaine image a afficher, ou null si aucune n'est prete, si la lecture est en
+	 * pause ou si la fin (ou le debut, a reculons) de la trajectoire est atteinte. L'image doit etre
+	 * rendue avec recycle() une fois qu'elle n'est plus affichee.
+	 *
+	 * @return Prochaine image a afficher, ou null.
+	 * @throws IOException Si la trajectoire n'a pas pu etre lue.
+	 */
+	public synchronized ParticleFrame take() throws IOException {
+		IOException exception = error.get();
+		if (exception != null) {
+			throw exception;
+		}
+		if ((!playing && !showNext) || decodedFrames.isEmpty()) {
+			return null;
+		}
+		showNext = false;
+		DecodedFrame decoded = decodedFrames.removeFirst();
+		frameIndex = decoded.index;
+		step = decoded.step;
+		notifyAll();
+		return decoded.frame;
+	}
+
+	/**
+	 * Rend une image obtenue avec take() pour qu'elle soit reutilisee.
+	 *
+	 * @param frame Image qui n'est plus affichee.
+	 */
+	public synchronized void recycle(ParticleFrame frame) {
+		freeFrames.addLast(frame);
+		notifyAll();
+	}
+
+	/**
+	 * Place la lecture sur une image; elle sera la prochaine image prise, meme en pause.
+	 *
+	 * @param frame Numero de l'image, entre 0 et getFrameCount() - 1.
+	 */
+	public synchronized void seek(int frame) {
+		if (frame < 0 || frame >= frameCount) {
+			throw new IllegalArgumentException("image inexistante: " + frame + ".");
+		}
+		restart(frame);
+		showNext = true;
+	}
+
+	/**
+	 * Change la vitesse de lecture. La lecture continue a partir de la derniere image prise.
+	 *
+	 * @param speed Nombre d'images avancees a chaque image prise, negatif pour lire a reculons,
+	 * entre -MAXIMUM_SPEED et MAXIMUM_SPEED, sauf 0.
+	 */
+	public synchronized void setSpeed(int speed) {
+		if (speed == 0 || Math.abs(speed) > MAXIMUM_SPEED) {
+			throw new IllegalArgumentException("vitesse invalide: " + speed + ".");
+		}
+		if (speed != this.speed) {
+			this.speed = speed;
+			restart(frameIndex < 0 ? 0 : frameIndex + speed);
+		}
+	}
+
+	// abandonne les images decodees et recommence le decodage a une image
+	private void restart(int frame) {
+		generation++;
+		while (!decodedFrames.isEmpty()) {
+			freeFrames.addLast(decodedFrames.removeFirst().frame);
+		}
+		nextFrame = frame;
+		notifyAll();
+	}
+
+	/**
+	 * Retourne la vitesse de lecture.
+	 *
+	 * @return Nombre d'images avancees a chaque image prise, negatif a reculons.
+	 */
+	public synchronized int getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Reprend la lecture.
+	 */
+	public synchronized void play() {
+		playing = true;
+	}
+
+	/**
+	 * Met la lecture en pause; take() retourne null jusqu'au prochain appel a play() ou seek().
+	 */
+	public synchronized void pause() {
+		playing = false;
+	}
+
+	/**
+	 * Retourne vrai si la lecture n'est pas en pause.
+	 *
+	 * @return Vrai ssi la lecture n'est pas en pause.
+	 */
+	public synchronized boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * Arrete le processus de decodage et ferme la trajectoire.
+	 *
+	 * @throws IOException Si le fichier ne peut pas etre ferme.
+	 * @throws InterruptedException Si le processus est interrompu pendant l'attente.
+	 */
+	public void close() throws IOException, InterruptedException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		thread.join();
+		reader.close();
+	}
+
+	/**
+	 * Retourne les dimensions du monde de la simulation enregistree.
+	 *
+	 * @return Dimensions du monde.
+	 */
+	public WorldMatrix getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retourne les murs de la simulation enregistree.
+	 *
+	 * @return Murs de la simulation.
+	 */
+	public Polygon[] getWalls() {
+		return walls;
+	}
+
+	/**
+	 * Retourne le nombre d'images de la trajectoire.
+	 *
+	 * @return Nombre d'images.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Retourne le numero de la derniere image prise.
+	 *
+	 * @return Numero de l'image, ou -1 si aucune image n'a ete prise.
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * Retourne l'etape de la simulation qui correspond a la derniere image prise.
+	 *
+	 * @return Numero de l'etape, ou -1 si aucune image n'a ete prise.
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	/*
+	 * Image decodee, avec son numero et son etape.
+	 */
+	private static class DecodedFrame {
+		private final ParticleFrame frame;
+		private final int index;
+		private final long step;
+
+		private DecodedFrame(ParticleFrame frame, int index, long step) {
+			this.frame = frame;
+			this.index = index;
+			this.step = step;
+		}
+	}
+}
@@ -0,0 +1,515 @@
+package recording;
+
+import geometry.Polygon;
+import graphics.WorldMatrix;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import simulation.ParticleFrame;
+
+/**
+ * Relit une trajectoire ecrite par TrajectoryRecorder, image par image, dans un ParticleFrame.
+ *
+ * Le fichier est lu a travers des fenetres projetees en memoire (MappedByteBuffer) de quelques
+ * dizaines de megaoctets, et chaque tableau d'une image est copie d'un seul coup.
+ *
+ * Les images sont lues dans l'ordre a partir de la position courante avec readFrame(), ou a
+ * reculons avec readPreviousFrame(), qui defait les deplacements de l'image courante plutot que de
+ * tout decoder depuis l'image cle precedente. seekKeyframe() place la lecture directement sur une
+ * image cle grace a l'index a la fin du fichier; seek() place la lecture sur n'importe quelle
+ * image en decodant les images depuis l'image cle precedente.
+ */
+public class TrajectoryReader {
+	// taille minimale d'une fenetre du fichier projetee en memoire, en octets
+	private static final int WINDOW_SIZE = 64 << 20;
+
+	// fichier lu et sa taille
+	private final FileChannel channel;
+	private final long fileSize;
+
+	// fenetre du fichier projetee en memoire et position de son debut dans le fichier
+	private ByteBuffer window = null;
+	private long windowStart = 0;
+
+	// monde, murs et pas de quantification
+	private final double minimumX;
+	private final double minimumY;
+	private final double width;
+	private final double height;
+	private final Polygon[] walls;
+	private final double quantum;
+	private final double pressureQuantum;
+
+	// position de la premiere image
+	private final long firstFrameOffset;
+
+	// nombre d'images et index des images cles
+	private final int frameCount;
+	private final long[] keyframeOffsets;
+	private final int[] keyframeFrames;
+
+	// numero de la prochaine image, position de la prochaine image et de la derniere image lue,
+	// et etape de la derniere image lue
+	private int frameIndex = 0;
+	private long nextOffset;
+	private long currentOffset = -1;
+	private long step = -1;
+
+	// derniere image decodee: positions quantifiees, pressions et options
+	private int count = -1;
+	private int[] x = new int[0];
+	private int[] y = new int[0];
+	private short[] pressures = new short[0];
+	private byte[] options = new byte[0];
+
+	// valeurs lues pour une image: positions ou deplacements, indices et options des exceptions
+	private short[] positions = new short[0];
+	private int[] exceptions = new int[0];
+	private byte[] exceptionOptions = new byte[0];
+
+	/**
+	 * Constructeur principal. Lit l'entete et l'index des images cles; la lecture commence a la
+	 * premiere image.
+	 *
+	 * @param file Fichier a lire.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou n'est pas une trajectoire complete.
+	 */
+	public TrajectoryReader(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			fileSize = channel.size();
+			if (fileSize < TrajectoryFormat.HEADER_SIZE + TrajectoryFormat.TRAILER_SIZE) {
+				throw new IOException(file + " n'est pas une trajectoire.");
+			}
+			// entete
+			ByteBuffer buffer = map(0, TrajectoryFormat.HEADER_SIZE);
+			if (buffer.getInt() != TrajectoryFormat.MAGIC) {
+				throw new IOException(file + " n'est pas une trajectoire.");
+			}
+			int version = buffer.getInt();
+			if (version != TrajectoryFormat.VERSION) {
+				throw new IOException("version de trajectoire non supportee: " + version + ".");
+			}
+			minimumX = buffer.getDouble();
+			minimumY = buffer.getDouble();
+			width = buffer.getDouble();
+			height = buffer.getDouble();
+			quantum = buffer.getDouble();
+			pressureQuantum = buffer.getDouble();
+			buffer.getInt();
+			int wallCount = buffer.getInt();
+			if (wallCount < 0 || wallCount > fileSize / 4) {
+				throw new IOException("trajectoire corrompue: " + file + ".");
+			}
+			// murs
+			long offset = TrajectoryFormat.HEADER_SIZE;
+			buffer = map(offset, (wallCount + wallCount % 2) * 4L);
+			int[] pointCounts = new int[wallCount];
+			long pointTotal = 0;
+			int i, j;
+			for (i = 0; i < wallCount; i++) {
+				pointCounts[i] = buffer.getInt();
+				if (pointCounts[i] < 3) {
+					throw new IOException("trajectoire corrompue: " + file + ".");
+				}
+				pointTotal += pointCounts[i];
+			}
+			offset += (wallCount + wallCount % 2) * 4L;
+			buffer = map(offset, pointTotal * 16);
+			walls = new Polygon[wallCount];
+			for (i = 0; i < wallCount; i++) {
+				Point2D.Double[] points = new Point2D.Double[pointCounts[i]];
+				for (j = 0; j < points.length; j++) {
+					points[j] = new Point2D.Double(buffer.getDouble(), buffer.getDouble());
+				}
+				walls[i] = new Polygon(points);
+			}
+			firstFrameOffset = offset + pointTotal * 16;
+			// fin et index
+			buffer = map(fileSize - TrajectoryFormat.TRAILER_SIZE, TrajectoryFormat.TRAILER_SIZE);
+			long indexOffset = buffer.getLong();
+			int keyframeCount = buffer.getInt();
+			frameCount = buffer.getInt();
+			if (buffer.getInt() != TrajectoryFormat.END_MAGIC) {
+				throw new IOException(file + " est incomplet (l'enregistrement n'a pas ete ferme).");
+			}
+			if (keyframeCount < 0 || indexOffset + (long) keyframeCount
+					* TrajectoryFormat.INDEX_ENTRY_SIZE != fileSize - TrajectoryFormat.TRAILER_SIZE) {
+				throw new IOException("index corrompu: " + file + ".");
+			}
+			keyframeOffsets = new long[keyframeCount];
+			keyframeFrames = new int[keyframeCount];
+			buffer = map(indexOffset, (long) keyframeCount * TrajectoryFormat.INDEX_ENTRY_SIZE);
+			for (i = 0; i < keyframeCount; i++) {
+				keyframeOffsets[i] = buffer.getLong();
+				keyframeFrames[i] = (int) buffer.getLong();
+			}
+		}
+		catch (IOException error) {
+			channel.close();
+			throw error;
+		}
+		catch (RuntimeException error) {
+			channel.close();
+			throw error;
+		}
+		rewind();
+	}
+
+	/**
+	 * Place la lecture sur la premiere image.
+	 */
+	public void rewind() {
+		nextOffset = firstFrameOffset;
+		currentOffset = -1;
+		frameIndex = 0;
+		count = -1;
+	}
+
+	/**
+	 * Place la lecture sur une image cle.
+	 *
+	 * @param keyframe Indice de l'image cle, entre 0 et getKeyframeCount() - 1.
+	 */
+	public void seekKeyframe(int keyframe) {
+		if (keyframe < 0 || keyframe >= keyframeOffsets.length) {
+			throw new IllegalArgumentException("image cle inexistante: " + keyframe + ".");
+		}
+		nextOffset = keyframeOffsets[keyframe];
+		currentOffset = -1;
+		frameIndex = keyframeFrames[keyframe];
+		count = -1;
+	}
+
+	/**
+	 * Place la lecture sur une image quelconque: la lecture est placee sur l'image cle precedente
+	 * et les images suivantes sont decodees jusqu'a l'image voulue. Si l'image voulue suit la
+	 * position courante dans le meme intervalle d'images cles, le decodage continue a partir de la
+	 * position courante.
+	 *
+	 * @param frame Numero de l'image, entre 0 et getFrameCount() - 1.
+	 * @throws IOException Si le fichier ne peut pas etre lu.
+	 */
+	public void seek(int frame) throws IOException {
+		if (frame < 0 || frame >= frameCount) {
+			throw new IllegalArgumentException("image inexistante: " + frame + ".");
+		}
+		int keyframe = getKeyframeBefore(frame);
+		if (frame < frameIndex || count < 0 || keyframeFrames[keyframe] > frameIndex) {
+			seekKeyframe(keyframe);
+		}
+		while (frameIndex < frame) {
+			readFrame(null);
+		}
+	}
+
+	/**
+	 * Retourne l'indice de la derniere image cle qui precede une image, ou l'image elle-meme.
+	 *
+	 * @param frame Numero de l'image.
+	 * @return Indice de l'image cle.
+	 */
+	public int getKeyframeBefore(int frame) {
+		int index = Arrays.binarySearch(keyframeFrames, frame);
+		return index >= 0 ? index : Math.max(0, -index - 2);
+	}
+
+	/**
+	 * Lit la prochaine image.
+	 *
+	 * @param frame Image dans laquelle mettre les particules (son contenu est remplace), ou null
+	 * pour seulement avancer d'une image.
+	 * @return Vrai si une image a ete lue, faux si la fin de la trajectoire est atteinte.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou est corrompu.
+	 */
+	public boolean readFrame(ParticleFrame frame) throws IOException {
+		if (frameIndex >= frameCount) {
+			return false;
+		}
+		ByteBuffer buffer = map(nextOffset, TrajectoryFormat.FRAME_HEADER_SIZE);
+		int type = buffer.getInt();
+		int particleCount = buffer.getInt();
+		long frameStep = buffer.getLong();
+		int previousCount = buffer.getInt();
+		int exceptionCount = buffer.getInt();
+		if (particleCount < 0 || previousCount < 0 || exceptionCount < 0
+				|| (type != TrajectoryFormat.KEYFRAME && type != TrajectoryFormat.DELTA)) {
+			throw new IOException("image " + frameIndex + " corrompue.");
+		}
+		if (type == TrajectoryFormat.DELTA && previousCount != count) {
+			throw new IOException("image delta " + frameIndex + " sans image cle precedente.");
+		}
+		long frameSize = TrajectoryFormat.getFrameSize(type, particleCount, previousCount,
+				exceptionCount);
+		buffer = map(nextOffset + TrajectoryFormat.FRAME_HEADER_SIZE,
+				frameSize - TrajectoryFormat.FRAME_HEADER_SIZE);
+		ensureCapacity(Math.max(particleCount, previousCount), exceptionCount);
+		int common = Math.min(particleCount, previousCount);
+		int i;
+		if (type == TrajectoryFormat.KEYFRAME) {
+			getPositions(buffer, null, 0, particleCount);
+			getShorts(buffer, pressures, particleCount);
+			buffer.get(options, 0, particleCount);
+		}
+		else {
+			getShorts(buffer, positions, 2 * common);
+			for (i = 0; i < common; i++) {
+				x[i] += positions[i];
+				y[i] += positions[common + i];
+			}
+			// exceptions: les nouvelles positions et options remplacent les deplacements nuls
+			getInts(buffer, exceptions, exceptionCount);
+			getPositions(buffer, exceptions, 0, exceptionCount);
+			buffer.position(buffer.position() + 8 * exceptionCount);
+			buffer.get(exceptionOptions, 0, 2 * exceptionCount);
+			for (i = 0; i < exceptionCount; i++) {
+				options[exceptions[i]] = exceptionOptions[i];
+			}
+			// particules ajoutees; les particules retirees ne servent qu'a reculons
+			int changed = Math.abs(particleCount - previousCount);
+			if (particleCount > previousCount) {
+				getPositions(buffer, null, previousCount, changed);
+				buffer.get(options, previousCount, changed);
+			}
+			else {
+				buffer.position(buffer.position()
+						+ TrajectoryFormat.ABSOLUTE_PARTICLE_SIZE * changed);
+			}
+			getShorts(buffer, pressures, particleCount);
+		}
+		count = particleCount;
+		step = frameStep;
+		currentOffset = nextOffset;
+		nextOffset += frameSize;
+		frameIndex++;
+		copyTo(frame);
+		return true;
+	}
+
+	/**
+	 * Lit l'image qui precede la derniere image lue. Si la derniere image lue est une image delta,
+	 * ses deplacements sont defaits et seules les pressions de l'image precedente sont lues; sinon,
+	 * l'image precedente est decodee depuis son image cle.
+	 *
+	 * @param frame Image dans laquelle mettre les particules (son contenu est remplace), ou null
+	 * pour seulement reculer d'une image.
+	 * @return Vrai si une image a ete lue, faux si la derniere image lue est la premiere ou si
+	 * aucune image n'a ete lue.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou est corrompu.
+	 */
+	public boolean readPreviousFrame(ParticleFrame frame) throws IOException {
+		int current = frameIndex - 1;
+		if (current < 1 || currentOffset < 0) {
+			return false;
+		}
+		int keyframe = getKeyframeBefore(current);
+		if (keyframeFrames[keyframe] == current) {
+			// l'image precedente fait partie de l'intervalle d'images cles precedent
+			seek(current - 1);
+			return readFrame(frame);
+		}
+		ByteBuffer buffer = map(currentOffset, TrajectoryFormat.FRAME_HEADER_SIZE);
+		buffer.getInt();
+		buffer.getInt();
+		buffer.getLong();
+		int previousCount = buffer.getInt();
+		int exceptionCount = buffer.getInt();
+		long previousSize = buffer.getLong();
+		buffer = map(currentOffset + TrajectoryFormat.FRAME_HEADER_SIZE,
+				TrajectoryFormat.getFrameBodySize(TrajectoryFormat.DELTA, count, previousCount,
+						exceptionCount));
+		ensureCapacity(Math.max(count, previousCount), exceptionCount);
+		// defaire les deplacements des particules communes
+		int common = Math.min(count, previousCount);
+		getShorts(buffer, positions, 2 * common);
+		int i;
+		for (i = 0; i < common; i++) {
+			x[i] -= positions[i];
+			y[i] -= positions[common + i];
+		}
+		// remettre les anciennes positions et options des exceptions
+		getInts(buffer, exceptions, exceptionCount);
+		buffer.position(buffer.position() + 8 * exceptionCount);
+		getPositions(buffer, exceptions, 0, exceptionCount);
+		buffer.get(exceptionOptions, 0, 2 * exceptionCount);
+		for (i = 0; i < exceptionCount; i++) {
+			options[exceptions[i]] = exceptionOptions[exceptionCount + i];
+		}
+		// remettre les particules retirees; les particules ajoutees sont simplement oubliees
+		if (previousCount > count) {
+			getPositions(buffer, null, count, previousCount - count);
+			buffer.get(options, count, previousCount - count);
+		}
+		// lire l'etape et les pressions de l'image precedente, qui finit ou l'image courante commence
+		long previousOffset = currentOffset - previousSize;
+		buffer = map(previousOffset, TrajectoryFormat.FRAME_HEADER_SIZE);
+		int previousType = buffer.getInt();
+		buffer.getInt();
+		step = buffer.getLong();
+		getShorts(map(currentOffset - TrajectoryFormat.getPressureOffsetFromEnd(previousType,
+				previousCount), 2L * previousCount), pressures, previousCount);
+		count = previousCount;
+		nextOffset = currentOffset;
+		currentOffset = previousOffset;
+		frameIndex--;
+		copyTo(frame);
+		return true;
+	}
+
+	// copie la derniere image decodee dans frame, si elle n'est pas nulle
+	private void copyTo(ParticleFrame frame) {
+		if (frame == null) {
+			return;
+		}
+		frame.clear();
+		frame.ensureCapacity(count);
+		int i;
+		for (i = 0; i < count; i++) {
+			frame.add(minimumX + x[i] * quantum, minimumY + y[i] * quantum,
+					pressures[i] * pressureQuantum, options[i]);
+		}
+	}
+
+	// lit un groupe de positions absolues (cellules et decalages) dans les positions des indices
+	// donnes, ou dans les length positions a partir de start si indices est nul
+	private void getPositions(ByteBuffer buffer, int[] indices, int start, int length) {
+		getShorts(buffer, positions, 4 * length);
+		int i;
+		for (i = 0; i < length; i++) {
+			int index = indices == null ? start + i : indices[i];
+			x[index] = (positions[i] << 16) | (positions[length + i] & 0xffff);
+			y[index] = (positions[2 * length + i] << 16) | (positions[3 * length + i] & 0xffff);
+		}
+	}
+
+	// copie des entiers du tampon, d'un seul coup
+	private static void getInts(ByteBuffer buffer, int[] values, int length) {
+		buffer.asIntBuffer().get(values, 0, length);
+		buffer.position(buffer.position() + length * 4);
+	}
+
+	// copie des shorts du tampon, d'un seul coup
+	private static void getShorts(ByteBuffer buffer, short[] values, int length) {
+		buffer.asShortBuffer().get(values, 0, length);
+		buffer.position(buffer.position() + length * 2);
+	}
+
+	// retourne une fenetre du fichier qui contient size octets a partir de offset, placee sur
+	// offset; la fenetre courante est reutilisee si elle les contient. Une nouvelle fenetre est
+	// centree sur les octets demandes, pour servir aussi bien la lecture vers l'avant qu'a reculons
+	private ByteBuffer map(long offset, long size) throws IOException {
+		if (offset < 0 || offset + size > fileSize) {
+			throw new IOException("fin de fichier inattendue.");
+		}
+		if (window == null || offset < windowStart
+				|| offset + size > windowStart + window.capacity()) {
+			long start = Math.max(0, Math.min(offset, offset + size / 2 - WINDOW_SIZE / 2));
+			long length = Math.min(fileSize - start, Math.max(WINDOW_SIZE, offset + size - start));
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("image trop grande: " + size + " octets.");
+			}
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			windowStart = start;
+		}
+		window.limit(window.capacity());
+		window.position((int) (offset - windowStart));
+		return window;
+	}
+
+	// agrandit les tableaux si necessaire, en gardant la derniere image decodee
+	private void ensureCapacity(int capacity, int exceptionCount) {
+		if (x.length < capacity) {
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			pressures = Arrays.copyOf(pressures, capacity);
+			options = Arrays.copyOf(options, capacity);
+			positions = new short[4 * capacity];
+		}
+		if (exceptions.length < exceptionCount) {
+			exceptions = new int[exceptionCount];
+			exceptionOptions = new byte[2 * exceptionCount];
+		}
+	}
+
+	/**
+	 * Ferme le fichier.
+	 *
+	 * @throws IOException Si le fichier ne peut pas etre ferme.
+	 */
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Retourne les dimensions du monde de la simulation enregistree.
+	 *
+	 * @return Dimensions du monde.
+	 */
+	public WorldMatrix getWorld() {
+		return new WorldMatrix(minimumX, minimumY, width, height, width, height);
+	}
+
+	/**
+	 * Retourne les murs de la simulation enregistree.
+	 *
+	 * @return Murs de la simulation.
+	 */
+	public Polygon[] getWalls() {
+		return walls.clone();
+	}
+
+	/**
+	 * Retourne le nombre d'images de la trajectoire.
+	 *
+	 * @return Nombre d'images.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Retourne le nombre d'images cles de la trajectoire.
+	 *
+	 * @return Nombre d'images cles.
+	 */
+	public int getKeyframeCount() {
+		return keyframeOffsets.length;
+	}
+
+	/**
+	 * Retourne le numero de l'image qui correspond a une image cle.
+	 *
+	 * @param keyframe Indice de l'image cle.
+	 * @return Numero de l'image.
+	 */
+	public int getKeyframeFrame(int keyframe) {
+		return keyframeFrames[keyframe];
+	}
+
+	/**
+	 * Retourne le numero de la prochaine image qui sera lue par readFrame().
+	 *
+	 * @return Numero de la prochaine image.
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * Retourne l'etape de la simulation qui correspond a la derniere image lue.
+	 *
+	 * @return Numero de l'etape, ou -1 si aucune image n'a ete lue.
+	 */
+	public long getStep() {
+		return step;
+	}
+}
@@ -0,0 +1,455 @@
+package recording;
+
+import geometry.Polygon;
+import graphics.WorldMatrix;
+
+import java.awt.geom.Point2D;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import listeners.SimulationListener;
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Enregistre la trajectoire de toutes les particules d'une simulation dans un fichier, une image
+ * par etape: position et pression de chaque particule, quantifiees sur 16 bits (voir
+ * TrajectoryFormat). Une image cle, qui peut etre lue seule, est ecrite a intervalle regulier;
+ * les autres images ne gardent que le deplacement de chaque particule depuis l'image precedente.
+ * Quand des particules sont ajoutees ou retirees (voir Emitter et Sink), les particules communes
+ * aux deux images restent en deplacements; seules les particules ajoutees, retirees ou deplacees
+ * d'un indice a l'autre sont gardees telles quelles.
+ *
+ * L'enregistreur est un ecouteur de la simulation: chaque image est prise pendant l'etape, une fois
+ * les particules deplacees. Les images sont accumulees dans un grand tampon et ecrites sur le
+ * disque par gros blocs consecutifs. L'index des images cles est ecrit a la fin du fichier par
+ * close().
+ */
+public class TrajectoryRecorder implements SimulationListener {
+	/**
+	 * Nombre d'images entre deux images cles, par defaut.
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+	/**
+	 * Pas des positions par defaut, en unites physiques.
+	 */
+	public static final double DEFAULT_QUANTUM = 1.0 / 1024;
+
+	/**
+	 * Pas des pressions par defaut.
+	 */
+	public static final double DEFAULT_PRESSURE_QUANTUM = 0.5;
+
+	// taille du tampon d'ecriture, en octets
+	private static final int BUFFER_SIZE = 4 << 20;
+
+	// simulation enregistree
+	private final Simulation simulation;
+
+	// fichier ecrit et tampon d'ecriture
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	// coin du monde et pas de quantification
+	private final double minimumX;
+	private final double minimumY;
+	private final double quantum;
+	private final double pressureQuantum;
+
+	// nombre d'images entre deux images cles
+	private final int keyframeInterval;
+
+	// positions quantifiees de l'image precedente, telles que relues, et de l'image en cours
+	private int previousCount = -1;
+	private int[] previousX = new int[0];
+	private int[] previousY = new int[0];
+	private int[] currentX = new int[0];
+	private int[] currentY = new int[0];
+
+	// valeurs ecrites pour l'image en cours: positions (cellules et decalages, ou deplacements),
+	// pressions et options
+	private short[] positions = new short[0];
+	private short[] pressures = new short[0];
+	private byte[] options = new byte[0];
+
+	// options de l'image precedente
+	private byte[] previousOptions = new byte[0];
+
+	// indices des exceptions de l'image en cours, et leurs nouvelles puis anciennes options
+	private int exceptionCount = 0;
+	private int[] exceptions = new int[0];
+	private byte[] exceptionOptions = new byte[0];
+
+	// taille de l'image precedente
+	private long previousFrameSize = 0;
+
+	// nombre d'images ecrites, et position et numero de chaque image cle
+	private int frameCount = 0;
+	private int keyframeCount = 0;
+	private long[] keyframeOffsets = new long[64];
+	private long[] keyframeFrames = new long[64];
+
+	// nombre d'octets ecrits dans le fichier ou le tampon
+	private long offset = 0;
+
+	// premiere erreur d'ecriture, ou null; l'enregistrement s'arrete a la premiere erreur
+	private IOException error = null;
+
+	/**
+	 * Constructeur principal. Ajoute l'enregistreur comme ecouteur de la simulation.
+	 *
+	 * @param simulation Simulation a enregistrer.
+	 * @param file Fichier a ecrire; il est remplace s'il existe.
+	 * @param keyframeInterval Nombre d'images entre deux images cles.
+	 * @param quantum Pas des positions, en unites physiques.
+	 * @param pressureQuantum Pas des pressions.
+	 * @throws IOException Si le fichier ne peut pas etre ouvert.
+	 */
+	public TrajectoryRecorder(Simulation simulation, File file, int keyframeInterval,
+			double quantum, double pressureQuantum) throws IOException {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("keyframeInterval doit etre positif.");
+		}
+		if (!(quantum > 0) || !(pressureQuantum > 0)) {
+			throw new IllegalArgumentException("les pas doivent etre positifs.");
+		}
+		this.simulation = simulation;
+		this.keyframeInterval = keyframeInterval;
+		this.quantum = quantum;
+		this.pressureQuantum = pressureQuantum;
+		WorldMatrix world = simulation.getWorld();
+		minimumX = world.getMinimumX();
+		minimumY = world.getMinimumY();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(TrajectoryFormat.MAGIC);
+		buffer.putInt(TrajectoryFormat.VERSION);
+		buffer.putDouble(minimumX);
+		buffer.putDouble(minimumY);
+		buffer.putDouble(world.getWidth());
+		buffer.putDouble(world.getHeight());
+		buffer.putDouble(quantum);
+		buffer.putDouble(pressureQuantum);
+		buffer.putInt(keyframeInterval);
+		// murs, pour que la trajectoire puisse etre dessinee seule
+		Polygon[] walls = simulation.getWalls();
+		buffer.putInt(walls.length);
+		offset = TrajectoryFormat.HEADER_SIZE;
+		int i;
+		for (i = 0; i < walls.length; i++) {
+			reserve(4);
+			buffer.putInt(walls[i].getPoints().length);
+			offset += 4;
+		}
+		if (walls.length % 2 != 0) {
+			reserve(4);
+			buffer.putInt(0);
+			offset += 4;
+		}
+		for (i = 0; i < walls.length; i++) {
+			for (Point2D.Double point : walls[i].getPoints()) {
+				reserve(16);
+				buffer.putDouble(point.getX());
+				buffer.putDouble(point.getY());
+				offset += 16;
+			}
+		}
+		simulation.addSimulationListener(this);
+	}
+
+	/**
+	 * Constructeur alternatif. Utilise l'intervalle des images cles et les pas par defaut.
+	 *
+	 * @param simulation Simulation a enregistrer.
+	 * @param file Fichier a ecrire; il est remplace s'il existe.
+	 * @throws IOException Si le fichier ne peut pas etre ouvert.
+	 */
+	public TrajectoryRecorder(Simulation simulation, File file) throws IOException {
+		this(simulation, file, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_QUANTUM,
+				DEFAULT_PRESSURE_QUANTUM);
+	}
+
+	/**
+	 * Enregistre l'image de l'etape en cours. Appelee par la simulation.
+	 */
+	public void frameEntered() {
+		if (error != null) {
+			return;
+		}
+		try {
+			recordFrame();
+		}
+		catch (IOException exception) {
+			error = exception;
+		}
+	}
+
+	// quantifie les particules et ecrit une image cle ou une image delta
+	private void recordFrame() throws IOException {
+		int count = simulation.getParticleCount();
+		ensureCapacity(count);
+		int i = 0;
+		Iterator<Particle> iterator = simulation.getParticleIterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			currentX[i] = quantize(particle.getX() - minimumX);
+			currentY[i] = quantize(particle.getY() - minimumY);
+			pressures[i] = TrajectoryFormat.quantizePressure(particle.getPressure(),
+					pressureQuantum);
+			options[i] = (byte) ((particle.isHighlighted() ? 1 : 0)
+					| (particle.isImportant() ? 2 : 0));
+			i++;
+		}
+		// deplacements des particules communes aux deux images; une particule qui a saute trop loin
+		// ou dont les options ont change est une exception, gardee telle quelle
+		boolean keyframe = previousCount < 0 || frameCount % keyframeInterval == 0;
+		int common = Math.min(count, previousCount);
+		exceptionCount = 0;
+		for (i = 0; i < common && !keyframe; i++) {
+			int dx = currentX[i] - previousX[i];
+			int dy = currentY[i] - previousY[i];
+			if (Math.abs(dx) > TrajectoryFormat.MAXIMUM_DELTA
+					|| Math.abs(dy) > TrajectoryFormat.MAXIMUM_DELTA
+					|| options[i] != previousOptions[i]) {
+				addException(i);
+				dx = 0;
+				dy = 0;
+			}
+			positions[i] = (short) dx;
+			positions[common + i] = (short) dy;
+		}
+		// une image cle est aussi ecrite quand elle n'est pas plus grande que l'image delta
+		int type = TrajectoryFormat.DELTA;
+		long frameSize = TrajectoryFormat.getFrameSize(type, count, previousCount, exceptionCount);
+		if (keyframe || frameSize >= TrajectoryFormat.getFrameSize(TrajectoryFormat.KEYFRAME, count,
+				0, 0)) {
+			type = TrajectoryFormat.KEYFRAME;
+			frameSize = TrajectoryFormat.getFrameSize(type, count, 0, 0);
+			addKeyframe(offset);
+		}
+		// en-tete de l'image
+		reserve(TrajectoryFormat.FRAME_HEADER_SIZE);
+		buffer.putInt(type);
+		buffer.putInt(count);
+		buffer.putLong(simulation.getStepCount() + 1);
+		buffer.putInt(type == TrajectoryFormat.KEYFRAME ? 0 : previousCount);
+		buffer.putInt(type == TrajectoryFormat.KEYFRAME ? 0 : exceptionCount);
+		buffer.putLong(previousFrameSize);
+		offset += TrajectoryFormat.FRAME_HEADER_SIZE;
+		if (type == TrajectoryFormat.KEYFRAME) {
+			putPositions(currentX, currentY, null, 0, count);
+			putShorts(pressures, count);
+			putBytes(options, 0, count);
+		}
+		else {
+			putShorts(positions, 2 * common);
+			// exceptions: indices, nouvelles et anciennes positions, nouvelles et anciennes options
+			putInts(exceptions, exceptionCount);
+			putPositions(currentX, currentY, exceptions, 0, exceptionCount);
+			putPositions(previousX, previousY, exceptions, 0, exceptionCount);
+			for (i = 0; i < exceptionCount; i++) {
+				exceptionOptions[i] = options[exceptions[i]];
+				exceptionOptions[exceptionCount + i] = previousOptions[exceptions[i]];
+			}
+			putBytes(exceptionOptions, 0, 2 * exceptionCount);
+			// particules ajoutees ou retirees a la fin
+			if (count > previousCount) {
+				putPositions(currentX, currentY, null, previousCount, count - previousCount);
+				putBytes(options, previousCount, count - previousCount);
+			}
+			else if (previousCount > count) {
+				putPositions(previousX, previousY, null, count, previousCount - count);
+				putBytes(previousOptions, count, previousCount - count);
+			}
+			putShorts(pressures, count);
+		}
+		previousFrameSize = frameSize;
+		// les positions et les options de cette image sont la reference de la suivante
+		byte[] swapOptions = previousOptions;
+		previousOptions = options;
+		options = swapOptions;
+		int[] swap = previousX;
+		previousX = currentX;
+		currentX = swap;
+		swap = previousY;
+		previousY = currentY;
+		currentY = swap;
+		previousCount = count;
+		frameCount++;
+	}
+
+	// ajoute une particule commune aux exceptions de l'image en cours
+	private void addException(int index) {
+		if (exceptionCount == exceptions.length) {
+			exceptions = Arrays.copyOf(exceptions, Math.max(16, exceptionCount * 2));
+			exceptionOptions = Arrays.copyOf(exceptionOptions, 2 * exceptions.length);
+		}
+		exceptions[exceptionCount] = index;
+		exceptionCount++;
+	}
+
+	// convertit une distance depuis le coin du monde en nombre de pas
+	private int quantize(double distance) {
+		long value = Math.round(distance / quantum);
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+	}
+
+	// ajoute une image cle a l'index
+	private void addKeyframe(long position) {
+		if (keyframeCount == keyframeOffsets.length) {
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+			keyframeFrames = Arrays.copyOf(keyframeFrames, keyframeCount * 2);
+		}
+		keyframeOffsets[keyframeCount] = position;
+		keyframeFrames[keyframeCount] = frameCount;
+		keyframeCount++;
+	}
+
+	// ecrit un groupe de positions absolues (cellules et decalages): les positions des indices
+	// donnes, ou des length positions a partir de start si indices est nul
+	private void putPositions(int[] sourceX, int[] sourceY, int[] indices, int start, int length)
+			throws IOException {
+		int i;
+		for (i = 0; i < length; i++) {
+			int index = indices == null ? start + i : indices[i];
+			positions[i] = (short) (sourceX[index] >> 16);
+			positions[length + i] = (short) sourceX[index];
+			positions[2 * length + i] = (short) (sourceY[index] >> 16);
+			positions[3 * length + i] = (short) sourceY[index];
+		}
+		putShorts(positions, 4 * length);
+	}
+
+	// ecrit des entiers dans le tampon, en le vidant sur le disque chaque fois qu'il est plein
+	private void putInts(int[] values, int count) throws IOException {
+		int written = 0;
+		while (written < count) {
+			if (buffer.remaining() < 4) {
+				flush();
+			}
+			int length = Math.min(count - written, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, written, length);
+			buffer.position(buffer.position() + length * 4);
+			written += length;
+		}
+		offset += count * 4L;
+	}
+
+	// ecrit des shorts dans le tampon, en le vidant sur le disque chaque fois qu'il est plein
+	private void putShorts(short[] values, int count) throws IOException {
+		int written = 0;
+		while (written < count) {
+			if (buffer.remaining() < 2) {
+				flush();
+			}
+			int length = Math.min(count - written, buffer.remaining() / 2);
+			buffer.asShortBuffer().put(values, written, length);
+			buffer.position(buffer.position() + length * 2);
+			written += length;
+		}
+		offset += count * 2L;
+	}
+
+	// ecrit des octets dans le tampon, en le vidant sur le disque chaque fois qu'il est plein
+	private void putBytes(byte[] values, int start, int count) throws IOException {
+		int written = 0;
+		while (written < count) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int length = Math.min(count - written, buffer.remaining());
+			buffer.put(values, start + written, length);
+			written += length;
+		}
+		offset += count;
+	}
+
+	// vide le tampon si moins de size octets sont libres
+	private void reserve(int size) throws IOException {
+		if (buffer.remaining() < size) {
+			flush();
+		}
+	}
+
+	// ecrit le contenu du tampon sur le disque
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	// agrandit les tableaux si necessaire
+	private void ensureCapacity(int count) {
+		if (currentX.length < count) {
+			previousX = Arrays.copyOf(previousX, count);
+			previousY = Arrays.copyOf(previousY, count);
+			previousOptions = Arrays.copyOf(previousOptions, count);
+			currentX = new int[count];
+			currentY = new int[count];
+			positions = new short[4 * count];
+			pressures = new short[count];
+			options = new byte[count];
+		}
+	}
+
+	/**
+	 * Arrete l'enregistrement: retire l'enregistreur de la simulation, ecrit l'index des images
+	 * cles et ferme le fichier. L'appelant doit empecher la simulation d'avancer pendant l'appel.
+	 *
+	 * @throws IOException Si le fichier n'a pas pu etre ecrit.
+	 */
+	public void close() throws IOException {
+		simulation.removeSimulationListener(this);
+		try {
+			if (error != null) {
+				throw error;
+			}
+			long indexOffset = offset;
+			int i;
+			for (i = 0; i < keyframeCount; i++) {
+				reserve(TrajectoryFormat.INDEX_ENTRY_SIZE);
+				buffer.putLong(keyframeOffsets[i]);
+				buffer.putLong(keyframeFrames[i]);
+			}
+			reserve(TrajectoryFormat.TRAILER_SIZE);
+			buffer.putLong(indexOffset);
+			buffer.putInt(keyframeCount);
+			buffer.putInt(frameCount);
+			buffer.putInt(TrajectoryFormat.END_MAGIC);
+			buffer.putInt(0);
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Retourne le nombre d'images enregistrees.
+	 *
+	 * @return Nombre d'images.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Retourne le nombre d'octets enregistres jusqu'a maintenant, sans l'index.
+	 *
+	 * @return Taille des images enregistrees, en octets.
+	 */
+	public long getSize() {
+		return offset;
+	}
+}
@@ -0,0 +1,27 @@
+package scenario;
+
+import geometry.Polygon;
+
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Remplissage du bol: les particules tombent de la moitie superieure du monde dans le bol de
+ * Runner et debordent sur les cotes.
+ */
+class BowlFill extends Scenario {
+	BowlFill() {
+		super("bowl-fill", 2);
+	}
+
+	protected Polygon[] createWalls(double size) {
+		// le bol de Runner, a l'echelle du monde
+		return createBowl(size, size);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		scatter(simulation, random, particleCount, 0, size / 2, size, size / 2);
+	}
+}
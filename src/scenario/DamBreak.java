@@ -0,0 +1,20 @@
+package scenario;
+
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Rupture de barrage: un bloc de fluide au repos contre le mur de gauche s'effondre et traverse le
+ * monde.
+ */
+class DamBreak extends Scenario {
+	DamBreak() {
+		super("dam-break", 1);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		fillRectangle(simulation, random, particleCount, 0, 0, size * 0.5, size * 0.8);
+	}
+}
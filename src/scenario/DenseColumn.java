@@ -0,0 +1,20 @@
+package scenario;
+
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Colonne dense: une colonne etroite et haute de particules serrees, au centre du monde, qui
+ * s'etale en tombant. Chaque particule a beaucoup de voisins au debut.
+ */
+class DenseColumn extends Scenario {
+	DenseColumn() {
+		super("dense-column", 6);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		fillRectangle(simulation, random, particleCount, size * 0.35, 0, size * 0.3, size * 0.75);
+	}
+}
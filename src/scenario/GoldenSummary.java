@@ -0,0 +1,287 @@
+package scenario;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Resume compact de l'etat d'un scenario apres un certain nombre d'etapes, utilise pour verifier
+ * qu'une optimisation du moteur (ordre des calculs, parallelisme...) ne change pas le comportement
+ * du fluide. Le resume contient un histogramme des densites, le centre de masse, l'energie
+ * cinetique et des empreintes des positions des particules, par blocs de particules.
+ *
+ * Les resumes de reference sont produits par le moteur de reference (un seul processus) et gardes
+ * dans un fichier texte, un bloc par scenario. Un resume peut ensuite etre compare a sa reference
+ * de facon exacte (memes bits) ou avec une tolerance.
+ */
+public class GoldenSummary {
+	/**
+	 * Nombre de classes de l'histogramme des densites. Les classes couvrent les densites de 0 a
+	 * deux fois la densite au repos; la derniere recoit aussi les densites plus grandes.
+	 */
+	public static final int HISTOGRAM_SIZE = 20;
+
+	/**
+	 * Nombre d'empreintes de positions: les particules sont separees en autant de blocs, dans
+	 * l'ordre ou elles ont ete ajoutees, pour savoir ou se trouve une difference.
+	 */
+	public static final int HASH_COUNT = 16;
+
+	// nom du scenario, nombre de particules et nombre d'etapes
+	private final String scenarioName;
+	private final int particleCount;
+	private final long stepCount;
+
+	// centre de masse (toutes les particules ont la meme masse)
+	private final double centerX;
+	private final double centerY;
+
+	// energie cinetique, pour une masse de 1 par particule
+	private final double kineticEnergy;
+
+	// nombre de particules dans chaque classe de densite
+	private final int[] densityHistogram;
+
+	// empreinte exacte des positions de chaque bloc de particules
+	private final long[] positionHashes;
+
+	// constructeur utilise par capture et read
+	private GoldenSummary(String scenarioName, int particleCount, long stepCount, double centerX,
+			double centerY, double kineticEnergy, int[] densityHistogram, long[] positionHashes) {
+		this.scenarioName = scenarioName;
+		this.particleCount = particleCount;
+		this.stepCount = stepCount;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.kineticEnergy = kineticEnergy;
+		this.densityHistogram = densityHistogram;
+		this.positionHashes = positionHashes;
+	}
+
+	/**
+	 * Calcule le resume de l'etat courant d'une simulation. La densite de chaque particule est
+	 * retrouvee a partir de sa pression, calculee a la derniere etape.
+	 *
+	 * @param scenarioName Nom du scenario.
+	 * @param simulation Simulation du scenario.
+	 * @param stepCount Nombre d'etapes effectuees.
+	 * @return Resume de l'etat de la simulation.
+	 */
+	public static GoldenSummary capture(String scenarioName, Simulation simulation,
+			long stepCount) {
+		int count = simulation.getParticleCount();
+		double restDensity = simulation.getRestDensity();
+		double stiffness = simulation.getStiffness();
+		double sumX = 0;
+		double sumY = 0;
+		double energy = 0;
+		int[] histogram = new int[HISTOGRAM_SIZE];
+		long[] hashes = new long[HASH_COUNT];
+		int i;
+		for (i = 0; i < HASH_COUNT; i++) {
+			hashes[i] = 17;
+		}
+		i = 0;
+		Iterator<Particle> iterator = simulation.getParticleIterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			sumX += particle.getX();
+			sumY += particle.getY();
+			energy += 0.5 * (particle.getVelocityX() * particle.getVelocityX()
+					+ particle.getVelocityY() * particle.getVelocityY());
+			// densite relative a la densite au repos
+			double density = restDensity + particle.getPressure() / stiffness;
+			int bin = (int) Math.floor(density / (2 * restDensity) * HISTOGRAM_SIZE);
+			histogram[Math.max(0, Math.min(HISTOGRAM_SIZE - 1, bin))]++;
+			int block = (int) ((long) i * HASH_COUNT / count);
+			hashes[block] = hashes[block] * 31 + Double.doubleToLongBits(particle.getX());
+			hashes[block] = hashes[block] * 31 + Double.doubleToLongBits(particle.getY());
+			i++;
+		}
+		return new GoldenSummary(scenarioName, count, stepCount, sumX / count, sumY / count,
+				energy, histogram, hashes);
+	}
+
+	/**
+	 * Compare ce resume a un resume de reference.
+	 *
+	 * En mode exact (tolerance nulle), toutes les valeurs doivent etre identiques bit pour bit. Sinon,
+	 * le centre de masse et l'energie peuvent avoir une erreur relative d'au plus la tolerance, au
+	 * plus une fraction des particules egale a la tolerance peut changer de classe de densite, et les
+	 * empreintes des positions, qui ne servent qu'a la comparaison exacte, sont ignorees.
+	 *
+	 * @param reference Resume de reference.
+	 * @param tolerance Erreur relative permise, ou 0 pour une comparaison exacte.
+	 * @return Description des differences, vide si les resumes concordent.
+	 */
+	public List<String> compareTo(GoldenSummary reference, double tolerance) {
+		if (tolerance < 0) {
+			throw new IllegalArgumentException("tolerance doit etre positive ou nulle.");
+		}
+		List<String> differences = new ArrayList<String>();
+		if (particleCount != reference.particleCount || stepCount != reference.stepCount) {
+			differences.add(String.format("execution differente: %d particules, %d etapes "
+					+ "(reference: %d particules, %d etapes)", particleCount, stepCount,
+					reference.particleCount, reference.stepCount));
+			return differences;
+		}
+		compareValue(differences, "centre de masse x", centerX, reference.centerX, tolerance);
+		compareValue(differences, "centre de masse y", centerY, reference.centerY, tolerance);
+		compareValue(differences, "energie cinetique", kineticEnergy, reference.kineticEnergy,
+				tolerance);
+		// particules qui ont change de classe de densite
+		int moved = 0;
+		int i;
+		for (i = 0; i < HISTOGRAM_SIZE; i++) {
+			moved += Math.abs(densityHistogram[i] - reference.densityHistogram[i]);
+		}
+		moved /= 2;
+		if (moved > tolerance * particleCount) {
+			differences.add(String.format("histogramme des densites: %d particules ont change de "
+					+ "classe", moved));
+		}
+		if (tolerance == 0) {
+			for (i = 0; i < HASH_COUNT; i++) {
+				if (positionHashes[i] != reference.positionHashes[i]) {
+					differences.add(String.format("positions du bloc %d (particules %d a %d)", i,
+							(int) Math.ceil((double) i * particleCount / HASH_COUNT),
+							(int) Math.ceil((double) (i + 1) * particleCount / HASH_COUNT) - 1));
+				}
+			}
+		}
+		return differences;
+	}
+
+	// ajoute une difference si deux valeurs ne concordent pas
+	private static void compareValue(List<String> differences, String name, double value,
+			double reference, double tolerance) {
+		boolean equal;
+		if (tolerance == 0) {
+			equal = Double.doubleToLongBits(value) == Double.doubleToLongBits(reference);
+		}
+		else {
+			equal = Math.abs(value - reference)
+					<= tolerance * Math.max(Math.abs(value), Math.abs(reference));
+		}
+		if (!equal) {
+			differences.add(String.format("%s: %s (reference: %s)", name, value, reference));
+		}
+	}
+
+	/**
+	 * Retourne le nom du scenario resume.
+	 *
+	 * @return Nom du scenario.
+	 */
+	public String getScenarioName() {
+		return scenarioName;
+	}
+
+	/**
+	 * Ecrit des resumes dans un fichier texte, un bloc par scenario. Les nombres reels sont ecrits
+	 * de facon a etre relus exactement.
+	 *
+	 * @param file Fichier a ecrire.
+	 * @param summaries Resumes a ecrire.
+	 * @throws IOException Si le fichier ne peut pas etre ecrit.
+	 */
+	public static void write(File file, List<GoldenSummary> summaries) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			for (GoldenSummary summary : summaries) {
+				writer.println("scenario " + summary.scenarioName);
+				writer.println("particules " + summary.particleCount);
+				writer.println("etapes " + summary.stepCount);
+				writer.println("centre " + summary.centerX + " " + summary.centerY);
+				writer.println("energie " + summary.kineticEnergy);
+				StringBuilder line = new StringBuilder("densites");
+				int i;
+				for (i = 0; i < HISTOGRAM_SIZE; i++) {
+					line.append(' ').append(summary.densityHistogram[i]);
+				}
+				writer.println(line);
+				line = new StringBuilder("positions");
+				for (i = 0; i < HASH_COUNT; i++) {
+					line.append(' ').append(String.format("%016x", summary.positionHashes[i]));
+				}
+				writer.println(line);
+				writer.println();
+			}
+		}
+		finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("erreur d'ecriture dans " + file + ".");
+		}
+	}
+
+	/**
+	 * Lit les resumes ecrits par write().
+	 *
+	 * @param file Fichier a lire.
+	 * @return Resumes, par nom de scenario, dans l'ordre du fichier.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou est mal forme.
+	 */
+	public static Map<String, GoldenSummary> read(File file) throws IOException {
+		Map<String, GoldenSummary> summaries = new LinkedHashMap<String, GoldenSummary>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String name = value(line, "scenario")[0];
+				int count = Integer.parseInt(value(reader.readLine(), "particules")[0]);
+				long steps = Long.parseLong(value(reader.readLine(), "etapes")[0]);
+				String[] center = value(reader.readLine(), "centre");
+				double energy = Double.parseDouble(value(reader.readLine(), "energie")[0]);
+				String[] densities = value(reader.readLine(), "densites");
+				String[] positions = value(reader.readLine(), "positions");
+				if (center.length != 2 || densities.length != HISTOGRAM_SIZE
+						|| positions.length != HASH_COUNT) {
+					throw new IOException("resume mal forme pour " + name + ".");
+				}
+				int[] histogram = new int[HISTOGRAM_SIZE];
+				long[] hashes = new long[HASH_COUNT];
+				int i;
+				for (i = 0; i < HISTOGRAM_SIZE; i++) {
+					histogram[i] = Integer.parseInt(densities[i]);
+				}
+				for (i = 0; i < HASH_COUNT; i++) {
+					hashes[i] = Long.parseUnsignedLong(positions[i], 16);
+				}
+				summaries.put(name, new GoldenSummary(name, count, steps,
+						Double.parseDouble(center[0]), Double.parseDouble(center[1]), energy,
+						histogram, hashes));
+			}
+		}
+		catch (NumberFormatException error) {
+			throw new IOException("nombre invalide dans " + file + ": " + error.getMessage());
+		}
+		finally {
+			reader.close();
+		}
+		return summaries;
+	}
+
+	// retourne les valeurs d'une ligne "cle valeur..." et verifie sa cle
+	private static String[] value(String line, String key) throws IOException {
+		if (line == null || !line.startsWith(key + " ")) {
+			throw new IOException("ligne \"" + key + "\" attendue.");
+		}
+		return line.substring(key.length() + 1).trim().split(" ");
+	}
+}
@@ -0,0 +1,151 @@
+package scenario;
+
+import geometry.Polygon;
+
+/**
+ * Placement de particules sur un reseau hexagonal, avec l'espacement pour lequel les forces de
+ * DensitySolver s'equilibrent a la densite au repos donnee. Un fluide place ainsi est deja presque
+ * au repos: il n'y a pas de grandes pressions aux premieres etapes, contrairement a des particules
+ * placees au hasard.
+ */
+public final class HexLattice {
+	// nombre d'iterations de la recherche de l'espacement
+	private static final int SOLVE_ITERATIONS = 60;
+
+	// rapport entre la distance de deux rangees et l'espacement
+	private static final double ROW_FACTOR = Math.sqrt(3) / 2;
+
+	private HexLattice() {
+	}
+
+	/**
+	 * Retourne la densite d'une particule entouree d'un reseau hexagonal infini.
+	 *
+	 * @param spacing Distance entre deux particules voisines du reseau.
+	 * @param radius Rayon des interactions entre les particules.
+	 * @return Densite de la particule.
+	 */
+	public static double getDensity(double spacing, double radius) {
+		return getSums(spacing, radius)[0];
+	}
+
+	// retourne, pour une particule entouree d'un reseau hexagonal infini, la densite (somme de
+	// q^2), la densite proche (somme de q^3) et les sommes de q * r et de q^2 * r sur ses voisins,
+	// ou q = 1 - r / rayon
+	private static double[] getSums(double spacing, double radius) {
+		double[] sums = new double[4];
+		int rows = (int) Math.ceil(radius / (spacing * ROW_FACTOR));
+		int columns = (int) Math.ceil(radius / spacing) + 1;
+		int row, column;
+		for (row = -rows; row <= rows; row++) {
+			double y = row * spacing * ROW_FACTOR;
+			for (column = -columns; column <= columns; column++) {
+				double x = (column + (row & 1) * 0.5) * spacing;
+				double distance = Math.sqrt(x * x + y * y);
+				// la particule n'est pas sa propre voisine
+				if (distance > 0 && distance <= radius) {
+					double q = 1 - distance / radius;
+					sums[0] += q * q;
+					sums[1] += q * q * q;
+					sums[2] += q * distance;
+					sums[3] += q * q * distance;
+				}
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * Retourne l'espacement du reseau pour lequel le fluide est au repos. Dans DensitySolver,
+	 * chaque voisin a une distance r est deplace selon pression * q + pressionProche * q^2; la
+	 * pression proche repousse toujours, donc le fluide est au repos quand la pression, un peu
+	 * negative, l'equilibre: pression * somme(q * r) + pressionProche * somme(q^2 * r) = 0. Cette
+	 * somme diminue quand l'espacement augmente, donc l'espacement est trouve par bissection.
+	 *
+	 * @param radius Rayon des interactions entre les particules.
+	 * @param restDensity Densite au repos.
+	 * @param stiffness Rigidite.
+	 * @param nearbyStiffness Rigidite proche.
+	 * @return Espacement, entre radius / 100 et radius.
+	 */
+	public static double solveSpacing(double radius, double restDensity, double stiffness,
+			double nearbyStiffness) {
+		double minimum = radius / 100;
+		double maximum = radius;
+		int i;
+		for (i = 0; i < SOLVE_ITERATIONS; i++) {
+			double spacing = (minimum + maximum) / 2;
+			double[] sums = getSums(spacing, radius);
+			double pressure = stiffness * (sums[0] - restDensity);
+			double nearbyPressure = nearbyStiffness * sums[1];
+			if (pressure * sums[2] + nearbyPressure * sums[3] > 0) {
+				minimum = spacing;
+			}
+			else {
+				maximum = spacing;
+			}
+		}
+		return (minimum + maximum) / 2;
+	}
+
+	/**
+	 * Retourne les positions d'un reseau hexagonal qui remplit un rectangle, rangee par rangee a
+	 * partir du bas, en sautant les positions qui sont dans un mur.
+	 *
+	 * @param x x minimal du rectangle.
+	 * @param y y minimal du rectangle.
+	 * @param width Largeur du rectangle.
+	 * @param height Hauteur du rectangle.
+	 * @param spacing Distance entre deux particules voisines.
+	 * @param walls Murs a eviter.
+	 * @param maximumCount Nombre maximal de positions, ou -1 pour remplir tout le rectangle.
+	 * @return Positions, x et y l'une apres l'autre.
+	 */
+	public static double[] getPositions(double x, double y, double width, double height,
+			double spacing, Polygon[] walls, int maximumCount) {
+		if (!(spacing > 0)) {
+			throw new IllegalArgumentException("l'espacement doit etre positif.");
+		}
+		int columns = (int) Math.floor(width / spacing + 0.5);
+		int rows = (int) Math.floor((height - spacing) / (spacing * ROW_FACTOR)) + 1;
+		long capacity = Math.max(0, (long) columns * rows);
+		if (maximumCount >= 0) {
+			capacity = Math.min(capacity, maximumCount);
+		}
+		if (capacity > Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("reseau trop grand.");
+		}
+		double[] positions = new double[(int) capacity * 2];
+		int count = 0;
+		int row, column;
+		for (row = 0; row < rows && count < capacity; row++) {
+			double positionY = y + spacing / 2 + row * spacing * ROW_FACTOR;
+			double offset = (row & 1) * spacing / 2;
+			for (column = 0; column < columns && count < capacity; column++) {
+				double positionX = x + spacing / 2 + offset + column * spacing;
+				if (positionX > x + width || isInWall(positionX, positionY, walls)) {
+					continue;
+				}
+				positions[2 * count] = positionX;
+				positions[2 * count + 1] = positionY;
+				count++;
+			}
+		}
+		if (count * 2 < positions.length) {
+			double[] trimmed = new double[count * 2];
+			System.arraycopy(positions, 0, trimmed, 0, trimmed.length);
+			return trimmed;
+		}
+		return positions;
+	}
+
+	// retourne vrai si une position est dans un des murs
+	private static boolean isInWall(double x, double y, Polygon[] walls) {
+		for (Polygon wall : walls) {
+			if (wall.contains(x, y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
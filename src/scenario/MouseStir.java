@@ -0,0 +1,30 @@
+package scenario;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Brassage a la souris: le fluide remplit le bas du monde et la souris, enfoncee, y decrit des
+ * cercles.
+ */
+class MouseStir extends Scenario {
+	// nombre d'etapes pour un tour de la souris
+	private static final int PERIOD = 100;
+
+	MouseStir() {
+		super("mouse-stir", 4);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		fillRectangle(simulation, random, particleCount, 0, 0, size, size * 0.5);
+	}
+
+	protected Point2D.Double getMousePosition(long step, double size) {
+		double angle = 2 * Math.PI * (step % PERIOD) / PERIOD;
+		return new Point2D.Double(size / 2 + Math.cos(angle) * size / 6,
+				size / 4 + Math.sin(angle) * size / 6);
+	}
+}
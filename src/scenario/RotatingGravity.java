@@ -0,0 +1,34 @@
+package scenario;
+
+import geometry.Vector;
+
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Gravite tournante: le fluide remplit le bas du monde, puis la gravite fait un tour complet en
+ * PERIOD etapes et fait rouler le fluide le long des quatre bords.
+ */
+class RotatingGravity extends Scenario {
+	// nombre d'etapes pour un tour complet de la gravite
+	private static final int PERIOD = 300;
+
+	// norme de la gravite, la meme que celle de Simulation par defaut
+	private static final double GRAVITY_MAGNITUDE = 250;
+
+	RotatingGravity() {
+		super("rotating-gravity", 3);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		fillRectangle(simulation, random, particleCount, 0, 0, size, size * 0.5);
+	}
+
+	protected void applyInputs(Simulation simulation, long step, double size) {
+		// vers le bas a l'etape 0, puis dans le sens antihoraire
+		double angle = -Math.PI / 2 + 2 * Math.PI * (step % PERIOD) / PERIOD;
+		simulation.setGravity(new Vector(Math.cos(angle), Math.sin(angle)).times(GRAVITY_MAGNITUDE));
+	}
+}
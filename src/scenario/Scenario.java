@@ -0,0 +1,306 @@
+package scenario;
+
+import geometry.Polygon;
+import geometry.Rectangle;
+import graphics.WorldMatrix;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Scenario reproductible utilise pour mesurer la performance du moteur: murs, position initiale
+ * des particules et actions scriptees (gravite, souris) a chaque etape. Les positions initiales
+ * sont tirees avec un germe fixe, donc deux executions d'un meme scenario avec le meme nombre de
+ * particules sont identiques, d'une version et d'une machine a l'autre.
+ *
+ * La taille du monde depend du nombre de particules pour que la densite du fluide, et donc le
+ * nombre de voisins par particule, ne change pas quand on fait varier le nombre de particules.
+ */
+public abstract class Scenario {
+	/**
+	 * Duree d'une etape, en secondes (la meme que dans SimulationView).
+	 */
+	public static final double DELTA_T = 0.03;
+
+	/**
+	 * Nombre de particules du scenario de reference (celui de Runner).
+	 */
+	public static final int REFERENCE_PARTICLE_COUNT = 600;
+
+	// cote du monde du scenario de reference
+	private static final double REFERENCE_SIZE = 400;
+
+	// tous les scenarios, dans l'ordre
+	private static final Scenario[] SCENARIOS = {
+			new DamBreak(), new BowlFill(), new RotatingGravity(), new MouseStir(),
+			new SparseRain(), new DenseColumn()
+	};
+
+	// nom du scenario
+	private final String name;
+
+	// germe du generateur des positions initiales
+	private final long seed;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param name Nom du scenario, utilise sur la ligne de commande.
+	 * @param seed Germe du generateur des positions initiales.
+	 */
+	protected Scenario(String name, long seed) {
+		this.name = name;
+		this.seed = seed;
+	}
+
+	/**
+	 * Cree la simulation du scenario, avec ses murs et ses particules a leur position initiale.
+	 *
+	 * @param particleCount Nombre de particules.
+	 * @return Nouvelle simulation.
+	 */
+	public Simulation createSimulation(int particleCount) {
+		if (particleCount < 1) {
+			throw new IllegalArgumentException("particleCount doit etre positif.");
+		}
+		double size = getWorldSize(particleCount);
+		return createSimulation(particleCount, size, size, seed, null);
+	}
+
+	/**
+	 * Cree la simulation du scenario en remplacant la taille du monde, le germe ou les murs, pour
+	 * ne faire varier qu'un parametre d'une mesure a l'autre. Les particules (et les murs du
+	 * scenario) sont places dans le carre en bas a gauche du monde, de cote la plus petite de ses
+	 * dimensions.
+	 *
+	 * @param particleCount Nombre de particules.
+	 * @param width Largeur du monde.
+	 * @param height Hauteur du monde.
+	 * @param seed Germe du generateur des positions initiales.
+	 * @param walls Murs, ou null pour ceux du scenario.
+	 * @return Nouvelle simulation.
+	 */
+	public Simulation createSimulation(int particleCount, double width, double height, long seed,
+			Polygon[] walls) {
+		if (particleCount < 1) {
+			throw new IllegalArgumentException("particleCount doit etre positif.");
+		}
+		if (!(width > 0) || !(height > 0)) {
+			throw new IllegalArgumentException("width et height doivent etre positifs.");
+		}
+		double size = Math.min(width, height);
+		WorldMatrix world = WorldMatrix.getIdentity(width, height);
+		Simulation simulation = new Simulation(world, walls != null ? walls : createWalls(size));
+		placeParticles(simulation, new Random(seed), particleCount, size);
+		return simulation;
+	}
+
+	/**
+	 * Avance la simulation d'une etape, en appliquant d'abord les actions scriptees du scenario.
+	 *
+	 * @param simulation Simulation creee par createSimulation().
+	 * @param step Numero de l'etape, a partir de 0.
+	 */
+	public void step(Simulation simulation, long step) {
+		step(simulation, step, DELTA_T);
+	}
+
+	/**
+	 * Avance la simulation d'une etape d'une autre duree que DELTA_T, en appliquant d'abord les
+	 * actions scriptees du scenario.
+	 *
+	 * @param simulation Simulation creee par createSimulation().
+	 * @param step Numero de l'etape, a partir de 0.
+	 * @param deltaT Duree de l'etape, en secondes.
+	 */
+	public void step(Simulation simulation, long step, double deltaT) {
+		WorldMatrix world = simulation.getWorld();
+		double size = Math.min(world.getWidth(), world.getHeight());
+		applyInputs(simulation, step, size);
+		Point2D.Double mousePosition = getMousePosition(step, size);
+		Point2D.Double previousMousePosition = step == 0 ? null : getMousePosition(step - 1, size);
+		simulation.update(deltaT, mousePosition, previousMousePosition);
+	}
+
+	/**
+	 * Retourne le cote du monde (carre) pour un nombre de particules donne.
+	 *
+	 * @param particleCount Nombre de particules.
+	 * @return Cote du monde, en unites physiques.
+	 */
+	public double getWorldSize(int particleCount) {
+		return REFERENCE_SIZE * Math.sqrt((double) particleCount / REFERENCE_PARTICLE_COUNT);
+	}
+
+	/**
+	 * Retourne les murs du scenario.
+	 *
+	 * @param size Cote du monde.
+	 * @return Murs du scenario.
+	 */
+	protected Polygon[] createWalls(double size) {
+		return new Polygon[0];
+	}
+
+	/**
+	 * Ajoute les particules a la simulation, a leur position initiale.
+	 *
+	 * @param simulation Simulation a remplir.
+	 * @param random Generateur a utiliser pour toutes les valeurs au hasard.
+	 * @param particleCount Nombre de particules.
+	 * @param size Cote du monde.
+	 */
+	protected abstract void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size);
+
+	/**
+	 * Applique les actions scriptees d'une etape (gravite, parametres...) avant qu'elle commence.
+	 *
+	 * @param simulation Simulation du scenario.
+	 * @param step Numero de l'etape.
+	 * @param size Cote du monde.
+	 */
+	protected void applyInputs(Simulation simulation, long step, double size) {
+	}
+
+	/**
+	 * Retourne la position de la souris a une etape, ou null si elle n'interagit pas.
+	 *
+	 * @param step Numero de l'etape.
+	 * @param size Cote du monde.
+	 * @return Position de la souris, ou null.
+	 */
+	protected Point2D.Double getMousePosition(long step, double size) {
+		return null;
+	}
+
+	/**
+	 * Retourne le nom du scenario.
+	 *
+	 * @return Nom du scenario.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Retourne le germe du generateur des positions initiales.
+	 *
+	 * @return Germe du scenario.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Retourne les murs du bol de Runner, a l'echelle d'un monde donne.
+	 *
+	 * @param width Largeur du monde.
+	 * @param height Hauteur du monde.
+	 * @return Murs du bol.
+	 */
+	public static Polygon[] createBowl(double width, double height) {
+		double scaleX = width / 400;
+		double scaleY = height / 400;
+		return new Polygon[] {
+				new Rectangle(100 * scaleX, 200 * scaleY, 200 * scaleX, 20 * scaleY),
+				new Rectangle(100 * scaleX, 200 * scaleY, 20 * scaleX, 100 * scaleY),
+				new Rectangle(280 * scaleX, 200 * scaleY, 20 * scaleX, 100 * scaleY)
+		};
+	}
+
+	/**
+	 * Retourne tous les scenarios.
+	 *
+	 * @return Scenarios, dans l'ordre.
+	 */
+	public static Scenario[] getAll() {
+		return SCENARIOS.clone();
+	}
+
+	/**
+	 * Retourne le scenario qui porte un nom.
+	 *
+	 * @param name Nom du scenario.
+	 * @return Scenario correspondant.
+	 */
+	public static Scenario get(String name) {
+		int i;
+		for (i = 0; i < SCENARIOS.length; i++) {
+			if (SCENARIOS[i].getName().equals(name)) {
+				return SCENARIOS[i];
+			}
+		}
+		throw new IllegalArgumentException("scenario inconnu: " + name + ".");
+	}
+
+	/**
+	 * Retourne le nom de tous les scenarios, separes par des barres verticales.
+	 *
+	 * @return Noms des scenarios.
+	 */
+	public static String getNames() {
+		StringBuilder names = new StringBuilder();
+		int i;
+		for (i = 0; i < SCENARIOS.length; i++) {
+			if (i > 0) {
+				names.append('|');
+			}
+			names.append(SCENARIOS[i].getName());
+		}
+		return names.toString();
+	}
+
+	/**
+	 * Ajoute des particules sur une grille reguliere legerement perturbee qui remplit un rectangle,
+	 * rangee par rangee a partir du bas. Le pas de la grille est choisi pour que le rectangle soit
+	 * rempli.
+	 *
+	 * @param simulation Simulation a remplir.
+	 * @param random Generateur des perturbations.
+	 * @param count Nombre de particules.
+	 * @param x Coin en bas a gauche du rectangle, en x.
+	 * @param y Coin en bas a gauche du rectangle, en y.
+	 * @param width Largeur du rectangle.
+	 * @param height Hauteur du rectangle.
+	 */
+	protected static void fillRectangle(Simulation simulation, Random random, int count, double x,
+			double y, double width, double height) {
+		double spacing = Math.sqrt(width * height / count);
+		int columns = Math.max(1, (int) Math.floor(width / spacing));
+		spacing = width / columns;
+		int i;
+		for (i = 0; i < count; i++) {
+			double particleX = x + (i % columns + 0.5) * spacing;
+			double particleY = y + (i / columns + 0.5) * spacing;
+			// petite perturbation pour qu'aucune distance ne soit exactement la meme
+			particleX += (random.nextDouble() - 0.5) * spacing * 0.2;
+			particleY += (random.nextDouble() - 0.5) * spacing * 0.2;
+			simulation.addParticle(new Particle(particleX, particleY));
+		}
+	}
+
+	/**
+	 * Ajoute des particules a des positions au hasard dans un rectangle.
+	 *
+	 * @param simulation Simulation a remplir.
+	 * @param random Generateur des positions.
+	 * @param count Nombre de particules.
+	 * @param x Coin en bas a gauche du rectangle, en x.
+	 * @param y Coin en bas a gauche du rectangle, en y.
+	 * @param width Largeur du rectangle.
+	 * @param height Hauteur du rectangle.
+	 */
+	protected static void scatter(Simulation simulation, Random random, int count, double x,
+			double y, double width, double height) {
+		int i;
+		for (i = 0; i < count; i++) {
+			double particleX = x + random.nextDouble() * width;
+			double particleY = y + random.nextDouble() * height;
+			simulation.addParticle(new Particle(particleX, particleY));
+		}
+	}
+}
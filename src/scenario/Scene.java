@@ -0,0 +1,701 @@
+package scenario;
+
+import geometry.Polygon;
+import geometry.Rectangle;
+import geometry.Vector;
+import graphics.WorldMatrix;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import simulation.Emitter;
+import simulation.Particle;
+import simulation.Simulation;
+import simulation.Sink;
+
+/**
+ * Description d'une scene de depart: monde, parametres de la simulation, murs et blocs de
+ * particules, lue dans un fichier plutot que codee dans le programme.
+ *
+ * Format texte (une directive par ligne; les lignes vides et celles qui commencent par # sont
+ * ignorees; les parametres absents prennent les valeurs par defaut de Simulation):
+ * <pre>
+ * monde xMin yMin largeur hauteur          (xMin et yMin doivent etre 0)
+ * rayon r
+ * rigidite valeur
+ * rigidite-proche valeur
+ * densite valeur                          (densite au repos)
+ * viscosite valeur
+ * gravite x y
+ * mur x1 y1 x2 y2 x3 y3 ...                (polygone d'au moins trois points)
+ * rectangle x y largeur hauteur            (mur rectangulaire)
+ * bloc x y largeur hauteur particules [germe]
+ * reseau x y largeur hauteur [particules]
+ * buse x y vitesseX vitesseY debit [largeur]  (particules ajoutees par seconde, voir Emitter)
+ * puits x y largeur hauteur                (les particules qui y entrent sont retirees)
+ * surlignees n                             (les n dernieres particules sont mises en evidence)
+ * importante i                             (la particule i est suivie meme en petit)
+ * </pre>
+ * Les particules d'un bloc sont placees au hasard dans son rectangle, avec le germe donne (0 par
+ * defaut): une scene donne toujours les memes positions. Celles d'un reseau sont placees sur un
+ * reseau hexagonal a l'espacement ou le fluide est au repos (voir HexLattice), rangee par rangee a
+ * partir du bas du rectangle, hors des murs, jusqu'au nombre de particules donne ou jusqu'a ce que
+ * le rectangle soit plein. Une scene avec des buses et des puits est un ecoulement continu: le
+ * nombre de particules change au fil des etapes.
+ *
+ * Format binaire (octets en petit-boutiste), ou les particules sont deja placees; il est ecrit par
+ * writeBinary() a partir d'une simulation et relu par load() sans rien generer:
+ * <pre>
+ * int magic ("FLSC"), int version
+ * double xMin, yMin, largeur, hauteur (monde)
+ * double rayon, rigidite, rigidite proche, densite au repos, viscosite, gravite x, gravite y
+ * int particules, int murs
+ * int points[murs], completes par 4 octets si murs est impair
+ * double x, y de chaque point de chaque mur
+ * double x[n], double y[n]
+ * byte options[n] (bit 0: mise en evidence, bit 1: importante)
+ * </pre>
+ *
+ * Le format binaire ne garde que les particules: les buses et les puits d'une simulation ne sont
+ * pas ecrits par writeBinary().
+ *
+ * Dans les deux cas, la simulation est creee avec assez de place pour toutes ses particules, et
+ * les particules y sont ajoutees au fur et a mesure qu'elles sont generees ou lues, sans liste
+ * intermediaire.
+ */
+public class Scene {
+	/**
+	 * Premiers octets d'une scene binaire.
+	 */
+	public static final int MAGIC = 0x464c5343;
+
+	/**
+	 * Version du format binaire ecrit par cette classe.
+	 */
+	public static final int VERSION = 1;
+
+	// taille de l'entete fixe du format binaire, en octets
+	private static final int HEADER_SIZE = 104;
+
+	// nombre de particules lues d'un coup dans le format binaire
+	private static final int CHUNK_SIZE = 8192;
+
+	// bits des options d'une particule
+	private static final byte HIGHLIGHTED = 1;
+	private static final byte IMPORTANT = 2;
+
+	// nom de la scene (fichier ou ressource), pour les messages d'erreur
+	private final String name;
+
+	// dimensions du monde, ou null si elles n'ont pas ete donnees
+	private WorldMatrix world = null;
+
+	// parametres de la simulation
+	private double radius = Simulation.DEFAULT_RADIUS;
+	private double stiffness = Simulation.DEFAULT_STIFFNESS;
+	private double nearbyStiffness = Simulation.DEFAULT_NEARBY_STIFFNESS;
+	private double restDensity = Simulation.DEFAULT_REST_DENSITY;
+	private double viscosity = Simulation.DEFAULT_VISCOSITY;
+	private Vector gravity = Simulation.DEFAULT_GRAVITY_DIRECTION.times(
+			Simulation.DEFAULT_GRAVITY_MAGNITUDE);
+
+	// murs
+	private final ArrayList<Polygon> walls = new ArrayList<Polygon>();
+
+	// blocs de particules: x, y, largeur, hauteur, nombre de particules, germe et type (BLOCK ou
+	// LATTICE) de chacun; le nombre de particules d'un reseau est -1 s'il doit etre rempli
+	private final ArrayList<double[]> blocks = new ArrayList<double[]>();
+
+	// types de blocs
+	private static final int BLOCK = 0;
+	private static final int LATTICE = 1;
+
+	// espacement des reseaux
+	private double latticeSpacing;
+
+	// buses (x, y, vitesse x, vitesse y, debit et largeur) et puits (x, y, largeur et hauteur)
+	private final ArrayList<double[]> emitters = new ArrayList<double[]>();
+	private final ArrayList<double[]> sinks = new ArrayList<double[]>();
+
+	// nombre total de particules
+	private int particleCount = 0;
+
+	// nombre de particules mises en evidence, a la fin, et indice de la particule importante
+	private int highlightedCount = 0;
+	private int importantIndex = -1;
+
+	// cree une scene vide
+	private Scene(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Lit une scene au format texte.
+	 *
+	 * @param file Fichier a lire.
+	 * @return Scene lue.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou contient une erreur.
+	 */
+	public static Scene read(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return read(input, file.getPath());
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Lit une scene au format texte dans une ressource du classpath (par exemple
+	 * "/scenes/bowl.scene").
+	 *
+	 * @param path Chemin de la ressource.
+	 * @return Scene lue.
+	 * @throws IOException Si la ressource n'existe pas ou contient une erreur.
+	 */
+	public static Scene readResource(String path) throws IOException {
+		InputStream input = Scene.class.getResourceAsStream(path);
+		if (input == null) {
+			throw new IOException("ressource introuvable: " + path + ".");
+		}
+		try {
+			return read(input, path);
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Lit une scene au format texte.
+	 *
+	 * @param input Flux a lire; il n'est pas ferme.
+	 * @param name Nom de la scene, pour les messages d'erreur.
+	 * @return Scene lue.
+	 * @throws IOException Si le flux ne peut pas etre lu ou contient une erreur.
+	 */
+	public static Scene read(InputStream input, String name) throws IOException {
+		Scene scene = new Scene(name);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				scene.parse(line.split("\\s+"));
+			}
+			catch (NumberFormatException error) {
+				throw new IOException(name + ", ligne " + lineNumber + ": nombre invalide ("
+						+ error.getMessage() + ").");
+			}
+			catch (IllegalArgumentException error) {
+				throw new IOException(name + ", ligne " + lineNumber + ": " + error.getMessage());
+			}
+		}
+		if (scene.world == null) {
+			throw new IOException(name + ": le monde (monde xMin yMin largeur hauteur) manque.");
+		}
+		try {
+			scene.countLatticeParticles();
+		}
+		catch (IllegalArgumentException error) {
+			throw new IOException(name + ": " + error.getMessage());
+		}
+		if (scene.highlightedCount > scene.particleCount
+				|| scene.importantIndex >= scene.particleCount) {
+			throw new IOException(name + ": surlignees ou importante depasse le nombre de "
+					+ "particules (" + scene.particleCount + ").");
+		}
+		return scene;
+	}
+
+	// verifie que le monde commence a l'origine: la grille des voisins et les bords du monde
+	// (ParticleGrid et DistanceField) supposent que le coin inferieur gauche est en (0, 0)
+	private static void checkOrigin(double minimumX, double minimumY) {
+		if (minimumX != 0 || minimumY != 0) {
+			throw new IllegalArgumentException("le monde doit commencer en 0 0, pas en "
+					+ minimumX + " " + minimumY + ".");
+		}
+	}
+
+	// lit une directive
+	private void parse(String[] values) {
+		String keyword = values[0];
+		if (keyword.equals("monde")) {
+			double[] numbers = numbers(values, 4, 4);
+			if (!(numbers[2] > 0) || !(numbers[3] > 0)) {
+				throw new IllegalArgumentException("le monde doit avoir une taille positive.");
+			}
+			checkOrigin(numbers[0], numbers[1]);
+			world = new WorldMatrix(numbers[0], numbers[1], numbers[2], numbers[3], numbers[2],
+					numbers[3]);
+		}
+		else if (keyword.equals("rayon")) {
+			radius = numbers(values, 1, 1)[0];
+			if (!(radius > 0)) {
+				throw new IllegalArgumentException("le rayon doit etre positif.");
+			}
+		}
+		else if (keyword.equals("rigidite")) {
+			stiffness = numbers(values, 1, 1)[0];
+		}
+		else if (keyword.equals("rigidite-proche")) {
+			nearbyStiffness = numbers(values, 1, 1)[0];
+		}
+		else if (keyword.equals("densite")) {
+			restDensity = numbers(values, 1, 1)[0];
+		}
+		else if (keyword.equals("viscosite")) {
+			viscosity = numbers(values, 1, 1)[0];
+		}
+		else if (keyword.equals("gravite")) {
+			double[] numbers = numbers(values, 2, 2);
+			gravity = new Vector(numbers[0], numbers[1]);
+		}
+		else if (keyword.equals("mur")) {
+			double[] numbers = numbers(values, 6, Integer.MAX_VALUE);
+			if (numbers.length % 2 != 0) {
+				throw new IllegalArgumentException("un mur demande des paires de coordonnees.");
+			}
+			Point2D.Double[] points = new Point2D.Double[numbers.length / 2];
+			int i;
+			for (i = 0; i < points.length; i++) {
+				points[i] = new Point2D.Double(numbers[2 * i], numbers[2 * i + 1]);
+			}
+			walls.add(new Polygon(points));
+		}
+		else if (keyword.equals("rectangle")) {
+			double[] numbers = numbers(values, 4, 4);
+			walls.add(new Rectangle(numbers[0], numbers[1], numbers[2], numbers[3]));
+		}
+		else if (keyword.equals("bloc")) {
+			double[] numbers = numbers(values, 5, 6);
+			double count = numbers[4];
+			if (count < 0 || count != Math.floor(count)
+					|| particleCount + count > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("nombre de particules invalide.");
+			}
+			blocks.add(new double[] {numbers[0], numbers[1], numbers[2], numbers[3], count,
+					numbers.length > 5 ? numbers[5] : 0, BLOCK});
+			particleCount += (int) count;
+		}
+		else if (keyword.equals("reseau")) {
+			double[] numbers = numbers(values, 4, 5);
+			double count = numbers.length > 4 ? numbers[4] : -1;
+			if (numbers.length > 4 && (count < 0 || count != Math.floor(count)
+					|| count > Integer.MAX_VALUE - 8)) {
+				throw new IllegalArgumentException("nombre de particules invalide.");
+			}
+			// le nombre de particules est connu une fois les murs et les parametres lus
+			blocks.add(new double[] {numbers[0], numbers[1], numbers[2], numbers[3], count, 0,
+					LATTICE});
+		}
+		else if (keyword.equals("buse")) {
+			double[] numbers = numbers(values, 5, 6);
+			if (!(numbers[4] >= 0) || (numbers.length > 5 && !(numbers[5] >= 0))) {
+				throw new IllegalArgumentException("le debit et la largeur doivent etre positifs.");
+			}
+			emitters.add(new double[] {numbers[0], numbers[1], numbers[2], numbers[3], numbers[4],
+					numbers.length > 5 ? numbers[5] : 0});
+		}
+		else if (keyword.equals("puits")) {
+			double[] numbers = numbers(values, 4, 4);
+			if (!(numbers[2] > 0) || !(numbers[3] > 0)) {
+				throw new IllegalArgumentException("le puits doit avoir une taille positive.");
+			}
+			sinks.add(numbers);
+		}
+		else if (keyword.equals("surlignees")) {
+			highlightedCount = (int) numbers(values, 1, 1)[0];
+			if (highlightedCount < 0) {
+				throw new IllegalArgumentException("surlignees doit etre positif.");
+			}
+		}
+		else if (keyword.equals("importante")) {
+			importantIndex = (int) numbers(values, 1, 1)[0];
+		}
+		else {
+			throw new IllegalArgumentException("directive inconnue: " + keyword + ".");
+		}
+	}
+
+	// calcule l'espacement des reseaux et leur nombre de particules
+	private void countLatticeParticles() {
+		latticeSpacing = HexLattice.solveSpacing(radius, restDensity, stiffness, nearbyStiffness);
+		Polygon[] wallArray = walls.toArray(new Polygon[walls.size()]);
+		for (double[] block : blocks) {
+			if (block[6] == LATTICE) {
+				int count = HexLattice.getPositions(block[0], block[1], block[2], block[3],
+						latticeSpacing, wallArray, (int) block[4]).length / 2;
+				if (particleCount + (long) count > Integer.MAX_VALUE - 8) {
+					throw new IllegalArgumentException("trop de particules.");
+				}
+				block[4] = count;
+				particleCount += count;
+			}
+		}
+	}
+
+	// lit les nombres qui suivent une directive
+	private static double[] numbers(String[] values, int minimum, int maximum) {
+		int count = values.length - 1;
+		if (count < minimum || count > maximum) {
+			throw new IllegalArgumentException("mauvais nombre de valeurs pour " + values[0] + ".");
+		}
+		double[] numbers = new double[count];
+		int i;
+		for (i = 0; i < count; i++) {
+			numbers[i] = Double.parseDouble(values[i + 1]);
+		}
+		return numbers;
+	}
+
+	/**
+	 * Cree la simulation decrite par la scene, avec ses murs et ses particules.
+	 *
+	 * @return Nouvelle simulation.
+	 */
+	public Simulation createSimulation() {
+		Polygon[] wallArray = walls.toArray(new Polygon[walls.size()]);
+		Simulation simulation = new Simulation(world, radius, stiffness, nearbyStiffness,
+				restDensity, viscosity, gravity, wallArray);
+		// generer les particules directement dans la simulation
+		simulation.ensureCapacity(particleCount);
+		int index = 0;
+		int i;
+		for (double[] block : blocks) {
+			int count = (int) block[4];
+			if (block[6] == LATTICE) {
+				double[] positions = HexLattice.getPositions(block[0], block[1], block[2],
+						block[3], latticeSpacing, wallArray, count);
+				for (i = 0; i < count; i++) {
+					addParticle(simulation, positions[2 * i], positions[2 * i + 1],
+							index >= particleCount - highlightedCount, index == importantIndex);
+					index++;
+				}
+				continue;
+			}
+			Random random = new Random((long) block[5]);
+			for (i = 0; i < count; i++) {
+				double x = block[0] + random.nextDouble() * block[2];
+				double y = block[1] + random.nextDouble() * block[3];
+				addParticle(simulation, x, y, index >= particleCount - highlightedCount,
+						index == importantIndex);
+				index++;
+			}
+		}
+		for (double[] emitter : emitters) {
+			simulation.addEmitter(new Emitter(emitter[0], emitter[1], emitter[2], emitter[3],
+					emitter[5], emitter[4]));
+		}
+		for (double[] sink : sinks) {
+			simulation.addSink(new Sink(sink[0], sink[1], sink[2], sink[3]));
+		}
+		return simulation;
+	}
+
+	// ajoute une particule a la simulation
+	private static void addParticle(Simulation simulation, double x, double y,
+			boolean highlighted, boolean important) {
+		Particle particle = new Particle(x, y, highlighted);
+		if (important) {
+			particle.setImportant(true);
+		}
+		simulation.addParticle(particle);
+	}
+
+	/**
+	 * Cree la simulation decrite par un fichier de scene, au format texte ou binaire.
+	 *
+	 * @param file Fichier a lire.
+	 * @return Nouvelle simulation.
+	 * @throws IOException Si le fichier ne peut pas etre lu ou contient une erreur.
+	 */
+	public static Simulation load(File file) throws IOException {
+		if (isBinary(file)) {
+			return loadBinary(file);
+		}
+		return read(file).createSimulation();
+	}
+
+	// retourne vrai si le fichier commence par les octets d'une scene binaire
+	private static boolean isBinary(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			return !buffer.hasRemaining() && buffer.getInt(0) == MAGIC;
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	// cree la simulation d'une scene binaire, en lisant les particules par paquets
+	private static Simulation loadBinary(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException(file + " n'est pas une scene binaire.");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			// entete
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file + " n'est pas une scene binaire.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("version de scene non supportee: " + version + ".");
+			}
+			double minimumX = buffer.getDouble();
+			double minimumY = buffer.getDouble();
+			double width = buffer.getDouble();
+			double height = buffer.getDouble();
+			try {
+				checkOrigin(minimumX, minimumY);
+			}
+			catch (IllegalArgumentException error) {
+				throw new IOException(file + ": " + error.getMessage());
+			}
+			WorldMatrix world = new WorldMatrix(minimumX, minimumY, width, height, width, height);
+			double radius = buffer.getDouble();
+			double stiffness = buffer.getDouble();
+			double nearbyStiffness = buffer.getDouble();
+			double restDensity = buffer.getDouble();
+			double viscosity = buffer.getDouble();
+			Vector gravity = new Vector(buffer.getDouble(), buffer.getDouble());
+			int count = buffer.getInt();
+			int wallCount = buffer.getInt();
+			if (count < 0 || wallCount < 0 || wallCount > size / 4) {
+				throw new IOException("scene corrompue: " + file + ".");
+			}
+			// murs
+			int[] pointCounts = new int[wallCount];
+			long pointTotal = 0;
+			int i, j;
+			for (i = 0; i < wallCount; i++) {
+				pointCounts[i] = buffer.getInt();
+				if (pointCounts[i] < 3) {
+					throw new IOException("scene corrompue: " + file + ".");
+				}
+				pointTotal += pointCounts[i];
+			}
+			if (wallCount % 2 != 0) {
+				buffer.getInt();
+			}
+			if (size != getFileSize(count, wallCount, pointTotal)) {
+				throw new IOException("scene tronquee ou corrompue: " + file + ".");
+			}
+			Polygon[] walls = new Polygon[wallCount];
+			for (i = 0; i < wallCount; i++) {
+				Point2D.Double[] points = new Point2D.Double[pointCounts[i]];
+				for (j = 0; j < points.length; j++) {
+					points[j] = new Point2D.Double(buffer.getDouble(), buffer.getDouble());
+				}
+				walls[i] = new Polygon(points);
+			}
+			Simulation simulation = new Simulation(world, radius, stiffness, nearbyStiffness,
+					restDensity, viscosity, gravity, walls);
+			// particules, par paquets: x, y et options sont dans trois tableaux separes
+			simulation.ensureCapacity(count);
+			int xStart = buffer.position();
+			int yStart = xStart + count * 8;
+			int optionsStart = yStart + count * 8;
+			double[] x = new double[Math.min(count, CHUNK_SIZE)];
+			double[] y = new double[x.length];
+			byte[] options = new byte[x.length];
+			int start;
+			for (start = 0; start < count; start += CHUNK_SIZE) {
+				int length = Math.min(CHUNK_SIZE, count - start);
+				buffer.position(xStart + start * 8);
+				buffer.asDoubleBuffer().get(x, 0, length);
+				buffer.position(yStart + start * 8);
+				buffer.asDoubleBuffer().get(y, 0, length);
+				buffer.position(optionsStart + start);
+				buffer.get(options, 0, length);
+				for (i = 0; i < length; i++) {
+					addParticle(simulation, x[i], y[i], (options[i] & HIGHLIGHTED) != 0,
+							(options[i] & IMPORTANT) != 0);
+				}
+			}
+			return simulation;
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Ecrit l'etat initial d'une simulation (monde, parametres, murs et positions des particules)
+	 * dans une scene binaire, qui est remplacee si elle existe. Les vitesses et le nombre
+	 * d'etapes ne sont pas gardes; pour reprendre une simulation, utiliser Checkpoint.
+	 *
+	 * @param simulation Simulation a ecrire.
+	 * @param file Fichier a ecrire.
+	 * @throws IOException Si le fichier ne peut pas etre ecrit.
+	 */
+	public static void writeBinary(Simulation simulation, File file) throws IOException {
+		Polygon[] walls = simulation.getWalls();
+		int count = simulation.getParticleCount();
+		long pointTotal = 0;
+		for (Polygon wall : walls) {
+			pointTotal += wall.getPoints().length;
+		}
+		long size = getFileSize(count, walls.length, pointTotal);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("scene trop grande: " + size + " octets.");
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			// entete
+			WorldMatrix world = simulation.getWorld();
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putDouble(world.getMinimumX());
+			buffer.putDouble(world.getMinimumY());
+			buffer.putDouble(world.getWidth());
+			buffer.putDouble(world.getHeight());
+			buffer.putDouble(simulation.getRadius());
+			buffer.putDouble(simulation.getStiffness());
+			buffer.putDouble(simulation.getNearbyStiffness());
+			buffer.putDouble(simulation.getRestDensity());
+			buffer.putDouble(simulation.getViscosity());
+			buffer.putDouble(simulation.getGravity().getX());
+			buffer.putDouble(simulation.getGravity().getY());
+			buffer.putInt(count);
+			buffer.putInt(walls.length);
+			// murs
+			for (Polygon wall : walls) {
+				buffer.putInt(wall.getPoints().length);
+			}
+			if (walls.length % 2 != 0) {
+				buffer.putInt(0);
+			}
+			for (Polygon wall : walls) {
+				for (Point2D.Double point : wall.getPoints()) {
+					buffer.putDouble(point.getX());
+					buffer.putDouble(point.getY());
+				}
+			}
+			// particules: x, y et options, chacun dans sa partie du fichier
+			int xStart = buffer.position();
+			DoubleBuffer xs = buffer.asDoubleBuffer();
+			buffer.position(xStart + count * 8);
+			DoubleBuffer ys = buffer.asDoubleBuffer();
+			buffer.position(xStart + count * 16);
+			Iterator<Particle> iterator = simulation.getParticleIterator();
+			while (iterator.hasNext()) {
+				Particle particle = iterator.next();
+				xs.put(particle.getX());
+				ys.put(particle.getY());
+				buffer.put((byte) ((particle.isHighlighted() ? HIGHLIGHTED : 0)
+						| (particle.isImportant() ? IMPORTANT : 0)));
+			}
+			buffer.force();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	// retourne la taille d'une scene binaire
+	private static long getFileSize(int particleCount, int wallCount, long pointTotal) {
+		return HEADER_SIZE + (wallCount + wallCount % 2) * 4L + pointTotal * 16
+				+ particleCount * 17L;
+	}
+
+	/**
+	 * Retourne une description complete de la scene (monde, parametres, murs, blocs, buses, puits
+	 * et options des particules): deux scenes qui ont la meme description creent la meme simulation.
+	 *
+	 * @return Description de la scene.
+	 */
+	public String getKey() {
+		StringBuilder key = new StringBuilder();
+		key.append("monde ").append(world.getMinimumX()).append(' ').append(world.getMinimumY())
+				.append(' ').append(world.getWidth()).append(' ').append(world.getHeight());
+		key.append("; parametres ").append(radius).append(' ').append(stiffness).append(' ')
+				.append(nearbyStiffness).append(' ').append(restDensity).append(' ')
+				.append(viscosity).append(' ').append(gravity.getX()).append(' ')
+				.append(gravity.getY());
+		for (Polygon wall : walls) {
+			key.append("; mur");
+			for (Point2D.Double point : wall.getPoints()) {
+				key.append(' ').append(point.getX()).append(' ').append(point.getY());
+			}
+		}
+		for (double[] block : blocks) {
+			key.append(block[6] == LATTICE ? "; reseau" : "; bloc");
+			for (double value : block) {
+				key.append(' ').append(value);
+			}
+		}
+		for (double[] emitter : emitters) {
+			key.append("; buse");
+			for (double value : emitter) {
+				key.append(' ').append(value);
+			}
+		}
+		for (double[] sink : sinks) {
+			key.append("; puits");
+			for (double value : sink) {
+				key.append(' ').append(value);
+			}
+		}
+		key.append("; options ").append(highlightedCount).append(' ').append(importantIndex);
+		return key.toString();
+	}
+
+	/**
+	 * Retourne le monde de la scene.
+	 *
+	 * @return Dimensions du monde.
+	 */
+	public WorldMatrix getWorld() {
+		return world;
+	}
+
+	/**
+	 * Retourne le nombre de particules de la scene.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public int getParticleCount() {
+		return particleCount;
+	}
+
+	/**
+	 * Retourne le nom de la scene (fichier ou ressource).
+	 *
+	 * @return Nom de la scene.
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,25 @@
+package scenario;
+
+import java.util.Random;
+
+import simulation.Simulation;
+
+/**
+ * Pluie clairsemee: peu de particules par unite de surface, reparties au hasard dans tout le monde,
+ * qui tombent une a une. Le monde est deux fois plus grand que pour les autres scenarios, donc la
+ * plupart des cellules de la grille sont vides.
+ */
+class SparseRain extends Scenario {
+	SparseRain() {
+		super("sparse-rain", 5);
+	}
+
+	public double getWorldSize(int particleCount) {
+		return 2 * super.getWorldSize(particleCount);
+	}
+
+	protected void placeParticles(Simulation simulation, Random random, int particleCount,
+			double size) {
+		scatter(simulation, random, particleCount, 0, 0, size, size);
+	}
+}
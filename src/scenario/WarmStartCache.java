@@ -0,0 +1,235 @@
+package scenario;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import listeners.WarmStartListener;
+
+import simulation.Checkpoint;
+import simulation.Simulation;
+
+/**
+ * Cache d'etats de depart deja relaxes: pour chaque scene, la simulation est avancee une fois
+ * pendant un nombre fixe d'etapes, sans souris, pour que le fluide se depose, et l'etat obtenu est
+ * garde (voir Checkpoint). Les simulations creees ensuite pour la meme scene partent de cet etat
+ * au lieu de refaire la relaxation, dont les premieres etapes sont les plus lentes et les plus
+ * instables.
+ *
+ * Les etats sont gardes en memoire et, si un dossier est donne, dans des fichiers nommes d'apres
+ * une empreinte de la scene (voir Scene.getKey()), du nombre d'etapes de relaxation et des
+ * versions du moteur et du format des sauvegardes, pour etre reutilises d'une execution a l'autre
+ * sans jamais reprendre un etat calcule par une autre version.
+ *
+ * Chaque scene a sa propre tache de relaxation, faite hors de tout verrou: un appelant n'attend
+ * que la relaxation de sa scene, jamais celle d'une autre scene preparee en arriere-plan. Une
+ * interface utilise createSimulationLater(), qui ne l'arrete jamais pendant la relaxation.
+ */
+public class WarmStartCache {
+	/**
+	 * Nombre d'etapes de relaxation par defaut.
+	 */
+	public static final int DEFAULT_RELAXATION_STEPS = 200;
+
+	/**
+	 * Version du moteur dans les noms des fichiers: a incrementer quand un changement de
+	 * Simulation change le resultat de la relaxation, pour ne pas reprendre les anciens etats.
+	 */
+	public static final int SOLVER_VERSION = 1;
+
+	// dossier des fichiers, ou null pour ne garder les etats qu'en memoire
+	private final File directory;
+
+	// nombre d'etapes de relaxation
+	private final int relaxationSteps;
+
+	// processus qui prepare les scenes en arriere-plan, une a la fois, pour ne pas prendre le
+	// processeur a l'interface
+	private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(
+			new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "warm-start");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	// taches qui lisent ou calculent les etats relaxes, par description de scene
+	private final ConcurrentHashMap<String, FutureTask<Checkpoint>> checkpoints =
+			new ConcurrentHashMap<String, FutureTask<Checkpoint>>();
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param directory Dossier dans lequel garder les etats, ou null pour ne les garder qu'en
+	 * memoire; il est cree au besoin.
+	 * @param relaxationSteps Nombre d'etapes de relaxation.
+	 */
+	public WarmStartCache(File directory, int relaxationSteps) {
+		if (relaxationSteps < 0) {
+			throw new IllegalArgumentException("relaxationSteps doit etre positif.");
+		}
+		this.directory = directory;
+		this.relaxationSteps = relaxationSteps;
+	}
+
+	/**
+	 * Cree une simulation de la scene a partir de son etat relaxe, qui est calcule s'il n'est pas
+	 * deja dans le cache.
+	 *
+	 * @param scene Scene de la simulation.
+	 * @return Nouvelle simulation, dans l'etat relaxe.
+	 * @throws IOException Si l'etat ne peut pas etre lu ou ecrit dans le dossier du cache.
+	 */
+	public Simulation createSimulation(Scene scene) throws IOException {
+		Checkpoint checkpoint = getCheckpoint(scene);
+		// restore() calcule une seule fois les indices des voisins, dans la copie partagee
+		synchronized (checkpoint) {
+			return checkpoint.restore();
+		}
+	}
+
+	/**
+	 * Cree en arriere-plan une simulation de la scene a partir de son etat relaxe, qui est calcule
+	 * s'il n'est pas deja dans le cache, puis la donne a l'ecouteur. L'appelant n'attend jamais.
+	 *
+	 * @param scene Scene de la simulation.
+	 * @param listener Ecouteur qui recoit la simulation, ou l'erreur, dans le processus du cache.
+	 */
+	public void createSimulationLater(final Scene scene, final WarmStartListener listener) {
+		prefetcher.execute(new Runnable() {
+			public void run() {
+				Simulation simulation;
+				try {
+					simulation = createSimulation(scene);
+				}
+				catch (IOException error) {
+					listener.relaxationFailed(scene, error);
+					return;
+				}
+				listener.simulationReady(scene, simulation);
+			}
+		});
+	}
+
+	/**
+	 * Calcule en arriere-plan l'etat relaxe d'une scene, s'il n'est pas deja dans le cache, pour
+	 * que le prochain appel a createSimulation() n'ait pas a attendre la relaxation.
+	 *
+	 * @param scene Scene a preparer.
+	 */
+	public void prefetch(Scene scene) {
+		prefetcher.execute(getTask(scene));
+	}
+
+	// retourne la tache de la scene, creee au besoin, sans la lancer
+	private FutureTask<Checkpoint> getTask(final Scene scene) {
+		String key = scene.getKey();
+		FutureTask<Checkpoint> task = checkpoints.get(key);
+		if (task == null) {
+			FutureTask<Checkpoint> created = new FutureTask<Checkpoint>(new Callable<Checkpoint>() {
+				public Checkpoint call() throws IOException {
+					return loadCheckpoint(scene);
+				}
+			});
+			task = checkpoints.putIfAbsent(key, created);
+			if (task == null) {
+				task = created;
+			}
+		}
+		return task;
+	}
+
+	// retourne l'etat relaxe d'une scene; si sa tache n'a pas commence (pas encore creee, ou en
+	// attente derriere d'autres scenes preparees en arriere-plan), l'appelant la fait lui-meme,
+	// sinon il attend son resultat
+	private Checkpoint getCheckpoint(Scene scene) throws IOException {
+		String key = scene.getKey();
+		FutureTask<Checkpoint> task = getTask(scene);
+		task.run();
+		try {
+			return task.get();
+		}
+		catch (InterruptedException error) {
+			Thread.currentThread().interrupt();
+			throw new IOException("relaxation interrompue.");
+		}
+		catch (ExecutionException error) {
+			// oublier la tache ratee, pour que le prochain appel reessaie
+			checkpoints.remove(key, task);
+			if (error.getCause() instanceof IOException) {
+				throw (IOException) error.getCause();
+			}
+			throw new RuntimeException(error.getCause());
+		}
+	}
+
+	// lit l'etat relaxe d'une scene dans le dossier, ou le calcule et l'y ecrit
+	private Checkpoint loadCheckpoint(Scene scene) throws IOException {
+		String key = scene.getKey();
+		Checkpoint checkpoint = null;
+		File file = null;
+		if (directory != null) {
+			file = new File(directory, String.format("warm-%016x.ckpt", hash("moteur "
+					+ SOLVER_VERSION + ", sauvegarde " + Checkpoint.VERSION + "; " + key
+					+ "; relaxation " + relaxationSteps + " " + Scenario.DELTA_T)));
+			if (file.isFile()) {
+				checkpoint = Checkpoint.read(file);
+			}
+		}
+		if (checkpoint == null) {
+			checkpoint = relax(scene);
+			if (file != null) {
+				if (!directory.isDirectory() && !directory.mkdirs()) {
+					throw new IOException("impossible de creer le dossier " + directory + ".");
+				}
+				// ecrire sous un nom temporaire, pour qu'un fichier .ckpt soit toujours complet
+				File temporary = new File(directory, file.getName() + ".tmp");
+				checkpoint.write(temporary);
+				if (!temporary.renameTo(file)) {
+					throw new IOException("impossible de renommer " + temporary + ".");
+				}
+			}
+		}
+		return checkpoint;
+	}
+
+	// fait avancer une simulation de la scene pendant les etapes de relaxation et garde son etat
+	private Checkpoint relax(Scene scene) {
+		Simulation simulation = scene.createSimulation();
+		int i;
+		for (i = 0; i < relaxationSteps; i++) {
+			simulation.update(Scenario.DELTA_T, null, null);
+		}
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.copyFrom(simulation);
+		return checkpoint;
+	}
+
+	// empreinte de 64 bits (FNV-1a) d'une description
+	private static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		int i;
+		for (i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Retourne le nombre d'etapes de relaxation.
+	 *
+	 * @return Nombre d'etapes de relaxation.
+	 */
+	public int getRelaxationSteps() {
+		return relaxationSteps;
+	}
+}
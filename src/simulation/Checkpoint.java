@@ -0,0 +1,594 @@
+package simulation;
+
+import geometry.Polygon;
+import geometry.Vector;
+import graphics.WorldMatrix;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Copie complete de l'etat d'une simulation (monde, parametres, murs, nombre d'etapes,
+ * particules, buses et puits), qui peut etre ecrite dans un fichier binaire et relue pour
+ * reprendre la simulation la ou elle etait. Les voisins trouves a la derniere etape, qu'utilise la
+ * viscosite de l'etape suivante, sont aussi gardes: une simulation restauree avance exactement
+ * comme l'originale.
+ *
+ * Les valeurs des particules sont gardees dans un tableau par champ (x, y, vitesse...), dans
+ * l'ordre des particules de la simulation. Le fichier contient les memes tableaux, l'un apres
+ * l'autre: il est ecrit et lu a travers un MappedByteBuffer, et chaque tableau est copie d'un seul
+ * coup, sans decoder les particules une a une.
+ *
+ * Format (version 2, octets en petit-boutiste; la version 1, encore lue, s'arrete aux options):
+ * <pre>
+ * int magic ("FLCP"), int version, long etapes
+ * double xMin, yMin, largeur, hauteur (monde)
+ * double rayon, rigidite, rigidite proche, densite au repos, viscosite, gravite x, gravite y
+ * int particules, int murs
+ * int points[murs], completes par 4 octets si murs est impair
+ * double x, y de chaque point de chaque mur
+ * double x[n], y[n], xPrecedent[n], yPrecedent[n], vitesseX[n], vitesseY[n], pression[n]
+ * int voisins[n] (nombre de voisins de chaque particule)
+ * int indices des voisins de chaque particule, l'une apres l'autre
+ * byte options[n] (bit 0: mise en evidence, bit 1: importante)
+ * int buses, int puits
+ * pour chaque buse: double x, y, vitesse x, vitesse y, largeur, debit, fraction en attente,
+ * long particules ajoutees
+ * pour chaque puits: double x, y, largeur, hauteur, long particules retirees
+ * </pre>
+ */
+public class Checkpoint {
+	/**
+	 * Premiers octets d'un fichier de sauvegarde.
+	 */
+	public static final int MAGIC = 0x464c4350;
+
+	/**
+	 * Version du format ecrit par cette classe.
+	 */
+	public static final int VERSION = 2;
+
+	// taille de l'entete fixe, en octets
+	private static final int HEADER_SIZE = 112;
+
+	// taille de l'entete des buses et des puits et taille de chacun, en octets
+	private static final int FLOW_HEADER_SIZE = 8;
+	private static final int EMITTER_SIZE = 64;
+	private static final int SINK_SIZE = 40;
+
+	// nombre de tableaux de nombres reels par particule
+	private static final int PARTICLE_FIELD_COUNT = 7;
+
+	// bits des options d'une particule
+	private static final byte HIGHLIGHTED = 1;
+	private static final byte IMPORTANT = 2;
+
+	// nombre d'etapes effectuees
+	private long stepCount;
+
+	// dimensions du monde
+	private double minimumX;
+	private double minimumY;
+	private double width;
+	private double height;
+
+	// parametres de la simulation
+	private double radius;
+	private double stiffness;
+	private double nearbyStiffness;
+	private double restDensity;
+	private double viscosity;
+	private double gravityX;
+	private double gravityY;
+
+	// murs (les polygones ne changent jamais et peuvent etre partages)
+	private Polygon[] walls = new Polygon[0];
+
+	// nombre de particules et valeurs de chacune; les tableaux peuvent etre plus grands
+	private int particleCount = 0;
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] previousX = new double[0];
+	private double[] previousY = new double[0];
+	private double[] velocityX = new double[0];
+	private double[] velocityY = new double[0];
+	private double[] pressure = new double[0];
+	private byte[] options = new byte[0];
+
+	// copies des buses et des puits
+	private Emitter[] emitters = new Emitter[0];
+	private Sink[] sinks = new Sink[0];
+
+	// nombre de voisins de chaque particule et indices de tous les voisins, l'une apres l'autre
+	private int[] neighborCounts = new int[0];
+	private int[] neighbors = new int[0];
+	private int neighborTotal = 0;
+
+	// particules et listes de voisins gardees par copyFrom jusqu'a ce que les indices des voisins
+	// soient calcules; la simulation remplace ses listes a chaque etape sans les modifier, donc
+	// garder une reference suffit
+	private final ArrayList<Particle> particleReferences = new ArrayList<Particle>();
+	private final ArrayList<LinkedList<Particle>> neighborLists =
+			new ArrayList<LinkedList<Particle>>();
+
+	// indice de chaque particule, utilise pour trouver les indices des voisins
+	private final IdentityHashMap<Particle, Integer> indices =
+			new IdentityHashMap<Particle, Integer>();
+
+	/**
+	 * Constructeur principal. Cree une copie vide, a remplir avec copyFrom() ou read().
+	 */
+	public Checkpoint() {
+	}
+
+	/**
+	 * Copie l'etat d'une simulation. L'appelant doit empecher la simulation d'avancer pendant la
+	 * copie (en la verrouillant). Les tableaux de cette copie sont reutilises s'ils sont assez
+	 * grands.
+	 *
+	 * La copie est faite en un seul passage sur les particules: les listes de voisins ne sont pas
+	 * parcourues, seulement referencees, et leurs indices sont calcules plus tard par write() ou
+	 * restore(), possiblement dans un autre processus, pendant que la simulation continue.
+	 *
+	 * @param simulation Simulation a copier.
+	 */
+	public void copyFrom(Simulation simulation) {
+		stepCount = simulation.getStepCount();
+		WorldMatrix world = simulation.getWorld();
+		minimumX = world.getMinimumX();
+		minimumY = world.getMinimumY();
+		width = world.getWidth();
+		height = world.getHeight();
+		radius = simulation.getRadius();
+		stiffness = simulation.getStiffness();
+		nearbyStiffness = simulation.getNearbyStiffness();
+		restDensity = simulation.getRestDensity();
+		viscosity = simulation.getViscosity();
+		gravityX = simulation.getGravity().getX();
+		gravityY = simulation.getGravity().getY();
+		walls = simulation.getWalls();
+		emitters = simulation.getEmitters();
+		int i;
+		for (i = 0; i < emitters.length; i++) {
+			emitters[i] = emitters[i].copy();
+		}
+		sinks = simulation.getSinks();
+		for (i = 0; i < sinks.length; i++) {
+			sinks[i] = sinks[i].copy();
+		}
+		ensureCapacity(simulation.getParticleCount());
+		particleCount = simulation.getParticleCount();
+		particleReferences.clear();
+		neighborLists.clear();
+		i = 0;
+		Iterator<Particle> iterator = simulation.getParticleIterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			x[i] = particle.getX();
+			y[i] = particle.getY();
+			Vector previous = particle.getPreviousPositionVector();
+			previousX[i] = previous.getX();
+			previousY[i] = previous.getY();
+			velocityX[i] = particle.getVelocityX();
+			velocityY[i] = particle.getVelocityY();
+			pressure[i] = particle.getPressure();
+			options[i] = (byte) ((particle.isHighlighted() ? HIGHLIGHTED : 0)
+					| (particle.isImportant() ? IMPORTANT : 0));
+			particleReferences.add(particle);
+			neighborLists.add(simulation.getNeighbors(i));
+			i++;
+		}
+	}
+
+	// remplace les references aux listes de voisins gardees par copyFrom par les indices des
+	// voisins
+	private void resolveNeighbors() {
+		if (particleReferences.isEmpty()) {
+			return;
+		}
+		int i;
+		for (i = 0; i < particleCount; i++) {
+			indices.put(particleReferences.get(i), i);
+		}
+		neighborTotal = 0;
+		for (i = 0; i < particleCount; i++) {
+			LinkedList<Particle> list = neighborLists.get(i);
+			neighborCounts[i] = list.size();
+			if (neighbors.length < neighborTotal + list.size()) {
+				neighbors = Arrays.copyOf(neighbors,
+						Math.max(neighborTotal + list.size(), neighbors.length * 2));
+			}
+			for (Particle neighbor : list) {
+				neighbors[neighborTotal++] = indices.get(neighbor);
+			}
+		}
+		indices.clear();
+		particleReferences.clear();
+		neighborLists.clear();
+	}
+
+	/**
+	 * Cree une nouvelle simulation dans l'etat copie.
+	 *
+	 * @return Nouvelle simulation.
+	 */
+	public Simulation restore() {
+		resolveNeighbors();
+		WorldMatrix world = new WorldMatrix(minimumX, minimumY, width, height, width, height);
+		Simulation simulation = new Simulation(world, radius, stiffness, nearbyStiffness,
+				restDensity, viscosity, new Vector(gravityX, gravityY), walls);
+		simulation.setStepCount(stepCount);
+		Particle[] particles = new Particle[particleCount];
+		int i, j;
+		for (i = 0; i < particleCount; i++) {
+			Particle particle = new Particle(x[i], y[i], (options[i] & HIGHLIGHTED) != 0);
+			particle.setPreviousPositionVector(new Vector(previousX[i], previousY[i]));
+			particle.setVelocityX(velocityX[i]);
+			particle.setVelocityY(velocityY[i]);
+			particle.setPressure(pressure[i]);
+			particle.setImportant((options[i] & IMPORTANT) != 0);
+			simulation.addParticle(particle);
+			particles[i] = particle;
+		}
+		int next = 0;
+		for (i = 0; i < particleCount; i++) {
+			LinkedList<Particle> list = new LinkedList<Particle>();
+			for (j = 0; j < neighborCounts[i]; j++) {
+				list.add(particles[neighbors[next++]]);
+			}
+			simulation.setNeighbors(i, list);
+		}
+		// les copies restent intactes, pour que cette copie puisse etre restauree encore
+		for (Emitter emitter : emitters) {
+			simulation.addEmitter(emitter.copy());
+		}
+		for (Sink sink : sinks) {
+			simulation.addSink(sink.copy());
+		}
+		return simulation;
+	}
+
+	/**
+	 * Ecrit la copie dans un fichier, qui est remplace s'il existe.
+	 *
+	 * @param file Fichier a ecrire.
+	 * @throws IOException Si le fichier ne peut pas etre ecrit.
+	 */
+	public void write(File file) throws IOException {
+		resolveNeighbors();
+		long size = getFileSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("sauvegarde trop grande: " + size + " octets.");
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			// entete
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(stepCount);
+			buffer.putDouble(minimumX);
+			buffer.putDouble(minimumY);
+			buffer.putDouble(width);
+			buffer.putDouble(height);
+			buffer.putDouble(radius);
+			buffer.putDouble(stiffness);
+			buffer.putDouble(nearbyStiffness);
+			buffer.putDouble(restDensity);
+			buffer.putDouble(viscosity);
+			buffer.putDouble(gravityX);
+			buffer.putDouble(gravityY);
+			buffer.putInt(particleCount);
+			buffer.putInt(walls.length);
+			// murs
+			int i;
+			for (i = 0; i < walls.length; i++) {
+				buffer.putInt(walls[i].getPoints().length);
+			}
+			if (walls.length % 2 != 0) {
+				buffer.putInt(0);
+			}
+			for (i = 0; i < walls.length; i++) {
+				for (Point2D.Double point : walls[i].getPoints()) {
+					buffer.putDouble(point.getX());
+					buffer.putDouble(point.getY());
+				}
+			}
+			// particules, un tableau a la fois
+			double[][] fields = getFields();
+			for (i = 0; i < PARTICLE_FIELD_COUNT; i++) {
+				buffer.asDoubleBuffer().put(fields[i], 0, particleCount);
+				buffer.position(buffer.position() + particleCount * 8);
+			}
+			buffer.asIntBuffer().put(neighborCounts, 0, particleCount);
+			buffer.position(buffer.position() + particleCount * 4);
+			buffer.asIntBuffer().put(neighbors, 0, neighborTotal);
+			buffer.position(buffer.position() + neighborTotal * 4);
+			buffer.put(options, 0, particleCount);
+			// buses et puits
+			buffer.putInt(emitters.length);
+			buffer.putInt(sinks.length);
+			for (Emitter emitter : emitters) {
+				buffer.putDouble(emitter.getX());
+				buffer.putDouble(emitter.getY());
+				buffer.putDouble(emitter.getVelocityX());
+				buffer.putDouble(emitter.getVelocityY());
+				buffer.putDouble(emitter.getWidth());
+				buffer.putDouble(emitter.getRate());
+				buffer.putDouble(emitter.getPending());
+				buffer.putLong(emitter.getEmittedCount());
+			}
+			for (Sink sink : sinks) {
+				buffer.putDouble(sink.getX());
+				buffer.putDouble(sink.getY());
+				buffer.putDouble(sink.getWidth());
+				buffer.putDouble(sink.getHeight());
+				buffer.putLong(sink.getDrainedCount());
+			}
+			buffer.force();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Lit une copie ecrite par write().
+	 *
+	 * @param file Fichier a lire.
+	 * @return Copie lue.
+	 * @throws IOException Si le fichier ne peut pas etre lu, n'est pas une sauvegarde ou utilise
+	 * une version inconnue du format.
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.readFrom(file);
+		return checkpoint;
+	}
+
+	/**
+	 * Remplace le contenu de cette copie par celui d'un fichier ecrit par write(). Les tableaux
+	 * sont reutilises s'ils sont assez grands.
+	 *
+	 * @param file Fichier a lire.
+	 * @throws IOException Si le fichier ne peut pas etre lu, n'est pas une sauvegarde ou utilise
+	 * une version inconnue du format.
+	 */
+	public void readFrom(File file) throws IOException {
+		particleReferences.clear();
+		neighborLists.clear();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException(file + " n'est pas une sauvegarde.");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			// entete
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file + " n'est pas une sauvegarde.");
+			}
+			int version = buffer.getInt();
+			if (version != 1 && version != VERSION) {
+				throw new IOException("version de sauvegarde non supportee: " + version + ".");
+			}
+			stepCount = buffer.getLong();
+			minimumX = buffer.getDouble();
+			minimumY = buffer.getDouble();
+			width = buffer.getDouble();
+			height = buffer.getDouble();
+			radius = buffer.getDouble();
+			stiffness = buffer.getDouble();
+			nearbyStiffness = buffer.getDouble();
+			restDensity = buffer.getDouble();
+			viscosity = buffer.getDouble();
+			gravityX = buffer.getDouble();
+			gravityY = buffer.getDouble();
+			int count = buffer.getInt();
+			int wallCount = buffer.getInt();
+			if (count < 0 || wallCount < 0) {
+				throw new IOException("sauvegarde corrompue: " + file + ".");
+			}
+			// murs
+			int[] pointCounts = new int[wallCount];
+			long pointTotal = 0;
+			int i, j;
+			for (i = 0; i < wallCount; i++) {
+				pointCounts[i] = buffer.getInt();
+				if (pointCounts[i] < 3) {
+					throw new IOException("sauvegarde corrompue: " + file + ".");
+				}
+				pointTotal += pointCounts[i];
+			}
+			if (wallCount % 2 != 0) {
+				buffer.getInt();
+			}
+			if (size < getFileSize(count, wallCount, pointTotal, 0, 0, 0) - FLOW_HEADER_SIZE) {
+				throw new IOException("sauvegarde tronquee ou corrompue: " + file + ".");
+			}
+			Polygon[] readWalls = new Polygon[wallCount];
+			for (i = 0; i < wallCount; i++) {
+				Point2D.Double[] points = new Point2D.Double[pointCounts[i]];
+				for (j = 0; j < points.length; j++) {
+					points[j] = new Point2D.Double(buffer.getDouble(), buffer.getDouble());
+				}
+				readWalls[i] = new Polygon(points);
+			}
+			walls = readWalls;
+			// particules, un tableau a la fois
+			ensureCapacity(count);
+			particleCount = count;
+			double[][] fields = getFields();
+			for (i = 0; i < PARTICLE_FIELD_COUNT; i++) {
+				buffer.asDoubleBuffer().get(fields[i], 0, particleCount);
+				buffer.position(buffer.position() + particleCount * 8);
+			}
+			buffer.asIntBuffer().get(neighborCounts, 0, particleCount);
+			buffer.position(buffer.position() + particleCount * 4);
+			long total = 0;
+			for (i = 0; i < particleCount; i++) {
+				if (neighborCounts[i] < 0 || neighborCounts[i] > particleCount) {
+					throw new IOException("sauvegarde corrompue: " + file + ".");
+				}
+				total += neighborCounts[i];
+			}
+			// la version 1 n'a pas de buses ni de puits
+			long particleEnd = getFileSize(count, wallCount, pointTotal, total, 0, 0)
+					- FLOW_HEADER_SIZE;
+			if (version == 1 ? size != particleEnd : size < particleEnd + FLOW_HEADER_SIZE) {
+				throw new IOException("sauvegarde tronquee ou corrompue: " + file + ".");
+			}
+			neighborTotal = (int) total;
+			if (neighbors.length < neighborTotal) {
+				neighbors = new int[neighborTotal];
+			}
+			buffer.asIntBuffer().get(neighbors, 0, neighborTotal);
+			buffer.position(buffer.position() + neighborTotal * 4);
+			for (i = 0; i < neighborTotal; i++) {
+				if (neighbors[i] < 0 || neighbors[i] >= particleCount) {
+					throw new IOException("sauvegarde corrompue: " + file + ".");
+				}
+			}
+			buffer.get(options, 0, particleCount);
+			// buses et puits
+			if (version == 1) {
+				emitters = new Emitter[0];
+				sinks = new Sink[0];
+				return;
+			}
+			int emitterCount = buffer.getInt();
+			int sinkCount = buffer.getInt();
+			if (emitterCount < 0 || sinkCount < 0 || size != getFileSize(count, wallCount,
+					pointTotal, total, emitterCount, sinkCount)) {
+				throw new IOException("sauvegarde tronquee ou corrompue: " + file + ".");
+			}
+			try {
+				Emitter[] readEmitters = new Emitter[emitterCount];
+				for (i = 0; i < emitterCount; i++) {
+					readEmitters[i] = new Emitter(buffer.getDouble(), buffer.getDouble(),
+							buffer.getDouble(), buffer.getDouble(), buffer.getDouble(),
+							buffer.getDouble());
+					readEmitters[i].setState(buffer.getDouble(), buffer.getLong());
+				}
+				Sink[] readSinks = new Sink[sinkCount];
+				for (i = 0; i < sinkCount; i++) {
+					readSinks[i] = new Sink(buffer.getDouble(), buffer.getDouble(),
+							buffer.getDouble(), buffer.getDouble());
+					readSinks[i].setDrainedCount(buffer.getLong());
+				}
+				emitters = readEmitters;
+				sinks = readSinks;
+			}
+			catch (IllegalArgumentException error) {
+				throw new IOException("sauvegarde corrompue: " + file + ".");
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Ecrit l'etat d'une simulation dans un fichier. L'appelant doit empecher la simulation
+	 * d'avancer pendant l'appel.
+	 *
+	 * @param simulation Simulation a sauvegarder.
+	 * @param file Fichier a ecrire.
+	 * @throws IOException Si le fichier ne peut pas etre ecrit.
+	 */
+	public static void save(Simulation simulation, File file) throws IOException {
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.copyFrom(simulation);
+		checkpoint.write(file);
+	}
+
+	/**
+	 * Cree une simulation a partir d'un fichier ecrit par save() ou write().
+	 *
+	 * @param file Fichier a lire.
+	 * @return Simulation restauree.
+	 * @throws IOException Si le fichier ne peut pas etre lu.
+	 */
+	public static Simulation load(File file) throws IOException {
+		return read(file).restore();
+	}
+
+	/**
+	 * Retourne le nombre d'etapes effectuees par la simulation copiee.
+	 *
+	 * @return Nombre d'etapes.
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Retourne le nombre de particules de la simulation copiee.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public int getParticleCount() {
+		return particleCount;
+	}
+
+	/**
+	 * Retourne la taille du fichier ecrit par write(), en octets.
+	 *
+	 * @return Taille du fichier.
+	 */
+	public long getFileSize() {
+		resolveNeighbors();
+		long pointTotal = 0;
+		int i;
+		for (i = 0; i < walls.length; i++) {
+			pointTotal += walls[i].getPoints().length;
+		}
+		return getFileSize(particleCount, walls.length, pointTotal, neighborTotal,
+				emitters.length, sinks.length);
+	}
+
+	// taille d'un fichier selon son contenu
+	private static long getFileSize(int particleCount, int wallCount, long pointTotal,
+			long neighborTotal, int emitterCount, int sinkCount) {
+		long wallSize = (wallCount + wallCount % 2) * 4L + pointTotal * 16;
+		long flowSize = FLOW_HEADER_SIZE + (long) emitterCount * EMITTER_SIZE
+				+ (long) sinkCount * SINK_SIZE;
+		return HEADER_SIZE + wallSize + (long) particleCount * (PARTICLE_FIELD_COUNT * 8 + 4 + 1)
+				+ neighborTotal * 4 + flowSize;
+	}
+
+	// tableaux des valeurs reelles des particules, dans l'ordre du fichier
+	private double[][] getFields() {
+		return new double[][] {x, y, previousX, previousY, velocityX, velocityY, pressure};
+	}
+
+	// agrandit les tableaux si necessaire
+	private void ensureCapacity(int capacity) {
+		if (x.length >= capacity) {
+			return;
+		}
+		x = new double[capacity];
+		y = new double[capacity];
+		previousX = new double[capacity];
+		previousY = new double[capacity];
+		velocityX = new double[capacity];
+		velocityY = new double[capacity];
+		pressure = new double[capacity];
+		options = new byte[capacity];
+		neighborCounts = new int[capacity];
+	}
+}
@@ -0,0 +1,263 @@
+package simulation;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ecrit des sauvegardes (Checkpoint) d'une simulation en arriere-plan, dans un dossier
+ * (prefixe-000000001200.ckpt pour l'etape 1200, ...), et ne garde que les plus recentes.
+ *
+ * Celui qui fait avancer la simulation appelle submit() entre deux etapes: l'etat est copie dans
+ * une sauvegarde libre, ce qui ne demande qu'un passage sur les particules, puis un processus en
+ * arriere-plan calcule les indices des voisins et ecrit le fichier. Les sauvegardes sont
+ * reutilisees une fois ecrites. Le nombre de sauvegardes en attente est borne: si le disque a trop
+ * de retard, submit() attend qu'une sauvegarde se libere et trySubmit() abandonne celle-ci.
+ *
+ * Chaque fichier est d'abord ecrit sous un nom temporaire puis renomme, pour qu'un fichier .ckpt
+ * soit toujours complet.
+ */
+public class CheckpointWriter {
+	// extension des fichiers de sauvegarde
+	private static final String EXTENSION = ".ckpt";
+
+	// dossier et prefixe des fichiers
+	private final File directory;
+	private final String prefix;
+
+	// nombre de fichiers a garder
+	private final int keepCount;
+
+	// processus qui ecrit les sauvegardes
+	private final ThreadPoolExecutor executor;
+
+	// sauvegardes qui peuvent etre reutilisees
+	private final BlockingQueue<Checkpoint> freeCheckpoints;
+
+	// nombre de sauvegardes creees jusqu'a maintenant, et nombre maximal de sauvegardes
+	private int checkpointCount = 0;
+	private final int maximumCheckpointCount;
+
+	// fichiers ecrits, du plus ancien au plus recent; utilise seulement par le processus d'ecriture
+	private final ArrayDeque<File> files = new ArrayDeque<File>();
+
+	// nombre de sauvegardes soumises et abandonnees, et temps total passe dans submit() et
+	// trySubmit() (attente d'une sauvegarde libre et copie de l'etat)
+	private int submittedCount = 0;
+	private int skippedCount = 0;
+	private long stallTime = 0;
+
+	// premiere erreur d'ecriture, ou null
+	private final AtomicReference<IOException> error = new AtomicReference<IOException>();
+
+	/**
+	 * Constructeur principal. Les sauvegardes deja presentes dans le dossier avec le meme prefixe
+	 * comptent parmi celles a garder.
+	 *
+	 * @param directory Dossier dans lequel ecrire les sauvegardes; il est cree au besoin.
+	 * @param prefix Prefixe du nom des fichiers.
+	 * @param keepCount Nombre de sauvegardes a garder; les plus anciennes sont effacees.
+	 * @param queueCapacity Nombre de sauvegardes qui peuvent attendre d'etre ecrites.
+	 * @throws IOException Si le dossier ne peut pas etre cree.
+	 */
+	public CheckpointWriter(File directory, final String prefix, int keepCount,
+			int queueCapacity) throws IOException {
+		if (keepCount < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("keepCount et queueCapacity doivent etre positifs.");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("impossible de creer le dossier " + directory + ".");
+		}
+		this.directory = directory;
+		this.prefix = prefix;
+		this.keepCount = keepCount;
+		// une sauvegarde en ecriture, une par place dans la file, et une en cours de copie
+		this.maximumCheckpointCount = queueCapacity + 2;
+		this.freeCheckpoints = new ArrayBlockingQueue<Checkpoint>(maximumCheckpointCount);
+		this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maximumCheckpointCount), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "checkpoint-writer");
+						thread.setDaemon(true);
+						// l'ecriture ne doit pas prendre le processeur a la simulation
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+		// sauvegardes existantes, dans l'ordre des etapes (le numero a toujours la meme longueur)
+		File[] existing = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix + "-") && name.endsWith(EXTENSION);
+			}
+		});
+		if (existing != null) {
+			Arrays.sort(existing);
+			files.addAll(Arrays.asList(existing));
+		}
+	}
+
+	/**
+	 * Copie l'etat de la simulation et le soumet pour qu'il soit ecrit en arriere-plan. Attend
+	 * qu'une sauvegarde se libere si toutes sont en attente d'ecriture. L'appelant doit empecher la
+	 * simulation d'avancer pendant l'appel.
+	 *
+	 * @param simulation Simulation a sauvegarder.
+	 * @return Fichier dans lequel l'etat sera ecrit.
+	 * @throws IOException Si une sauvegarde precedente n'a pas pu etre ecrite.
+	 * @throws InterruptedException Si le processus est interrompu pendant l'attente.
+	 */
+	public File submit(Simulation simulation) throws IOException, InterruptedException {
+		checkError();
+		long startTime = System.nanoTime();
+		Checkpoint checkpoint = freeCheckpoints.poll();
+		if (checkpoint == null) {
+			if (checkpointCount < maximumCheckpointCount) {
+				checkpointCount++;
+				checkpoint = new Checkpoint();
+			}
+			else {
+				checkpoint = freeCheckpoints.take();
+			}
+		}
+		return submit(checkpoint, simulation, startTime);
+	}
+
+	/**
+	 * Comme submit(), mais abandonne cette sauvegarde plutot que d'attendre si toutes sont en
+	 * attente d'ecriture.
+	 *
+	 * @param simulation Simulation a sauvegarder.
+	 * @return Fichier dans lequel l'etat sera ecrit, ou null si la sauvegarde est abandonnee.
+	 * @throws IOException Si une sauvegarde precedente n'a pas pu etre ecrite.
+	 */
+	public File trySubmit(Simulation simulation) throws IOException {
+		checkError();
+		long startTime = System.nanoTime();
+		Checkpoint checkpoint = freeCheckpoints.poll();
+		if (checkpoint == null) {
+			if (checkpointCount >= maximumCheckpointCount) {
+				skippedCount++;
+				return null;
+			}
+			checkpointCount++;
+			checkpoint = new Checkpoint();
+		}
+		return submit(checkpoint, simulation, startTime);
+	}
+
+	// copie l'etat dans une sauvegarde libre et la soumet au processus d'ecriture
+	private File submit(final Checkpoint checkpoint, Simulation simulation, long startTime) {
+		checkpoint.copyFrom(simulation);
+		stallTime += System.nanoTime() - startTime;
+		submittedCount++;
+		final File file = new File(directory,
+				String.format("%s-%012d%s", prefix, checkpoint.getStepCount(), EXTENSION));
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					if (error.get() == null) {
+						write(checkpoint, file);
+					}
+				}
+				catch (IOException exception) {
+					error.compareAndSet(null, exception);
+				}
+				finally {
+					freeCheckpoints.offer(checkpoint);
+				}
+			}
+		});
+		return file;
+	}
+
+	// ecrit une sauvegarde sous un nom temporaire, la renomme et efface les plus anciennes
+	private void write(Checkpoint checkpoint, File file) throws IOException {
+		File temporary = new File(directory, file.getName() + ".tmp");
+		writeCheckpoint(checkpoint, temporary);
+		if (file.exists() && !file.delete()) {
+			throw new IOException("impossible de remplacer " + file + ".");
+		}
+		if (!temporary.renameTo(file)) {
+			throw new IOException("impossible de renommer " + temporary + ".");
+		}
+		files.remove(file);
+		files.addLast(file);
+		while (files.size() > keepCount) {
+			File oldest = files.removeFirst();
+			if (!oldest.delete() && oldest.exists()) {
+				throw new IOException("impossible d'effacer " + oldest + ".");
+			}
+		}
+	}
+
+	/**
+	 * Ecrit une sauvegarde dans un fichier temporaire, avant qu'il soit renomme. Appelee par le
+	 * processus d'ecriture; une sous-classe peut la redefinir pour retarder ou observer l'ecriture.
+	 *
+	 * @param checkpoint Sauvegarde a ecrire.
+	 * @param temporary Fichier temporaire.
+	 * @throws IOException Si le fichier ne peut pas etre ecrit.
+	 */
+	protected void writeCheckpoint(Checkpoint checkpoint, File temporary) throws IOException {
+		checkpoint.write(temporary);
+	}
+
+	/**
+	 * Attend que toutes les sauvegardes soumises soient ecrites, puis arrete le processus
+	 * d'ecriture.
+	 *
+	 * @throws IOException Si une sauvegarde n'a pas pu etre ecrite.
+	 * @throws InterruptedException Si le processus est interrompu pendant l'attente.
+	 */
+	public void close() throws IOException, InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		checkError();
+	}
+
+	/**
+	 * Retourne le nombre de sauvegardes soumises jusqu'a maintenant.
+	 *
+	 * @return Nombre de sauvegardes soumises.
+	 */
+	public int getSubmittedCount() {
+		return submittedCount;
+	}
+
+	/**
+	 * Retourne le nombre de sauvegardes abandonnees par trySubmit() parce que l'ecriture avait trop
+	 * de retard.
+	 *
+	 * @return Nombre de sauvegardes abandonnees.
+	 */
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * Retourne le temps total passe dans submit() et trySubmit(), a attendre une sauvegarde libre
+	 * et a copier l'etat, soit le temps pendant lequel la simulation a ete arretee par les
+	 * sauvegardes.
+	 *
+	 * @return Temps d'arret, en nanosecondes.
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	// lance la premiere erreur d'ecriture, s'il y en a eu une
+	private void checkError() throws IOException {
+		IOException exception = error.get();
+		if (exception != null) {
+			throw exception;
+		}
+	}
+}
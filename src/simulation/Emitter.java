@@ -0,0 +1,177 @@
+package simulation;
+
+/**
+ * Buse qui ajoute des particules a la simulation a un debit constant, avec une vitesse donnee. Les
+ * particules sortent le long d'un segment centre sur la position de la buse et perpendiculaire a
+ * la vitesse; leurs positions sur ce segment suivent une suite de faible discrepance, pour que le
+ * jet soit regulier sans que deux particules sortent au meme endroit.
+ *
+ * Le debit est rarement un multiple du nombre d'etapes par seconde: la fraction de particule qui
+ * n'a pas encore ete ajoutee est gardee d'une etape a l'autre.
+ */
+public class Emitter {
+	// partie fractionnaire du nombre d'or, pas de la suite des positions sur la buse
+	private static final double GOLDEN_FRACTION = (Math.sqrt(5) - 1) / 2;
+
+	// centre de la buse
+	private final double x;
+	private final double y;
+
+	// vitesse des particules ajoutees
+	private final double velocityX;
+	private final double velocityY;
+
+	// largeur de la buse
+	private final double width;
+
+	// nombre de particules ajoutees par seconde
+	private final double rate;
+
+	// fraction de particule en attente d'etre ajoutee
+	private double pending = 0;
+
+	// nombre de particules ajoutees depuis la creation de la buse
+	private long emittedCount = 0;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param x Position de la buse sur l'axe des x.
+	 * @param y Position de la buse sur l'axe des y.
+	 * @param velocityX Vitesse des particules ajoutees, sur l'axe des x.
+	 * @param velocityY Vitesse des particules ajoutees, sur l'axe des y.
+	 * @param width Largeur de la buse, perpendiculaire a la vitesse; 0 pour un seul point.
+	 * @param rate Nombre de particules ajoutees par seconde.
+	 */
+	public Emitter(double x, double y, double velocityX, double velocityY, double width,
+			double rate) {
+		if (!(width >= 0) || !(rate >= 0)) {
+			throw new IllegalArgumentException("la largeur et le debit doivent etre positifs.");
+		}
+		this.x = x;
+		this.y = y;
+		this.velocityX = velocityX;
+		this.velocityY = velocityY;
+		this.width = width;
+		this.rate = rate;
+	}
+
+	/**
+	 * Cree une copie de la buse, avec la meme fraction de particule en attente.
+	 *
+	 * @return Copie de la buse.
+	 */
+	public Emitter copy() {
+		Emitter copy = new Emitter(x, y, velocityX, velocityY, width, rate);
+		copy.pending = pending;
+		copy.emittedCount = emittedCount;
+		return copy;
+	}
+
+	/**
+	 * Ajoute les particules d'une etape a la simulation. Appelee par la simulation, apres le
+	 * deplacement des particules; les particules d'une meme etape sont etalees le long du chemin
+	 * parcouru pendant l'etape.
+	 *
+	 * @param simulation Simulation a laquelle ajouter les particules.
+	 * @param deltaT Intervalle de temps de l'etape.
+	 */
+	void emit(Simulation simulation, double deltaT) {
+		pending += rate * deltaT;
+		int count = (int) pending;
+		pending -= count;
+		double speed = Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+		// direction de la buse, perpendiculaire a la vitesse (horizontale si la vitesse est nulle)
+		double normalX = speed > 0 ? -velocityY / speed : 1;
+		double normalY = speed > 0 ? velocityX / speed : 0;
+		int i;
+		for (i = 0; i < count; i++) {
+			double offset = ((emittedCount * GOLDEN_FRACTION) % 1 - 0.5) * width;
+			// la particule est sortie depuis une fraction de l'etape
+			double age = deltaT * (count - i) / count;
+			double positionX = x + normalX * offset + velocityX * age;
+			double positionY = y + normalY * offset + velocityY * age;
+			simulation.addRecycledParticle(positionX, positionY, positionX - velocityX * deltaT,
+					positionY - velocityY * deltaT, velocityX, velocityY);
+			emittedCount++;
+		}
+	}
+
+	/**
+	 * Retourne la position de la buse sur l'axe des x.
+	 *
+	 * @return Position en x.
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Retourne la position de la buse sur l'axe des y.
+	 *
+	 * @return Position en y.
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Retourne la vitesse des particules ajoutees, sur l'axe des x.
+	 *
+	 * @return Vitesse en x.
+	 */
+	public double getVelocityX() {
+		return velocityX;
+	}
+
+	/**
+	 * Retourne la vitesse des particules ajoutees, sur l'axe des y.
+	 *
+	 * @return Vitesse en y.
+	 */
+	public double getVelocityY() {
+		return velocityY;
+	}
+
+	/**
+	 * Retourne la largeur de la buse.
+	 *
+	 * @return Largeur.
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * Retourne le nombre de particules ajoutees par seconde.
+	 *
+	 * @return Debit.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Retourne la fraction de particule en attente d'etre ajoutee.
+	 *
+	 * @return Fraction, entre 0 et 1.
+	 */
+	public double getPending() {
+		return pending;
+	}
+
+	/**
+	 * Retourne le nombre de particules ajoutees depuis la creation de la buse.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public long getEmittedCount() {
+		return emittedCount;
+	}
+
+	// remet l'etat d'une buse lue dans une sauvegarde
+	void setState(double pending, long emittedCount) {
+		this.pending = pending;
+		this.emittedCount = emittedCount;
+	}
+}
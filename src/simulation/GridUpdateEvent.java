@@ -0,0 +1,28 @@
+package simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evenement Java Flight Recorder (JFR) qui couvre la reconstruction de la grille des voisins
+ * (ParticleGrid.update). Il n'est enregistre que si un enregistrement JFR est actif.
+ */
+@Name("fluidsimulator.GridUpdate")
+@Label("Grid Update")
+@Category("Fluid Simulator")
+@Description("Reconstruction de la grille des voisins")
+@StackTrace(false)
+public class GridUpdateEvent extends Event {
+	@Label("Particle Count")
+	int particleCount;
+
+	@Label("Cell Count")
+	int cellCount;
+
+	@Label("Occupied Cells")
+	int occupiedCellCount;
+}
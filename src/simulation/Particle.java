@@ -32,11 +32,11 @@ public class Particle implements Drawable, Comparable<Particle> {
     private static int particleCount = 0;
     
     // taille d'une particule lorsque dessinee en tout petit
-    private final double SMALL_RECTANGLE_SIZE = 3;
+    private static final double SMALL_RECTANGLE_SIZE = 3;
 
     // taille d'une particule qui est dessinee comme un gros cercle quand toutes les autres sont
     // petites
-	final double IMPORTANT_PARTICLE_SIZE = 14;
+	static final double IMPORTANT_PARTICLE_SIZE = 14;
     
     // les constantes suivantes sont statiques car elles sont utilisees pour la creation des images
     // pour le rendu, qui sont partagees par toutes les instances
@@ -53,6 +53,9 @@ public class Particle implements Drawable, Comparable<Particle> {
     // pression a laquelle la couleur utilisee est la plus foncee
     private static double MAXIMUM_PRESSURE = 0;
     
+    // nombre de teintes par unite de pression
+    private static final double HUES_PER_PRESSURE = HUE_COUNT / (MAXIMUM_PRESSURE - MINIMUM_PRESSURE);
+    
     // echelle de couleurs
     private static final ColorScale COLOR_SCALE = new ColorScale(new ColorScale.Pair[] {
         new ColorScale.Pair(Color.RED, 0),
@@ -70,8 +73,9 @@ public class Particle implements Drawable, Comparable<Particle> {
     	new ColorScale.Pair(HIGHLIGHTED_COLOR, 1)
     });
  
-    // ensemble des images a utiliser pour les particules qui ne sont pas mises en evidence
-    private static SpriteSet spriteSet = null;
+    // ensemble des images a utiliser pour les particules qui ne sont pas mises en evidence; il est
+    // assigne en dernier par loadSprites()
+    private static volatile SpriteSet spriteSet = null;
     
     // image a utiliser pour les particules mises en evidence
     private static SpriteSet highlightedSpriteSet = null;
@@ -145,12 +149,30 @@ public class Particle implements Drawable, Comparable<Particle> {
      */
     private static void loadSprites () {
         if (spriteSet == null) {
-        	// creer les 100 images pour le degrade de couleurs
-            spriteSet = new SpriteSet(COLOR_SCALE, HUE_COUNT, SPRITE_PATH);
-            // creer l'image pour les particules mises en evidence
-            highlightedSpriteSet = new SpriteSet(HIGHLIGHTED_COLOR_SCALE, 1, SPRITE_PATH);
+            // les images peuvent etre preparees en arriere-plan pendant le premier dessin
+            synchronized (Particle.class) {
+                if (spriteSet == null) {
+                    // creer l'image pour les particules mises en evidence
+                    highlightedSpriteSet = new SpriteSet(HIGHLIGHTED_COLOR_SCALE, 1, SPRITE_PATH);
+                    // creer les 100 images pour le degrade de couleurs
+                    spriteSet = new SpriteSet(COLOR_SCALE, HUE_COUNT, SPRITE_PATH);
+                }
+            }
         }
     }
+    
+    /**
+     * Genere d'avance toutes les images utilisees pour le dessin des particules, et les sauvegarde
+     * dans le cache de SpriteSet s'il y en a un. Doit etre appelee en arriere-plan, pour que le
+     * dessin n'attende jamais apres le disque.
+     * 
+     * @param parallel Vrai pour repartir le travail sur tous les processeurs.
+     */
+    public static void prepareSprites (boolean parallel) {
+        Particle.loadSprites ();
+        spriteSet.prepareAll (parallel);
+        highlightedSpriteSet.prepareAll (false);
+    }
 
     /**
      * Dessine la particule sur le Graphics2D voulu en utilisant la matrice de conversion world.
@@ -159,6 +181,24 @@ public class Particle implements Drawable, Comparable<Particle> {
      * @param world Objet WorldMatrix representant les conversions d'unites a utiliser.
      */
     public void draw (Graphics2D graphics, WorldMatrix world) {
+        drawAt (graphics, world, x, y, pressure, highlighted, important, small);
+    }
+    
+    /**
+     * Dessine une particule avec l'etat donne, plutot qu'avec l'etat d'une instance. Permet de
+     * dessiner une position interpolee, ou une particule lue dans un enregistrement.
+     * 
+     * @param graphics Objet Graphics2D sur lequel dessiner.
+     * @param world Objet WorldMatrix representant les conversions d'unites a utiliser.
+     * @param x Position sur l'axe des x.
+     * @param y Position sur l'axe des y.
+     * @param pressure Pression de la particule, qui determine sa couleur.
+     * @param highlighted Vrai ssi la particule doit etre dessinee en blanc.
+     * @param important Vrai ssi la particule doit etre dessinee comme un grand cercle en petit.
+     * @param small Vrai ssi la particule doit etre dessinee en petit.
+     */
+    public static void drawAt (Graphics2D graphics, WorldMatrix world, double x, double y,
+            double pressure, boolean highlighted, boolean important, boolean small) {
         // generer les images si ce n'est pas deja fait
         Particle.loadSprites ();
         // si on doit dessiner les particules en plein
@@ -168,12 +208,24 @@ public class Particle implements Drawable, Comparable<Particle> {
         	// position transformee ou dessiner
         	Point2D.Double transformed = (Point2D.Double) world.transform (position, null);
         	// image a utiliser pour le dessin
-        	BufferedImage coloredSprite = chooseSprite ();
+        	BufferedImage coloredSprite = chooseSprite (pressure, highlighted);
+        	// taille de l'image, mise a l'echelle selon le zoom
+        	double scale = Math.abs (world.getScaleX ());
+        	int width = (int) Math.round (coloredSprite.getWidth () * scale);
+        	int height = (int) Math.round (coloredSprite.getHeight () * scale);
         	// dessiner cette image
-        	graphics.drawImage (coloredSprite, 
-        			(int) transformed.getX () - coloredSprite.getWidth () / 2, 
-        			(int) transformed.getY () - coloredSprite.getHeight () / 2, 
-        			null);
+        	if (width == coloredSprite.getWidth () && height == coloredSprite.getHeight ()) {
+        		graphics.drawImage (coloredSprite, 
+        				(int) transformed.getX () - width / 2, 
+        				(int) transformed.getY () - height / 2, 
+        				null);
+        	}
+        	else {
+        		graphics.drawImage (coloredSprite, 
+        				(int) transformed.getX () - width / 2, 
+        				(int) transformed.getY () - height / 2, 
+        				width, height, null);
+        	}
         }
         else {
         	if (! important) {
@@ -184,7 +236,7 @@ public class Particle implements Drawable, Comparable<Particle> {
         		// utiliser la couleur qu'on aurait pris pour la meme image 
         		Color color = highlighted 
         				? HIGHLIGHTED_COLOR 
-        						: spriteSet.colorOfSprite(chooseSpriteIndex());
+        						: spriteSet.colorOfSprite(hueIndexOf(pressure));
         		graphics.setColor(color);
         		// dessiner le petit rectangle
         		graphics.fill(transformed);
@@ -194,24 +246,75 @@ public class Particle implements Drawable, Comparable<Particle> {
         				x - IMPORTANT_PARTICLE_SIZE / 2, y - IMPORTANT_PARTICLE_SIZE / 2, 
         				IMPORTANT_PARTICLE_SIZE, IMPORTANT_PARTICLE_SIZE);
         		Shape transformed = world.transform(rectangle);
-        		Color color = spriteSet.colorOfSprite(chooseSpriteIndex());
+        		Color color = spriteSet.colorOfSprite(hueIndexOf(pressure));
         		graphics.setColor(color);
         		graphics.fill(transformed);
         	}
         }
     }
     
+    /**
+     * Retourne l'indice de la teinte associee a la pression de cette particule, entre 0 et
+     * getHueCount() - 1. Voir aussi getHueColors().
+     * 
+     * @return Indice de la teinte de cette particule.
+     */
+    public int getHueIndex () {
+        return chooseSpriteIndex ();
+    }
+    
+    /**
+     * Retourne le nombre de teintes utilisees pour dessiner les particules.
+     * 
+     * @return Nombre de teintes.
+     */
+    public static int getHueCount () {
+        return HUE_COUNT;
+    }
+    
+    /**
+     * Retourne les couleurs des teintes utilisees pour dessiner les particules, par indice.
+     * 
+     * @return Tableau de getHueCount() couleurs.
+     */
+    public static Color[] getHueColors () {
+        Particle.loadSprites ();
+        Color[] colors = new Color[HUE_COUNT];
+        int i;
+        for (i = 0; i < HUE_COUNT; i++) {
+            colors[i] = spriteSet.colorOfSprite (i);
+        }
+        return colors;
+    }
+    
+    /**
+     * Retourne les couleurs (ARGB) des teintes utilisees pour dessiner les particules, par indice.
+     * 
+     * @return Tableau de getHueCount() couleurs ARGB.
+     */
+    public static int[] getHueRGBTable () {
+        Particle.loadSprites ();
+        return spriteSet.getRGBTable ();
+    }
+    
+    /**
+     * Retourne l'indice de la teinte associee a une pression, entre 0 et getHueCount() - 1.
+     * 
+     * @param pressure Pression d'une particule.
+     * @return Indice de la teinte pour cette pression.
+     */
+    public static int hueIndexOf (double pressure) {
+        int index = HUE_COUNT - (int) ((pressure - MINIMUM_PRESSURE) * HUES_PER_PRESSURE);
+        return Math.max (0, Math.min (index, HUE_COUNT - 1));
+    }
+    
     // retourne l'indice de la couleur ou de l'image a utiliser pour le dessin
     private int chooseSpriteIndex () {
-        double range = MAXIMUM_PRESSURE - MINIMUM_PRESSURE;
-        double delta = (pressure - MINIMUM_PRESSURE) / range;
-        int spriteIndex = HUE_COUNT - (int) (HUE_COUNT * delta);
-        spriteIndex = Math.max (0, Math.min (spriteIndex, HUE_COUNT - 1));
-        return spriteIndex;
+        return hueIndexOf (pressure);
     }
 
     // retourne l'image a utiliser pour le dessin
-    private BufferedImage chooseSprite () {
+    private static BufferedImage chooseSprite (double pressure, boolean highlighted) {
         // si mis en evidence
         if (highlighted) {
         	return highlightedSpriteSet.getSprite(0);
@@ -219,7 +322,7 @@ public class Particle implements Drawable, Comparable<Particle> {
         // si pas mis en evidence
         else {
             // utiliser une image dont la couleur depend de la pression locale
-        	return spriteSet.getSprite(chooseSpriteIndex());
+        	return spriteSet.getSprite(hueIndexOf(pressure));
         }
     }
     
@@ -236,6 +339,28 @@ public class Particle implements Drawable, Comparable<Particle> {
         setPositionVector (getPositionVector ().plus (getVelocity ().times (deltaT)));
     }    
 
+    /**
+     * Retourne la position sur l'axe des x entre la derniere iteration de la simulation et la
+     * position actuelle.
+     * 
+     * @param interpolation 0 pour la position a la derniere iteration, 1 pour la position actuelle.
+     * @return Position interpolee sur l'axe des x.
+     */
+    public double getInterpolatedX (double interpolation) {
+        return previousX + (x - previousX) * interpolation;
+    }
+    
+    /**
+     * Retourne la position sur l'axe des y entre la derniere iteration de la simulation et la
+     * position actuelle.
+     * 
+     * @param interpolation 0 pour la position a la derniere iteration, 1 pour la position actuelle.
+     * @return Position interpolee sur l'axe des y.
+     */
+    public double getInterpolatedY (double interpolation) {
+        return previousY + (y - previousY) * interpolation;
+    }
+    
     /**
      * Compare cette particule a une autre, par identifiant unique.
      * 
@@ -449,6 +574,34 @@ public class Particle implements Drawable, Comparable<Particle> {
 		return id;
 	}
 	
+	// remet a neuf une particule retiree de la simulation, pour qu'elle soit reutilisee par une
+	// buse; elle garde son identificateur
+	void reset(double x, double y, double previousX, double previousY, double velocityX,
+			double velocityY) {
+		this.x = x;
+		this.y = y;
+		this.previousX = previousX;
+		this.previousY = previousY;
+		this.velocityX = velocityX;
+		this.velocityY = velocityY;
+		this.pressure = 0;
+		this.highlighted = false;
+		this.important = false;
+		this.viscosityForce = Vector.NIL;
+		this.normalForce = Vector.NIL;
+		this.stiffnessForce = Vector.NIL;
+	}
+
+	/**
+	 * Retourne vrai si cette particule est dessinee comme un grand cercle meme quand les autres
+	 * sont dessinees en petit.
+	 * 
+	 * @return Vrai si la particule est importante.
+	 */
+	public boolean isImportant() {
+	    return important;
+	}
+	
 	public void setImportant(boolean important) {
 	    this.important = important;
 	}
@@ -0,0 +1,153 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Copie de l'etat des particules qui sert a les dessiner: position, pression et options de dessin
+ * de chaque particule, dans des tableaux reutilises d'une image a l'autre.
+ *
+ * Une fois la copie faite, le dessin n'a plus besoin de lire les particules pendant que la
+ * simulation les deplace. Les positions copiees peuvent aussi etre interpolees entre deux etapes
+ * de la simulation.
+ */
+public class ParticleFrame {
+	/**
+	 * Option de dessin: la particule est dessinee en blanc.
+	 */
+	public static final int HIGHLIGHTED = 1;
+
+	/**
+	 * Option de dessin: la particule est dessinee comme un grand cercle en mode petit.
+	 */
+	public static final int IMPORTANT = 2;
+
+	// nombre de particules dans cette image
+	private int count = 0;
+
+	// etat des particules, par indice
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] pressure = new double[0];
+	private int[] flags = new int[0];
+
+	/**
+	 * Retire toutes les particules de cette image.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Ajoute une particule a cette image.
+	 *
+	 * @param x Position sur l'axe des x.
+	 * @param y Position sur l'axe des y.
+	 * @param pressure Pression de la particule.
+	 * @param flags Options de dessin (HIGHLIGHTED, IMPORTANT).
+	 */
+	public void add(double x, double y, double pressure, int flags) {
+		if (count == this.x.length) {
+			ensureCapacity(Math.max(64, count * 2));
+		}
+		this.x[count] = x;
+		this.y[count] = y;
+		this.pressure[count] = pressure;
+		this.flags[count] = flags;
+		count++;
+	}
+
+	/**
+	 * Ajoute des particules a cette image, avec leur position interpolee entre la derniere
+	 * iteration de la simulation et la position actuelle.
+	 *
+	 * @param particles Particules a ajouter.
+	 * @param interpolation 0 pour la position a la derniere iteration, 1 pour la position actuelle.
+	 */
+	public void addAll(Collection<Particle> particles, double interpolation) {
+		ensureCapacity(count + particles.size());
+		Iterator<Particle> iterator = particles.iterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			int flags = (particle.isHighlighted() ? HIGHLIGHTED : 0)
+					| (particle.isImportant() ? IMPORTANT : 0);
+			add(particle.getInterpolatedX(interpolation), particle.getInterpolatedY(interpolation),
+					particle.getPressure(), flags);
+		}
+	}
+
+	/**
+	 * S'assure que cette image peut contenir le nombre de particules donne sans agrandir ses
+	 * tableaux.
+	 *
+	 * @param capacity Nombre de particules.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			pressure = Arrays.copyOf(pressure, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+	}
+
+	/**
+	 * Retourne le nombre de particules dans cette image.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Retourne la position sur l'axe des x d'une particule.
+	 *
+	 * @param index Indice de la particule.
+	 * @return Position sur l'axe des x.
+	 */
+	public double getX(int index) {
+		return x[index];
+	}
+
+	/**
+	 * Retourne la position sur l'axe des y d'une particule.
+	 *
+	 * @param index Indice de la particule.
+	 * @return Position sur l'axe des y.
+	 */
+	public double getY(int index) {
+		return y[index];
+	}
+
+	/**
+	 * Retourne la pression d'une particule.
+	 *
+	 * @param index Indice de la particule.
+	 * @return Pression de la particule.
+	 */
+	public double getPressure(int index) {
+		return pressure[index];
+	}
+
+	/**
+	 * Retourne vrai ssi une particule doit etre dessinee en blanc.
+	 *
+	 * @param index Indice de la particule.
+	 * @return Vrai ssi la particule est mise en evidence.
+	 */
+	public boolean isHighlighted(int index) {
+		return (flags[index] & HIGHLIGHTED) != 0;
+	}
+
+	/**
+	 * Retourne vrai ssi une particule doit etre dessinee comme un grand cercle en mode petit.
+	 *
+	 * @param index Indice de la particule.
+	 * @return Vrai ssi la particule est importante.
+	 */
+	public boolean isImportant(int index) {
+		return (flags[index] & IMPORTANT) != 0;
+	}
+}
@@ -4,6 +4,7 @@ import geometry.Vector;
 import graphics.WorldMatrix;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -28,6 +29,9 @@ public class ParticleGrid {
 	// nombre de cellules a l'horizontale et a la verticale
 	private int verticalCellCount;
 	private int horizontalCellCount;
+	
+	// nombre de cellules qui contiennent au moins une particule depuis le dernier update()
+	private int occupiedCellCount = 0;
 
 	/**
 	 * Constructeur principal.
@@ -59,10 +63,33 @@ public class ParticleGrid {
 	    particles.add (particle);
 	}
 
+	/**
+	 * Retire une particule de la liste; la derniere particule prend sa place, comme dans
+	 * Simulation.removeParticle(). Les cellules ne changent qu'au prochain update().
+	 * 
+	 * @param index Indice de la particule a retirer.
+	 */
+	public void removeParticle (int index) {
+		int last = particles.size () - 1;
+		particles.set (index, particles.get (last));
+		particles.remove (last);
+	}
+
+	/**
+	 * Reserve la place pour un nombre total de particules.
+	 * 
+	 * @param capacity Nombre total de particules prevu.
+	 */
+	public void ensureCapacity (int capacity) {
+		particles.ensureCapacity (capacity);
+	}
+
 	/**
 	 * Met a jour la position de chacune des particules dans la grille.
 	 */
 	public void update () {
+		GridUpdateEvent event = new GridUpdateEvent ();
+		event.begin ();
 		int x;
 		int y;
 		for (x=0; x<horizontalCellCount; x++) {
@@ -70,15 +97,36 @@ public class ParticleGrid {
 				grid[y][x].clear();
 			}
 		}
+		occupiedCellCount = 0;
 		Iterator<Particle> iter = particles.iterator ();
 		while (iter.hasNext()) {
 			Particle particle = iter.next ();
 			int particleX = getParticleIndexX (particle);
 			int particleY = getParticleIndexY (particle);
 			if (outOfBounds (particleX, particleY))	continue;
-			grid [particleY][particleX].add (particle);
+			LinkedList<Particle> cell = grid [particleY][particleX];
+			if (cell.isEmpty ()) {
+				occupiedCellCount++;
+			}
+			cell.add (particle);
+		}
+		event.end ();
+		if (event.shouldCommit ()) {
+			event.particleCount = particles.size ();
+			event.cellCount = horizontalCellCount * verticalCellCount;
+			event.occupiedCellCount = occupiedCellCount;
+			event.commit ();
 		}
 	}
+	
+	/**
+	 * Retourne le nombre de cellules qui contenaient au moins une particule au dernier update().
+	 * 
+	 * @return Nombre de cellules occupees.
+	 */
+	public int getOccupiedCellCount () {
+		return occupiedCellCount;
+	}
 
 	/**
 	 * Retourne la liste des particules qui sont voisines d'une particule. Deux particules sont
@@ -113,6 +161,33 @@ public class ParticleGrid {
 		return neighbors;
 	}
 	
+	/**
+	 * Ajoute a une collection les particules des cellules qui touchent une region du monde. Les
+	 * particules ajoutees sont possiblement un peu hors de la region, mais aucune particule de la
+	 * grille qui est dans la region n'est oubliee.
+	 * 
+	 * @param minimumX x minimal de la region.
+	 * @param minimumY y minimal de la region.
+	 * @param maximumX x maximal de la region.
+	 * @param maximumY y maximal de la region.
+	 * @param destination Collection a laquelle ajouter les particules.
+	 */
+	public void collectParticles (double minimumX, double minimumY, double maximumX, 
+			double maximumY, Collection<Particle> destination) {
+		// une cellule de plus de chaque cote, car les particules ont pu bouger depuis update()
+		int firstX = Math.max ((int) Math.floor (minimumX / cellSize), 0);
+		int firstY = Math.max ((int) Math.floor (minimumY / cellSize), 0);
+		int lastX = Math.min ((int) Math.floor (maximumX / cellSize) + 2, horizontalCellCount - 1);
+		int lastY = Math.min ((int) Math.floor (maximumY / cellSize) + 2, verticalCellCount - 1);
+		int x;
+		int y;
+		for (y = firstY; y <= lastY; y++) {
+			for (x = firstX; x <= lastX; x++) {
+				destination.addAll (grid[y][x]);
+			}
+		}
+	}
+	
 	/**
 	 * Permet de determiner si les particules sont "out of bounds" (hors limites)
 	 * en fonction de leur position et du nombre de cellules de la grille.
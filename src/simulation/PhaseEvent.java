@@ -0,0 +1,53 @@
+package simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evenement Java Flight Recorder (JFR) qui couvre une phase d'une etape de la simulation. Il
+ * n'est enregistre que si un enregistrement JFR est actif, par exemple avec
+ * -XX:StartFlightRecording, et permet de relier les phases de la simulation aux pauses du
+ * ramasse-miettes et aux echantillons du processeur.
+ */
+@Name("fluidsimulator.Phase")
+@Label("Simulation Phase")
+@Category("Fluid Simulator")
+@Description("Une phase d'une etape de Simulation.update")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Step")
+	@Description("Numero de l'etape")
+	long step;
+
+	@Label("Particle Count")
+	int particleCount;
+
+	@Label("Neighbor Pairs")
+	@Description("Paires de voisins a la derniere recherche des voisins")
+	long neighborPairCount;
+
+	@Label("Delta T")
+	@Description("Duree de l'etape, en secondes")
+	double deltaT;
+
+	@Label("Thread Count")
+	int threadCount;
+
+	/**
+	 * Cree un evenement et commence a mesurer sa duree.
+	 *
+	 * @return Evenement commence.
+	 */
+	static PhaseEvent start() {
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		return event;
+	}
+}
@@ -5,15 +5,29 @@ import geometry.Vector;
 import graphics.WorldMatrix;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.event.EventListenerList;
 
+import listeners.InputListener;
 import listeners.SimulationListener;
+import listeners.StatsListener;
 import simulation.solver.CollisionSolver;
 import simulation.solver.DensitySolver;
 import simulation.solver.ViscositySolver;
@@ -27,6 +41,28 @@ import simulation.solver.ViscositySolver;
  * @version 13 fevrier 2014
  */
 public class Simulation {
+    /**
+     * Phases d'une etape de la simulation, dans l'ordre, pour getPhaseTime ().
+     */
+    public static final int EXTERNAL_FORCES_PHASE = 0;
+    public static final int VISCOSITY_PHASE = 1;
+    public static final int ADVANCE_PHASE = 2;
+    public static final int NEIGHBORS_PHASE = 3;
+    public static final int DENSITY_PHASE = 4;
+    public static final int COLLISIONS_PHASE = 5;
+    public static final int LISTENERS_PHASE = 6;
+    public static final int VELOCITY_PHASE = 7;
+    public static final int FLOW_PHASE = 8;
+    public static final int PHASE_COUNT = 9;
+    
+    // noms des phases, par indice
+    private static final String[] PHASE_NAMES = {"forces externes", "viscosite", "avancement",
+            "voisins", "densite", "collisions", "ecouteurs", "velocite", "flux"};
+    
+    // nombre minimal de particules traitees par un processus; en dessous, le cout des processus
+    // n'en vaut pas la peine
+    private static final int MINIMUM_PARTICLES_PER_TASK = 256;
+    
     // distance a partir de laquelle la souris applique une force
     private final double MOUSE_PULL_DISTANCE = 80;
     
@@ -38,44 +74,61 @@ public class Simulation {
     private final double COLLISION_SOFTNESS = 0.3;
 
     // direction par defautde la gravite au debut de la simulation
-    private static final Vector DEFAULT_GRAVITY_DIRECTION = new Vector (0, -1);
+    public static final Vector DEFAULT_GRAVITY_DIRECTION = new Vector (0, -1);
 
     // norme par defaut du vecteur gravite
-    private static final double DEFAULT_GRAVITY_MAGNITUDE = 250;
+    public static final double DEFAULT_GRAVITY_MAGNITUDE = 250;
 
     // gravite en ce moment
     private Vector gravity;
     
     // rayon maximal des interactions entre deux particules
     private double radius;
-    private static final double DEFAULT_RADIUS = 45;
+    public static final double DEFAULT_RADIUS = 45;
     
     // facteur qui assure la conservation du volume; une haute valeur montre une conservation plus
     // aggressive du volume. Ce facteur s'appelle "rigidite" en francais
     private double stiffness;
-    private static final double DEFAULT_STIFFNESS = 80;
+    public static final double DEFAULT_STIFFNESS = 80;
 
     // si la rigidite est trop elevee, utiliser la rigidite proche plutot; elle empeche que les 
     // particules forment des minis "boules" de fluide separees
     private double nearbyStiffness;
-    private static final double DEFAULT_NEARBY_STIFFNESS = 300;
+    public static final double DEFAULT_NEARBY_STIFFNESS = 300;
     
     // densite que le fluide cherche a atteindre. La densite de chaque particule devrait tendre vers
     // cette valeur. Une haute densite diminue le volume pour un meme nombre de particules.
     private double restDensity;
-    private static final double DEFAULT_REST_DENSITY = 15;
+    public static final double DEFAULT_REST_DENSITY = 15;
     
     // dependance quadratique de la viscosite par rapport a la vitesse
     private double viscosity;
-    private static final double DEFAULT_VISCOSITY = 0.02;
+    public static final double DEFAULT_VISCOSITY = 0.02;
     
     private boolean small = false;
     
     // liste des particules
     private ArrayList<Particle> particles;
     
-    // une liste des particules voisines pour chaque particule
-    private TreeMap<Particle,LinkedList<Particle>> neighborLists;
+    // une liste des particules voisines pour chaque particule, dans le meme ordre que particles
+    private ArrayList<LinkedList<Particle>> neighborLists;
+    
+    // particules retirees par les puits, reutilisees par les buses avant d'en creer de nouvelles
+    private final ArrayList<Particle> freeParticles = new ArrayList<Particle> ();
+    
+    // nombre de valeurs par particule lues par addParticles (DoubleBuffer): x, y et vitesse
+    private static final int PARTICLE_VALUE_COUNT = 4;
+    
+    // nombre de particules lues ou ecrites d'un coup dans un DoubleBuffer
+    private static final int CHUNK_SIZE = 4096;
+    
+    // liste de voisins des particules ajoutees par une buse ou en bloc, remplacee avant d'etre
+    // utilisee
+    private static final LinkedList<Particle> NO_NEIGHBORS = new LinkedList<Particle> ();
+    
+    // buses et puits de la simulation
+    private final ArrayList<Emitter> emitters = new ArrayList<Emitter> ();
+    private final ArrayList<Sink> sinks = new ArrayList<Sink> ();
     
     // dimensions du monde
     private WorldMatrix world;
@@ -89,6 +142,29 @@ public class Simulation {
     // liste des ecouteurs d'evenements
 	private final EventListenerList listeners = new EventListenerList();
 	
+    // nombre de processus utilises pour les phases ou les particules sont independantes
+    private int threadCount = 1;
+    
+    // processus utilises si threadCount est plus grand que 1, ou null
+    private ExecutorService executor = null;
+    
+    // temps total passe dans chaque phase, en nanosecondes
+    private final long[] phaseTimes = new long[PHASE_COUNT];
+    
+    // nombre d'etapes effectuees depuis la creation de la simulation
+    private long stepCount = 0;
+    
+    // mesures publiees aux StatsListener; prises seulement s'il y a au moins un tel ecouteur
+    private final SimulationStats stats = new SimulationStats ();
+    private boolean collectingStats = false;
+    
+    // compteurs de l'etape en cours, mis a jour par plusieurs processus
+    private final AtomicLong neighborPairCount = new AtomicLong ();
+    private final AtomicInteger collisionCount = new AtomicInteger ();
+    
+    // nombre de paires de voisins trouvees a la derniere recherche des voisins
+    private long lastNeighborPairCount = 0;
+	
     /**
      * Constructeur principal.
      * 
@@ -111,7 +187,7 @@ public class Simulation {
         this.viscosity = viscosity;
         this.gravity = gravity;
         this.particles = new ArrayList<Particle> ();
-        this.neighborLists = new TreeMap<Particle,LinkedList<Particle>> ();
+        this.neighborLists = new ArrayList<LinkedList<Particle>> ();
         this.world = boundaries;
         this.grid = new ParticleGrid (world, this.radius);
         this.bounds = new DistanceField(world, walls);
@@ -130,6 +206,18 @@ public class Simulation {
                 walls);
     }
     
+    /**
+     * Reserve la place pour un nombre total de particules, pour que les ajouts qui suivent
+     * n'agrandissent pas les listes une a une.
+     * 
+     * @param capacity Nombre total de particules prevu.
+     */
+    public void ensureCapacity (int capacity) {
+        particles.ensureCapacity (capacity);
+        neighborLists.ensureCapacity (capacity);
+        grid.ensureCapacity (capacity);
+    }
+
     /**
      * Ajoute une particule a la simulation.
      * 
@@ -138,7 +226,222 @@ public class Simulation {
     public void addParticle (Particle particle) {
         particles.add (particle);
         grid.addParticle (particle);
-        neighborLists.put (particle, new LinkedList<Particle> ());
+        neighborLists.add (new LinkedList<Particle> ());
+    }
+
+    /**
+     * Retire une particule de la simulation. La derniere particule prend sa place, pour que rien
+     * ne soit decale dans les listes; l'ordre des particules change donc. La particule retiree est
+     * gardee pour etre reutilisee par une buse.
+     * 
+     * @param index Indice de la particule a retirer.
+     */
+    public void removeParticle (int index) {
+        int last = particles.size () - 1;
+        Particle particle = particles.get (index);
+        particles.set (index, particles.get (last));
+        particles.remove (last);
+        neighborLists.set (index, neighborLists.get (last));
+        neighborLists.remove (last);
+        grid.removeParticle (index);
+        freeParticles.add (particle);
+    }
+
+    // ajoute une particule pour une buse ou un ajout en bloc, en reutilisant une particule retiree
+    // s'il y en a une
+    void addRecycledParticle (double x, double y, double previousX, double previousY,
+            double velocityX, double velocityY) {
+        Particle particle;
+        if (freeParticles.isEmpty ()) {
+            particle = new Particle (x, y);
+        }
+        else {
+            particle = freeParticles.remove (freeParticles.size () - 1);
+        }
+        particle.reset (x, y, previousX, previousY, velocityX, velocityY);
+        particle.setSmall (small);
+        particles.add (particle);
+        grid.addParticle (particle);
+        // les voisins sont trouves avant d'etre utilises, a la recherche des voisins qui suit
+        neighborLists.add (NO_NEIGHBORS);
+    }
+
+    /**
+     * Ajoute des particules a partir de tableaux de valeurs, sans que l'appelant ait a creer une
+     * Particle pour chacune. Les particules sont ajoutees a la fin, dans l'ordre des tableaux;
+     * elles ne sont pas mises en evidence. L'appelant doit empecher la simulation d'avancer
+     * pendant l'appel.
+     * 
+     * @param x Positions sur l'axe des x.
+     * @param y Positions sur l'axe des y.
+     * @param velocityX Vitesses sur l'axe des x, ou null pour des vitesses nulles.
+     * @param velocityY Vitesses sur l'axe des y, ou null pour des vitesses nulles.
+     * @param offset Indice, dans les tableaux, de la premiere particule a ajouter.
+     * @param count Nombre de particules a ajouter.
+     */
+    public void addParticles (double[] x, double[] y, double[] velocityX, double[] velocityY,
+            int offset, int count) {
+        if (offset < 0 || count < 0 || (velocityX == null) != (velocityY == null)
+                || !fits (x, offset, count) || !fits (y, offset, count)
+                || (velocityX != null && (!fits (velocityX, offset, count)
+                        || !fits (velocityY, offset, count)))) {
+            throw new IllegalArgumentException ("tableaux trop petits ou incomplets.");
+        }
+        ensureCapacity (particles.size () + count);
+        int i;
+        for (i = offset; i < offset + count; i++) {
+            addRecycledParticle (x[i], y[i], x[i], y[i], velocityX == null ? 0 : velocityX[i],
+                    velocityY == null ? 0 : velocityY[i]);
+        }
+    }
+
+    // retourne vrai si un tableau contient les valeurs [offset, offset + count[
+    private static boolean fits (double[] values, int offset, int count) {
+        return values.length - offset >= count;
+    }
+
+    /**
+     * Ajoute des particules a partir d'un tampon qui contient, pour chaque particule, x, y,
+     * vitesse x et vitesse y, l'une apres l'autre, a partir de sa position courante. La position
+     * du tampon avance apres les valeurs lues. L'appelant doit empecher la simulation d'avancer
+     * pendant l'appel.
+     * 
+     * @param source Tampon a lire (par exemple une vue d'un ByteBuffer direct partage avec un
+     * programme hote).
+     * @param count Nombre de particules a ajouter.
+     */
+    public void addParticles (DoubleBuffer source, int count) {
+        if (count < 0 || source.remaining () / PARTICLE_VALUE_COUNT < count) {
+            throw new IllegalArgumentException ("le tampon ne contient pas " + count
+                    + " particules.");
+        }
+        ensureCapacity (particles.size () + count);
+        // lire le tampon par paquets, plutot qu'une valeur a la fois
+        double[] chunk = new double[Math.min (count, CHUNK_SIZE) * PARTICLE_VALUE_COUNT];
+        int done = 0;
+        while (done < count) {
+            int length = Math.min (count - done, CHUNK_SIZE);
+            source.get (chunk, 0, length * PARTICLE_VALUE_COUNT);
+            int i;
+            for (i = 0; i < length * PARTICLE_VALUE_COUNT; i += PARTICLE_VALUE_COUNT) {
+                addRecycledParticle (chunk[i], chunk[i + 1], chunk[i], chunk[i + 1],
+                        chunk[i + 2], chunk[i + 3]);
+            }
+            done += length;
+        }
+    }
+
+    /**
+     * Copie l'etat des particules dans des tableaux de l'appelant, dans l'ordre des particules
+     * (celui de getParticleIterator()). Les tableaux inutiles peuvent etre nuls; ceux qui sont
+     * donnes doivent avoir au moins getParticleCount() elements. L'appelant doit empecher la
+     * simulation d'avancer pendant l'appel.
+     * 
+     * @param x Positions sur l'axe des x, ou null.
+     * @param y Positions sur l'axe des y, ou null.
+     * @param velocityX Vitesses sur l'axe des x, ou null.
+     * @param velocityY Vitesses sur l'axe des y, ou null.
+     * @param pressure Pressions, ou null.
+     */
+    public void copyParticles (double[] x, double[] y, double[] velocityX, double[] velocityY,
+            double[] pressure) {
+        int count = particles.size ();
+        if ((x != null && !fits (x, 0, count)) || (y != null && !fits (y, 0, count))
+                || (velocityX != null && !fits (velocityX, 0, count))
+                || (velocityY != null && !fits (velocityY, 0, count))
+                || (pressure != null && !fits (pressure, 0, count))) {
+            throw new IllegalArgumentException ("tableaux trop petits pour " + count
+                    + " particules.");
+        }
+        int i;
+        for (i = 0; i < count; i++) {
+            Particle particle = particles.get (i);
+            if (x != null) {
+                x[i] = particle.getX ();
+            }
+            if (y != null) {
+                y[i] = particle.getY ();
+            }
+            if (velocityX != null) {
+                velocityX[i] = particle.getVelocityX ();
+            }
+            if (velocityY != null) {
+                velocityY[i] = particle.getVelocityY ();
+            }
+            if (pressure != null) {
+                pressure[i] = particle.getPressure ();
+            }
+        }
+    }
+
+    /**
+     * Copie l'etat des particules dans un tampon de l'appelant: pour chaque particule, dans
+     * l'ordre des particules, x, y, vitesse x, vitesse y et pression, a partir de la position
+     * courante du tampon, qui avance apres les valeurs ecrites. L'appelant doit empecher la
+     * simulation d'avancer pendant l'appel.
+     * 
+     * @param destination Tampon a remplir, avec au moins 5 * getParticleCount() places.
+     */
+    public void copyParticles (DoubleBuffer destination) {
+        int count = particles.size ();
+        if (destination.remaining () / (PARTICLE_VALUE_COUNT + 1) < count) {
+            throw new IllegalArgumentException ("le tampon est trop petit pour " + count
+                    + " particules.");
+        }
+        // ecrire le tampon par paquets, plutot qu'une valeur a la fois
+        double[] chunk = new double[Math.min (count, CHUNK_SIZE) * (PARTICLE_VALUE_COUNT + 1)];
+        int done = 0;
+        while (done < count) {
+            int length = Math.min (count - done, CHUNK_SIZE);
+            int i;
+            int next = 0;
+            for (i = done; i < done + length; i++) {
+                Particle particle = particles.get (i);
+                chunk[next++] = particle.getX ();
+                chunk[next++] = particle.getY ();
+                chunk[next++] = particle.getVelocityX ();
+                chunk[next++] = particle.getVelocityY ();
+                chunk[next++] = particle.getPressure ();
+            }
+            destination.put (chunk, 0, next);
+            done += length;
+        }
+    }
+
+    /**
+     * Ajoute une buse, qui ajoute des particules a chaque etape.
+     * 
+     * @param emitter Buse a ajouter.
+     */
+    public void addEmitter (Emitter emitter) {
+        emitters.add (emitter);
+    }
+
+    /**
+     * Ajoute un puits, qui retire les particules qui y entrent a chaque etape.
+     * 
+     * @param sink Puits a ajouter.
+     */
+    public void addSink (Sink sink) {
+        sinks.add (sink);
+    }
+
+    /**
+     * Retourne les buses de la simulation.
+     * 
+     * @return Buses, dans l'ordre ou elles ont ete ajoutees.
+     */
+    public Emitter[] getEmitters () {
+        return emitters.toArray (new Emitter[emitters.size ()]);
+    }
+
+    /**
+     * Retourne les puits de la simulation.
+     * 
+     * @return Puits, dans l'ordre ou ils ont ete ajoutes.
+     */
+    public Sink[] getSinks () {
+        return sinks.toArray (new Sink[sinks.size ()]);
     }
 
     /**
@@ -151,22 +454,81 @@ public class Simulation {
      * si elle n'interagit pas.
      */
     public void update (double deltaT, Point2D.Double mousePosition, Point2D.Double previousMousePosition) {
+        collectingStats = listeners.getListenerCount (StatsListener.class) > 0;
+        neighborPairCount.set (0);
+        collisionCount.set (0);
+        // publier les entrees de cette etape avant de les appliquer
+        startEventInputApplied (deltaT, mousePosition, previousMousePosition);
+        long time = System.nanoTime ();
+        // chaque phase est entouree d'un evenement JFR, enregistre seulement si un enregistrement
+        // est actif
+        PhaseEvent event = PhaseEvent.start ();
         // appliquer les forces externes (gravite, forces de la souris)
         applyExternalForces (deltaT, mousePosition, previousMousePosition);
+        time = endPhase (EXTERNAL_FORCES_PHASE, time, event, deltaT);
         // appliquer la viscosite
+        event = PhaseEvent.start ();
         applyViscosity (deltaT);
+        time = endPhase (VISCOSITY_PHASE, time, event, deltaT);
         // deplacer selon la vitesse
+        event = PhaseEvent.start ();
         advanceParticles (deltaT);
+        time = endPhase (ADVANCE_PHASE, time, event, deltaT);
+        // retirer et ajouter les particules des puits et des buses, avant de trouver les voisins
+        if (!emitters.isEmpty () || !sinks.isEmpty ()) {
+            event = PhaseEvent.start ();
+            updateFlow (deltaT);
+            time = endPhase (FLOW_PHASE, time, event, deltaT);
+        }
         // mettre a jour les voisins
+        event = PhaseEvent.start ();
         updateNeighbors ();
+        lastNeighborPairCount = neighborPairCount.get ();
+        time = endPhase (NEIGHBORS_PHASE, time, event, deltaT);
         // ajuster selon la densite
+        event = PhaseEvent.start ();
         doubleDensityRelaxation (deltaT);
+        time = endPhase (DENSITY_PHASE, time, event, deltaT);
         // resoudre les collisions
+        event = PhaseEvent.start ();
         resolveCollisions (deltaT);
+        time = endPhase (COLLISIONS_PHASE, time, event, deltaT);
         // lancer l'evenement pour chaque etape de la simulation
+        event = PhaseEvent.start ();
     	startEventFrameEntered();
+        time = endPhase (LISTENERS_PHASE, time, event, deltaT);
         // mettre a jour la velocite
+        event = PhaseEvent.start ();
         updateVelocity (deltaT);
+        endPhase (VELOCITY_PHASE, time, event, deltaT);
+        stepCount++;
+        // publier les mesures de cette etape
+        if (collectingStats) {
+            stats.setCounters (stepCount, particles.size (), neighborPairCount.get (), 
+                    grid.getOccupiedCellCount (), collisionCount.get ());
+            startEventStatsUpdated ();
+        }
+    }
+    
+    // ajoute le temps ecoule depuis time au temps de la phase, termine l'evenement JFR de la
+    // phase et retourne le temps actuel
+    private long endPhase (int phase, long time, PhaseEvent event, double deltaT) {
+        long now = System.nanoTime ();
+        phaseTimes[phase] += now - time;
+        if (collectingStats) {
+            stats.record (phase, now - time);
+        }
+        event.end ();
+        if (event.shouldCommit ()) {
+            event.phase = PHASE_NAMES[phase];
+            event.step = stepCount;
+            event.particleCount = particles.size ();
+            event.neighborPairCount = lastNeighborPairCount;
+            event.deltaT = deltaT;
+            event.threadCount = threadCount;
+            event.commit ();
+        }
+        return now;
     }
     
     /**
@@ -176,21 +538,28 @@ public class Simulation {
      * @param mousePosition Position de la souris, ou null si elle n'interagit pas avec la
      * simulation.
      */
-    private void applyExternalForces (double deltaT, Point2D.Double mousePosition, Point2D.Double previousMousePosition) {
-        // pour chaque particule
-        ListIterator<Particle> iterator = particles.listIterator ();
-        while (iterator.hasNext ()) {
-            // particule courante
-            Particle particle = iterator.next ();
-            // appliquer la gravite
-            particle.setVelocity (particle.getVelocity ().plus (gravity.times (deltaT)));
-            // si l'utilisateur est en train de cliquer
-            if (mousePosition != null) {            	
-                // appliquer la force de la souris
-                Vector mouseForce = getMouseForce (particle, mousePosition, previousMousePosition, deltaT);
-                particle.setVelocity (particle.getVelocity ().plus (mouseForce));
+    private void applyExternalForces (final double deltaT, final Point2D.Double mousePosition, 
+            final Point2D.Double previousMousePosition) {
+        final Vector gravityStep = gravity.times (deltaT);
+        forEachParticle (new ParticleRange () {
+            public void apply (int start, int end) {
+                // pour chaque particule
+                int i;
+                for (i = start; i < end; i++) {
+                    // particule courante
+                    Particle particle = particles.get (i);
+                    // appliquer la gravite
+                    particle.setVelocity (particle.getVelocity ().plus (gravityStep));
+                    // si l'utilisateur est en train de cliquer
+                    if (mousePosition != null) {            	
+                        // appliquer la force de la souris
+                        Vector mouseForce = getMouseForce (particle, mousePosition, 
+                                previousMousePosition, deltaT);
+                        particle.setVelocity (particle.getVelocity ().plus (mouseForce));
+                    }
+                }
             }
-        }
+        });
     }
     
     /**
@@ -218,13 +587,14 @@ public class Simulation {
      * @param deltaT Intervalle de temps.
      */
     private void applyViscosity (double deltaT) {
-        // pour chaque particule
-        ListIterator<Particle> iterator = particles.listIterator ();
-        while (iterator.hasNext ()) {
-            // particule courante, son indice et sa position
-            Particle particle = iterator.next ();
+        // pour chaque particule (la viscosite modifie la velocite des voisins deja traites, donc
+        // cette phase n'est pas faite en parallele)
+        int i;
+        for (i = 0; i < particles.size (); i++) {
+            // particule courante
+            Particle particle = particles.get (i);
             // trouver les voisins de cette particule
-            LinkedList<Particle> neighborList = neighborLists.get (particle);
+            LinkedList<Particle> neighborList = neighborLists.get (i);
             // appliquer la viscosite
             particle.setViscosityForce(Vector.NIL);
             ViscositySolver.applyViscosity (particle, deltaT, neighborList, viscosity, 
@@ -237,14 +607,41 @@ public class Simulation {
      * 
      * @param deltaT Intervalle de temps.
      */
-    private void advanceParticles (double deltaT) {
-        // pour chaque particule
-        ListIterator<Particle> iterator = particles.listIterator ();
-        while (iterator.hasNext ()) {
-            // particule courante
-            Particle particle = iterator.next ();
-            // avancer la particule
-            particle.advance (deltaT);
+    private void advanceParticles (final double deltaT) {
+        forEachParticle (new ParticleRange () {
+            public void apply (int start, int end) {
+                // pour chaque particule
+                int i;
+                for (i = start; i < end; i++) {
+                    // avancer la particule
+                    particles.get (i).advance (deltaT);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Retire les particules qui sont dans un puits, puis ajoute celles des buses. Les particules
+     * sont parcourues de la fin vers le debut: celle qui prend la place d'une particule retiree a
+     * deja ete verifiee.
+     * 
+     * @param deltaT Intervalle de temps.
+     */
+    private void updateFlow (double deltaT) {
+        if (!sinks.isEmpty ()) {
+            int i;
+            for (i = particles.size () - 1; i >= 0; i--) {
+                Particle particle = particles.get (i);
+                for (Sink sink : sinks) {
+                    if (sink.drains (particle)) {
+                        removeParticle (i);
+                        break;
+                    }
+                }
+            }
+        }
+        for (Emitter emitter : emitters) {
+            emitter.emit (this, deltaT);
         }
     }
     
@@ -254,15 +651,20 @@ public class Simulation {
     private void updateNeighbors () {
         // mettre a jour la position de chaque particule dans la grille
     	grid.update ();
-    	// pour chaque particule
-    	ListIterator<Particle> iterator = particles.listIterator ();
-    	while (iterator.hasNext ()) {
-    	    // particule et son indice
-    	    Particle particle = iterator.next ();
-    	    // mettre a jour la liste des voisins
-            LinkedList<Particle> neighbors = grid.neighborsOf (particle);
-            neighborLists.put (particle, neighbors);
-    	}
+    	forEachParticle (new ParticleRange () {
+    	    public void apply (int start, int end) {
+    	        // pour chaque particule
+    	        long pairCount = 0;
+    	        int i;
+    	        for (i = start; i < end; i++) {
+    	            // mettre a jour la liste des voisins
+    	            LinkedList<Particle> neighbors = grid.neighborsOf (particles.get (i));
+    	            neighborLists.set (i, neighbors);
+    	            pairCount += neighbors.size ();
+    	        }
+    	        neighborPairCount.addAndGet (pairCount);
+    	    }
+    	});
     }
     
     /**
@@ -278,11 +680,12 @@ public class Simulation {
         	Particle particle = iterator.next();
         	particle.setStiffnessForce(Vector.NIL);
         }
-        iterator = particles.listIterator();
-        while (iterator.hasNext ()) {
-            // position, indice et particule courante
-            Particle particle = iterator.next ();
-            LinkedList<Particle> neighborList = neighborLists.get (particle);
+        // la relaxation deplace les voisins, donc cette phase n'est pas faite en parallele
+        int i;
+        for (i = 0; i < particles.size (); i++) {
+            // particule courante et ses voisins
+            Particle particle = particles.get (i);
+            LinkedList<Particle> neighborList = neighborLists.get (i);
             // appliquer l'ajustement de la densite
             DensitySolver.doubleDensityRelaxation (particle, deltaT, neighborList, stiffness, nearbyStiffness,
                     restDensity, radius);
@@ -292,15 +695,22 @@ public class Simulation {
     /**
      * Resout les collisions entre les murs et les particules.
      */
-    private void resolveCollisions (double deltaT) {
-        // pour chauqe particule
-        ListIterator<Particle> iterator = particles.listIterator ();
-        while (iterator.hasNext ()) {
-            // particule courante
-            Particle particle = iterator.next ();
-            // resoudre les collisions
-            CollisionSolver.resolveCollisions (particle, bounds, COLLISION_SOFTNESS, deltaT);
-        }
+    private void resolveCollisions (final double deltaT) {
+        forEachParticle (new ParticleRange () {
+            public void apply (int start, int end) {
+                // pour chaque particule
+                int collisions = 0;
+                int i;
+                for (i = start; i < end; i++) {
+                    // resoudre les collisions
+                    if (CollisionSolver.resolveCollisions (particles.get (i), bounds, 
+                            COLLISION_SOFTNESS, deltaT)) {
+                        collisions++;
+                    }
+                }
+                collisionCount.addAndGet (collisions);
+            }
+        });
     }
     
     /**
@@ -308,20 +718,85 @@ public class Simulation {
      * 
      * @param deltaT Intervalle de temps.
      */
-    private void updateVelocity (double deltaT) {
-        // pour chaque particule
-        ListIterator<Particle> iterator = particles.listIterator ();
-        while (iterator.hasNext ()) {
-            // particule courante
-            Particle particle = iterator.next ();
-            // affecter comme velocite le deplacement divise par l'intervalle de temps
-            Vector velocity = particle.getPositionVector ()
-                    .minus (particle.getPreviousPositionVector ())
-                    .times (1 / deltaT);
-            particle.setVelocity (velocity);
+    private void updateVelocity (final double deltaT) {
+        forEachParticle (new ParticleRange () {
+            public void apply (int start, int end) {
+                // pour chaque particule
+                int i;
+                for (i = start; i < end; i++) {
+                    // particule courante
+                    Particle particle = particles.get (i);
+                    // affecter comme velocite le deplacement divise par l'intervalle de temps
+                    Vector velocity = particle.getPositionVector ()
+                            .minus (particle.getPreviousPositionVector ())
+                            .times (1 / deltaT);
+                    particle.setVelocity (velocity);
+                }
+            }
+        });
+    }
+    
+    // applique un traitement sur toutes les particules, en divisant la liste en intervalles
+    // traites en parallele si plusieurs processus sont utilises
+    private void forEachParticle (final ParticleRange range) {
+        int count = particles.size ();
+        int taskCount = executor == null ? 1 
+                : Math.min (threadCount, count / MINIMUM_PARTICLES_PER_TASK);
+        if (taskCount <= 1) {
+            range.apply (0, count);
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>> (taskCount);
+        int i;
+        for (i = 0; i < taskCount; i++) {
+            final int start = (int) ((long) count * i / taskCount);
+            final int end = (int) ((long) count * (i + 1) / taskCount);
+            futures.add (executor.submit (new Callable<Void> () {
+                public Void call () {
+                    range.apply (start, end);
+                    return null;
+                }
+            }));
+        }
+        // attendre toutes les taches, meme si ce processus est interrompu: une phase appliquee a
+        // une partie des particules seulement corromprait l'etape. L'interruption est remise a la
+        // fin, pour que l'appelant s'arrete apres l'etape.
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get ();
+                    break;
+                }
+                catch (InterruptedException error) {
+                    interrupted = true;
+                }
+                catch (ExecutionException error) {
+                    if (failure == null) {
+                        failure = error.getCause ();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread ().interrupt ();
+        }
+        // relancer la premiere erreur des processus
+        if (failure != null) {
+            throw new RuntimeException (failure);
         }
     }
     
+    /*
+     * Traitement applique independamment a chaque particule d'un intervalle [start, end[ de la
+     * liste des particules.
+     */
+    private static abstract class ParticleRange {
+        public abstract void apply (int start, int end);
+    }
+    
     /**
      * Retourne un iterateur pour la liste des particules de la simulation.
      * 
@@ -331,9 +806,30 @@ public class Simulation {
         return particles.iterator ();
     }
     
+    /**
+     * Ajoute a une collection les particules qui sont possiblement dans une region du monde, en
+     * utilisant la grille des voisins pour ne pas parcourir les autres particules.
+     * 
+     * @param region Region du monde, en unites physiques.
+     * @param destination Collection a laquelle ajouter les particules.
+     */
+    public void collectParticles (Rectangle2D region, Collection<Particle> destination) {
+        grid.collectParticles (region.getMinX (), region.getMinY (), region.getMaxX (),
+                region.getMaxY (), destination);
+    }
+    
     public Polygon[] getWalls() {
     	return bounds.getWalls();
     }
+    
+    /**
+     * Retourne les dimensions du monde de la simulation.
+     * 
+     * @return Dimensions du monde.
+     */
+    public WorldMatrix getWorld () {
+        return world;
+    }
 
     /**
      * Retourne le vecteur gravite.
@@ -467,6 +963,185 @@ public class Simulation {
 		listeners.add(SimulationListener.class, listener);
 	}
 	
+	/**
+	 * Retire un ecouteur de type SimulationListener de cette simulation.
+	 * 
+	 * @param listener Ecouteur a retirer.
+	 */
+	public void removeSimulationListener(SimulationListener listener) {
+		listeners.remove(SimulationListener.class, listener);
+	}
+	
+	/**
+	 * Ajoute un ecouteur des entrees exterieures de la simulation.
+	 * 
+	 * @param listener Ecouteur a ajouter.
+	 */
+	public void addInputListener(InputListener listener) {
+		listeners.add(InputListener.class, listener);
+	}
+	
+	/**
+	 * Retire un ecouteur des entrees exterieures de la simulation.
+	 * 
+	 * @param listener Ecouteur a retirer.
+	 */
+	public void removeInputListener(InputListener listener) {
+		listeners.remove(InputListener.class, listener);
+	}
+	
+	/**
+	 * Choisit le nombre de processus utilises pour les phases ou chaque particule est traitee
+	 * independamment des autres (forces externes, avancement, voisins, collisions, velocite). Le
+	 * resultat ne depend pas du nombre de processus.
+	 * 
+	 * @param threadCount Nombre de processus, 1 pour tout faire dans le processus appelant.
+	 */
+	public void setThreadCount(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount doit etre au moins 1.");
+		}
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		this.threadCount = threadCount;
+		if (threadCount > 1) {
+			executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "simulation");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Retourne le nombre de processus utilises pour les phases paralleles.
+	 * 
+	 * @return Nombre de processus.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Retourne le temps total passe dans une phase des etapes de la simulation.
+	 * 
+	 * @param phase Indice de la phase (EXTERNAL_FORCES_PHASE, VISCOSITY_PHASE...).
+	 * @return Temps total, en nanosecondes.
+	 */
+	public long getPhaseTime(int phase) {
+		return phaseTimes[phase];
+	}
+	
+	/**
+	 * Retourne le nom d'une phase des etapes de la simulation.
+	 * 
+	 * @param phase Indice de la phase.
+	 * @return Nom de la phase.
+	 */
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+	
+	/**
+	 * Remet a zero le temps passe dans chaque phase.
+	 */
+	public void resetPhaseTimes() {
+		Arrays.fill(phaseTimes, 0);
+	}
+	
+	/**
+	 * Retourne le nombre d'etapes effectuees depuis la creation de la simulation.
+	 * 
+	 * @return Nombre d'etapes.
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+	
+	// affecte le nombre d'etapes effectuees, utilise par Checkpoint pour restaurer une simulation
+	void setStepCount(long stepCount) {
+		this.stepCount = stepCount;
+	}
+	
+	// retourne les voisins d'une particule trouves a la derniere etape, utilises par la viscosite
+	// de l'etape suivante
+	LinkedList<Particle> getNeighbors(int index) {
+		return neighborLists.get(index);
+	}
+	
+	// affecte les voisins d'une particule, utilise par Checkpoint pour restaurer une simulation
+	void setNeighbors(int index, LinkedList<Particle> neighbors) {
+		neighborLists.set(index, neighbors);
+	}
+	
+	/**
+	 * Retourne le nombre de particules dans la simulation.
+	 * 
+	 * @return Nombre de particules.
+	 */
+	public int getParticleCount() {
+		return particles.size();
+	}
+	
+	/**
+	 * Ajoute un ecouteur des mesures de cette simulation. Les mesures ne sont prises que s'il y a
+	 * au moins un tel ecouteur.
+	 * 
+	 * @param listener Ecouteur a ajouter.
+	 */
+	public void addStatsListener(StatsListener listener) {
+		listeners.add(StatsListener.class, listener);
+	}
+	
+	/**
+	 * Retire un ecouteur des mesures de cette simulation.
+	 * 
+	 * @param listener Ecouteur a retirer.
+	 */
+	public void removeStatsListener(StatsListener listener) {
+		listeners.remove(StatsListener.class, listener);
+	}
+	
+	/**
+	 * Retourne l'objet qui contient les mesures de cette simulation. Le temps de dessin doit y etre
+	 * ajoute par celui qui dessine la simulation (SimulationStats.recordRenderTime), s'il y a des
+	 * ecouteurs (hasStatsListeners).
+	 * 
+	 * @return Mesures de la simulation.
+	 */
+	public SimulationStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Retourne vrai si au moins un StatsListener ecoute cette simulation: les mesures ne sont prises
+	 * que dans ce cas. Peut etre appelee sans verrouiller la simulation.
+	 * 
+	 * @return Vrai s'il y a des ecouteurs des mesures.
+	 */
+	public boolean hasStatsListeners() {
+		return listeners.getListenerCount(StatsListener.class) > 0;
+	}
+	
+	// lance l'evenement des mesures a la fin d'une etape
+	private void startEventStatsUpdated() {
+		for (StatsListener listener : listeners.getListeners(StatsListener.class)) {
+			listener.statsUpdated(stats);
+		}
+	}
+	
+	// lance l'evenement des entrees au debut d'une etape
+	private void startEventInputApplied(double deltaT, Point2D.Double mousePosition,
+			Point2D.Double previousMousePosition) {
+		for (InputListener listener : listeners.getListeners(InputListener.class)) {
+			listener.inputApplied(this, deltaT, mousePosition, previousMousePosition);
+		}
+	}
+	
 	// lance l'evenement pour chaque nouvelle etape de la simulation
 	private void startEventFrameEntered() {
 		for (SimulationListener listener : listeners.getListeners(SimulationListener.class)) {
@@ -0,0 +1,229 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Mesures de la derniere etape de la simulation: temps passe dans chaque phase et dans le dessin,
+ * et compteurs (paires de voisins, cellules occupees de la grille, collisions resolues). Les temps
+ * des dernieres etapes sont gardes dans une fenetre glissante pour en calculer les centiles. Le
+ * temps de demarrage, jusqu'a la premiere image dessinee, est aussi garde.
+ *
+ * Un seul objet est utilise par simulation et il est mis a jour a chaque etape; les ecouteurs
+ * (StatsListener) doivent copier les valeurs qu'ils veulent garder. Les mesures sont ecrites par le
+ * processus de la simulation et par celui qui la dessine, et peuvent etre lues par d'autres
+ * (metriques, interface): toutes les methodes sont synchronisees, pour qu'un centile soit toujours
+ * calcule sur une fenetre complete.
+ */
+public class SimulationStats {
+	/**
+	 * Canal du temps de dessin, apres ceux des phases de la simulation (Simulation.*_PHASE).
+	 */
+	public static final int RENDER = Simulation.PHASE_COUNT;
+
+	/**
+	 * Nombre de canaux de temps: les phases de la simulation, puis le dessin.
+	 */
+	public static final int CHANNEL_COUNT = RENDER + 1;
+
+	/**
+	 * Nombre de mesures gardees par canal pour le calcul des centiles.
+	 */
+	public static final int WINDOW_SIZE = 128;
+
+	// dernier temps mesure pour chaque canal, en nanosecondes
+	private final long[] lastTimes = new long[CHANNEL_COUNT];
+
+	// fenetre glissante des derniers temps de chaque canal
+	private final long[][] samples = new long[CHANNEL_COUNT][WINDOW_SIZE];
+
+	// nombre de mesures dans la fenetre et position de la prochaine, par canal
+	private final int[] sampleCounts = new int[CHANNEL_COUNT];
+	private final int[] nextSamples = new int[CHANNEL_COUNT];
+
+	// compteurs de la derniere etape
+	private long stepCount = 0;
+	private int particleCount = 0;
+	private long neighborPairCount = 0;
+	private int occupiedCellCount = 0;
+	private int collisionCount = 0;
+
+	// nombre total d'etapes abandonnees parce que la simulation prenait trop de retard
+	private long droppedStepCount = 0;
+
+	// temps entre le demarrage de la JVM et la premiere image dessinee, ou 0
+	private long firstFrameTime = 0;
+
+	/**
+	 * Ajoute une mesure de temps a un canal.
+	 *
+	 * @param channel Canal (une phase de la simulation, ou RENDER).
+	 * @param nanoseconds Temps mesure, en nanosecondes.
+	 */
+	public synchronized void record(int channel, long nanoseconds) {
+		lastTimes[channel] = nanoseconds;
+		samples[channel][nextSamples[channel]] = nanoseconds;
+		nextSamples[channel] = (nextSamples[channel] + 1) % WINDOW_SIZE;
+		if (sampleCounts[channel] < WINDOW_SIZE) {
+			sampleCounts[channel]++;
+		}
+	}
+
+	/**
+	 * Ajoute une mesure du temps de dessin d'une image.
+	 *
+	 * @param nanoseconds Temps de dessin, en nanosecondes.
+	 */
+	public synchronized void recordRenderTime(long nanoseconds) {
+		record(RENDER, nanoseconds);
+	}
+
+	/**
+	 * Note que la premiere image de la simulation vient d'etre dessinee: le temps ecoule depuis le
+	 * demarrage de la JVM (generation des images des particules, lecture de la scene, ...) devient
+	 * le temps de demarrage. Les appels suivants sont ignores.
+	 */
+	public synchronized void recordFirstFrame() {
+		if (firstFrameTime == 0) {
+			firstFrameTime = Math.max(1,
+					ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L);
+		}
+	}
+
+	/**
+	 * Ajoute des etapes au nombre d'etapes abandonnees par celui qui fait avancer la simulation
+	 * parce qu'elle prenait trop de retard sur le temps reel.
+	 *
+	 * @param count Nombre d'etapes abandonnees.
+	 */
+	public synchronized void addDroppedSteps(int count) {
+		droppedStepCount += count;
+	}
+
+	// affecte les compteurs de la derniere etape
+	synchronized void setCounters(long stepCount, int particleCount, long neighborPairCount,
+			int occupiedCellCount, int collisionCount) {
+		this.stepCount = stepCount;
+		this.particleCount = particleCount;
+		this.neighborPairCount = neighborPairCount;
+		this.occupiedCellCount = occupiedCellCount;
+		this.collisionCount = collisionCount;
+	}
+
+	/**
+	 * Retourne le dernier temps mesure pour un canal.
+	 *
+	 * @param channel Canal (une phase de la simulation, ou RENDER).
+	 * @return Dernier temps, en nanosecondes.
+	 */
+	public synchronized long getLastTime(int channel) {
+		return lastTimes[channel];
+	}
+
+	/**
+	 * Retourne le temps total de la derniere etape, soit la somme des temps de ses phases.
+	 *
+	 * @return Temps de la derniere etape, en nanosecondes.
+	 */
+	public synchronized long getLastStepTime() {
+		long total = 0;
+		int i;
+		for (i = 0; i < Simulation.PHASE_COUNT; i++) {
+			total += lastTimes[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Retourne un centile des temps de la fenetre glissante d'un canal.
+	 *
+	 * @param channel Canal (une phase de la simulation, ou RENDER).
+	 * @param percentile Centile voulu, entre 0 et 100 (50 pour la mediane).
+	 * @return Temps correspondant au centile, en nanosecondes, ou 0 s'il n'y a aucune mesure.
+	 */
+	public long getPercentile(int channel, double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile doit etre entre 0 et 100.");
+		}
+		// copie locale de la fenetre, triee hors du verrou pour ne pas retarder record()
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(samples[channel], sampleCounts[channel]);
+		}
+		int count = sorted.length;
+		if (count == 0) {
+			return 0;
+		}
+		Arrays.sort(sorted);
+		// methode du rang le plus proche
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Retourne le nombre d'etapes effectuees par la simulation.
+	 *
+	 * @return Nombre d'etapes.
+	 */
+	public synchronized long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Retourne le nombre de particules a la derniere etape.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public synchronized int getParticleCount() {
+		return particleCount;
+	}
+
+	/**
+	 * Retourne le nombre de paires de voisins a la derniere etape. Chaque paire est comptee deux
+	 * fois, une fois pour chaque particule.
+	 *
+	 * @return Nombre de paires de voisins.
+	 */
+	public synchronized long getNeighborPairCount() {
+		return neighborPairCount;
+	}
+
+	/**
+	 * Retourne le nombre de cellules de la grille qui contenaient au moins une particule a la
+	 * derniere etape.
+	 *
+	 * @return Nombre de cellules occupees.
+	 */
+	public synchronized int getOccupiedCellCount() {
+		return occupiedCellCount;
+	}
+
+	/**
+	 * Retourne le nombre de particules qui sont entrees en collision avec un mur ou le bord du
+	 * monde a la derniere etape.
+	 *
+	 * @return Nombre de collisions resolues.
+	 */
+	public synchronized int getCollisionCount() {
+		return collisionCount;
+	}
+
+	/**
+	 * Retourne le temps entre le demarrage de la JVM et la premiere image dessinee de la simulation
+	 * (voir recordFirstFrame).
+	 *
+	 * @return Temps de demarrage, en nanosecondes, ou 0 si aucune image n'a ete dessinee.
+	 */
+	public synchronized long getFirstFrameTime() {
+		return firstFrameTime;
+	}
+
+	/**
+	 * Retourne le nombre total d'etapes abandonnees parce que la simulation prenait trop de retard.
+	 *
+	 * @return Nombre d'etapes abandonnees.
+	 */
+	public synchronized long getDroppedStepCount() {
+		return droppedStepCount;
+	}
+}
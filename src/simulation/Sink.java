@@ -0,0 +1,112 @@
+package simulation;
+
+/**
+ * Region rectangulaire qui retire de la simulation les particules qui y entrent. Avec une buse
+ * (voir Emitter), elle permet un ecoulement continu dont le nombre de particules reste borne.
+ */
+public class Sink {
+	// coins de la region
+	private final double minimumX;
+	private final double minimumY;
+	private final double maximumX;
+	private final double maximumY;
+
+	// nombre de particules retirees depuis la creation de la region
+	private long drainedCount = 0;
+
+	/**
+	 * Constructeur principal.
+	 *
+	 * @param x x minimal de la region.
+	 * @param y y minimal de la region.
+	 * @param width Largeur de la region.
+	 * @param height Hauteur de la region.
+	 */
+	public Sink(double x, double y, double width, double height) {
+		if (!(width > 0) || !(height > 0)) {
+			throw new IllegalArgumentException("la region doit avoir une taille positive.");
+		}
+		this.minimumX = x;
+		this.minimumY = y;
+		this.maximumX = x + width;
+		this.maximumY = y + height;
+	}
+
+	/**
+	 * Cree une copie de la region, avec le meme nombre de particules retirees.
+	 *
+	 * @return Copie de la region.
+	 */
+	public Sink copy() {
+		Sink copy = new Sink(minimumX, minimumY, getWidth(), getHeight());
+		copy.drainedCount = drainedCount;
+		return copy;
+	}
+
+	/**
+	 * Retourne vrai si une particule est dans la region et doit etre retiree. Compte la particule
+	 * comme retiree.
+	 *
+	 * @param particle Particule a verifier.
+	 * @return Vrai si la particule doit etre retiree.
+	 */
+	boolean drains(Particle particle) {
+		double x = particle.getX();
+		double y = particle.getY();
+		if (x >= minimumX && x < maximumX && y >= minimumY && y < maximumY) {
+			drainedCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Retourne le x minimal de la region.
+	 *
+	 * @return x minimal.
+	 */
+	public double getX() {
+		return minimumX;
+	}
+
+	/**
+	 * Retourne le y minimal de la region.
+	 *
+	 * @return y minimal.
+	 */
+	public double getY() {
+		return minimumY;
+	}
+
+	/**
+	 * Retourne la largeur de la region.
+	 *
+	 * @return Largeur.
+	 */
+	public double getWidth() {
+		return maximumX - minimumX;
+	}
+
+	/**
+	 * Retourne la hauteur de la region.
+	 *
+	 * @return Hauteur.
+	 */
+	public double getHeight() {
+		return maximumY - minimumY;
+	}
+
+	/**
+	 * Retourne le nombre de particules retirees depuis la creation de la region.
+	 *
+	 * @return Nombre de particules.
+	 */
+	public long getDrainedCount() {
+		return drainedCount;
+	}
+
+	// remet l'etat d'une region lue dans une sauvegarde
+	void setDrainedCount(long drainedCount) {
+		this.drainedCount = drainedCount;
+	}
+}
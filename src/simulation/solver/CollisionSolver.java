@@ -20,12 +20,14 @@ public class CollisionSolver {
      * @param bounds Limites du monde.
      * @param deltaT Intervalle de temps.
      * @param collisionSoftness Facteur influencant la douceur des rebondissements
+     * @return Vrai ssi la particule etait en collision avec un mur ou le bord du monde.
      */
-    public static void resolveCollisions (Particle particle, DistanceField bounds, 
+    public static boolean resolveCollisions (Particle particle, DistanceField bounds, 
     		double collisionSoftness, double deltaT) {
     	Vector normal = bounds.getNormalForce(particle.getX(), particle.getY(), collisionSoftness);
     	particle.setNormalForce(normal.times(1 / deltaT));
     	particle.setPositionVector(particle.getPositionVector().minus(normal));
+    	return normal.getX() != 0 || normal.getY() != 0;
     }
     
 	
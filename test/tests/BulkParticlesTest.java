@@ -0,0 +1,148 @@
+package tests;
+
+import graphics.WorldMatrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Tests de l'ajout et de la copie des particules en bloc (Simulation.addParticles et
+ * copyParticles), avec des tableaux et avec des tampons.
+ */
+public class BulkParticlesTest extends TestSuite {
+	// plus de particules qu'un paquet de Simulation, pour que les tampons soient lus en plusieurs
+	// paquets
+	private static final int COUNT = 4500;
+
+	// nombre d'etapes faites avant de comparer les simulations
+	private static final int STEPS = 3;
+
+	// cote du monde; les particules remplissent le tiers du bas, a peu pres a la densite au repos
+	private static final double SIZE = 1200;
+
+	protected void run() throws Exception {
+		WorldMatrix world = WorldMatrix.getIdentity(SIZE, SIZE);
+		Random random = new Random(6112);
+		// deux particules de plus au debut, qui ne sont pas ajoutees, pour tester offset
+		double[] x = new double[COUNT + 2];
+		double[] y = new double[COUNT + 2];
+		double[] velocityX = new double[COUNT + 2];
+		double[] velocityY = new double[COUNT + 2];
+		int i;
+		for (i = 0; i < x.length; i++) {
+			x[i] = random.nextDouble() * SIZE;
+			y[i] = random.nextDouble() * SIZE / 3;
+			velocityX[i] = random.nextGaussian() * 10;
+			velocityY[i] = random.nextGaussian() * 10;
+		}
+		// reference: une Particle par particule
+		Simulation reference = new Simulation(world);
+		for (i = 2; i < x.length; i++) {
+			Particle particle = new Particle(x[i], y[i]);
+			particle.setVelocityX(velocityX[i]);
+			particle.setVelocityY(velocityY[i]);
+			reference.addParticle(particle);
+		}
+		// tableaux
+		Simulation fromArrays = new Simulation(world);
+		fromArrays.addParticles(x, y, velocityX, velocityY, 2, COUNT);
+		checkSameParticles(reference, fromArrays, "ajout par tableaux");
+		// tampon direct, comme celui d'un programme hote
+		DoubleBuffer source = ByteBuffer.allocateDirect(COUNT * 4 * 8)
+				.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		for (i = 2; i < x.length; i++) {
+			source.put(x[i]).put(y[i]).put(velocityX[i]).put(velocityY[i]);
+		}
+		source.flip();
+		Simulation fromBuffer = new Simulation(world);
+		fromBuffer.addParticles(source, COUNT);
+		checkEqual(0, source.remaining(), "valeurs non lues dans le tampon");
+		checkSameParticles(reference, fromBuffer, "ajout par tampon");
+		// les simulations avancent de la meme facon
+		for (i = 0; i < STEPS; i++) {
+			reference.update(0.03, null, null);
+			fromArrays.update(0.03, null, null);
+			fromBuffer.update(0.03, null, null);
+		}
+		checkSameParticles(reference, fromArrays, "etapes apres l'ajout par tableaux");
+		checkSameParticles(reference, fromBuffer, "etapes apres l'ajout par tampon");
+		double[][] values = copyParticles(reference);
+		for (i = 0; i < COUNT; i++) {
+			if (Double.isNaN(values[0][i] + values[1][i] + values[4][i])) {
+				check(false, "valeur invalide pour la particule " + i);
+			}
+		}
+		// vitesses nulles quand les tableaux des vitesses sont nuls
+		Simulation still = new Simulation(world);
+		still.addParticles(x, y, null, null, 0, 10);
+		values = copyParticles(still);
+		for (i = 0; i < 10; i++) {
+			check(values[2][i] == 0 && values[3][i] == 0, "vitesse de la particule immobile " + i);
+		}
+		checkCopyToBuffer(reference);
+		checkErrors(world, x, y, velocityX);
+	}
+
+	// la copie dans un tampon donne les memes valeurs que la copie dans des tableaux
+	private void checkCopyToBuffer(Simulation simulation) {
+		double[][] expected = copyParticles(simulation);
+		DoubleBuffer destination = DoubleBuffer.allocate(COUNT * 5 + 1);
+		destination.put(-1);
+		simulation.copyParticles(destination);
+		checkEqual(1 + COUNT * 5, destination.position(), "position du tampon apres la copie");
+		destination.flip();
+		destination.get();
+		int i, j;
+		for (i = 0; i < COUNT; i++) {
+			for (j = 0; j < 5; j++) {
+				double value = destination.get();
+				if (value != expected[j][i]) {
+					check(false, "valeur " + j + " de la particule " + i + " dans le tampon");
+				}
+			}
+		}
+		// une copie partielle dans des tableaux laisse les tableaux nuls de cote
+		double[] pressure = new double[COUNT];
+		simulation.copyParticles(null, null, null, null, pressure);
+		check(Arrays.equals(expected[4], pressure), "copie des pressions seules");
+	}
+
+	// tableaux et tampons trop petits ou incomplets
+	private void checkErrors(WorldMatrix world, final double[] x, final double[] y,
+			final double[] velocityX) {
+		final Simulation simulation = new Simulation(world);
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				simulation.addParticles(x, y, velocityX, null, 0, 10);
+			}
+		}, "vitesses y manquantes");
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				simulation.addParticles(x, y, null, null, 3, x.length - 2);
+			}
+		}, "tableaux trop courts");
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				simulation.addParticles(DoubleBuffer.allocate(7), 2);
+			}
+		}, "tampon trop court");
+		checkEqual(0, simulation.getParticleCount(), "particules ajoutees malgre les erreurs");
+		simulation.addParticles(x, y, null, null, 0, 4);
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				simulation.copyParticles(new double[3], null, null, null, null);
+			}
+		}, "tableau de copie trop court");
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				simulation.copyParticles(DoubleBuffer.allocate(19));
+			}
+		}, "tampon de copie trop court");
+	}
+}
@@ -0,0 +1,155 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import scenario.Scenario;
+import scenario.Scene;
+import simulation.Checkpoint;
+import simulation.Simulation;
+
+/**
+ * Tests des sauvegardes (Checkpoint): une simulation restauree avance exactement comme l'originale,
+ * avec le format courant (version 2, avec buses et puits) et avec la version 1, encore lue.
+ */
+public class CheckpointTest extends TestSuite {
+	// taille de la section des buses et des puits d'un fichier sans buse ni puits
+	private static final int EMPTY_FLOW_SIZE = 8;
+
+	protected void run() throws Exception {
+		checkVersion2();
+		checkVersion1();
+		checkMemoryCopy();
+		checkErrors();
+	}
+
+	// version 2: un ecoulement continu avec une buse et un puits
+	private void checkVersion2() throws IOException {
+		Simulation original = Scene.readResource("/scenes/flow.scene").createSimulation();
+		advance(original, 150);
+		File file = createTemporaryFile(".ckpt");
+		Checkpoint.save(original, file);
+		Checkpoint checkpoint = Checkpoint.read(file);
+		checkEqual(original.getStepCount(), checkpoint.getStepCount(), "etapes lues");
+		checkEqual(original.getParticleCount(), checkpoint.getParticleCount(), "particules lues");
+		checkEqual(file.length(), checkpoint.getFileSize(), "taille du fichier");
+		Simulation restored = checkpoint.restore();
+		checkSameParticles(original, restored, "flux restaure");
+		checkEqual(original.getEmitters()[0].getEmittedCount(),
+				restored.getEmitters()[0].getEmittedCount(), "particules ajoutees par la buse");
+		checkEqual(original.getSinks()[0].getDrainedCount(),
+				restored.getSinks()[0].getDrainedCount(), "particules retirees par le puits");
+		// la buse et le puits continuent exactement comme dans l'original
+		advance(original, 150);
+		advance(restored, 150);
+		check(original.getSinks()[0].getDrainedCount() > 0, "aucune particule retiree");
+		checkSameParticles(original, restored, "flux apres la restauration");
+		checkEqual(original.getEmitters()[0].getEmittedCount(),
+				restored.getEmitters()[0].getEmittedCount(),
+				"particules ajoutees apres la restauration");
+	}
+
+	// version 1: meme fichier, sans la section des buses et des puits
+	private void checkVersion1() throws IOException {
+		Scenario scenario = Scenario.get("dam-break");
+		Simulation original = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT);
+		long step;
+		for (step = 0; step < 40; step++) {
+			scenario.step(original, step);
+		}
+		File file = createTemporaryFile(".ckpt");
+		Checkpoint.save(original, file);
+		downgrade(file);
+		Simulation restored = Checkpoint.load(file);
+		checkSameParticles(original, restored, "version 1 restauree");
+		checkEqual(0, restored.getEmitters().length, "buses d'une sauvegarde de version 1");
+		for (step = 40; step < 80; step++) {
+			scenario.step(original, step);
+			scenario.step(restored, step);
+		}
+		checkSameParticles(original, restored, "version 1 apres la restauration");
+	}
+
+	// copie en memoire, sans fichier, et reutilisation d'une copie pour plusieurs restaurations
+	private void checkMemoryCopy() throws IOException {
+		Simulation original = Scene.readResource("/scenes/bowl.scene").createSimulation();
+		advance(original, 30);
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.copyFrom(original);
+		Simulation first = checkpoint.restore();
+		Simulation second = checkpoint.restore();
+		advance(original, 30);
+		advance(first, 30);
+		advance(second, 30);
+		checkSameParticles(original, first, "premiere restauration en memoire");
+		checkSameParticles(original, second, "seconde restauration en memoire");
+	}
+
+	// fichiers invalides
+	private void checkErrors() throws IOException {
+		Simulation simulation = Scene.readResource("/scenes/empty.scene").createSimulation();
+		final File file = createTemporaryFile(".ckpt");
+		Checkpoint.save(simulation, file);
+		setVersion(file, 99);
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				Checkpoint.read(file);
+			}
+		}, "version inconnue");
+		Checkpoint.save(simulation, file);
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.setLength(output.length() - 100);
+		}
+		finally {
+			output.close();
+		}
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				Checkpoint.read(file);
+			}
+		}, "fichier tronque");
+	}
+
+	// fait avancer une simulation
+	private static void advance(Simulation simulation, int steps) {
+		int i;
+		for (i = 0; i < steps; i++) {
+			simulation.update(Scenario.DELTA_T, null, null);
+		}
+	}
+
+	// transforme une sauvegarde sans buse ni puits en sauvegarde de version 1
+	private void downgrade(File file) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			ByteBuffer flow = ByteBuffer.allocate(EMPTY_FLOW_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			output.seek(output.length() - EMPTY_FLOW_SIZE);
+			output.readFully(flow.array());
+			checkEqual(0, flow.getInt(), "buses de la sauvegarde");
+			checkEqual(0, flow.getInt(), "puits de la sauvegarde");
+			output.setLength(output.length() - EMPTY_FLOW_SIZE);
+		}
+		finally {
+			output.close();
+		}
+		setVersion(file, 1);
+	}
+
+	// remplace la version d'une sauvegarde
+	private static void setVersion(File file, int version) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(version);
+			output.seek(4);
+			output.write(buffer.array());
+		}
+		finally {
+			output.close();
+		}
+	}
+}
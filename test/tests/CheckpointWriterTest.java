@@ -0,0 +1,168 @@
+package tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import scenario.Scenario;
+import scenario.Scene;
+import simulation.Checkpoint;
+import simulation.CheckpointWriter;
+import simulation.Simulation;
+
+/**
+ * Tests de l'ecriture des sauvegardes en arriere-plan (CheckpointWriter): file bornee, attente de
+ * submit() et abandon de trySubmit(), renommage du fichier temporaire, nombre de fichiers gardes
+ * et erreurs d'ecriture.
+ */
+public class CheckpointWriterTest extends TestSuite {
+	// temps laisse a un processus pour se bloquer, en millisecondes
+	private static final int BLOCK_DELAY = 200;
+
+	// temps maximal d'attente d'une erreur d'ecriture, en millisecondes
+	private static final int ERROR_TIMEOUT = 5000;
+
+	protected void run() throws Exception {
+		Simulation simulation = Scene.readResource("/scenes/empty.scene").createSimulation();
+		checkRetention(simulation);
+		checkQueue(simulation);
+		checkError(simulation);
+	}
+
+	// les sauvegardes deja presentes comptent parmi celles a garder; les autres fichiers restent
+	private void checkRetention(Simulation simulation) throws Exception {
+		File directory = createTemporaryDirectory();
+		touch(new File(directory, "run-000000000001.ckpt"));
+		touch(new File(directory, "run-000000000002.ckpt"));
+		touch(new File(directory, "other-000000000001.ckpt"));
+		touch(new File(directory, "run-notes.txt"));
+		CheckpointWriter writer = new CheckpointWriter(directory, "run", 4, 2);
+		int i;
+		for (i = 0; i < 10; i++) {
+			simulation.update(Scenario.DELTA_T, null, null);
+		}
+		for (i = 0; i < 3; i++) {
+			simulation.update(Scenario.DELTA_T, null, null);
+			File file = writer.submit(simulation);
+			checkEqual(simulation.getStepCount(), stepOf(file), "numero du fichier soumis");
+		}
+		writer.close();
+		checkEqual(3, writer.getSubmittedCount(), "sauvegardes soumises");
+		checkEqual(0, writer.getSkippedCount(), "sauvegardes abandonnees");
+		String[] names = directory.list();
+		Arrays.sort(names);
+		long step = simulation.getStepCount();
+		String[] expected = {"other-000000000001.ckpt", "run-000000000002.ckpt",
+				String.format("run-%012d.ckpt", step - 2),
+				String.format("run-%012d.ckpt", step - 1),
+				String.format("run-%012d.ckpt", step), "run-notes.txt"};
+		check(Arrays.equals(expected, names), "fichiers gardes: " + Arrays.toString(names));
+		Checkpoint checkpoint = Checkpoint.read(new File(directory, expected[4]));
+		checkEqual(step, checkpoint.getStepCount(), "etape de la derniere sauvegarde");
+		checkSameParticles(simulation, checkpoint.restore(), "derniere sauvegarde");
+	}
+
+	// avec le processus d'ecriture arrete: le fichier temporaire n'est pas encore renomme,
+	// trySubmit() abandonne quand toutes les sauvegardes sont prises et submit() attend
+	private void checkQueue(final Simulation simulation) throws Exception {
+		File directory = createTemporaryDirectory();
+		final Semaphore written = new Semaphore(0);
+		final Semaphore gate = new Semaphore(0);
+		// une place dans la file: une sauvegarde en ecriture, une en attente, une copiee
+		final CheckpointWriter writer = new CheckpointWriter(directory, "queue", 10, 1) {
+			protected void writeCheckpoint(Checkpoint checkpoint, File temporary)
+					throws IOException {
+				super.writeCheckpoint(checkpoint, temporary);
+				written.release();
+				gate.acquireUninterruptibly();
+			}
+		};
+		simulation.update(Scenario.DELTA_T, null, null);
+		File first = writer.submit(simulation);
+		written.acquire();
+		File temporary = new File(directory, first.getName() + ".tmp");
+		check(temporary.isFile() && !first.exists(), "fichier renomme avant la fin de l'ecriture");
+		int i;
+		for (i = 0; i < 2; i++) {
+			simulation.update(Scenario.DELTA_T, null, null);
+			check(writer.trySubmit(simulation) != null, "sauvegarde " + (i + 2) + " abandonnee");
+		}
+		simulation.update(Scenario.DELTA_T, null, null);
+		check(writer.trySubmit(simulation) == null, "sauvegarde acceptee avec la file pleine");
+		checkEqual(1, writer.getSkippedCount(), "sauvegardes abandonnees");
+		// submit() attend que la premiere sauvegarde soit ecrite
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		Thread submitter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					writer.submit(simulation);
+				}
+				catch (Exception error) {
+					failure.set(error);
+				}
+			}
+		});
+		submitter.start();
+		submitter.join(BLOCK_DELAY);
+		check(submitter.isAlive(), "submit() n'a pas attendu une sauvegarde libre");
+		gate.release(Integer.MAX_VALUE / 2);
+		submitter.join();
+		check(failure.get() == null, "erreur de submit(): " + failure.get());
+		writer.close();
+		checkEqual(4, writer.getSubmittedCount(), "sauvegardes soumises");
+		check(first.isFile() && !temporary.exists(), "fichier temporaire non renomme");
+		checkEqual(4, directory.list().length, "fichiers ecrits");
+	}
+
+	// une erreur d'ecriture est lancee par le submit() suivant et par close()
+	private void checkError(Simulation simulation) throws Exception {
+		File directory = createTemporaryDirectory();
+		// un dossier a la place du fichier temporaire empeche l'ecriture
+		File blocked = new File(directory,
+				String.format("error-%012d.ckpt.tmp", simulation.getStepCount()));
+		check(blocked.mkdir(), "creation de " + blocked);
+		touch(new File(blocked, "contenu"));
+		CheckpointWriter writer = new CheckpointWriter(directory, "error", 2, 1);
+		writer.submit(simulation);
+		boolean thrown = false;
+		long deadline = System.currentTimeMillis() + ERROR_TIMEOUT;
+		while (!thrown && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			try {
+				writer.trySubmit(simulation);
+			}
+			catch (IOException error) {
+				thrown = true;
+			}
+		}
+		check(thrown, "erreur d'ecriture non lancee par la sauvegarde suivante");
+		final CheckpointWriter closed = writer;
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				closed.close();
+			}
+		}, "erreur d'ecriture a la fermeture");
+		check(!new File(directory, blocked.getName().replace(".tmp", "")).exists(),
+				"fichier incomplet renomme");
+	}
+
+	// retourne l'etape d'un nom de fichier de sauvegarde
+	private static long stepOf(File file) {
+		String name = file.getName();
+		return Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.indexOf('.')));
+	}
+
+	// cree un petit fichier
+	private static void touch(File file) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write("x");
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
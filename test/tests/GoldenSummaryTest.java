@@ -0,0 +1,79 @@
+package tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import scenario.GoldenSummary;
+import scenario.Scenario;
+import simulation.Simulation;
+
+/**
+ * Tests des resumes de reference (GoldenSummary): un resume relu d'un fichier concorde exactement
+ * avec celui du moteur, avec un ou plusieurs processus, et une difference est toujours signalee.
+ * Les resumes de reference des scenarios, dans test/golden, sont compares par ant test.
+ */
+public class GoldenSummaryTest extends TestSuite {
+	// nombre d'etapes de chaque execution
+	private static final int STEPS = 60;
+
+	protected void run() throws Exception {
+		Scenario scenario = Scenario.get("dam-break");
+		GoldenSummary reference = capture(scenario, 1, STEPS);
+		// meme scenario avec plusieurs processus
+		GoldenSummary parallel = capture(scenario, 3, STEPS);
+		check(parallel.compareTo(reference, 0).isEmpty(), "resume avec 3 processus: "
+				+ parallel.compareTo(reference, 0));
+		// relecture du fichier de reference
+		File file = createTemporaryFile(".golden");
+		List<GoldenSummary> summaries = new ArrayList<GoldenSummary>();
+		summaries.add(reference);
+		summaries.add(capture(Scenario.get("sparse-rain"), 1, STEPS));
+		GoldenSummary.write(file, summaries);
+		Map<String, GoldenSummary> read = GoldenSummary.read(file);
+		checkEqual(2, read.size(), "resumes relus");
+		check(read.get("dam-break").compareTo(reference, 0).isEmpty(), "resume relu: "
+				+ read.get("dam-break").compareTo(reference, 0));
+		// une etape de plus change les positions, et un autre nombre d'etapes est signale
+		GoldenSummary later = capture(scenario, 1, STEPS + 1);
+		check(!later.compareTo(reference, 0).isEmpty(), "difference non signalee");
+		checkErrors(reference, file);
+	}
+
+	// execute un scenario et retourne son resume; le resume porte toujours STEPS etapes, pour que
+	// seules les particules different
+	private static GoldenSummary capture(Scenario scenario, int threadCount, int steps) {
+		Simulation simulation = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT);
+		simulation.setThreadCount(threadCount);
+		int i;
+		for (i = 0; i < steps; i++) {
+			scenario.step(simulation, i);
+		}
+		simulation.setThreadCount(1);
+		return GoldenSummary.capture(scenario.getName(), simulation, STEPS);
+	}
+
+	// tolerance negative et fichier mal forme
+	private void checkErrors(final GoldenSummary reference, final File file) throws IOException {
+		checkThrows(IllegalArgumentException.class, new Operation() {
+			public void run() {
+				reference.compareTo(reference, -1);
+			}
+		}, "tolerance negative");
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write("scenario dam-break\nparticules six cents\n");
+		}
+		finally {
+			writer.close();
+		}
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				GoldenSummary.read(file);
+			}
+		}, "fichier mal forme");
+	}
+}
@@ -0,0 +1,86 @@
+package tests;
+
+import geometry.Polygon;
+import geometry.Rectangle;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import scenario.HexLattice;
+import scenario.Scene;
+import simulation.Simulation;
+
+/**
+ * Tests du placement des particules en reseau hexagonal (HexLattice) et de la directive reseau des
+ * scenes.
+ */
+public class HexLatticeTest extends TestSuite {
+	protected void run() throws Exception {
+		checkLattice();
+		checkSpacing();
+		checkScene();
+	}
+
+	// nombre et ordre des positions d'un reseau
+	private void checkLattice() {
+		// 10 colonnes sur les rangees paires, 10 sur les rangees impaires decalees d'une demi-case
+		// (la derniere touche le bord), et 11 rangees espacees de 10 * sqrt(3) / 2
+		double[] positions = HexLattice.getPositions(0, 0, 100, 100, 10, new Polygon[0], -1);
+		checkEqual(110, positions.length / 2, "reseau de 100 x 100");
+		// un mur sur la moitie de gauche enleve 5 positions par rangee paire et 4 par rangee impaire
+		Polygon[] walls = {new Rectangle(0, 0, 48, 100)};
+		positions = HexLattice.getPositions(0, 0, 100, 100, 10, walls, -1);
+		checkEqual(60, positions.length / 2, "reseau avec un mur");
+		int i;
+		for (i = 0; i < positions.length; i += 2) {
+			check(positions[i] > 48, "position dans le mur: " + positions[i]);
+		}
+		// un nombre maximal remplit les rangees du bas d'abord
+		positions = HexLattice.getPositions(0, 0, 100, 100, 10, new Polygon[0], 25);
+		checkEqual(25, positions.length / 2, "reseau limite a 25 positions");
+		for (i = 1; i < positions.length; i += 2) {
+			check(positions[i] < 5 + 2 * 10 * Math.sqrt(3) / 2 + 1e-9,
+					"position hors des trois premieres rangees: " + positions[i]);
+		}
+	}
+
+	// espacement ou le fluide est au repos
+	private void checkSpacing() {
+		double radius = Simulation.DEFAULT_RADIUS;
+		double spacing = HexLattice.solveSpacing(radius, Simulation.DEFAULT_REST_DENSITY,
+				Simulation.DEFAULT_STIFFNESS, Simulation.DEFAULT_NEARBY_STIFFNESS);
+		check(spacing > radius / 100 && spacing < radius, "espacement hors des bornes: " + spacing);
+		// la pression proche repousse toujours: l'equilibre est un peu sous la densite au repos
+		double density = HexLattice.getDensity(spacing, radius);
+		check(density < Simulation.DEFAULT_REST_DENSITY, "densite au-dessus du repos: " + density);
+		check(density > Simulation.DEFAULT_REST_DENSITY / 4, "densite trop basse: " + density);
+		// un fluide plus dense au repos est plus serre
+		double denser = HexLattice.solveSpacing(radius, 2 * Simulation.DEFAULT_REST_DENSITY,
+				Simulation.DEFAULT_STIFFNESS, Simulation.DEFAULT_NEARBY_STIFFNESS);
+		check(denser < spacing, "espacement d'un fluide plus dense: " + denser + " >= " + spacing);
+	}
+
+	// un reseau de scene place les positions de HexLattice, hors des murs de la scene
+	private void checkScene() throws IOException {
+		String text = "monde 0 0 400 400\n"
+				+ "rectangle 0 0 400 20\n"
+				+ "reseau 0 0 100 100\n"
+				+ "reseau 200 20 100 100 40\n";
+		Scene scene = Scene.read(new ByteArrayInputStream(text.getBytes("UTF-8")), "test");
+		Simulation simulation = scene.createSimulation();
+		double spacing = HexLattice.solveSpacing(Simulation.DEFAULT_RADIUS,
+				Simulation.DEFAULT_REST_DENSITY, Simulation.DEFAULT_STIFFNESS,
+				Simulation.DEFAULT_NEARBY_STIFFNESS);
+		int count = HexLattice.getPositions(0, 0, 100, 100, spacing, simulation.getWalls(),
+				-1).length / 2;
+		check(count > 0 && count < HexLattice.getPositions(0, 0, 100, 100, spacing,
+				new Polygon[0], -1).length / 2, "le mur n'enleve aucune position: " + count);
+		checkEqual(count + 40, scene.getParticleCount(), "particules de la scene");
+		checkEqual(count + 40, simulation.getParticleCount(), "particules de la simulation");
+		double[][] values = copyParticles(simulation);
+		int i;
+		for (i = 0; i < count + 40; i++) {
+			check(values[1][i] > 20, "particule " + i + " dans le mur: " + values[1][i]);
+		}
+	}
+}
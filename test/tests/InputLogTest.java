@@ -0,0 +1,106 @@
+package tests;
+
+import geometry.Vector;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import recording.InputLog;
+import recording.InputReplay;
+import scenario.Scenario;
+import simulation.Checkpoint;
+import simulation.Simulation;
+
+/**
+ * Tests du journal des entrees (InputLog et InputReplay): une sauvegarde et le journal des
+ * entrees qui la suivent refont la session bit pour bit, quel que soit le nombre de processus.
+ */
+public class InputLogTest extends TestSuite {
+	// nombre d'etapes avant le debut du journal, et nombre d'etapes journalisees
+	private static final int WARMUP_STEPS = 20;
+	private static final int LOGGED_STEPS = 120;
+
+	protected void run() throws Exception {
+		Scenario scenario = Scenario.get("dam-break");
+		Simulation original = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT);
+		original.setThreadCount(1);
+		int i;
+		for (i = 0; i < WARMUP_STEPS; i++) {
+			original.update(Scenario.DELTA_T, null, null);
+		}
+		// la session commence par une sauvegarde, suivie du journal
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.copyFrom(original);
+		File file = createTemporaryFile(".inputs");
+		InputLog log = new InputLog(original, file);
+		playSession(original);
+		log.close();
+		checkEqual(original.getStepCount(), log.getEndStep(), "derniere etape du journal");
+		// refaire la session avec plusieurs processus, puis avec un seul
+		checkReplay(original, checkpoint, file, 2);
+		checkReplay(original, checkpoint, file, 1);
+		checkErrors(checkpoint, file);
+	}
+
+	// joue une session: souris, gravite, viscosite, densite et pas de temps changent en cours de
+	// route, avec des valeurs qui ne s'ecrivent pas exactement en decimal
+	private static void playSession(Simulation simulation) {
+		Random random = new Random(46);
+		Point2D.Double previousMouse = null;
+		double deltaT = Scenario.DELTA_T;
+		int i;
+		for (i = 0; i < LOGGED_STEPS; i++) {
+			if (i % 15 == 3) {
+				simulation.setGravity(new Vector(random.nextDouble() * 100 - 50, -250));
+			}
+			if (i % 25 == 7) {
+				simulation.setViscosity(random.nextDouble() * 0.1);
+			}
+			if (i == 60) {
+				simulation.setRestDensity(simulation.getRestDensity() + 1 / 3.0);
+			}
+			if (i == 90) {
+				deltaT = Scenario.DELTA_T / 3;
+			}
+			Point2D.Double mouse = (i / 20) % 2 == 1
+					? new Point2D.Double(100 + random.nextDouble() * 50, 150) : null;
+			simulation.update(deltaT, mouse, previousMouse);
+			previousMouse = mouse;
+		}
+	}
+
+	// refait la session a partir de la sauvegarde et la compare a l'originale
+	private void checkReplay(Simulation original, Checkpoint checkpoint, File file,
+			int threadCount) throws IOException {
+		Simulation replayed = checkpoint.restore();
+		replayed.setThreadCount(threadCount);
+		InputReplay replay = new InputReplay(file);
+		checkEqual(WARMUP_STEPS, replay.getStartStep(), "premiere etape du journal");
+		int steps = 0;
+		while (replay.step(replayed)) {
+			steps++;
+		}
+		replayed.setThreadCount(1);
+		checkEqual(LOGGED_STEPS, steps, "etapes refaites");
+		String message = "session refaite avec " + threadCount + " processus";
+		checkSameParticles(original, replayed, message);
+		check(original.getGravity().getX() == replayed.getGravity().getX(), message
+				+ ", gravite");
+		check(original.getViscosity() == replayed.getViscosity(), message + ", viscosite");
+		check(original.getRestDensity() == replayed.getRestDensity(), message + ", densite");
+	}
+
+	// un journal ne peut pas etre refait sur une simulation qui n'est pas a la bonne etape
+	private void checkErrors(Checkpoint checkpoint, File file) throws IOException {
+		final Simulation simulation = checkpoint.restore();
+		simulation.update(Scenario.DELTA_T, null, null);
+		final InputReplay replay = new InputReplay(file);
+		checkThrows(IllegalStateException.class, new Operation() {
+			public void run() {
+				replay.step(simulation);
+			}
+		}, "simulation en avance sur le journal");
+	}
+}
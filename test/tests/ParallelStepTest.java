@@ -0,0 +1,36 @@
+package tests;
+
+import scenario.Scenario;
+import simulation.Simulation;
+
+/**
+ * Tests des etapes en parallele de Simulation: plusieurs processus donnent les memes particules
+ * qu'un seul, meme quand le processus qui fait avancer la simulation est interrompu.
+ */
+public class ParallelStepTest extends TestSuite {
+	// nombre d'etapes comparees
+	private static final int STEPS = 40;
+
+	protected void run() throws Exception {
+		Scenario scenario = Scenario.get("dense-column");
+		Simulation serial = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT * 4);
+		serial.setThreadCount(1);
+		Simulation parallel = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT * 4);
+		parallel.setThreadCount(4);
+		Simulation interrupted = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT * 4);
+		interrupted.setThreadCount(4);
+		int i;
+		for (i = 0; i < STEPS; i++) {
+			scenario.step(serial, i);
+			scenario.step(parallel, i);
+			// une interruption ne doit pas laisser une phase appliquee a une partie des particules
+			Thread.currentThread().interrupt();
+			scenario.step(interrupted, i);
+			check(Thread.interrupted(), "interruption perdue a l'etape " + i);
+		}
+		parallel.setThreadCount(1);
+		interrupted.setThreadCount(1);
+		checkSameParticles(serial, parallel, "etapes avec 4 processus");
+		checkSameParticles(serial, interrupted, "etapes interrompues avec 4 processus");
+	}
+}
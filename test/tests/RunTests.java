@@ -0,0 +1,64 @@
+package tests;
+
+/**
+ * Execute toutes les suites de tests et affiche le resultat de chacune. Le code de sortie est 1 si
+ * une suite echoue, pour que ant test echoue aussi.
+ *
+ * Utilisation: java tests.RunTests [suite ...] (toutes les suites par defaut)
+ */
+public class RunTests {
+	// toutes les suites, dans l'ordre d'execution
+	private static TestSuite[] getSuites() {
+		return new TestSuite[] {
+			new GoldenSummaryTest(),
+			new CheckpointTest(),
+			new CheckpointWriterTest(),
+			new TrajectoryTest(),
+			new InputLogTest(),
+			new SceneTest(),
+			new HexLatticeTest(),
+			new BulkParticlesTest(),
+			new ParallelStepTest(),
+			new WarmStartCacheTest()
+		};
+	}
+
+	public static void main(String[] args) {
+		int failureCount = 0;
+		int runCount = 0;
+		for (TestSuite suite : getSuites()) {
+			if (args.length > 0 && !contains(args, suite.getName())) {
+				continue;
+			}
+			runCount++;
+			long start = System.nanoTime();
+			try {
+				int checkCount = suite.execute();
+				System.out.printf("ok     %-20s %4d verifications  %6.0f ms%n", suite.getName(),
+						checkCount, (System.nanoTime() - start) / 1e6);
+			}
+			catch (Throwable error) {
+				failureCount++;
+				System.out.println("ECHEC  " + suite.getName() + ": " + error);
+				error.printStackTrace(System.out);
+			}
+		}
+		if (runCount == 0) {
+			System.err.println("aucune suite ne correspond aux noms donnes.");
+			System.exit(2);
+		}
+		System.out.println(failureCount == 0 ? "toutes les suites ont reussi."
+				: failureCount + " suite(s) en echec.");
+		System.exit(failureCount == 0 ? 0 : 1);
+	}
+
+	// retourne vrai si un tableau contient une chaine
+	private static boolean contains(String[] values, String value) {
+		for (String candidate : values) {
+			if (candidate.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
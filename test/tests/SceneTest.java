@@ -0,0 +1,185 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+import scenario.Scene;
+import simulation.Particle;
+import simulation.Simulation;
+
+/**
+ * Tests de la lecture des scenes texte et binaires (Scene).
+ */
+public class SceneTest extends TestSuite {
+	// scene qui utilise toutes les directives qui placent des particules
+	private static final String SCENE = "# scene de test\n"
+			+ "monde 0 0 400 400\n"
+			+ "rectangle 0 0 400 20\n"
+			+ "bloc 0 100 100 100 50 7\n"
+			+ "bloc 200 20 100 100 30 3\n"
+			+ "surlignees 5\n"
+			+ "importante 0\n";
+
+	// position de xMin dans une scene binaire, apres le nombre magique et la version
+	private static final int MINIMUM_X_OFFSET = 8;
+
+	protected void run() throws Exception {
+		checkParsing();
+		checkErrors();
+		checkOrigin();
+		checkFlow();
+		checkResources();
+		checkBinary();
+	}
+
+	// lecture d'une scene texte et simulation creee
+	private void checkParsing() throws IOException {
+		Scene scene = read(SCENE);
+		Simulation simulation = scene.createSimulation();
+		checkEqual(80, scene.getParticleCount(), "particules de la scene");
+		checkEqual(scene.getParticleCount(), simulation.getParticleCount(),
+				"particules de la simulation");
+		checkEqual(1, simulation.getWalls().length, "murs");
+		// les 5 dernieres particules sont mises en evidence, la premiere est importante
+		int highlighted = 0;
+		int index = 0;
+		Iterator<Particle> iterator = simulation.getParticleIterator();
+		while (iterator.hasNext()) {
+			Particle particle = iterator.next();
+			if (particle.isHighlighted()) {
+				check(index >= simulation.getParticleCount() - 5, "particule " + index
+						+ " mise en evidence");
+				highlighted++;
+			}
+			check(particle.isImportant() == (index == 0), "particule " + index + " importante");
+			index++;
+		}
+		checkEqual(5, highlighted, "particules mises en evidence");
+		// une scene donne toujours la meme simulation, et sa cle change avec son contenu
+		Scene same = read(SCENE);
+		check(same.getKey().equals(scene.getKey()), "cles differentes pour la meme scene");
+		checkSameParticles(simulation, same.createSimulation(), "meme scene");
+		Scene other = read(SCENE.replace("50 7", "50 8"));
+		check(!other.getKey().equals(scene.getKey()), "meme cle avec un autre germe");
+	}
+
+	// erreurs de lecture
+	private void checkErrors() {
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				read("monde 0 0 400 400\ncascade 1 2 3\n");
+			}
+		}, "directive inconnue");
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				read("monde 0 0 400 400\nbloc 0 0 100 abc 3\n");
+			}
+		}, "nombre invalide");
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				read("bloc 0 0 100 100 3\n");
+			}
+		}, "monde manquant");
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				read("monde 0 0 400 400\nbloc 0 0 10 10 3\nsurlignees 4\n");
+			}
+		}, "plus de particules surlignees que de particules");
+		try {
+			read("monde 0 0 400 400\n\n# commentaire\nvolume 3\n");
+			check(false, "directive inconnue acceptee");
+		}
+		catch (IOException error) {
+			check(error.getMessage().contains("ligne 4"), "numero de ligne: " + error.getMessage());
+		}
+	}
+
+	// la grille des voisins et les bords du monde supposent un monde qui commence en 0 0: une
+	// scene texte ou binaire qui commence ailleurs est refusee
+	private void checkOrigin() throws IOException {
+		try {
+			read("monde 1000 1000 400 400\nbloc 1000 1000 400 200 600\n");
+			check(false, "monde hors de l'origine accepte");
+		}
+		catch (IOException error) {
+			check(error.getMessage().contains("ligne 1") && error.getMessage().contains("0 0"),
+					"message du monde hors de l'origine: " + error.getMessage());
+		}
+		final File file = createTemporaryFile(".sceneb");
+		Scene.writeBinary(read(SCENE).createSimulation(), file);
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putDouble(1000);
+			output.seek(MINIMUM_X_OFFSET);
+			output.write(buffer.array());
+		}
+		finally {
+			output.close();
+		}
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				Scene.load(file);
+			}
+		}, "scene binaire hors de l'origine");
+	}
+
+	// buses et puits d'un ecoulement continu
+	private void checkFlow() throws IOException {
+		Simulation simulation = read("monde 0 0 400 400\n"
+				+ "buse 40 340 60 -40 150 30\n"
+				+ "puits 270 20 130 40\n").createSimulation();
+		checkEqual(0, simulation.getParticleCount(), "particules avant la premiere etape");
+		checkEqual(1, simulation.getEmitters().length, "buses");
+		checkClose(150, simulation.getEmitters()[0].getRate(), 0, "debit de la buse");
+		checkClose(30, simulation.getEmitters()[0].getWidth(), 0, "largeur de la buse");
+		checkEqual(1, simulation.getSinks().length, "puits");
+		checkClose(130, simulation.getSinks()[0].getWidth(), 0, "largeur du puits");
+		checkThrows(IOException.class, new Operation() {
+			public void run() throws Exception {
+				read("monde 0 0 400 400\nbuse 40 340 60 -40\n");
+			}
+		}, "buse sans debit");
+		Simulation flow = Scene.readResource("/scenes/flow.scene").createSimulation();
+		checkEqual(1, flow.getEmitters().length, "buses de flow.scene");
+		checkEqual(1, flow.getSinks().length, "puits de flow.scene");
+	}
+
+	// scenes de Runner
+	private void checkResources() throws IOException {
+		checkEqual(600, Scene.readResource("/scenes/empty.scene").getParticleCount(),
+				"particules de empty.scene");
+		checkEqual(600, Scene.readResource("/scenes/bowl.scene").getParticleCount(),
+				"particules de bowl.scene");
+	}
+
+	// une scene binaire relit exactement les particules de la simulation
+	private void checkBinary() throws IOException {
+		Simulation simulation = read(SCENE).createSimulation();
+		int i;
+		for (i = 0; i < 20; i++) {
+			simulation.update(0.03, null, null);
+		}
+		File file = createTemporaryFile(".sceneb");
+		Scene.writeBinary(simulation, file);
+		Simulation loaded = Scene.load(file);
+		checkEqual(simulation.getParticleCount(), loaded.getParticleCount(),
+				"particules de la scene binaire");
+		double[][] expected = copyParticles(simulation);
+		double[][] actual = copyParticles(loaded);
+		for (i = 0; i < expected[0].length; i++) {
+			check(expected[0][i] == actual[0][i] && expected[1][i] == actual[1][i],
+					"position " + i + " de la scene binaire");
+		}
+	}
+
+	// lit une scene texte
+	private static Scene read(String text) throws IOException {
+		return Scene.read(new ByteArrayInputStream(text.getBytes("UTF-8")), "test");
+	}
+}
@@ -0,0 +1,198 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simulation.Simulation;
+
+/**
+ * Base des suites de tests, executees par RunTests sans bibliotheque externe. Une suite ajoute ses
+ * cas dans run() avec check(); un cas qui echoue lance une AssertionError, qui arrete la suite.
+ * Les fichiers temporaires crees par createTemporaryFile() sont supprimes a la fin de la suite.
+ */
+public abstract class TestSuite {
+	// fichiers temporaires crees par la suite
+	private final ArrayList<File> temporaryFiles = new ArrayList<File>();
+
+	// nombre de verifications faites
+	private int checkCount = 0;
+
+	/**
+	 * Retourne le nom de la suite, affiche par RunTests.
+	 *
+	 * @return Nom de la suite.
+	 */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Execute les cas de la suite.
+	 *
+	 * @throws Exception Si un cas echoue ou ne peut pas etre execute.
+	 */
+	protected abstract void run() throws Exception;
+
+	/**
+	 * Execute la suite et supprime ses fichiers temporaires.
+	 *
+	 * @return Nombre de verifications faites.
+	 * @throws Exception Si un cas echoue ou ne peut pas etre execute.
+	 */
+	public int execute() throws Exception {
+		try {
+			run();
+			return checkCount;
+		}
+		finally {
+			for (File file : temporaryFiles) {
+				delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Verifie une condition.
+	 *
+	 * @param condition Condition qui doit etre vraie.
+	 * @param message Description du cas, dans le message d'erreur.
+	 */
+	protected void check(boolean condition, String message) {
+		checkCount++;
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Verifie qu'une valeur entiere est celle attendue.
+	 *
+	 * @param expected Valeur attendue.
+	 * @param actual Valeur obtenue.
+	 * @param message Description du cas, dans le message d'erreur.
+	 */
+	protected void checkEqual(long expected, long actual, String message) {
+		check(expected == actual, message + ": " + actual + " au lieu de " + expected);
+	}
+
+	/**
+	 * Verifie qu'une valeur reelle est proche de celle attendue.
+	 *
+	 * @param expected Valeur attendue.
+	 * @param actual Valeur obtenue.
+	 * @param tolerance Ecart permis.
+	 * @param message Description du cas, dans le message d'erreur.
+	 */
+	protected void checkClose(double expected, double actual, double tolerance, String message) {
+		check(Math.abs(expected - actual) <= tolerance,
+				message + ": " + actual + " au lieu de " + expected + " (+/- " + tolerance + ")");
+	}
+
+	/**
+	 * Verifie qu'une operation lance une exception d'un type donne.
+	 *
+	 * @param type Type d'exception attendu.
+	 * @param operation Operation a executer.
+	 * @param message Description du cas, dans le message d'erreur.
+	 */
+	protected void checkThrows(Class<? extends Exception> type, Operation operation,
+			String message) {
+		try {
+			operation.run();
+		}
+		catch (Exception error) {
+			check(type.isInstance(error), message + ": " + error + " au lieu de "
+					+ type.getSimpleName());
+			return;
+		}
+		check(false, message + ": aucune exception");
+	}
+
+	/**
+	 * Cree un fichier temporaire vide, supprime a la fin de la suite.
+	 *
+	 * @param suffix Extension du fichier.
+	 * @return Fichier cree.
+	 * @throws IOException Si le fichier ne peut pas etre cree.
+	 */
+	protected File createTemporaryFile(String suffix) throws IOException {
+		File file = File.createTempFile("fluid-test-", suffix);
+		file.deleteOnExit();
+		temporaryFiles.add(file);
+		return file;
+	}
+
+	/**
+	 * Cree un dossier temporaire vide, supprime avec son contenu a la fin de la suite.
+	 *
+	 * @return Dossier cree.
+	 * @throws IOException Si le dossier ne peut pas etre cree.
+	 */
+	protected File createTemporaryDirectory() throws IOException {
+		File directory = createTemporaryFile(".d");
+		if (!directory.delete() || !directory.mkdir()) {
+			throw new IOException("impossible de creer le dossier " + directory + ".");
+		}
+		return directory;
+	}
+
+	// supprime un fichier, ou un dossier et son contenu
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Verifie que deux simulations ont exactement les memes particules (positions, vitesses et
+	 * pressions, bit pour bit) et le meme nombre d'etapes.
+	 *
+	 * @param expected Simulation de reference.
+	 * @param actual Simulation comparee.
+	 * @param message Description du cas, dans le message d'erreur.
+	 */
+	protected void checkSameParticles(Simulation expected, Simulation actual, String message) {
+		checkEqual(expected.getStepCount(), actual.getStepCount(), message + ", etapes");
+		checkEqual(expected.getParticleCount(), actual.getParticleCount(),
+				message + ", particules");
+		double[][] expectedValues = copyParticles(expected);
+		double[][] actualValues = copyParticles(actual);
+		String[] names = {"x", "y", "vitesse x", "vitesse y", "pression"};
+		int i;
+		for (i = 0; i < names.length; i++) {
+			check(Arrays.equals(expectedValues[i], actualValues[i]), message + ", " + names[i]
+					+ " differe");
+		}
+	}
+
+	/**
+	 * Retourne les positions, vitesses et pressions des particules d'une simulation.
+	 *
+	 * @param simulation Simulation a copier.
+	 * @return Tableaux x, y, vitesse x, vitesse y et pression, dans l'ordre des particules.
+	 */
+	protected static double[][] copyParticles(Simulation simulation) {
+		int count = simulation.getParticleCount();
+		double[][] values = new double[5][count];
+		simulation.copyParticles(values[0], values[1], values[2], values[3], values[4]);
+		return values;
+	}
+
+	/**
+	 * Operation qui doit lancer une exception, pour checkThrows().
+	 */
+	protected interface Operation {
+		/**
+		 * Execute l'operation.
+		 *
+		 * @throws Exception Exception attendue.
+		 */
+		void run() throws Exception;
+	}
+}
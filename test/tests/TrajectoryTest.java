@@ -0,0 +1,193 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import recording.TrajectoryReader;
+import recording.TrajectoryRecorder;
+import scenario.Scenario;
+import scenario.Scene;
+import simulation.Particle;
+import simulation.ParticleFrame;
+import simulation.Simulation;
+
+/**
+ * Tests des trajectoires (TrajectoryRecorder et TrajectoryReader): les images relues, vers l'avant,
+ * a reculons ou apres un saut, sont celles de la simulation, a un demi-pas de quantification pres,
+ * et un ecoulement continu dont le nombre de particules change reste en images delta.
+ */
+public class TrajectoryTest extends TestSuite {
+	// octets par particule d'une image cle, pour estimer la taille d'un fichier sans images delta
+	private static final int KEYFRAME_PARTICLE_SIZE = 11;
+
+	// taille de l'en-tete d'une image
+	private static final int FRAME_HEADER_SIZE = 32;
+
+	protected void run() throws Exception {
+		checkDamBreak();
+		checkFlow();
+	}
+
+	// nombre de particules constant: une image cle a chaque intervalle, des deltas entre les deux
+	private void checkDamBreak() throws IOException {
+		Scenario scenario = Scenario.get("dam-break");
+		Simulation simulation = scenario.createSimulation(Scenario.REFERENCE_PARTICLE_COUNT);
+		File file = createTemporaryFile(".traj");
+		ArrayList<double[]> expected = record(simulation, scenario, file, 10, 45);
+		TrajectoryReader reader = new TrajectoryReader(file);
+		try {
+			checkEqual(45, reader.getFrameCount(), "images de dam-break");
+			checkEqual(5, reader.getKeyframeCount(), "images cles de dam-break");
+			checkEqual(30, reader.getKeyframeFrame(3), "numero de la quatrieme image cle");
+			checkFrames(reader, expected, "dam-break");
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	// ecoulement continu: la buse et le puits changent le nombre de particules a chaque etape
+	private void checkFlow() throws IOException {
+		Simulation simulation = Scene.readResource("/scenes/flow.scene").createSimulation();
+		File file = createTemporaryFile(".traj");
+		int interval = TrajectoryRecorder.DEFAULT_KEYFRAME_INTERVAL;
+		ArrayList<double[]> expected = record(simulation, null, file, interval, 4 * interval);
+		int changes = 0;
+		long keyframeSize = 0;
+		int i;
+		for (i = 0; i < expected.size(); i++) {
+			int count = expected.get(i).length / 4;
+			if (i > 0 && count != expected.get(i - 1).length / 4) {
+				changes++;
+			}
+			keyframeSize += FRAME_HEADER_SIZE + (long) count * KEYFRAME_PARTICLE_SIZE;
+		}
+		check(changes > expected.size() / 2, "le nombre de particules change trop peu: "
+				+ changes);
+		TrajectoryReader reader = new TrajectoryReader(file);
+		try {
+			check(reader.getKeyframeCount() <= 4 + 1, "images cles de flow.scene: "
+					+ reader.getKeyframeCount());
+			checkFrames(reader, expected, "flow.scene");
+		}
+		finally {
+			reader.close();
+		}
+		// une image delta garde 6 octets par particule plutot que 11
+		check(file.length() < keyframeSize * 0.7, "trajectoire de flow.scene trop grande: "
+				+ file.length() + " octets, " + keyframeSize + " en images cles seulement");
+	}
+
+	// enregistre des etapes d'une simulation, et retourne x, y, pression et options de chaque
+	// particule apres chaque etape
+	private static ArrayList<double[]> record(Simulation simulation, Scenario scenario, File file,
+			int keyframeInterval, int steps) throws IOException {
+		TrajectoryRecorder recorder = new TrajectoryRecorder(simulation, file, keyframeInterval,
+				TrajectoryRecorder.DEFAULT_QUANTUM, TrajectoryRecorder.DEFAULT_PRESSURE_QUANTUM);
+		ArrayList<double[]> frames = new ArrayList<double[]>();
+		long step;
+		for (step = 0; step < steps; step++) {
+			if (scenario != null) {
+				scenario.step(simulation, step);
+			}
+			else {
+				simulation.update(Scenario.DELTA_T, null, null);
+			}
+			double[] values = new double[simulation.getParticleCount() * 4];
+			int i = 0;
+			Iterator<Particle> iterator = simulation.getParticleIterator();
+			while (iterator.hasNext()) {
+				Particle particle = iterator.next();
+				values[i++] = particle.getX();
+				values[i++] = particle.getY();
+				values[i++] = particle.getPressure();
+				values[i++] = (particle.isHighlighted() ? ParticleFrame.HIGHLIGHTED : 0)
+						| (particle.isImportant() ? ParticleFrame.IMPORTANT : 0);
+			}
+			frames.add(values);
+		}
+		recorder.close();
+		return frames;
+	}
+
+	// verifie les images lues vers l'avant, a reculons et apres des sauts
+	private void checkFrames(TrajectoryReader reader, ArrayList<double[]> expected, String name)
+			throws IOException {
+		double tolerance = TrajectoryRecorder.DEFAULT_QUANTUM / 2 + 1e-9;
+		double pressureTolerance = TrajectoryRecorder.DEFAULT_PRESSURE_QUANTUM / 2 + 1e-9;
+		ParticleFrame frame = new ParticleFrame();
+		ArrayList<ParticleFrame> decoded = new ArrayList<ParticleFrame>();
+		int index = 0;
+		while (reader.readFrame(frame)) {
+			double[] values = expected.get(index);
+			String message = name + ", image " + index;
+			checkEqual(index + 1, reader.getStep(), message + ", etape");
+			checkEqual(values.length / 4, frame.size(), message + ", particules");
+			int i;
+			for (i = 0; i < frame.size(); i++) {
+				if (Math.abs(frame.getX(i) - values[4 * i]) > tolerance
+						|| Math.abs(frame.getY(i) - values[4 * i + 1]) > tolerance) {
+					checkClose(values[4 * i], frame.getX(i), tolerance, message + ", x " + i);
+					checkClose(values[4 * i + 1], frame.getY(i), tolerance, message + ", y " + i);
+				}
+				if (Math.abs(frame.getPressure(i) - values[4 * i + 2]) > pressureTolerance) {
+					checkClose(values[4 * i + 2], frame.getPressure(i), pressureTolerance,
+							message + ", pression " + i);
+				}
+				if (frame.isHighlighted(i) != ((int) values[4 * i + 3] & ParticleFrame.HIGHLIGHTED)
+						> 0 || frame.isImportant(i) != ((int) values[4 * i + 3]
+								& ParticleFrame.IMPORTANT) > 0) {
+					check(false, message + ", options " + i);
+				}
+			}
+			decoded.add(copy(frame));
+			index++;
+		}
+		checkEqual(expected.size(), index, name + ", images lues");
+		// a reculons, chaque image est exactement celle lue vers l'avant
+		while (reader.readPreviousFrame(frame)) {
+			index = reader.getFrameIndex() - 1;
+			checkSame(decoded.get(index), frame, name + ", image " + index + " a reculons");
+		}
+		checkEqual(1, reader.getFrameIndex(), name + ", fin de la lecture a reculons");
+		// sauts dans un ordre quelconque
+		Random random = new Random(41);
+		int i;
+		for (i = 0; i < 20; i++) {
+			index = random.nextInt(expected.size());
+			reader.seek(index);
+			check(reader.readFrame(frame), name + ", lecture apres un saut");
+			checkSame(decoded.get(index), frame, name + ", image " + index + " apres un saut");
+		}
+	}
+
+	// verifie que deux images sont identiques
+	private void checkSame(ParticleFrame expected, ParticleFrame actual, String message) {
+		checkEqual(expected.size(), actual.size(), message + ", particules");
+		int i;
+		for (i = 0; i < expected.size(); i++) {
+			if (expected.getX(i) != actual.getX(i) || expected.getY(i) != actual.getY(i)
+					|| expected.getPressure(i) != actual.getPressure(i)
+					|| expected.isHighlighted(i) != actual.isHighlighted(i)
+					|| expected.isImportant(i) != actual.isImportant(i)) {
+				check(false, message + ", particule " + i + " differe");
+			}
+		}
+	}
+
+	// copie une image
+	private static ParticleFrame copy(ParticleFrame frame) {
+		ParticleFrame copy = new ParticleFrame();
+		copy.ensureCapacity(frame.size());
+		int i;
+		for (i = 0; i < frame.size(); i++) {
+			copy.add(frame.getX(i), frame.getY(i), frame.getPressure(i),
+					(frame.isHighlighted(i) ? ParticleFrame.HIGHLIGHTED : 0)
+							| (frame.isImportant(i) ? ParticleFrame.IMPORTANT : 0));
+		}
+		return copy;
+	}
+}
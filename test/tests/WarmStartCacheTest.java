@@ -0,0 +1,74 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import listeners.WarmStartListener;
+import scenario.Scenario;
+import scenario.Scene;
+import scenario.WarmStartCache;
+import simulation.Simulation;
+
+/**
+ * Tests du cache d'etats relaxes (WarmStartCache): une simulation demandee en arriere-plan est la
+ * meme que celle creee directement, et les etats gardes dans un dossier sont relus.
+ */
+public class WarmStartCacheTest extends TestSuite {
+	// nombre d'etapes de relaxation
+	private static final int RELAXATION_STEPS = 30;
+
+	// temps maximal d'attente d'une simulation relaxee, en secondes
+	private static final int TIMEOUT = 30;
+
+	protected void run() throws Exception {
+		Scene scene = Scene.readResource("/scenes/bowl.scene");
+		// relaxation faite a la main
+		Simulation expected = scene.createSimulation();
+		int i;
+		for (i = 0; i < RELAXATION_STEPS; i++) {
+			expected.update(Scenario.DELTA_T, null, null);
+		}
+		File directory = createTemporaryDirectory();
+		WarmStartCache cache = new WarmStartCache(directory, RELAXATION_STEPS);
+		checkSameParticles(expected, createLater(cache, scene), "simulation en arriere-plan");
+		checkSameParticles(expected, cache.createSimulation(scene), "simulation du cache");
+		// un seul fichier, relu par un autre cache
+		String[] names = directory.list();
+		checkEqual(1, names.length, "fichiers du cache");
+		check(names[0].startsWith("warm-") && names[0].endsWith(".ckpt"), "fichier " + names[0]);
+		long modified = new File(directory, names[0]).lastModified();
+		WarmStartCache other = new WarmStartCache(directory, RELAXATION_STEPS);
+		checkSameParticles(expected, createLater(other, scene), "simulation relue");
+		checkEqual(modified, new File(directory, names[0]).lastModified(), "fichier reecrit");
+		// un autre nombre d'etapes de relaxation donne un autre fichier
+		new WarmStartCache(directory, RELAXATION_STEPS + 1).createSimulation(scene);
+		checkEqual(2, directory.list().length, "fichiers des deux relaxations");
+	}
+
+	// demande une simulation en arriere-plan et attend qu'elle arrive
+	private Simulation createLater(WarmStartCache cache, Scene scene) throws Exception {
+		final BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(1);
+		final Thread caller = Thread.currentThread();
+		final boolean[] otherThread = new boolean[1];
+		cache.createSimulationLater(scene, new WarmStartListener() {
+			public void simulationReady(Scene scene, Simulation simulation) {
+				otherThread[0] = Thread.currentThread() != caller;
+				results.add(simulation);
+			}
+
+			public void relaxationFailed(Scene scene, IOException error) {
+				results.add(error);
+			}
+		});
+		Object result = results.poll(TIMEOUT, TimeUnit.SECONDS);
+		check(result != null, "simulation relaxee non recue");
+		if (result instanceof IOException) {
+			throw (IOException) result;
+		}
+		check(otherThread[0], "relaxation faite par l'appelant");
+		return (Simulation) result;
+	}
+}